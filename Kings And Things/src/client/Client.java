@@ -6,6 +6,7 @@ import javax.swing.SwingUtilities;
 import org.apache.log4j.PropertyConfigurator;
 
 import common.Constants;
+import common.Threads;
 
 import client.logic.ConnectionLogic;
 import client.gui.ClientGUI;
@@ -24,8 +25,16 @@ public class Client {
 			//failed to change look and feel
 		}
 		
+		if( args!=null){
+			for( String arg : args){
+				if( arg.equals( "-virtual")){
+					Threads.setVirtual( true);
+				}
+			}
+		}
+		
 		ConnectionLogic logic = new ConnectionLogic();
-		new Thread( logic, "Client Logic").start();
+		Threads.start( logic, "Client Logic");
 		ClientGUI clientGUI = new ClientGUI( Constants.GAME_TITLE);
 		SwingUtilities.invokeLater( clientGUI);
 	}
@@ -5,6 +5,7 @@ import java.io.IOException;
 import javax.swing.JOptionPane;
 
 import common.Logger;
+import common.Threads;
 import common.game.Player;
 import common.game.PlayerInfo;
 import common.network.Connection;
@@ -34,6 +35,7 @@ import common.event.network.CurrentPhase;
 import common.event.network.HexPlacement;
 import common.event.network.CommandRejected;
 import common.event.network.ExchangedSeaHex;
+import common.event.network.GameStateDelta;
 import common.event.network.GameStateProgress;
 import common.event.network.SpecialCharUpdate;
 import common.event.network.HexOwnershipChanged;
@@ -45,7 +47,14 @@ public class ConnectionLogic implements Runnable {
 	
 	private Connection connection;
 	private PlayerInfo player = null;
-	private boolean finished = false, gameStarted = false;
+	private volatile boolean finished = false;
+	private boolean gameStarted = false;
+	private long stateVersion = -1;
+	//a full state was requested after a delta did not build on stateVersion
+	private volatile boolean awaitingState = false;
+	//messages received from server over all connections, presented when reconnecting
+	private volatile long received = 0;
+	private final Object connectionLock = new Object();
 	
 	public ConnectionLogic() {
 		this.connection = new Connection();
@@ -57,11 +66,14 @@ public class ConnectionLogic implements Runnable {
 	public void run() {
 		AbstractEvent event = null;
 		Logger.getStandardLogger().info( "Starting");
-		while( !finished && !connection.isConnected()){
-			try {
-				Thread.sleep( 10);
-			} catch ( InterruptedException e) {
-				e.printStackTrace();
+		synchronized( connectionLock){
+			while( !finished && !connection.isConnected()){
+				try {
+					//woken by connect() or End instruction
+					connectionLock.wait();
+				} catch ( InterruptedException e) {
+					e.printStackTrace();
+				}
 			}
 		}
 		Logger.getStandardLogger().info( "listening");
@@ -69,6 +81,7 @@ public class ConnectionLogic implements Runnable {
 		int ID = Constants.PUBLIC;
 		try {
 			while( !finished && (event = connection.recieve())!=null){
+				received++;
 				update.clear();
 				ID = player==null ? Constants.PUBLIC: player.getID()|Constants.BOARD;
 				Logger.getStandardLogger().info( "Received "+(player!=null?player.getID():"-1") + ": " + event);
@@ -171,6 +184,39 @@ public class ConnectionLogic implements Runnable {
 					update.putData( UpdateKey.Hex, progress.getHexes( -1));
 					update.putData( UpdateKey.Special, progress.getSpecial( -1));
 					update.putData( UpdateKey.Rack, progress.getRack( player.getID()));
+					stateVersion = progress.getVersion();
+					awaitingState = false;
+				}
+				else if( event instanceof GameStateDelta && ((GameStateDelta)event).getBaseVersion()!=stateVersion){
+					//applying it would leave out the changes of the missed versions
+					Logger.getErrorLogger().warn( "Discarded " + event + " while on state version " + stateVersion);
+					if( !awaitingState){
+						awaitingState = true;
+						sendToServer( new UpdatePackage( UpdateInstruction.NeedState, "Logic "+player.getID()));
+					}
+				}
+				else if( event instanceof GameStateDelta){
+					GameStateDelta delta = (GameStateDelta)event;
+					stateVersion = delta.getVersion();
+					if( delta.getPlayers()!=null){
+						updateCurrentPlayer( delta.getPlayers());
+						update.addInstruction( UpdateInstruction.UpdatePlayers);
+						updatePlayerFromList( delta.getPlayers());
+						update.putData( UpdateKey.Player, player);
+						update.putData( UpdateKey.Players, delta.getPlayers());
+					}
+					update.addInstruction( UpdateInstruction.StateDelta);
+					update.putData( UpdateKey.HexState, delta.getHexes());
+					update.putData( UpdateKey.Flipped, delta.isFlipped());
+					update.putData( UpdateKey.Rack, delta.getRack());
+					if( delta.getSpecial()!=null){
+						update.putData( UpdateKey.Special, delta.getSpecial());
+					}
+					if( delta.hasPhaseChanged()){
+						update.putData( UpdateKey.Setup, delta.getSetup());
+						update.putData( UpdateKey.Regular, delta.getRegular());
+						update.putData( UpdateKey.Combat, delta.getCombat());
+					}
 				}
 				else if( event instanceof CommandRejected){
 					UpdateInstruction instruction = ((CommandRejected)event).getInstruction(); 
@@ -320,6 +366,7 @@ public class ConnectionLogic implements Runnable {
 					connection.disconnect();
 				}
 				finished = true;
+				signalConnection();
 			}
 		}
 
@@ -410,14 +457,19 @@ public class ConnectionLogic implements Runnable {
 		Logger.getStandardLogger().info( "Connecting");
 		if( connection.connectTo( ip, port)){
 			Logger.getStandardLogger().info( "Connected");
+			signalConnection();
 			if( finished){
 				Logger.getStandardLogger().info( "Starting Thread");
 				finished = false;
 				startLogic( this);
 			}
 			if( player!=null){
-				Logger.getStandardLogger().info( "Send Old Player");
-				sendToServer( new UpdatePackage( UpdateInstruction.State, UpdateKey.Player, player, "Logic "+player.getID()));
+				//a request sent on the old connection may have been lost
+				awaitingState = false;
+				Logger.getStandardLogger().info( "Send Old Player, received " + received);
+				UpdatePackage returning = new UpdatePackage( UpdateInstruction.State, UpdateKey.Player, player, "Logic "+player.getID());
+				returning.putData( UpdateKey.Sequence, received);
+				sendToServer( returning);
 			}else{
 				Logger.getStandardLogger().info( "Send New Player");
 				sendToServer( new UpdatePackage( UpdateInstruction.State, UpdateKey.Player, new PlayerInfo( name, Constants.PUBLIC, Constants.PLAYER_READY), "Logic -1"));
@@ -429,7 +481,13 @@ public class ConnectionLogic implements Runnable {
 	}
 	
 	private void startLogic( ConnectionLogic logic){
-		new Thread( logic, "Client Logic").start();
+		Threads.start( logic, "Client Logic");
+	}
+	
+	private void signalConnection(){
+		synchronized( connectionLock){
+			connectionLock.notifyAll();
+		}
 	}
 	
 	private class UpdateTransmitter extends AbstractUpdateReceiver<UpdatePackage>{
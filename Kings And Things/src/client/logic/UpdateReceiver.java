@@ -146,6 +146,36 @@ public class UpdateReceiver extends AbstractUpdateReceiver<UpdatePackage>{
 					}
 					controller.requestRepaint();
 					break;
+				case StateDelta:
+					HexState[] changed = (HexState[]) update.getData( UpdateKey.HexState);
+					if( changed!=null){
+						for( HexState hs : changed){
+							controller.getLockForHex( hs.getLocation()).getHex().setState( hs);
+						}
+					}
+					if( (Boolean) update.getData( UpdateKey.Flipped)){
+						controller.flipAllHexes();
+					}
+					if( update.getData( UpdateKey.Rack)!=null){
+						controller.waitForPhase();
+						controller.animateRackPlacement( (ITileProperties[]) update.getData( UpdateKey.Rack));
+					}
+					SetupPhase setupPhase = (SetupPhase) update.getData( UpdateKey.Setup);
+					if( setupPhase!=null){
+						controller.waitForPhase();
+						if( setupPhase!=SetupPhase.SETUP_FINISHED){
+							manageSetupPhase( setupPhase);
+						}else{
+							CombatPhase combatPhase = (CombatPhase) update.getData( UpdateKey.Combat);
+							if( combatPhase==CombatPhase.PLACE_THINGS || combatPhase==CombatPhase.DETERMINE_DEFENDERS){
+								manageCombatPhase( combatPhase);
+							}else{
+								manageRegularPhase( (RegularPhase) update.getData( UpdateKey.Regular));
+							}
+						}
+					}
+					controller.requestRepaint();
+					break;
 				case InitiateCombat:
 					final InitiateCombat combat = (InitiateCombat) update.getData(UpdateKey.Combat);
 					try {
@@ -14,6 +14,7 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
 
 import javax.imageio.ImageIO;
 
@@ -36,12 +37,12 @@ public final class Constants {
 	public enum Category { Resources, Building, Cup, Gold, Hex, Special, State, Misc, END, Creature, Event, Magic, Treasure, Buildable}
 	public enum RandomEvent {Big_Juju, Dark_Plague, Defection, Good_Harvest, Mother_Lode, Teenie_Pox, Terrain_Disaster, Vandalism, Weather_Control, Willing_Workers}
 	public enum MagicEvent {Balloon, Bow, Dispel_Magic, Dust_Of_Defense, Fan, Firewall, Golem, Lucky_Charm, Elixir, Sword, Talisman}
-	public enum UpdateKey {Category, Message, PlayerCount, Players, Name, Port, IP, Player, Hex, Phase, HexState, Roll, Tile, Flipped, Setup, Regular, Combat, Special, Rack, Instruction, ThingArray, Gold}
+	public enum UpdateKey {Category, Message, PlayerCount, Players, Name, Port, IP, Player, Hex, Phase, HexState, Roll, Tile, Flipped, Setup, Regular, Combat, Special, Rack, Instruction, ThingArray, Gold, Sequence}
 	public enum Restriction { Gold, Magic, Treasure, Building, Event, Special, State, Battle, Sea, Desert, Forest, Frozen_Waste, Jungle, Mountain, Plains, Swamp, Yellow, Red, Green, Gray, None}
 	public enum UpdateInstruction {Connect, Disconnect, State, Start, UpdatePlayers, Category, End, Send, PlaceBoard, SetupPhase, RegularPhase, CombatPhase, PlayTreasure,
 		NeedRoll, HexOwnership, DieValue, DoneRolling, TieRoll, FlipAll, SeaHexChanged, Skip, GameState, Special, Rejected, InitiateCombat, TargetPlayer, ThingChanged, 
 		ApplyHit, Retreat, RemoveThingsFromHex, HexStatesChanged, BribeCreature, ShowExplorationResults, MoveThings, RackChanged, ConstructBuilding, CallBluff, ViewContents,
-		GetHeroes, HandChanged, BribeHero, RecruitThings, ExchangeThings, RandomEvent}
+		GetHeroes, HandChanged, BribeHero, RecruitThings, ExchangeThings, RandomEvent, StateDelta, NeedState}
 	
 	public enum HexContentsTarget{RETREAT,MOVEMENT,VIEW,REMOVAL}
 	
@@ -156,7 +157,6 @@ public final class Constants {
 	public static final Dimension BOARD_SIZE = new Dimension( HEX_BOARD_SIZE.width + BOARD_RIGHT_PADDING + PLAYERS_STATE_SIZE, HEX_BOARD_SIZE.height + BOARD_BOTTOM_PADDING);
 	
 	//Defaults
-	public static final Random rand = new Random();
 	public static final int ANIMATION_DELAY = 5;
 	public static final int INFINITE_TILE = -1;
 	public static final int SERVER_TIMEOUT = 5;
@@ -322,6 +322,16 @@ public final class Constants {
 		}
 	}
 	
+	/**
+	 * player IDs are one bit each, from PLAYER_1_ID up
+	 * @param ID - player ID number
+	 * @return seat of the player with ID, from 0 to MAX_PLAYERS-1, or -1 if it is not the ID of a player
+	 */
+	public static int getPlayerSeat( final int ID){
+		int seat = Integer.numberOfTrailingZeros( ID) - Integer.numberOfTrailingZeros( PLAYER_1_ID);
+		return seat >= 0 && seat < MAX_PLAYERS && ID == PLAYER_1_ID << seat? seat : -1;
+	}
+	
 	public static final HashMap< Restriction, Image> IMAGE_MARKERS = new HashMap< Restriction, Image>(4);
 	public final static Image getMarkerImage( final int ID){
 		switch( ID){
@@ -357,7 +367,7 @@ public final class Constants {
 	 * @param max - largest possible number (inclusive)
 	 */
 	public static int random( int min, int max){
-		return rand.nextInt((max+1)-min)+min;
+		return getRandom().nextInt((max+1)-min)+min;
 	}
 	
 	/**
@@ -365,7 +375,34 @@ public final class Constants {
 	 * @param max - largest possible number (inclusive)
 	 */
 	public static int random( int max){
-		return rand.nextInt((max+1));
+		return getRandom().nextInt((max+1));
+	}
+	
+	private static final ThreadLocal<Random> BOUND_RANDOM = new ThreadLocal<Random>();
+	
+	/**
+	 * draw the random numbers of the calling thread from a generator of its own,
+	 * a game played by one thread with a seeded generator is played the same every time
+	 * @param random - generator to bind, null will restore a generator per thread
+	 * @return previously bound generator, may be null
+	 */
+	public static Random bindRandomToCurrentThread( Random random){
+		Random previous = BOUND_RANDOM.get();
+		if( random==null){
+			BOUND_RANDOM.remove();
+		}else{
+			BOUND_RANDOM.set( random);
+		}
+		return previous;
+	}
+	
+	/**
+	 * every random decision of the game and its AI is drawn from here
+	 * @return generator bound to the calling thread, or one per thread if none is bound
+	 */
+	public static Random getRandom(){
+		Random random = BOUND_RANDOM.get();
+		return random==null? ThreadLocalRandom.current() : random;
 	}
 	
 
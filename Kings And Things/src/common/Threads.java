@@ -0,0 +1,87 @@
+package common;
+
+import java.lang.reflect.Method;
+
+/**
+ * starts the long running connection loops of client and server, and the writers of
+ * blocking connections, either on platform threads or, when enabled by the "-virtual" startup option, on virtual threads.
+ * virtual threads are created through reflection so the project still builds for Java 7,
+ * on a JVM without them platform threads are used instead.
+ */
+public abstract class Threads
+{
+	private static volatile boolean useVirtual = false;
+	private static Method ofVirtual;
+	private static Method name;
+	private static Method unstarted;
+
+	/**
+	 * @param virtual - true to run new tasks on virtual threads, if supported by this JVM
+	 * @return true if virtual threads will be used
+	 */
+	public static synchronized boolean setVirtual( boolean virtual)
+	{
+		if( virtual && ofVirtual==null)
+		{
+			try
+			{
+				ofVirtual = Thread.class.getMethod( "ofVirtual");
+				Class<?> builder = Class.forName( "java.lang.Thread$Builder");
+				name = builder.getMethod( "name", String.class);
+				unstarted = builder.getMethod( "unstarted", Runnable.class);
+			}
+			catch( ReflectiveOperationException e)
+			{
+				Logger.getStandardLogger().warn( "Virtual threads are not supported by this JVM, using platform threads");
+				return useVirtual = false;
+			}
+		}
+		return useVirtual = virtual;
+	}
+
+	public static boolean isVirtual()
+	{
+		return useVirtual;
+	}
+
+	/**
+	 * start task on a new thread of the selected kind
+	 * @param task - task to run
+	 * @param threadName - name of the new thread
+	 * @return started thread
+	 */
+	public static Thread start( Runnable task, String threadName)
+	{
+		Thread thread = newThread( task, threadName);
+		thread.start();
+		return thread;
+	}
+
+	/**
+	 * create, but do not start, a thread of the selected kind
+	 * @param task - task to run
+	 * @param threadName - name of the new thread
+	 * @return unstarted thread
+	 */
+	public static Thread newThread( Runnable task, String threadName)
+	{
+		Thread thread = null;
+		if( useVirtual)
+		{
+			try
+			{
+				Object builder = name.invoke( ofVirtual.invoke( null), threadName);
+				thread = (Thread) unstarted.invoke( builder, task);
+			}
+			catch( ReflectiveOperationException e)
+			{
+				Logger.getErrorLogger().error( "Unable to create virtual thread, using platform thread: ", e);
+			}
+		}
+		if( thread==null)
+		{
+			thread = new Thread( task, threadName);
+		}
+		return thread;
+	}
+}
@@ -24,17 +24,33 @@ public abstract class AbstractEvent{
 	}
 
 	/**
-	 * post this event on Internal BusEvent
+	 * post this event on Internal BusEvent of the dispatch bound to the calling thread
 	 */
 	public void postInternalEvent(){
-		EventDispatch.INTERNAL.post( this);
+		postInternalEvent( EventDispatch.getCurrent());
 	}
 
 	/**
-	 * post this event on Network BusEvent
+	 * post this event on Network BusEvent of the dispatch bound to the calling thread
 	 */
 	public void postNetworkEvent(){
-		EventDispatch.NETWORK.post( this);
+		postNetworkEvent( EventDispatch.getCurrent());
+	}
+	
+	/**
+	 * post this event on Internal BusEvent of a specific game or session
+	 * @param dispatch - event buses to post on
+	 */
+	public void postInternalEvent( EventDispatch dispatch){
+		dispatch.postInternal( this);
+	}
+
+	/**
+	 * post this event on Network BusEvent of a specific game or session
+	 * @param dispatch - event buses to post on
+	 */
+	public void postNetworkEvent( EventDispatch dispatch){
+		dispatch.postNetwork( this);
 	}
 	
 	public void postNetworkEvent( int ID){
@@ -47,6 +63,16 @@ public abstract class AbstractEvent{
 		postInternalEvent();
 	}
 	
+	public void postNetworkEvent( EventDispatch dispatch, int ID){
+		setID( ID);
+		postNetworkEvent( dispatch);
+	}
+	
+	public void postInternalEvent( EventDispatch dispatch, int ID){
+		setID( ID);
+		postInternalEvent( dispatch);
+	}
+	
 	public void setID( int ID){
 		this.ID = ID;
 	}
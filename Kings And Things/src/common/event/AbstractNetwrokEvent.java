@@ -9,4 +9,13 @@ public class AbstractNetwrokEvent extends AbstractEvent implements Serializable
 	protected AbstractNetwrokEvent(){
 		super();
 	}
+	
+	/**
+	 * events of the same class with equal keys describe the same state, so a queued
+	 * event may be replaced by a newer one before it is sent, see OutboundQueue
+	 * @return key of the state carried by this event, or null if it must always be sent
+	 */
+	public Object getCoalescingKey(){
+		return null;
+	}
 }
\ No newline at end of file
@@ -16,21 +16,35 @@ public abstract class AbstractUpdateReceiver<T extends AbstractEvent> {
 	
 	protected final Object OWNER;
 	protected final int ID; 
-	private final int BUS;
+	private int BUS;
+	private EventDispatch dispatch;
 	
 	
 	/**
 	 * create an instance of <code>AbstractUpdateReceiver</code> and 
-	 * register on either network or internal event bus
+	 * register on either network or internal event bus of the dispatch
+	 * bound to the calling thread
 	 * @param BUS - AbstractUpdateReceiver.NETWORK(0) or AbstractUpdateReceiver.INTERNAL(1)
 	 * @param ID - specific unique ID from Constants to represent this receiver (ex. GUI, LOGIC, BOARD, PROGRESS, LOAD_RESOURCE)
 	 * 				if ID is public MUST use common.Constants.PUBLIC, -1 will provide incorrect result.
 	 * @param OWNER - this must be the most outer class that holds AbstractUpdateReceiver
 	 */
 	protected AbstractUpdateReceiver( final int BUS, final int ID, final Object OWNER){
-		registerOnEventBus( BUS);
+		this( EventDispatch.getCurrent(), BUS, ID, OWNER);
+	}
+	
+	/**
+	 * create an instance of <code>AbstractUpdateReceiver</code> and 
+	 * register on either network or internal event bus of a specific game or session
+	 * @param dispatch - event buses to register on
+	 * @param BUS - AbstractUpdateReceiver.NETWORK(0) or AbstractUpdateReceiver.INTERNAL(1)
+	 * @param ID - specific unique ID from Constants to represent this receiver (ex. GUI, LOGIC, BOARD, PROGRESS, LOAD_RESOURCE)
+	 * 				if ID is public MUST use common.Constants.PUBLIC, -1 will provide incorrect result.
+	 * @param OWNER - this must be the most outer class that holds AbstractUpdateReceiver
+	 */
+	protected AbstractUpdateReceiver( EventDispatch dispatch, final int BUS, final int ID, final Object OWNER){
+		registerOnEventBus( dispatch, BUS);
 		this.ID = ID;
-		this.BUS = BUS;
 		this.OWNER = OWNER;
 	}
 	
@@ -62,15 +76,28 @@ public abstract class AbstractUpdateReceiver<T extends AbstractEvent> {
 	
 	/**
 	 * register this class to receive updates from network event bus or internal event bus
+	 * of the dispatch bound to the calling thread
 	 * @param BUS - AbstractUpdateReceiver.NETWORK(0) or AbstractUpdateReceiver.INTERNAL(1)
 	 */
 	public final void registerOnEventBus( final int BUS){
+		registerOnEventBus( EventDispatch.getCurrent(), BUS);
+	}
+	
+	/**
+	 * register this class to receive updates from network event bus or internal event bus
+	 * of a specific game or session
+	 * @param dispatch - event buses to register on
+	 * @param BUS - AbstractUpdateReceiver.NETWORK(0) or AbstractUpdateReceiver.INTERNAL(1)
+	 */
+	public final void registerOnEventBus( EventDispatch dispatch, final int BUS){
 		switch( BUS){
-			case NETWORK: EventDispatch.registerOnNetwrokEvents( this);break;
-			case INTERNAL: EventDispatch.registerOnInternalEvents( this);break;
+			case NETWORK: dispatch.registerNetwork( this);break;
+			case INTERNAL: dispatch.registerInternal( this);break;
 			default:
 				throw new IllegalArgumentException( "ERROR - BUS must be AbstractUpdateReceiver.NETWORK(0) or AbstractUpdateReceiver.INTERNAL(1)");
 		}
+		this.dispatch = dispatch;
+		this.BUS = BUS;
 	}
 	
 	/**
@@ -78,8 +105,8 @@ public abstract class AbstractUpdateReceiver<T extends AbstractEvent> {
 	 */
 	public final void unregisterFromEventBus(){
 		switch( BUS){
-			case NETWORK: EventDispatch.unregisterFromNetworkEvents( this);break;
-			case INTERNAL: EventDispatch.unregisterFromInternalEvents( this);break;
+			case NETWORK: dispatch.unregisterNetwork( this);break;
+			case INTERNAL: dispatch.unregisterInternal( this);break;
 		}
 	}
 	
@@ -1,8 +1,6 @@
 package common.event;
 
-import com.google.common.eventbus.EventBus;
-
-public abstract class EventDispatch
+public class EventDispatch
 {
 	/**
 	 * This is Google's implementation of an Event Bus, it allows objects to pass events around
@@ -12,34 +10,114 @@ public abstract class EventDispatch
 	 * '@Subscribe' annotation above the method. The method must take only one parameter, the event
 	 * to be handled. Any time an object is posted to the EventBus, any registered handlers with
 	 * '@Subscribe' methods that take an argument of that object type, will be called with the object.
+	 * The buses are PrecompiledEventBus instances, which keep Guava's '@Subscribe' contract but
+	 * resolve handlers once on registration instead of on every post.
 	 * <p>
 	 * See GameFlowManager for an example on registering for events and handling them, see Command
 	 * for an example on posting events.
+	 * <p>
+	 * Every instance holds its own pair of buses, the server creates one instance per game room
+	 * so events of one game never reach the handlers of another. Static methods always work on
+	 * the instance bound to the calling thread, or the process wide default when nothing is bound.
+	 * Pass an instance to AbstractEvent.postInternalEvent/postNetworkEvent or AbstractUpdateReceiver
+	 * to target a specific game regardless of the calling thread.
 	 */
-	static final EventBus INTERNAL = new EventBus();
-	static final EventBus NETWORK = new EventBus();
-	
+	private final PrecompiledEventBus INTERNAL;
+	private final PrecompiledEventBus NETWORK;
+
+	private static final EventDispatch DEFAULT = new EventDispatch();
+	private static final ThreadLocal<EventDispatch> BOUND = new ThreadLocal<EventDispatch>();
+
+	public EventDispatch(){
+		INTERNAL = new PrecompiledEventBus();
+		NETWORK = new PrecompiledEventBus();
+	}
+
+	/**
+	 * get the dispatch bound to the calling thread
+	 * @return bound dispatch, or the default dispatch if none is bound
+	 */
+	public static EventDispatch getCurrent(){
+		EventDispatch dispatch = BOUND.get();
+		return dispatch==null? DEFAULT : dispatch;
+	}
+
+	/**
+	 * bind a dispatch to the calling thread, all events posted and all objects
+	 * registered from this thread will use the bound dispatch from now on
+	 * @param dispatch - dispatch to bind, null will restore the default dispatch
+	 * @return previously bound dispatch, may be null
+	 */
+	public static EventDispatch bindToCurrentThread( EventDispatch dispatch){
+		EventDispatch previous = BOUND.get();
+		if( dispatch==null){
+			BOUND.remove();
+		}else{
+			BOUND.set( dispatch);
+		}
+		return previous;
+	}
+
 	public static void registerOnInternalEvents( Object obj){
-		INTERNAL.register( obj);
+		getCurrent().registerInternal( obj);
 	}
 	
 	public static void registerOnNetwrokEvents( Object obj){
-		NETWORK.register( obj);
+		getCurrent().registerNetwork( obj);
 	}
 
 	public static void unregisterFromInternalEvents( Object obj) {
-		try{
-			INTERNAL.unregister( obj);
-		}catch(IllegalArgumentException ex){
-			//nothing, object was either not registered or already removed
-		}
+		getCurrent().unregisterInternal( obj);
 	}
 
 	public static void unregisterFromNetworkEvents( Object obj) {
+		getCurrent().unregisterNetwork( obj);
+	}
+	
+	public void registerInternal( Object obj){
+		INTERNAL.register( obj);
+	}
+	
+	public void registerNetwork( Object obj){
+		NETWORK.register( obj);
+	}
+	
+	public void unregisterInternal( Object obj){
+		unregister( INTERNAL, obj);
+	}
+	
+	public void unregisterNetwork( Object obj){
+		unregister( NETWORK, obj);
+	}
+	
+	/**
+	 * post event on internal bus of this dispatch, this dispatch is bound to
+	 * the calling thread while handlers run, so any event they post in
+	 * response stays on this dispatch as well
+	 */
+	public void postInternal( AbstractEvent event){
+		post( INTERNAL, event);
+	}
+	
+	/**
+	 * post event on network bus of this dispatch, this dispatch is bound to
+	 * the calling thread while handlers run, so any event they post in
+	 * response stays on this dispatch as well
+	 */
+	public void postNetwork( AbstractEvent event){
+		post( NETWORK, event);
+	}
+	
+	private void post( PrecompiledEventBus bus, AbstractEvent event){
+		EventDispatch previous = bindToCurrentThread( this);
 		try{
-			NETWORK.unregister( obj);
-		}catch(IllegalArgumentException ex){
-			//nothing, object was either not registered or already removed
+			bus.post( event);
+		}finally{
+			bindToCurrentThread( previous);
 		}
 	}
+
+	private void unregister( PrecompiledEventBus bus, Object obj){
+		bus.unregister( obj);
+	}
 }
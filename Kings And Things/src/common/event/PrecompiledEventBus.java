@@ -0,0 +1,267 @@
+package common.event;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.google.common.eventbus.AllowConcurrentEvents;
+import com.google.common.eventbus.Subscribe;
+
+import common.Logger;
+
+/**
+ * drop in replacement for Guava's EventBus used by EventDispatch, handlers are still
+ * marked with '@Subscribe' but are resolved only once when an object is registered.
+ * every '@Subscribe' method is turned into a MethodHandle bound to its owner, and for
+ * every posted event class a flat table of all matching handlers is built on first
+ * use, so posting an event is a map lookup followed by direct calls.
+ * <p>
+ * same semantics as Guava's EventBus:
+ * 	- handlers of super classes and interfaces of the event are called as well
+ * 	- a method overriding a '@Subscribe' method of a super class or interface is a handler too
+ * 	- events posted while handling an event are queued and handled after it, in order
+ * 	- a handler is never entered by two threads at once, unless marked with '@AllowConcurrentEvents'
+ * 	- exceptions thrown by a handler are logged and do not stop other handlers
+ * 	- registering an object again has no effect, its handlers are called once per event
+ */
+public class PrecompiledEventBus {
+
+	private static final MethodType HANDLER_TYPE = MethodType.methodType( void.class, Object.class);
+	private static final ConcurrentHashMap< Class<?>, Method[]> SUBSCRIBERS = new ConcurrentHashMap< Class<?>, Method[]>();
+	private static final ConcurrentHashMap< Class<?>, Class<?>[]> HIERARCHY = new ConcurrentHashMap< Class<?>, Class<?>[]>();
+
+	private final ConcurrentHashMap< Class<?>, CopyOnWriteArrayList< Handler>> handlersByType;
+	private final ConcurrentHashMap< Class<?>, Handler[]> dispatchTable;
+	private final ThreadLocal< ArrayDeque< Object>> queuedEvents;
+	private final ThreadLocal< ArrayDeque< Handler[]>> queuedHandlers;
+	private final ThreadLocal< boolean[]> dispatching;
+
+	public PrecompiledEventBus(){
+		handlersByType = new ConcurrentHashMap< Class<?>, CopyOnWriteArrayList< Handler>>();
+		dispatchTable = new ConcurrentHashMap< Class<?>, Handler[]>();
+		queuedEvents = new ThreadLocal< ArrayDeque< Object>>(){
+			@Override
+			protected ArrayDeque< Object> initialValue(){
+				return new ArrayDeque< Object>();
+			}
+		};
+		queuedHandlers = new ThreadLocal< ArrayDeque< Handler[]>>(){
+			@Override
+			protected ArrayDeque< Handler[]> initialValue(){
+				return new ArrayDeque< Handler[]>();
+			}
+		};
+		dispatching = new ThreadLocal< boolean[]>(){
+			@Override
+			protected boolean[] initialValue(){
+				return new boolean[1];
+			}
+		};
+	}
+
+	/**
+	 * register all '@Subscribe' methods of the object, methods of an object that is
+	 * already registered are not added a second time
+	 * @param listener - object to receive events
+	 * @throws IllegalArgumentException if a '@Subscribe' method does not take exactly one argument
+	 */
+	public void register( Object listener){
+		Method[] methods = findSubscribers( listener.getClass());
+		synchronized( handlersByType){
+			for( Method method : methods){
+				Class<?> type = method.getParameterTypes()[0];
+				CopyOnWriteArrayList< Handler> handlers = handlersByType.get( type);
+				if( handlers==null){
+					handlers = new CopyOnWriteArrayList< Handler>();
+					handlersByType.put( type, handlers);
+				}
+				if( !isRegistered( handlers, listener, method)){
+					handlers.add( new Handler( listener, method));
+				}
+			}
+			dispatchTable.clear();
+		}
+	}
+
+	private static boolean isRegistered( CopyOnWriteArrayList< Handler> handlers, Object listener, Method method){
+		for( Handler handler : handlers){
+			if( handler.target==listener && handler.method.equals( method)){
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * unregister all '@Subscribe' methods of the object, nothing happens if it was never registered
+	 * @param listener - object to stop receiving events
+	 */
+	public void unregister( Object listener){
+		synchronized( handlersByType){
+			for( CopyOnWriteArrayList< Handler> handlers : handlersByType.values()){
+				ArrayList< Handler> removed = new ArrayList< Handler>();
+				for( Handler handler : handlers){
+					if( handler.target==listener){
+						removed.add( handler);
+					}
+				}
+				handlers.removeAll( removed);
+			}
+			dispatchTable.clear();
+		}
+	}
+
+	/**
+	 * post event to every handler of its class, super classes and interfaces
+	 * @param event - event to be posted
+	 */
+	public void post( Object event){
+		Handler[] handlers = dispatchTable.get( event.getClass());
+		if( handlers==null){
+			handlers = buildTable( event.getClass());
+		}
+		if( handlers.length==0){
+			return;
+		}
+		ArrayDeque< Object> events = queuedEvents.get();
+		ArrayDeque< Handler[]> tables = queuedHandlers.get();
+		events.offer( event);
+		tables.offer( handlers);
+		boolean[] isDispatching = dispatching.get();
+		if( isDispatching[0]){
+			return;
+		}
+		isDispatching[0] = true;
+		try{
+			Object next;
+			while( (next = events.poll())!=null){
+				for( Handler handler : tables.poll()){
+					handler.handle( next);
+				}
+			}
+		}finally{
+			isDispatching[0] = false;
+		}
+	}
+
+	private Handler[] buildTable( Class<?> eventType){
+		synchronized( handlersByType){
+			Handler[] handlers = dispatchTable.get( eventType);
+			if( handlers==null){
+				ArrayList< Handler> list = new ArrayList< Handler>();
+				for( Class<?> type : flattenHierarchy( eventType)){
+					CopyOnWriteArrayList< Handler> typeHandlers = handlersByType.get( type);
+					if( typeHandlers!=null){
+						list.addAll( typeHandlers);
+					}
+				}
+				handlers = list.toArray( new Handler[ list.size()]);
+				dispatchTable.put( eventType, handlers);
+			}
+			return handlers;
+		}
+	}
+
+	private static Class<?>[] flattenHierarchy( Class<?> eventType){
+		Class<?>[] types = HIERARCHY.get( eventType);
+		if( types==null){
+			LinkedHashSet< Class<?>> set = new LinkedHashSet< Class<?>>();
+			ArrayDeque< Class<?>> pending = new ArrayDeque< Class<?>>();
+			pending.add( eventType);
+			while( !pending.isEmpty()){
+				Class<?> type = pending.poll();
+				if( set.add( type)){
+					if( type.getSuperclass()!=null){
+						pending.add( type.getSuperclass());
+					}
+					for( Class<?> face : type.getInterfaces()){
+						pending.add( face);
+					}
+				}
+			}
+			types = set.toArray( new Class<?>[ set.size()]);
+			HIERARCHY.put( eventType, types);
+		}
+		return types;
+	}
+
+	/**
+	 * as in Guava's AnnotatedHandlerFinder a public method is a handler if it, or a method it
+	 * overrides in any super class or interface, has the '@Subscribe' annotation
+	 */
+	private static Method[] findSubscribers( Class<?> listenerType){
+		Method[] methods = SUBSCRIBERS.get( listenerType);
+		if( methods==null){
+			LinkedHashMap< List< Object>, Method> found = new LinkedHashMap< List< Object>, Method>();
+			for( Class<?> type : flattenHierarchy( listenerType)){
+				for( Method method : type.getMethods()){
+					if( method.isAnnotationPresent( Subscribe.class) && !method.isBridge()){
+						if( method.getParameterTypes().length!=1){
+							throw new IllegalArgumentException( "Method " + method + " has @Subscribe annotation, but requires "
+									+ method.getParameterTypes().length + " arguments.  Event handler methods must require a single argument.");
+						}
+						//an override and the methods it overrides are one handler, called through the first one found
+						List< Object> signature = Arrays.< Object>asList( method.getName(), method.getParameterTypes()[0]);
+						if( !found.containsKey( signature)){
+							method.setAccessible( true);
+							found.put( signature, method);
+						}
+					}
+				}
+			}
+			methods = found.values().toArray( new Method[ found.size()]);
+			SUBSCRIBERS.put( listenerType, methods);
+		}
+		return methods;
+	}
+
+	private static final class Handler{
+
+		private final Object target;
+		private final Method method;
+		private final MethodHandle invoker;
+		private final boolean concurrent;
+		private final String name;
+
+		private Handler( Object target, Method method){
+			this.target = target;
+			this.method = method;
+			concurrent = method.isAnnotationPresent( AllowConcurrentEvents.class);
+			name = method.toString();
+			try {
+				invoker = MethodHandles.lookup().unreflect( method).bindTo( target).asType( HANDLER_TYPE);
+			} catch ( IllegalAccessException e) {
+				throw new IllegalArgumentException( "Unable to access @Subscribe method " + method, e);
+			}
+		}
+
+		private void handle( Object event){
+			if( concurrent){
+				invoke( event);
+			}else{
+				synchronized( this){
+					invoke( event);
+				}
+			}
+		}
+
+		private void invoke( Object event){
+			try{
+				invoker.invokeExact( event);
+			}catch( Error e){
+				throw e;
+			}catch( Throwable e){
+				Logger.getErrorLogger().error( "Could not dispatch event: " + event + " to handler " + name, e);
+			}
+		}
+	}
+}
@@ -1,6 +1,10 @@
 package common.event;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.Map.Entry;
 import java.util.HashMap;
 import java.util.LinkedList;
 
@@ -14,10 +18,10 @@ import common.Constants.UpdateInstruction;
  */
 public class UpdatePackage extends AbstractEvent implements Serializable {
 
-	private static final long serialVersionUID = -1888776611771542522L;
+	private static final long serialVersionUID = -7432150219830464531L;
 	
-	private LinkedList< UpdateInstruction> instructions;
-	private HashMap< UpdateKey, Object> data;
+	private transient LinkedList< UpdateInstruction> instructions;
+	private transient HashMap< UpdateKey, Object> data;
 	private String source;
 	
 	public UpdatePackage( String source, final Object OWNER){
@@ -102,4 +106,35 @@ public class UpdatePackage extends AbstractEvent implements Serializable {
 	public String toString(){
 		return "Network/UpdatePackage:\n\tSource: " + source + "\n\tInstructions: " + instructions + "\n\tData: " + data.keySet();
 	}
+	
+	/**
+	 * instructions and keys are written as their ordinals, only values are written as objects
+	 */
+	private void writeObject( ObjectOutputStream output) throws IOException{
+		output.defaultWriteObject();
+		output.writeByte( instructions.size());
+		for( UpdateInstruction instruction : instructions){
+			output.writeByte( instruction.ordinal());
+		}
+		output.writeByte( data.size());
+		for( Entry< UpdateKey, Object> entry : data.entrySet()){
+			output.writeByte( entry.getKey().ordinal());
+			output.writeObject( entry.getValue());
+		}
+	}
+	
+	private void readObject( ObjectInputStream input) throws IOException, ClassNotFoundException{
+		input.defaultReadObject();
+		UpdateInstruction[] instructionValues = UpdateInstruction.values();
+		UpdateKey[] keyValues = UpdateKey.values();
+		instructions = new LinkedList<UpdateInstruction>();
+		for( int count = input.readUnsignedByte(); count>0; count--){
+			instructions.add( instructionValues[ input.readUnsignedByte()]);
+		}
+		data = new HashMap<UpdateKey, Object>();
+		for( int count = input.readUnsignedByte(); count>0; count--){
+			UpdateKey key = keyValues[ input.readUnsignedByte()];
+			data.put( key, input.readObject());
+		}
+	}
 }
@@ -0,0 +1,133 @@
+package common.event.network;
+
+import common.game.HexState;
+import common.game.PlayerInfo;
+import common.game.ITileProperties;
+import common.Constants.SetupPhase;
+import common.Constants.CombatPhase;
+import common.Constants.RegularPhase;
+import common.event.AbstractNetwrokEvent;
+
+/**
+ * changes of the game state since the version last sent to a client, only
+ * changed hexes, players, rack and special characters are included, unchanged parts are null.
+ * a client applies it on top of the GameStateProgress or GameStateDelta
+ * with version equal to getBaseVersion().
+ */
+public class GameStateDelta extends AbstractNetwrokEvent{
+
+	private static final long serialVersionUID = 2405962186134911373L;
+
+	private final long baseVersion;
+	private final long version;
+	private boolean isFlipped;
+	private boolean phaseChanged;
+	private SetupPhase setup;
+	private CombatPhase combat;
+	private RegularPhase regular;
+	private HexState[] hexes;
+	private PlayerInfo[] players;
+	private ITileProperties[] rack;
+	private ITileProperties[] special;
+
+	public GameStateDelta( long baseVersion, long version){
+		super();
+		this.baseVersion = baseVersion;
+		this.version = version;
+	}
+
+	public void setPhases( SetupPhase setup, RegularPhase regular, CombatPhase combat, boolean changed){
+		this.setup = setup;
+		this.regular = regular;
+		this.combat = combat;
+		phaseChanged = changed;
+	}
+
+	public void setFlipped( boolean flipped){
+		isFlipped = flipped;
+	}
+
+	public void setHexes( HexState[] hexes){
+		this.hexes = hexes;
+	}
+
+	public void setPlayers( PlayerInfo[] players){
+		this.players = players;
+	}
+
+	public void setRack( ITileProperties[] rack){
+		this.rack = rack;
+	}
+
+	public void setSpecial( ITileProperties[] special){
+		this.special = special;
+	}
+
+	/**
+	 * @return true if nothing has changed, such delta does not need to be sent
+	 */
+	public boolean isEmpty(){
+		return !phaseChanged && hexes==null && players==null && rack==null && special==null;
+	}
+
+	public long getBaseVersion(){
+		return baseVersion;
+	}
+
+	public long getVersion(){
+		return version;
+	}
+
+	public boolean isFlipped() {
+		return isFlipped;
+	}
+
+	public boolean hasPhaseChanged(){
+		return phaseChanged;
+	}
+
+	public SetupPhase getSetup() {
+		return setup;
+	}
+
+	public RegularPhase getRegular() {
+		return regular;
+	}
+
+	public CombatPhase getCombat() {
+		return combat;
+	}
+
+	/**
+	 * @return changed hexes, or null if none changed
+	 */
+	public HexState[] getHexes(){
+		return hexes;
+	}
+
+	/**
+	 * @return all players, or null if none changed
+	 */
+	public PlayerInfo[] getPlayers(){
+		return players;
+	}
+
+	/**
+	 * @return rack of the receiving player, or null if unchanged
+	 */
+	public ITileProperties[] getRack(){
+		return rack;
+	}
+
+	/**
+	 * @return special characters still available to recruit, or null if unchanged
+	 */
+	public ITileProperties[] getSpecial(){
+		return special;
+	}
+
+	@Override
+	public String toString(){
+		return "Network/GameStateDelta: " + baseVersion + " -> " + version;
+	}
+}
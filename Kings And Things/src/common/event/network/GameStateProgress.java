@@ -2,6 +2,7 @@ package common.event.network;
 
 import java.util.Set;
 import java.util.HashMap;
+import java.util.HashSet;
 
 import common.game.Player;
 import common.game.HexState;
@@ -24,6 +25,7 @@ public class GameStateProgress extends AbstractNetwrokEvent{
 	private PlayerInfo[] players;
 	private ITileProperties[] special;
 	private HashMap< Integer, Set<ITileProperties>> racks;
+	private long version;
 	
 	public GameStateProgress(){
 		super();
@@ -39,6 +41,17 @@ public class GameStateProgress extends AbstractNetwrokEvent{
 		isFlipped = flipped;
 	}
 	
+	/**
+	 * @param version - version of the state, following GameStateDelta events build on it
+	 */
+	public void setVersion( long version){
+		this.version = version;
+	}
+	
+	public long getVersion(){
+		return version;
+	}
+	
 	public void setPlayersAndRacks( Set<Player> players){
 		int index = 0;
 		this.players = new PlayerInfo[ players.size()];
@@ -50,6 +63,24 @@ public class GameStateProgress extends AbstractNetwrokEvent{
 		}
 	}
 	
+	/**
+	 * set all players but only the rack of the receiving player
+	 * @param players - players of the game
+	 * @param ID - receiving player
+	 */
+	public void setPlayersAndRack( Set<Player> players, final int ID){
+		int index = 0;
+		this.players = new PlayerInfo[ players.size()];
+		racks = new HashMap<Integer, Set<ITileProperties>>( 1);
+		for( Player p : players){
+			this.players[index] = p.getPlayerInfo();
+			if( p.getID()==ID){
+				racks.put( p.getID(), new HashSet<ITileProperties>( p.getTrayThings()));
+			}
+			index++;
+		}
+	}
+	
 	/**
 	 * this method is used to set and get array, input zero or
 	 * negative integer to get the current array, or a positive
@@ -1,5 +1,8 @@
 package common.event.network;
 
+import java.awt.Point;
+import java.util.ArrayList;
+
 import common.event.AbstractNetwrokEvent;
 import common.game.HexState;
 
@@ -17,6 +20,15 @@ public class HexStatesChanged extends AbstractNetwrokEvent {
 		return hexes;
 	}
 	
+	@Override
+	public Object getCoalescingKey(){
+		ArrayList<Point> locations = new ArrayList<Point>( hexes.length);
+		for( HexState hex : hexes){
+			locations.add( hex==null? null : hex.getLocation());
+		}
+		return locations;
+	}
+	
 	@Override
 	public String toString(){
 		return "Network/HexPlacement: Board";
@@ -36,6 +36,11 @@ public class PlayerState extends AbstractNetwrokEvent{
 	public PlayerInfo getPlayer(){
 		return player;
 	}
+	
+	@Override
+	public Object getCoalescingKey(){
+		return player==null? null : player.getID();
+	}
 
 	@Override
 	public String toString(){
@@ -3,6 +3,8 @@ package common.game;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Point;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
@@ -33,6 +35,7 @@ public class HexState implements Serializable{
 	private final Point location;
 	
 	private final int hashCode;
+	private transient long zobristHash;
 	
 	//only used by Client GUI for display purpose
 	private boolean isFake;
@@ -43,6 +46,7 @@ public class HexState implements Serializable{
 		thingsInHex = new HashSet<ITileProperties>();
 		hex = new TileProperties( Category.Hex);
 		hashCode = calculateHashCode();
+		zobristHash = calculateZobristHash();
 	}
 	
 	/**
@@ -62,10 +66,17 @@ public class HexState implements Serializable{
 		thingsInHex = Constants.deepCloneCollection(other.thingsInHex, new HashSet<ITileProperties>());
 		isInBattle = other.isInBattle;
 		hashCode = other.hashCode;
+		zobristHash = other.zobristHash;
 		//only used by Client GUI for display purpose
 		isFake = other.isFake;
 	}
 	
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+	{
+		input.defaultReadObject();
+		zobristHash = calculateZobristHash();
+	}
+	
 	@Override
 	public HexState clone()
 	{
@@ -102,6 +113,7 @@ public class HexState implements Serializable{
 		
 		this.hex = hex;
 		this.thingsInHex = new HashSet<ITileProperties>();
+		zobristHash = zobristKey(Zobrist.HEX, hex);
 		for(ITileProperties tp : thingsInHex)
 		{
 			addThingToHex(tp);
@@ -130,7 +142,9 @@ public class HexState implements Serializable{
 	}
 	
 	public HexState setLocation( int x, int y){
+		recordFields();
 		location.setLocation( x, y);
+		zobristHash = calculateZobristHash();
 		return this;
 	}
 	
@@ -139,6 +153,7 @@ public class HexState implements Serializable{
 			addThingToHex(tp);
 		}
 		if( !marker.equals( state.marker)){
+			recordFields();
 			isInBattle = true;
 		}
 	}
@@ -152,19 +167,29 @@ public class HexState implements Serializable{
 	}
 	
 	public void setInBattle( boolean battle){
+		recordFields();
 		isInBattle = battle;
 	}
 	
 	public boolean hasMarker(){
 		return marker!=null;
 	}
-	
+
+	public ITileProperties getMarker(){
+		return marker;
+	}
+
 	public void setMarker( ITileProperties marker){
+		recordFields();
+		toggleZobristKey(Zobrist.MARKER, this.marker);
+		toggleZobristKey(Zobrist.MARKER, marker);
 		this.marker = marker;
 		markerImage = Constants.IMAGES.get( marker.hashCode());
 	}
 	
 	public void removeMarker(){
+		recordFields();
+		toggleZobristKey(Zobrist.MARKER, marker);
 		this.marker = null;
 		markerImage = null;
 	}
@@ -211,6 +236,9 @@ public class HexState implements Serializable{
 	{
 		validateTileNotNull(hex);
 		validateIsHexTile(hex);
+		recordFields();
+		toggleZobristKey(Zobrist.HEX, this.hex);
+		toggleZobristKey(Zobrist.HEX, hex);
 		this.hex = hex;
 	}
 	
@@ -260,13 +288,13 @@ public class HexState implements Serializable{
 		{
 			validateCanAddThingToHex(tile, false);
 		}
-		return thingsInHex.add(tile);
+		return addThing(tile);
 	}
 	
 	public boolean addThingToHexForExploration(ITileProperties tile)
 	{
 		validateCanAddThingToExplorationHex(tile);
-		return thingsInHex.add(tile);
+		return addThing(tile);
 	}
 	
 	/**
@@ -286,7 +314,7 @@ public class HexState implements Serializable{
 				setMarker( tile);
 				break;
 			default:
-				thingsInHex.add(tile);
+				addThing(tile);
 		}
 		return this;
 	}
@@ -330,7 +358,7 @@ public class HexState implements Serializable{
 		{
 			throw new IllegalArgumentException("Can not add more than one special income counter to a hex");
 		}
-		if(tile.isSpecialIncomeCounter() && tile.getBiomeRestriction() != getHex().getBiomeRestriction())
+		if(tile.isSpecialIncomeCounter() && tile.isRestrictedToBiome() && tile.getBiomeRestriction() != getHex().getBiomeRestriction())
 		{
 			throw new IllegalArgumentException("The special income counter is not keyed for this terrain type");
 		}
@@ -363,6 +391,16 @@ public class HexState implements Serializable{
 		return null;
 	}
 	
+	/**
+	 * Checks if a thing is capable of participating in combat
+	 * @param thing The thing to check
+	 * @return True if thing is a creature or a building with some value left, false otherwise
+	 */
+	public static boolean canFight(ITileProperties thing)
+	{
+		return (thing.isCreature() || thing.isBuilding()) && thing.getValue()>0;
+	}
+	
 	/**
 	 * Gets the set of all things added to this hex that are
 	 * capable of participating in combat
@@ -373,7 +411,7 @@ public class HexState implements Serializable{
 		HashSet<ITileProperties> fightingThings = new HashSet<ITileProperties>();
 		for(ITileProperties thing : getThingsInHex())
 		{
-			if((thing.isCreature() || thing.isBuilding()) && thing.getValue()>0)
+			if(canFight(thing))
 			{
 				fightingThings.add(thing);
 			}
@@ -409,7 +447,7 @@ public class HexState implements Serializable{
 	{
 		if(hasSpecialIncomeCounter())
 		{
-			thingsInHex.remove(getSpecialIncomeCounter());
+			removeThing(getSpecialIncomeCounter());
 		}
 	}
 	
@@ -447,7 +485,7 @@ public class HexState implements Serializable{
 	{
 		if(hasBuilding())
 		{
-			thingsInHex.remove(getBuilding());
+			removeThing(getBuilding());
 		}
 	}
 	
@@ -461,7 +499,7 @@ public class HexState implements Serializable{
 	public boolean removeThingFromHex(ITileProperties tile)
 	{
 		validateTileNotNull(tile);
-		return thingsInHex.remove(tile);
+		return removeThing(tile);
 	}
 	
 	/**
@@ -513,6 +551,115 @@ public class HexState implements Serializable{
 		return Collections.unmodifiableSet(unownedDefenders);
 	}
 	
+	/**
+	 * Zobrist hash of this hex, its hex tile, marker and things at its location,
+	 * kept up to date as they change
+	 * @return Exclusive or of the Zobrist keys of everything in this hex
+	 */
+	public long getZobristHash()
+	{
+		return zobristHash;
+	}
+	
+	private boolean addThing(final ITileProperties tile)
+	{
+		if(thingsInHex.add(tile))
+		{
+			toggleZobristKey(Zobrist.THING, tile);
+			if(UndoLog.isRecording())
+			{
+				UndoLog.record(new UndoLog.Change()
+				{
+					@Override
+					public void undo()
+					{
+						removeThing(tile);
+					}
+				});
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean removeThing(final ITileProperties tile)
+	{
+		final ITileProperties stored = UndoLog.isRecording()? UndoLog.findStored(thingsInHex, tile) : tile;
+		if(thingsInHex.remove(tile))
+		{
+			toggleZobristKey(Zobrist.THING, tile);
+			if(UndoLog.isRecording())
+			{
+				UndoLog.record(new UndoLog.Change()
+				{
+					@Override
+					public void undo()
+					{
+						addThing(stored);
+					}
+				});
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * record the hex, marker, battle and location of this hex before one of them changes
+	 */
+	private void recordFields()
+	{
+		if(UndoLog.isRecording())
+		{
+			final ITileProperties previousHex = hex;
+			final ITileProperties previousMarker = marker;
+			final Image previousMarkerImage = markerImage;
+			final boolean wasInBattle = isInBattle;
+			final Point previousLocation = new Point(location);
+			final long previousZobristHash = zobristHash;
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					hex = previousHex;
+					marker = previousMarker;
+					markerImage = previousMarkerImage;
+					isInBattle = wasInBattle;
+					location.setLocation(previousLocation);
+					zobristHash = previousZobristHash;
+				}
+			});
+		}
+	}
+	
+	private void toggleZobristKey(int kind, ITileProperties tile)
+	{
+		if(tile!=null)
+		{
+			zobristHash ^= zobristKey(kind, tile);
+		}
+	}
+	
+	private long zobristKey(int kind, ITileProperties tile)
+	{
+		return Zobrist.key(kind, tile, ((long) location.x << 32) | (location.y & 0xffffffffL));
+	}
+	
+	private long calculateZobristHash()
+	{
+		long hash = zobristKey(Zobrist.HEX, hex);
+		if(marker!=null)
+		{
+			hash ^= zobristKey(Zobrist.MARKER, marker);
+		}
+		for(ITileProperties tp : thingsInHex)
+		{
+			hash ^= zobristKey(Zobrist.THING, tp);
+		}
+		return hash;
+	}
+	
 	@Override
 	public boolean equals(Object other)
 	{
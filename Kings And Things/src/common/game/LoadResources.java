@@ -49,6 +49,7 @@ public class LoadResources implements Runnable, FileVisitor< Path>{
 		try {
 			update.addInstruction( UpdateInstruction.Category);
 			Files.walkFileTree( RESOURCES_DIRECTORY, this);
+			internDefinitions();
 			update.clearData();
 			update.putData( UpdateKey.Category, Category.END);
 			update.postInternalEvent( Constants.PROGRESS);
@@ -58,6 +59,30 @@ public class LoadResources implements Runnable, FileVisitor< Path>{
 		receiver.unregisterFromEventBus();
 	}
 
+	/**
+	 * every copy of a tile shares one definition, no matter which copy was changed while loading
+	 */
+	private void internDefinitions(){
+		for( TileProperties tile : Constants.HEX.values()){
+			tile.internDefinition();
+		}
+		for( TileProperties tile : Constants.CUP.values()){
+			tile.internDefinition();
+		}
+		for( TileProperties tile : Constants.GOLD.values()){
+			tile.internDefinition();
+		}
+		for( TileProperties tile : Constants.SPECIAL.values()){
+			tile.internDefinition();
+		}
+		for( TileProperties tile : Constants.BUILDING.values()){
+			tile.internDefinition();
+		}
+		for( TileProperties tile : Constants.STATE.values()){
+			tile.internDefinition();
+		}
+	}
+
 	@Override
 	public FileVisitResult preVisitDirectory( Path dir, BasicFileAttributes attrs) throws IOException {
 		if( !(currentCategory!=null && currentCategory==Category.Cup && dir.toString().contains( Category.Cup.name()))){
@@ -1,5 +1,7 @@
 package common.game;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashSet;
@@ -21,6 +23,7 @@ public class Player implements Serializable{
 	private final HashSet<ITileProperties> tray;
 	private final HashSet<ITileProperties> ownedHexes;
 	private final HashSet<ITileProperties> ownedThingsOnBoard;
+	private transient long zobristHash;
 	
 	/**
 	 * Create a new player with the given info
@@ -47,6 +50,13 @@ public class Player implements Serializable{
 		tray = Constants.deepCloneCollection(other.tray, new HashSet<ITileProperties>());
 		ownedHexes = Constants.deepCloneCollection(other.ownedHexes, new HashSet<ITileProperties>());
 		ownedThingsOnBoard = Constants.deepCloneCollection(other.ownedThingsOnBoard, new HashSet<ITileProperties>());
+		zobristHash = other.zobristHash;
+	}
+	
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+	{
+		input.defaultReadObject();
+		zobristHash = calculateZobristHash();
 	}
 	
 	@Override
@@ -80,12 +90,12 @@ public class Player implements Serializable{
 	public void addCardToHand(ITileProperties card)
 	{
 		validateNotNull(card);
-		hand.add(card);
+		add(hand, Zobrist.HAND, card);
 	}
 	
 	public void removeCardFromHand(ITileProperties card)
 	{
-		hand.remove(card);
+		remove(hand, Zobrist.HAND, card);
 	}
 
 	public void setConnected( boolean connected) {
@@ -175,7 +185,7 @@ public class Player implements Serializable{
 	public boolean addOwnedHex(ITileProperties tile)
 	{
 		validateIsHex(tile);
-		return ownedHexes.add(tile);
+		return add(ownedHexes, Zobrist.OWNED_HEX, tile);
 	}
 	
 	/**
@@ -189,7 +199,7 @@ public class Player implements Serializable{
 	public boolean removeHexFromOwnership(ITileProperties tile)
 	{
 		validateIsHex(tile);
-		return ownedHexes.remove(tile);
+		return remove(ownedHexes, Zobrist.OWNED_HEX, tile);
 	}
 
 	/**
@@ -213,7 +223,7 @@ public class Player implements Serializable{
 	public boolean addOwnedThingOnBoard(ITileProperties tile)
 	{
 		validateNotNull(tile);
-		return ownedThingsOnBoard.add(tile);
+		return add(ownedThingsOnBoard, Zobrist.OWNED_THING, tile);
 	}
 	
 	/**
@@ -227,7 +237,7 @@ public class Player implements Serializable{
 	public boolean removeOwnedThingOnBoard(ITileProperties tile)
 	{
 		validateNotNull(tile);
-		return ownedThingsOnBoard.remove(tile);
+		return remove(ownedThingsOnBoard, Zobrist.OWNED_THING, tile);
 	}
 
 	/**
@@ -250,11 +260,11 @@ public class Player implements Serializable{
 	public boolean addThingToTrayOrHand(ITileProperties tile)
 	{
 		if (tray.size() >= 10) {
-			return hand.add(tile);
+			return add(hand, Zobrist.HAND, tile);
 		}
 		validateNotNull(tile);
 
-		boolean success = tray.add(tile);
+		boolean success = add(tray, Zobrist.TRAY, tile);
 		info.setCardonRack(tray.size());
 		return success;
 	}
@@ -270,7 +280,7 @@ public class Player implements Serializable{
 	{
 		validateNotNull(tile);
 		
-		boolean success = tray.remove(tile);
+		boolean success = remove(tray, Zobrist.TRAY, tile);
 		info.setCardonRack(tray.size());
 		return success;
 	}
@@ -393,6 +403,16 @@ public class Player implements Serializable{
 	/**
 	 * Return a string representation of this player
 	 */
+	/**
+	 * Zobrist hash of the tiles of this player, its hand, tray, hexes
+	 * and things on the board, kept up to date as they change
+	 * @return Exclusive or of the Zobrist keys of the tiles of this player
+	 */
+	public long getZobristHash()
+	{
+		return zobristHash;
+	}
+	
 	@Override
 	public String toString(){
 		return info.toString();
@@ -475,6 +495,71 @@ public class Player implements Serializable{
 		return ownedHexes.size() + buildingGold + specialIncomeGold + specialCharacterGold + landHexGold;
 	}
 	
+	private long calculateZobristHash()
+	{
+		long hash = 0;
+		for(ITileProperties tp : hand)
+		{
+			hash ^= Zobrist.key(Zobrist.HAND, tp, 0);
+		}
+		for(ITileProperties tp : tray)
+		{
+			hash ^= Zobrist.key(Zobrist.TRAY, tp, 0);
+		}
+		for(ITileProperties tp : ownedHexes)
+		{
+			hash ^= Zobrist.key(Zobrist.OWNED_HEX, tp, 0);
+		}
+		for(ITileProperties tp : ownedThingsOnBoard)
+		{
+			hash ^= Zobrist.key(Zobrist.OWNED_THING, tp, 0);
+		}
+		return hash;
+	}
+	
+	private boolean add(final Set<ITileProperties> tiles, final int kind, final ITileProperties tile)
+	{
+		if(tiles.add(tile))
+		{
+			zobristHash ^= Zobrist.key(kind, tile, 0);
+			if(UndoLog.isRecording())
+			{
+				UndoLog.record(new UndoLog.Change()
+				{
+					@Override
+					public void undo()
+					{
+						remove(tiles, kind, tile);
+					}
+				});
+			}
+			return true;
+		}
+		return false;
+	}
+	
+	private boolean remove(final Set<ITileProperties> tiles, final int kind, final ITileProperties tile)
+	{
+		final ITileProperties stored = UndoLog.isRecording()? UndoLog.findStored(tiles, tile) : tile;
+		if(tiles.remove(tile))
+		{
+			zobristHash ^= Zobrist.key(kind, tile, 0);
+			if(UndoLog.isRecording())
+			{
+				UndoLog.record(new UndoLog.Change()
+				{
+					@Override
+					public void undo()
+					{
+						add(tiles, kind, stored);
+					}
+				});
+			}
+			return true;
+		}
+		return false;
+	}
+	
 	private static void validateIsHex(ITileProperties tile)
 	{
 		validateNotNull(tile);
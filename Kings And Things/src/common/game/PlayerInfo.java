@@ -37,7 +37,7 @@ public class PlayerInfo implements Serializable {
 		isReady = other.isReady;
 		isConnected = other.isConnected;
 		isActive = other.isActive;
-		start = new Point(other.start.x,other.start.y);
+		start = other.start==null? null : new Point(other.start.x,other.start.y);
 	}
 	
 	@Override
@@ -47,6 +47,7 @@ public class PlayerInfo implements Serializable {
 	}
 	
 	public void setCardonRack( int count){
+		recordFields();
 		cardsOnRack = count;
 	}
 	
@@ -82,6 +83,7 @@ public class PlayerInfo implements Serializable {
 	
 	public void setIsActive(boolean newVal)
 	{
+		recordFields();
 		isActive = newVal;
 	}
 	
@@ -102,9 +104,33 @@ public class PlayerInfo implements Serializable {
 	}
 	
 	public void setGold( int gold) {
+		recordFields();
 		this.gold = gold;
 	}
 	
+	/**
+	 * record the gold, cards on rack and activity of this player before one of them changes
+	 */
+	private void recordFields()
+	{
+		if(UndoLog.isRecording())
+		{
+			final int previousGold = gold;
+			final int previousCardsOnRack = cardsOnRack;
+			final boolean wasActive = isActive;
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					gold = previousGold;
+					cardsOnRack = previousCardsOnRack;
+					isActive = wasActive;
+				}
+			});
+		}
+	}
+	
 	@Override
 	public String toString(){
 		return name + ", ID: " + ID + ", Ready: " + isReady + ", Connected: " + isConnected + ", Active: " + isActive + ", Gold: " + gold;
@@ -42,7 +42,8 @@ public class Roll implements Serializable{
 		rollReason = other.rollReason;
 		targetValue = other.targetValue;
 		playerNumber = other.playerNumber;
-		rollTarget = other.rollTarget.clone();
+		//rolls for the order of play are not for a tile
+		rollTarget = other.rollTarget==null? null : other.rollTarget.clone();
 		baseRolls = new ArrayList<Integer>(other.baseRolls);
 		rollModifications = new HashMap<Integer,Integer>(other.rollModifications);
 	}
@@ -71,6 +72,7 @@ public class Roll implements Serializable{
 	public void addBaseRolls( List< Integer> list){
 		if(needsRoll())
 		{
+			UndoLog.recordAll(baseRolls);
 			baseRolls.addAll( list);
 		}
 		else
@@ -112,6 +114,7 @@ public class Roll implements Serializable{
 		{
 			previousModification = rollModifications.get(baseRollIndex);
 		}
+		UndoLog.recordPut(rollModifications, baseRollIndex);
 		rollModifications.put(baseRollIndex, amount + previousModification);
 	}
 	
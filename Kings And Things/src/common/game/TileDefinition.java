@@ -0,0 +1,273 @@
+package common.game;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+import common.Constants.Ability;
+import common.Constants.Biome;
+import common.Constants.BuildableBuilding;
+import common.Constants.Building;
+import common.Constants.Category;
+import common.Constants.Restriction;
+
+/**
+ * what every copy of a tile has in common and never changes once the tile is loaded, shared
+ * by all of its copies and clones, in every game. definitions are made while LoadResources
+ * reads the tiles, each change making a new definition, and are interned once loading is done
+ * and when tiles are read from a stream, so equal definitions are one object
+ */
+final class TileDefinition
+{
+	private static final ConcurrentHashMap<TileDefinition,TileDefinition> interned = new ConcurrentHashMap<TileDefinition,TileDefinition>();
+	private static final Ability[] NO_ABILITIES = new Ability[0];
+	private static final Restriction[] NO_RESTRICTIONS = new Restriction[0];
+
+	private final String name;
+	private final Category category;
+	private final BuildableBuilding buildable;
+	private final Building building;
+	private final Biome biome;
+	//in the order they were added, abilityBits and restrictionBits have one bit per ordinal
+	private final Ability[] abilities;
+	private final Restriction[] restrictions;
+	private final int abilityBits;
+	private final int restrictionBits;
+	private final int baseValue;
+	private final boolean hasFlip;
+	private final boolean specialFlip;
+	private final boolean isFake;
+	private final int hashCode;
+
+	/**
+	 * @param name - name of the tile, null for a fake tile
+	 * @param category - category of the tile, may be null while loading
+	 */
+	TileDefinition( String name, Category category, Biome biome, Ability[] abilities, Restriction[] restrictions,
+			int baseValue, boolean hasFlip, boolean specialFlip, boolean isFake){
+		this.name = name;
+		this.category = category;
+		this.biome = biome;
+		this.abilities = abilities.length==0? NO_ABILITIES : abilities;
+		this.restrictions = restrictions.length==0? NO_RESTRICTIONS : restrictions;
+		this.baseValue = baseValue;
+		this.hasFlip = hasFlip;
+		this.specialFlip = specialFlip;
+		this.isFake = isFake;
+		buildable = category==Category.Buildable? named( BuildableBuilding.class, name, category) : null;
+		building = category==Category.Building? named( Building.class, name, category) : null;
+		int bits = 0;
+		for( Ability ability : abilities){
+			bits |= 1 << ability.ordinal();
+		}
+		abilityBits = bits;
+		bits = 0;
+		for( Restriction restriction : restrictions){
+			bits |= 1 << restriction.ordinal();
+		}
+		restrictionBits = bits;
+		hashCode = calculateHashCode();
+	}
+
+	/**
+	 * @return definition of a fake tile of category, as shown by the client
+	 */
+	static TileDefinition fake( Category category){
+		return new TileDefinition( null, category, null, NO_ABILITIES, NO_RESTRICTIONS, 0, true, false, true);
+	}
+
+	/**
+	 * @return interned definition with the fields of a tile read from a stream
+	 */
+	static TileDefinition of( String name, Category category, Biome biome, List<Ability> abilities, List<Restriction> restrictions,
+			int baseValue, boolean hasFlip, boolean specialFlip, boolean isFake){
+		return new TileDefinition( name, category, biome, abilities==null? NO_ABILITIES : abilities.toArray( NO_ABILITIES),
+				restrictions==null? NO_RESTRICTIONS : restrictions.toArray( NO_RESTRICTIONS), baseValue, hasFlip, specialFlip, isFake).intern();
+	}
+
+	/**
+	 * @return the definition equal to this one that every tile shares
+	 */
+	TileDefinition intern(){
+		TileDefinition previous = interned.putIfAbsent( this, this);
+		return previous==null? this : previous;
+	}
+
+	TileDefinition withName( String name){
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, hasFlip, specialFlip, isFake);
+	}
+
+	TileDefinition withCategory( Category category){
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, hasFlip, specialFlip, isFake);
+	}
+
+	TileDefinition withAbility( Ability ability){
+		Ability[] abilities = Arrays.copyOf( this.abilities, this.abilities.length+1);
+		abilities[this.abilities.length] = ability;
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, hasFlip, specialFlip, isFake);
+	}
+
+	/**
+	 * @throws IllegalArgumentException if restriction names a biome and the tile is already
+	 * restricted to another one
+	 */
+	TileDefinition withRestriction( Restriction restriction){
+		Biome biome = this.biome;
+		Biome restricted = biomeOf( restriction);
+		if( restricted!=null){
+			if( biome!=null && biome!=restricted){
+				throw new IllegalArgumentException( "Tile " + name + " is restricted to " + biome + ", it cannot also be restricted to " + restricted);
+			}
+			biome = restricted;
+		}
+		Restriction[] restrictions = Arrays.copyOf( this.restrictions, this.restrictions.length+1);
+		restrictions[this.restrictions.length] = restriction;
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, hasFlip, specialFlip, isFake);
+	}
+
+	TileDefinition withBaseValue( int baseValue){
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, hasFlip, specialFlip, isFake);
+	}
+
+	TileDefinition withNoFlip(){
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, false, specialFlip, isFake);
+	}
+
+	TileDefinition withSpecialFlip(){
+		return new TileDefinition( name, category, biome, abilities, restrictions, baseValue, hasFlip, true, isFake);
+	}
+
+	/**
+	 * @return constant of type with the name of a tile of category
+	 * @throws IllegalArgumentException if type has no constant named name
+	 */
+	private static <E extends Enum<E>> E named( Class<E> type, String name, Category category){
+		for( E constant : type.getEnumConstants()){
+			if( constant.name().equals( name)){
+				return constant;
+			}
+		}
+		throw new IllegalArgumentException( "Tile " + name + " of category " + category + " is not a " + type.getSimpleName());
+	}
+
+	/**
+	 * @return biome named by restriction, null if restriction is not a biome
+	 */
+	private static Biome biomeOf( Restriction restriction){
+		for( Biome biome : Biome.values()){
+			if( biome.name().equals( restriction.name())){
+				return biome;
+			}
+		}
+		return null;
+	}
+
+	String getName(){
+		return name;
+	}
+
+	Category getCategory(){
+		return category;
+	}
+
+	BuildableBuilding getBuildable(){
+		return buildable;
+	}
+
+	Building getBuilding(){
+		return building;
+	}
+
+	Biome getBiome(){
+		return biome;
+	}
+
+	/**
+	 * @return a copy of the abilities, in the order they were added
+	 */
+	Ability[] getAbilities(){
+		return abilities.clone();
+	}
+
+	List<Ability> getAbilityList(){
+		return Arrays.asList( abilities);
+	}
+
+	boolean hasAbility( Ability ability){
+		return (abilityBits & 1 << ability.ordinal()) != 0;
+	}
+
+	boolean hasAbility(){
+		return abilityBits != 0;
+	}
+
+	Restriction getRestriction( int index){
+		return restrictions[index];
+	}
+
+	List<Restriction> getRestrictionList(){
+		return Arrays.asList( restrictions);
+	}
+
+	boolean hasRestriction( Restriction restriction){
+		return (restrictionBits & 1 << restriction.ordinal()) != 0;
+	}
+
+	boolean hasRestriction(){
+		return restrictions.length != 0;
+	}
+
+	int getBaseValue(){
+		return baseValue;
+	}
+
+	boolean hasFlip(){
+		return hasFlip;
+	}
+
+	boolean hasSpecialFlip(){
+		return specialFlip;
+	}
+
+	boolean isFake(){
+		return isFake;
+	}
+
+	@Override
+	public int hashCode(){
+		return hashCode;
+	}
+
+	@Override
+	public boolean equals( Object obj){
+		if( this == obj){
+			return true;
+		}
+		if( !(obj instanceof TileDefinition)){
+			return false;
+		}
+		TileDefinition other = (TileDefinition) obj;
+		return hashCode==other.hashCode && baseValue==other.baseValue && hasFlip==other.hasFlip && specialFlip==other.specialFlip
+				&& isFake==other.isFake && category==other.category && biome==other.biome && (name==null? other.name==null : name.equals( other.name))
+				&& Arrays.equals( abilities, other.abilities) && Arrays.equals( restrictions, other.restrictions);
+	}
+
+	private int calculateHashCode(){
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + (name==null? 0 : name.hashCode());
+		result = prime * result + (category==null? -1 : category.ordinal());
+		result = prime * result + (biome==null? -1 : biome.ordinal());
+		for( Ability ability : abilities){
+			result = prime * result + ability.ordinal();
+		}
+		for( Restriction restriction : restrictions){
+			result = prime * result + restriction.ordinal();
+		}
+		result = prime * result + baseValue;
+		result = prime * result + (hasFlip? 1 : 0);
+		result = prime * result + (specialFlip? 2 : 0);
+		result = prime * result + (isFake? 4 : 0);
+		return result;
+	}
+}
@@ -1,6 +1,12 @@
 package common.game;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
 
 import common.Constants;
 import common.Constants.Ability;
@@ -10,88 +16,114 @@ import common.Constants.Building;
 import common.Constants.Category;
 import common.Constants.Restriction;
 
+/**
+ * a tile of a game, what never changes once the tile is loaded, such as its name, abilities
+ * and restrictions, is kept in a definition shared by every copy and clone of the tile, so
+ * a tile only holds its id and what changes during a game, its value, move speed and side
+ */
 public class TileProperties implements ITileProperties{
 
 	private static final long serialVersionUID = 3896952672735323992L;
-	private static long counter;
+	private static final AtomicLong counter = new AtomicLong();
+	private static final ThreadLocal<AtomicLong> boundCounter = new ThreadLocal<AtomicLong>();
+	//tiles are written with the fields they had before definitions were shared, so saved games still load
+	private static final ObjectStreamField[] serialPersistentFields = {
+		new ObjectStreamField( "number", int.class), new ObjectStreamField( "value", int.class),
+		new ObjectStreamField( "baseValue", int.class), new ObjectStreamField( "moveSpeed", int.class),
+		new ObjectStreamField( "name", String.class), new ObjectStreamField( "hasFlip", boolean.class),
+		new ObjectStreamField( "specialFlip", boolean.class), new ObjectStreamField( "isFaceUp", boolean.class),
+		new ObjectStreamField( "abilities", ArrayList.class), new ObjectStreamField( "restrictions", ArrayList.class),
+		new ObjectStreamField( "tileType", Category.class), new ObjectStreamField( "buildable", BuildableBuilding.class),
+		new ObjectStreamField( "building", Building.class), new ObjectStreamField( "biome", Biome.class),
+		new ObjectStreamField( "id", long.class), new ObjectStreamField( "fake", boolean.class)};
 	
+	private TileDefinition definition;
 	private int number;
 	private int value;
-	private int baseValue;
 	private int moveSpeed;
-	private String name;
-	private boolean hasFlip;
-	private boolean specialFlip;
 	private boolean isFaceUp;
-	private ArrayList< Ability> abilities;
-	private ArrayList< Restriction> restrictions;
-	private Category tileType;
-	private BuildableBuilding buildable;
-	private Building building;
-	private Biome biome;
 	
-	private final long id;
-	
-	private boolean fake = false;
+	private long id;
 	
 	/**
 	 * fake constructor will be removed in complete game
 	 * @param category - tile category to fake
 	 */
 	public TileProperties( Category category){
-		fake = true;
-		setCategory( category);
-		baseValue = 0;
-		this.abilities = new ArrayList<Ability>();
-		this.restrictions = new ArrayList<Restriction>();
+		definition = TileDefinition.fake( category);
 		isFaceUp = true;
-		id = counter++;
+		id = nextID();
 	}
 	
 	TileProperties(){
-		this( 1, 0, "none", null, null);
+		definition = new TileDefinition( "none", null, null, new Ability[0], new Restriction[0], 0, true, false, false);
+		number = 1;
+		isFaceUp = false;
+		id = nextID();
 	}
 	
 	public TileProperties( TileProperties tile, int number){
-		this( number, tile.value, tile.name, tile.abilities, tile.restrictions);
-		hasFlip = tile.hasFlip;
-		specialFlip = tile.specialFlip;
+		//a copy starts with the current value of the tile as its base value
+		definition = tile.value==tile.definition.getBaseValue()? tile.definition : tile.definition.withBaseValue( tile.value).intern();
+		this.number = number;
+		value = tile.value;
 		moveSpeed = tile.moveSpeed;
-		setCategory( tile.tileType);
 		isFaceUp = tile.isFaceUp;
-		biome = tile.biome;
-	}
-	
-	private TileProperties( int number, int attack, String name, ArrayList< Ability> abilities, ArrayList< Restriction> restrictions){
-		this.name = name;
-		this.hasFlip = true;
-		this.value = attack;
-		baseValue = attack;
-		this.number = number;
-		this.specialFlip = false;
-		this.abilities = abilities==null? new ArrayList<Ability>() : new ArrayList<Ability>( abilities);
-		this.restrictions = restrictions==null? new ArrayList<Restriction>() : new ArrayList<Restriction>( restrictions);
-		isFaceUp = specialFlip;
-		biome = null;
-		id = counter++;
+		id = nextID();
 	}
 	
 	private TileProperties(TileProperties other)
 	{
+		definition = other.definition;
 		number = other.number;
 		value = other.value;
-		baseValue = other.baseValue;
 		moveSpeed = other.moveSpeed;
-		name = other.name;
-		hasFlip = other.hasFlip;
-		specialFlip = other.specialFlip;
 		isFaceUp = other.isFaceUp;
-		abilities = new ArrayList<Ability>(other.abilities);
-		restrictions = new ArrayList<Restriction>(other.restrictions);
-		setCategory( other.tileType);
-		biome = other.biome;
 		id = other.id;
-		fake = other.fake;
+	}
+	
+	private void writeObject(ObjectOutputStream output) throws IOException
+	{
+		ObjectOutputStream.PutField fields = output.putFields();
+		fields.put( "number", number);
+		fields.put( "value", value);
+		fields.put( "baseValue", definition.getBaseValue());
+		fields.put( "moveSpeed", moveSpeed);
+		fields.put( "name", definition.getName());
+		fields.put( "hasFlip", definition.hasFlip());
+		fields.put( "specialFlip", definition.hasSpecialFlip());
+		fields.put( "isFaceUp", isFaceUp);
+		fields.put( "abilities", new ArrayList<Ability>( definition.getAbilityList()));
+		fields.put( "restrictions", new ArrayList<Restriction>( definition.getRestrictionList()));
+		fields.put( "tileType", definition.getCategory());
+		fields.put( "buildable", definition.getBuildable());
+		fields.put( "building", definition.getBuilding());
+		fields.put( "biome", definition.getBiome());
+		fields.put( "id", id);
+		fields.put( "fake", definition.isFake());
+		output.writeFields();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+	{
+		ObjectInputStream.GetField fields = input.readFields();
+		number = fields.get( "number", 0);
+		value = fields.get( "value", 0);
+		moveSpeed = fields.get( "moveSpeed", 0);
+		isFaceUp = fields.get( "isFaceUp", false);
+		id = fields.get( "id", 0L);
+		definition = TileDefinition.of( (String)fields.get( "name", null), (Category)fields.get( "tileType", null), (Biome)fields.get( "biome", null),
+				(List<Ability>)fields.get( "abilities", null), (List<Restriction>)fields.get( "restrictions", null), fields.get( "baseValue", 0),
+				fields.get( "hasFlip", true), fields.get( "specialFlip", false), fields.get( "fake", false));
+	}
+	
+	/**
+	 * share the definition of this tile with every tile that has an equal one, called by
+	 * LoadResources once the tile is loaded
+	 */
+	void internDefinition(){
+		definition = definition.intern();
 	}
 	
 	@Override
@@ -102,26 +134,46 @@ public class TileProperties implements ITileProperties{
 	
 	@Override
 	public boolean isFake(){
-		return fake;
+		return definition.isFake();
 	}
 	
-	protected void setCategory( Category category){
-		tileType = category;
-		switch( tileType){
-			case Buildable:
-				buildable = BuildableBuilding.valueOf( name);
-				break;
-			case Building:
-				building = Building.valueOf( name);
-				break;
-			default:
-				break;
+	/**
+	 * give the tiles made by the calling thread ids of their own, so the tiles made
+	 * by a game played on one thread get the same ids every time it is played.
+	 * ids must not be given to tiles of the same game by the shared counter, which
+	 * counts up from the tiles loaded by LoadResources
+	 * @param ids - next id to give, null will restore the counter shared by all threads
+	 * @return previously bound ids, may be null
+	 */
+	public static AtomicLong bindIDsToCurrentThread( AtomicLong ids){
+		AtomicLong previous = boundCounter.get();
+		if( ids==null){
+			boundCounter.remove();
+		}else{
+			boundCounter.set( ids);
 		}
+		return previous;
+	}
+	
+	private static long nextID(){
+		AtomicLong ids = boundCounter.get();
+		return (ids==null? counter : ids).getAndIncrement();
+	}
+	
+	/**
+	 * @return unique id of this tile, shared by all of its clones
+	 */
+	public long getID(){
+		return id;
+	}
+	
+	protected void setCategory( Category category){
+		definition = definition.withCategory( category);
 	}
 	
 	@Override
 	public Category getCategory(){
-		return tileType;
+		return definition.getCategory();
 	}
 
 	@Override
@@ -140,18 +192,20 @@ public class TileProperties implements ITileProperties{
 	
 	void setBaseValue(int value)
 	{
-		baseValue = value;
+		definition = definition.withBaseValue( value);
 	}
 
 	@Override
 	public void setValue( int value) {
+		recordFields();
 		this.value = value;
 	}
 
 	@Override
 	public void resetValue()
 	{
-		value = baseValue;
+		recordFields();
+		value = definition.getBaseValue();
 	}
 
 	@Override
@@ -163,44 +217,64 @@ public class TileProperties implements ITileProperties{
 	@Override
 	// assigns new moveSpeed
 	public void setMoveSpeed(int moveSpeed) {
+		recordFields();
 		this.moveSpeed = moveSpeed;
 	}
 
 	@Override
 	public String getName() {
-		return name;
+		return definition.getName();
 	}
 	
 	protected void setName( String name) {
-		this.name = name;
+		definition = definition.withName( name);
 	}
 	
 	protected void addRestriction( Restriction restriction) {
-		try{
-			biome = Biome.valueOf( restriction.name());
-		}catch( IllegalArgumentException ex){}
-		restrictions.add( restriction);
+		definition = definition.withRestriction( restriction);
 	}
 
 	@Override
 	public Ability[] getAbilities() {
-		Ability[] array = new Ability[ abilities.size()];
-		abilities.toArray( array);
-		return array;
+		return definition.getAbilities();
 	}
 	
 	protected void addAbilities( Ability ability) {
-		abilities.add( ability);
+		definition = definition.withAbility( ability);
 	}
 
 	protected void setSpecialFlip() {
-		specialFlip = true;
+		definition = definition.withSpecialFlip();
 	}
 
 	@Override
 	public void flip(){
+		recordFields();
 		isFaceUp = !isFaceUp;
 	}
+	
+	/**
+	 * record the value, move speed and side of this tile before one of them changes
+	 */
+	private void recordFields()
+	{
+		if(UndoLog.isRecording())
+		{
+			final int previousValue = value;
+			final int previousMoveSpeed = moveSpeed;
+			final boolean wasFaceUp = isFaceUp;
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					value = previousValue;
+					moveSpeed = previousMoveSpeed;
+					isFaceUp = wasFaceUp;
+				}
+			});
+		}
+	}
 
 	@Override
 	public boolean isFaceUp()
@@ -209,12 +283,12 @@ public class TileProperties implements ITileProperties{
 	}
 
 	protected void setNoFlip() {
-		hasFlip = false;
+		definition = definition.withNoFlip();
 	}
 
 	@Override
 	public boolean hasFlip(){
-		return hasFlip;
+		return definition.hasFlip();
 	}
 
 	protected void setInfinite() {
@@ -229,19 +303,19 @@ public class TileProperties implements ITileProperties{
 	@Override
 	public boolean isHexTile()
 	{
-		return tileType == Category.Hex;
+		return definition.getCategory() == Category.Hex;
 	}
 
 	@Override
 	public boolean isBuilding()
 	{
-		return tileType == Category.Building || isBuildableBuilding();
+		return definition.getCategory() == Category.Building || isBuildableBuilding();
 	}
 
 	@Override
 	public boolean isBuildableBuilding()
 	{
-		return tileType == Category.Buildable;
+		return definition.getCategory() == Category.Buildable;
 	}
 
 	@Override
@@ -253,43 +327,44 @@ public class TileProperties implements ITileProperties{
 	@Override
 	public boolean isEvent()
 	{
-		return tileType == Category.Event;
+		return definition.getCategory() == Category.Event;
 	}
 
 	@Override
 	public boolean isMagicItem()
 	{
-		return tileType == Category.Magic;
+		return definition.getCategory() == Category.Magic;
 	}
 
 	@Override
 	public boolean isTreasure()
 	{
-		return tileType == Category.Treasure;
+		return definition.getCategory() == Category.Treasure;
 	}
 
 	@Override
 	public boolean isCreature()
 	{
-		return tileType == Category.Creature || tileType == Category.Special;
+		Category category = definition.getCategory();
+		return category == Category.Creature || category == Category.Special;
 	}
 
 	@Override
 	public boolean isSpecialCharacter()
 	{
-		return tileType == Category.Special;
+		return definition.getCategory() == Category.Special;
 	}
 
 	@Override
 	public boolean hasAbility(Ability ability)
 	{
-		return abilities.contains( ability);
+		return definition.hasAbility( ability);
 	}
 
 	@Override
 	public boolean hasAbility()
 	{
-		return abilities.size()>=1;
+		return definition.hasAbility();
 	}
 
 	@Override
@@ -301,18 +376,18 @@ public class TileProperties implements ITileProperties{
 	@Override
 	public Biome getBiomeRestriction()
 	{
-		return biome;
+		return definition.getBiome();
 	}
 
 	@Override
 	public boolean isSpecialIncomeCounter()
 	{
-		return (restrictions.contains(Restriction.Treasure) && isRestrictedToBiome()) || (isBuilding() && !isBuildableBuilding());
+		return (definition.hasRestriction(Restriction.Treasure) && isRestrictedToBiome()) || (isBuilding() && !isBuildableBuilding());
 	}
 
 	@Override
 	public Restriction getRestriction( int index){
-		return hasRestriction()?restrictions.get( index):Restriction.None;
+		return hasRestriction()?definition.getRestriction( index):Restriction.None;
 	}
 	
 	@Override
@@ -334,32 +409,32 @@ public class TileProperties implements ITileProperties{
 	
 	@Override
 	public String toString(){
-		return "-n " + name + " -a " + value + " -c " + number;
+		return "-n " + definition.getName() + " -a " + value + " -c " + number;
 	}
 
 	@Override
 	public boolean hasRestriction() {
-		return restrictions.size()>=1;
+		return definition.hasRestriction();
 	}
 	
 	@Override
 	public boolean hasRestriction( Restriction restriction){
-		return restrictions.contains( restriction);
+		return definition.hasRestriction( restriction);
 	}
 
 	@Override
 	public BuildableBuilding getBuildable() {
-		return buildable;
+		return definition.getBuildable();
 	}
 
 	@Override
 	public Building getBuilding() {
-		return building;
+		return definition.getBuilding();
 	}
 
 	@Override
 	public BuildableBuilding getNextBuilding() {
-		int next = buildable.ordinal()+1;
+		int next = definition.getBuildable().ordinal()+1;
 		BuildableBuilding[] bb = BuildableBuilding.values();
 		if( next >= bb.length ){
 			return null;
@@ -256,6 +256,17 @@ public class TwoSidedTileProperties implements ITileProperties {
 	@Override
 	public void flip()
 	{
+		if(UndoLog.isRecording())
+		{
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					isFaceUp = !isFaceUp;
+				}
+			});
+		}
 		isFaceUp = !isFaceUp;
 	}
 
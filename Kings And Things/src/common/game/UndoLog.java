@@ -0,0 +1,230 @@
+package common.game;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * records how to revert changes made to a game, so a game can be played forward
+ * and rolled back without being copied. a log records the changes made by the
+ * thread it is bound to, the classes making up a game record their changes here
+ * as they make them, nothing is recorded while no log is bound
+ */
+public final class UndoLog
+{
+	/**
+	 * reverts one change
+	 */
+	public interface Change
+	{
+		void undo();
+	}
+
+	private static final ThreadLocal<UndoLog> boundLogs = new ThreadLocal<UndoLog>();
+
+	private final ArrayList<Change> changes;
+
+	public UndoLog()
+	{
+		changes = new ArrayList<Change>();
+	}
+
+	/**
+	 * record changes made by the calling thread in log
+	 * @param log - log to record in, or null to stop recording
+	 * @return previously bound log, to be restored when done
+	 */
+	public static UndoLog bindToCurrentThread(UndoLog log)
+	{
+		UndoLog previous = boundLogs.get();
+		if(log == null)
+		{
+			boundLogs.remove();
+		}
+		else
+		{
+			boundLogs.set(log);
+		}
+		return previous;
+	}
+
+	/**
+	 * @return true if changes made by the calling thread are recorded,
+	 * changes need not be described when they are not
+	 */
+	public static boolean isRecording()
+	{
+		return boundLogs.get() != null;
+	}
+
+	/**
+	 * record a change made by the calling thread
+	 * @param change - how to revert the change
+	 */
+	public static void record(Change change)
+	{
+		UndoLog log = boundLogs.get();
+		if(log != null)
+		{
+			log.changes.add(change);
+		}
+	}
+
+	/**
+	 * record that element was added to collection
+	 */
+	public static <E> void recordAdd(final Collection<E> collection, final E element)
+	{
+		if(isRecording())
+		{
+			record(new Change()
+			{
+				@Override
+				public void undo()
+				{
+					collection.remove(element);
+				}
+			});
+		}
+	}
+
+	/**
+	 * record that element was removed from collection
+	 */
+	public static <E> void recordRemove(final Collection<E> collection, final E element)
+	{
+		if(isRecording())
+		{
+			record(new Change()
+			{
+				@Override
+				public void undo()
+				{
+					collection.add(element);
+				}
+			});
+		}
+	}
+
+	/**
+	 * record that element is about to be removed from index of list
+	 */
+	public static <E> void recordRemove(final List<E> list, final int index)
+	{
+		if(isRecording())
+		{
+			final E element = list.get(index);
+			record(new Change()
+			{
+				@Override
+				public void undo()
+				{
+					list.add(index, element);
+				}
+			});
+		}
+	}
+
+	/**
+	 * record that collection is about to be changed in more than one place
+	 */
+	public static <E> void recordAll(final Collection<E> collection)
+	{
+		if(isRecording())
+		{
+			final ArrayList<E> elements = new ArrayList<E>(collection);
+			record(new Change()
+			{
+				@Override
+				public void undo()
+				{
+					collection.clear();
+					collection.addAll(elements);
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return the element of collection equal to element, which is the one to put back
+	 * when undoing the removal of element, as element can be an equal copy of it
+	 */
+	public static <E> E findStored(Collection<E> collection, E element)
+	{
+		for(E e : collection)
+		{
+			if(e.equals(element))
+			{
+				return e;
+			}
+		}
+		return element;
+	}
+
+	/**
+	 * record that the value of key in map is about to be changed
+	 */
+	public static <K,V> void recordPut(final Map<K,V> map, final K key)
+	{
+		if(isRecording())
+		{
+			final boolean hadKey = map.containsKey(key);
+			final V value = map.get(key);
+			record(new Change()
+			{
+				@Override
+				public void undo()
+				{
+					if(hadKey)
+					{
+						map.put(key, value);
+					}
+					else
+					{
+						map.remove(key);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * @return number of changes recorded, to be passed to undoTo
+	 */
+	public int size()
+	{
+		return changes.size();
+	}
+
+	/**
+	 * revert the latest changes, newest first, until size changes are left,
+	 * the reverting is not recorded
+	 */
+	public void undoTo(int size)
+	{
+		UndoLog previous = bindToCurrentThread(null);
+		try
+		{
+			for(int i=changes.size()-1; i>=size; i--)
+			{
+				changes.remove(i).undo();
+			}
+		}
+		finally
+		{
+			bindToCurrentThread(previous);
+		}
+	}
+
+	/**
+	 * forget the latest changes, keeping them, until size changes are left
+	 */
+	public void keepTo(int size)
+	{
+		for(int i=changes.size()-1; i>=size; i--)
+		{
+			changes.remove(i);
+		}
+	}
+}
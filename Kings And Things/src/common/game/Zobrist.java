@@ -0,0 +1,75 @@
+package common.game;
+
+/**
+ * keys for Zobrist hashing of game positions. a position is hashed as the exclusive or
+ * of the keys of everything in it, so a hash is kept up to date by toggling the key of
+ * whatever is added or removed. keys are made by mixing the bits of what they stand for
+ * rather than drawn from a table of random numbers, since tiles are told apart by hash
+ * codes that are not bounded
+ */
+public final class Zobrist
+{
+	/** hex tile of a hex on the board */
+	public static final int HEX = 1;
+	/** control marker on a hex on the board */
+	public static final int MARKER = 2;
+	/** thing in a hex on the board */
+	public static final int THING = 3;
+	/** card in the hand of a player */
+	public static final int HAND = 4;
+	/** thing in the tray of a player */
+	public static final int TRAY = 5;
+	/** hex owned by a player */
+	public static final int OWNED_HEX = 6;
+	/** thing on the board owned by a player */
+	public static final int OWNED_THING = 7;
+	/** tile waiting to be drawn from the cup or a bank */
+	public static final int UNDRAWN = 8;
+	/** everything owned by one player */
+	public static final int PLAYER = 9;
+	/** gold of a player */
+	public static final int GOLD = 10;
+	/** hits a player has to apply */
+	public static final int HITS = 11;
+	/** phases, turn and combat of a game */
+	public static final int PHASE = 12;
+	/** place of a player in the order of play */
+	public static final int ORDER = 13;
+	/** roll waiting to be finished */
+	public static final int ROLL = 14;
+
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	private Zobrist()
+	{
+	}
+
+	/**
+	 * @param kind - what is hashed, one of the constants of this class
+	 * @param what - hash code of the tile, or value hashed
+	 * @param where - location, player or index it belongs to
+	 * @return key of what being at where
+	 */
+	public static long key(int kind, long what, long where)
+	{
+		return mix(mix(mix(kind * GOLDEN_GAMMA) + what) + where);
+	}
+
+	/**
+	 * @return key of tile as kind at where
+	 */
+	public static long key(int kind, ITileProperties tile, long where)
+	{
+		return key(kind, tile.hashCode(), where);
+	}
+
+	/**
+	 * finalizer of the SplitMix64 generator, every bit of the result depends on every bit of z
+	 */
+	private static long mix(long z)
+	{
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,344 @@
+package common.network;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.io.StreamCorruptedException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import common.game.TileProperties;
+
+/**
+ * versioned binary codec used by Connection for Protocol.BINARY, every message is
+ * encoded into one payload which Connection sends as a length prefixed frame.
+ * <p>
+ * each payload starts with VERSION, followed by the object graph written with
+ * Java serialization, with two dictionaries shared by both ends of a connection:
+ * 	- class descriptors are sent by name the first time a class is seen and by index afterwards,
+ * 	  classes in KNOWN_CLASSES are always sent by index
+ * 	- tiles are sent in full the first time their id is seen and afterwards as a reference
+ * 	  holding the id and the few fields that change during a game (value, move speed, face)
+ * <p>
+ * dictionaries depend on the order of messages, so one instance must be used for exactly
+ * one connection, encode must be called in the order payloads are written and decode in
+ * the order they are read.
+ * <p>
+ * the first payload encoded after the codec is created or resetOutbound() is called starts
+ * with RESET instead of VERSION, and the receiving end clears its dictionaries before decoding
+ * it. a client returning on a new connection keeps its dictionaries until then, so it can
+ * decode the payloads the server encoded for the old connection, see OutboundQueue.resume().
+ * <p>
+ * payloads created by encodeShared() start with SHARED instead, they carry class descriptors
+ * missing from KNOWN_CLASSES by name and every tile as a reference, so the same payload can be sent on any connection
+ * that has already sent all of its tiles, see hasSentTiles() and SharedFrame.
+ */
+public class BinaryCodec {
+
+	public static final byte VERSION = 2;
+	public static final byte SHARED = 3;
+	public static final byte RESET = 4;
+	private static final short NEW_CLASS = -1;
+
+	/**
+	 * classes sent in most games, known to both ends in advance so their names are never
+	 * sent and every payload uses the same index for them, changing this list requires a
+	 * new VERSION
+	 */
+	private static final String[] KNOWN_CLASSES = {
+		"java.lang.Enum", "java.lang.Number", "java.lang.Integer", "java.lang.Boolean", "java.awt.Point",
+		"java.util.ArrayList", "java.util.HashMap", "java.util.HashSet",
+		"java.util.Collections$UnmodifiableCollection", "java.util.Collections$UnmodifiableList", "java.util.Collections$UnmodifiableSet",
+		"common.Constants$Ability", "common.Constants$Biome", "common.Constants$BuildableBuilding", "common.Constants$Building",
+		"common.Constants$Category", "common.Constants$CombatPhase", "common.Constants$HexContentsTarget", "common.Constants$RegularPhase",
+		"common.Constants$Restriction", "common.Constants$RollReason", "common.Constants$SetupPhase", "common.Constants$UpdateInstruction",
+		"common.game.HexState", "[Lcommon.game.HexState;", "common.game.Player", "common.game.PlayerInfo", "[Lcommon.game.PlayerInfo;",
+		"common.game.Roll", "common.game.TileProperties", "common.game.TwoSidedTileProperties", "[Lcommon.game.ITileProperties;",
+		"common.network.BinaryCodec$TileReference", "common.event.AbstractNetwrokEvent", "common.event.UpdatePackage",
+		"common.event.network.CurrentPhase", "common.event.network.HexStatesChanged", "common.event.network.HexOwnershipChanged",
+		"common.event.network.PlayersList", "common.event.network.DieRoll", "common.event.network.CommandRejected",
+		"common.event.network.GameStateProgress", "common.event.network.GameStateDelta", "common.event.network.RackPlacement",
+		"common.event.network.HexPlacement", "common.event.network.InitiateCombat", "common.event.network.CombatHits"};
+	private static final HashMap< String, Short> KNOWN_INDEX = new HashMap< String, Short>();
+	private static final AtomicReferenceArray< ObjectStreamClass> KNOWN_DESCRIPTORS = new AtomicReferenceArray< ObjectStreamClass>( KNOWN_CLASSES.length);
+
+	static{
+		for( short i=0; i<KNOWN_CLASSES.length; i++){
+			KNOWN_INDEX.put( KNOWN_CLASSES[i], i);
+		}
+	}
+
+	private final HashMap< String, Short> sentClasses;
+	private final HashSet< Long> sentTiles;
+	private final ArrayList< ObjectStreamClass> receivedClasses;
+	private final HashMap< Long, TileProperties> receivedTiles;
+	private final ByteArrayOutputStream buffer;
+	private boolean restarted = true;
+	private boolean defined = false;
+
+	public BinaryCodec(){
+		sentClasses = new HashMap< String, Short>();
+		sentTiles = new HashSet< Long>();
+		receivedClasses = new ArrayList< ObjectStreamClass>();
+		receivedTiles = new HashMap< Long, TileProperties>();
+		buffer = new ByteArrayOutputStream( 1024);
+	}
+
+	/**
+	 * encode an object into a payload, dictionaries are only updated if encoding succeeds
+	 * @param object - object to be encoded, must be Serializable
+	 * @return encoded payload starting with VERSION, or RESET
+	 * @throws IOException - if object graph could not be serialized
+	 */
+	public byte[] encode( Object object) throws IOException{
+		buffer.reset();
+		buffer.write( restarted? RESET : VERSION);
+		Output output = new Output( buffer, false);
+		try{
+			output.writeObject( object);
+			output.flush();
+		}catch( IOException e){
+			output.rollback();
+			throw e;
+		}catch( RuntimeException e){
+			output.rollback();
+			throw e;
+		}
+		defined = restarted || !output.newClasses.isEmpty() || !output.newTiles.isEmpty();
+		restarted = false;
+		return buffer.toByteArray();
+	}
+
+	/**
+	 * @return true if the last payload returned by encode() added to the dictionaries, or
+	 * started with RESET, payloads encoded after it may then only be decoded after it
+	 */
+	public boolean hasDefined(){
+		return defined;
+	}
+
+	/**
+	 * forget what was sent, used when the other end starts decoding with a new codec, the next
+	 * payload starts with RESET so a codec that was kept by the other end clears its dictionaries
+	 */
+	public void resetOutbound(){
+		sentClasses.clear();
+		sentTiles.clear();
+		restarted = true;
+		defined = false;
+	}
+
+	/**
+	 * encode an object into a payload that does not depend on the dictionaries of a connection
+	 * @param object - object to be encoded, must be Serializable
+	 * @param tiles - filled with ids of all tiles referenced by the payload
+	 * @return encoded payload starting with SHARED
+	 * @throws IOException - if object graph could not be serialized
+	 */
+	public static byte[] encodeShared( Object object, Set< Long> tiles) throws IOException{
+		BinaryCodec codec = new BinaryCodec();
+		codec.buffer.write( SHARED);
+		Output output = codec.new Output( codec.buffer, true);
+		output.writeObject( object);
+		output.flush();
+		tiles.addAll( output.newTiles);
+		return codec.buffer.toByteArray();
+	}
+
+	/**
+	 * @param tiles - ids of tiles referenced by a shared payload
+	 * @return true if every tile was already sent in full by this codec
+	 */
+	public boolean hasSentTiles( Collection< Long> tiles){
+		return sentTiles.containsAll( tiles);
+	}
+
+	/**
+	 * decode a payload created by encode of the other end of the connection, or by encodeShared,
+	 * a payload starting with RESET clears the dictionaries first
+	 * @param payload - complete payload of one frame
+	 * @return decoded object
+	 * @throws IOException - if version does not match or payload is corrupted
+	 * @throws ClassNotFoundException - if a class in payload is not available
+	 */
+	public Object decode( byte[] payload) throws IOException, ClassNotFoundException{
+		if( payload.length==0 || (payload[0]!=VERSION && payload[0]!=SHARED && payload[0]!=RESET)){
+			throw new StreamCorruptedException( "Unsupported protocol version: " + (payload.length==0? "none" : payload[0]));
+		}
+		if( payload[0]==RESET){
+			receivedClasses.clear();
+			receivedTiles.clear();
+		}
+		ByteArrayInputStream stream = new ByteArrayInputStream( payload, 1, payload.length-1);
+		return new Input( stream, payload[0]==SHARED).readObject();
+	}
+
+	private class Output extends ObjectOutputStream{
+
+		private final ArrayList< String> newClasses = new ArrayList< String>();
+		private final ArrayList< Long> newTiles = new ArrayList< Long>();
+		private final boolean shared;
+
+		/**
+		 * @param shared - true to reference every tile, and only record their ids in newTiles
+		 */
+		private Output( OutputStream out, boolean shared) throws IOException{
+			super( out);
+			this.shared = shared;
+			enableReplaceObject( true);
+		}
+
+		@Override
+		protected void writeStreamHeader(){
+			//VERSION is written instead
+		}
+
+		@Override
+		protected void writeClassDescriptor( ObjectStreamClass desc) throws IOException{
+			Short index = KNOWN_INDEX.get( desc.getName());
+			if( index==null){
+				index = sentClasses.get( desc.getName());
+			}
+			if( index==null){
+				writeShort( NEW_CLASS);
+				writeUTF( desc.getName());
+				sentClasses.put( desc.getName(), (short)(KNOWN_CLASSES.length + sentClasses.size()));
+				newClasses.add( desc.getName());
+			}else{
+				writeShort( index);
+			}
+		}
+
+		@Override
+		protected Object replaceObject( Object obj){
+			if( obj instanceof TileProperties){
+				TileProperties tile = (TileProperties)obj;
+				if( shared){
+					newTiles.add( tile.getID());
+					return new TileReference( tile);
+				}
+				if( sentTiles.add( tile.getID())){
+					newTiles.add( tile.getID());
+					return tile;
+				}
+				return new TileReference( tile);
+			}
+			return obj;
+		}
+
+		private void rollback(){
+			for( String name : newClasses){
+				sentClasses.remove( name);
+			}
+			sentTiles.removeAll( newTiles);
+		}
+	}
+
+	private class Input extends ObjectInputStream{
+
+		private final ArrayList< ObjectStreamClass> classes;
+
+		/**
+		 * @param shared - true to use class descriptors of this payload only
+		 */
+		private Input( InputStream in, boolean shared) throws IOException{
+			super( in);
+			classes = shared? new ArrayList< ObjectStreamClass>() : receivedClasses;
+			enableResolveObject( true);
+		}
+
+		@Override
+		protected void readStreamHeader(){
+			//VERSION is read instead
+		}
+
+		@Override
+		protected ObjectStreamClass readClassDescriptor() throws IOException, ClassNotFoundException{
+			short index = readShort();
+			if( index==NEW_CLASS){
+				ObjectStreamClass desc = lookup( readUTF());
+				classes.add( desc);
+				return desc;
+			}
+			if( index>=0 && index<KNOWN_CLASSES.length){
+				ObjectStreamClass desc = KNOWN_DESCRIPTORS.get( index);
+				if( desc==null){
+					//a race only looks the class up twice
+					desc = lookup( KNOWN_CLASSES[index]);
+					KNOWN_DESCRIPTORS.set( index, desc);
+				}
+				return desc;
+			}
+			int learned = index - KNOWN_CLASSES.length;
+			if( learned<0 || learned>=classes.size()){
+				throw new StreamCorruptedException( "Unknown class index: " + index);
+			}
+			return classes.get( learned);
+		}
+
+		private ObjectStreamClass lookup( String name) throws ClassNotFoundException, InvalidClassException{
+			ObjectStreamClass desc = ObjectStreamClass.lookup( Class.forName( name, false, BinaryCodec.class.getClassLoader()));
+			if( desc==null){
+				throw new InvalidClassException( name, "class is not serializable");
+			}
+			return desc;
+		}
+
+		@Override
+		protected Object resolveObject( Object obj) throws IOException{
+			if( obj instanceof TileProperties){
+				TileProperties tile = (TileProperties)obj;
+				receivedTiles.put( tile.getID(), tile.clone());
+			}else if( obj instanceof TileReference){
+				return ((TileReference)obj).resolve( receivedTiles);
+			}
+			return obj;
+		}
+	}
+
+	/**
+	 * replaces a tile whose definition was already sent on this connection
+	 */
+	private static final class TileReference implements Serializable{
+
+		private static final long serialVersionUID = 6311470591733281085L;
+
+		private final long id;
+		private final int value;
+		private final int moveSpeed;
+		private final boolean isFaceUp;
+
+		private TileReference( TileProperties tile){
+			id = tile.getID();
+			value = tile.getValue();
+			moveSpeed = tile.getMoveSpeed();
+			isFaceUp = tile.isFaceUp();
+		}
+
+		private TileProperties resolve( HashMap< Long, TileProperties> tiles) throws InvalidObjectException{
+			TileProperties definition = tiles.get( id);
+			if( definition==null){
+				throw new InvalidObjectException( "Unknown tile id: " + id);
+			}
+			TileProperties tile = definition.clone();
+			tile.setValue( value);
+			tile.setMoveSpeed( moveSpeed);
+			if( tile.isFaceUp()!=isFaceUp){
+				tile.flip();
+			}
+			return tile;
+		}
+	}
+}
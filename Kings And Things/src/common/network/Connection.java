@@ -1,11 +1,22 @@
 package common.network;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.StreamCorruptedException;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
 
 import common.event.AbstractEvent;
 import common.event.AbstractNetwrokEvent;
@@ -16,11 +27,47 @@ import common.event.UpdatePackage;
  */
 public class Connection implements Closeable{
 	
+	/**
+	 * wire format used by a connection, both ends send their preferred protocol
+	 * when connecting and BINARY is used only if both of them prefer it
+	 * 	- SERIALIZED: Java serialization of every message on one ObjectOutputStream
+	 * 	- BINARY: length prefixed frames encoded by BinaryCodec, a message for several
+	 * 	  players is encoded once and the same frame is sent to each of them
+	 */
+	public enum Protocol { SERIALIZED, BINARY}
+	
+	static final int MAX_FRAME_SIZE = 16*1024*1024;
+	private static volatile Protocol preferredProtocol = Protocol.BINARY;
+	
 	private Socket socket = null;
 	private ObjectInputStream input;
 	private ObjectOutputStream output;
+	private OutputStream rawOutput;
+	private DataInputStream frameInput;
+	private DataOutputStream frameOutput;
+	private BinaryCodec codec;
+	private Protocol protocol;
 	private InetSocketAddress address;
 	private volatile boolean isConnected = false;
+	private final ReentrantLock writeLock = new ReentrantLock();
+	
+	/**
+	 * set protocol to be offered by every new connection of this process
+	 * @param protocol - BINARY, or SERIALIZED to force Java serialization
+	 */
+	public static void setPreferredProtocol( Protocol protocol){
+		if( protocol==null){
+			throw new IllegalArgumentException( "Protocol cannot be null");
+		}
+		preferredProtocol = protocol;
+	}
+	
+	/**
+	 * @return protocol agreed on with the other end, or null if not connected
+	 */
+	public Protocol getProtocol(){
+		return protocol;
+	}
 
 	/**
 	 * state of the current connection
@@ -71,8 +118,23 @@ public class Connection implements Closeable{
 		}
 		this.socket = socket;
 		try {
-			output = new ObjectOutputStream( socket.getOutputStream());
-            input = new ObjectInputStream( socket.getInputStream());
+			protocol = negotiateProtocol( preferredProtocol, socket.getInputStream(), socket.getOutputStream());
+			if( protocol==Protocol.BINARY){
+				//a returning client keeps what it has received until the server starts over, see BinaryCodec.RESET
+				if( codec==null){
+					codec = new BinaryCodec();
+				}else{
+					codec.resetOutbound();
+				}
+				frameOutput = new DataOutputStream( new BufferedOutputStream( socket.getOutputStream()));
+				frameInput = new DataInputStream( new BufferedInputStream( socket.getInputStream()));
+			}else{
+				rawOutput = new BufferedOutputStream( socket.getOutputStream());
+				output = new ObjectOutputStream( rawOutput);
+				//frames of an OutboundQueue are written after the stream header
+				output.flush();
+				input = new ObjectInputStream( socket.getInputStream());
+			}
 			isConnected = true;
 		} catch( IOException e){
 			disconnect();
@@ -81,10 +143,43 @@ public class Connection implements Closeable{
 		return isConnected;
 	}
 	
+	static Protocol negotiateProtocol( Protocol preferred, InputStream in, OutputStream out) throws IOException{
+		out.write( preferred.ordinal());
+		out.flush();
+		int other = in.read();
+		if( other<0){
+			throw new EOFException( "Connection closed before protocol was agreed on");
+		}
+		if( other>=Protocol.values().length){
+			throw new StreamCorruptedException( "Unknown protocol: " + other);
+		}
+		return preferred==Protocol.BINARY && other==Protocol.BINARY.ordinal()? Protocol.BINARY : Protocol.SERIALIZED;
+	}
+	
 	/**
-	 * close all streams and socket
+	 * close all streams and socket, the streams are released holding the write lock,
+	 * so a concurrent send fails with an IOException instead of finding them gone
 	 */
 	public void disconnect() {
+		isConnected = false;
+		Socket current = socket;
+		if( current!=null){
+			//wakes a writer blocked on a slow client, which is holding the write lock
+			try {
+				current.close();
+			} catch ( IOException e) {
+				e.printStackTrace();
+			}
+		}
+		writeLock.lock();
+		try{
+			disconnectLocked();
+		}finally{
+			writeLock.unlock();
+		}
+	}
+	
+	private void disconnectLocked() {
 		if( socket!=null){
 			if( input!=null){
 				try {
@@ -100,6 +195,20 @@ public class Connection implements Closeable{
 					e.printStackTrace();
 				}
 			}
+			if( frameInput!=null){
+				try {
+					frameInput.close();
+				} catch ( IOException e) {
+					e.printStackTrace();
+				}
+			}
+			if( frameOutput!=null){
+				try {
+					frameOutput.close();
+				} catch ( IOException e) {
+					e.printStackTrace();
+				}
+			}
 			if( socket!=null){
 				try {
 					socket.close();
@@ -109,6 +218,10 @@ public class Connection implements Closeable{
 			}
 			input = null;
 			output = null;
+			rawOutput = null;
+			frameInput = null;
+			frameOutput = null;
+			protocol = null;
 			socket = null;
 		}
 		isConnected = false;
@@ -120,12 +233,7 @@ public class Connection implements Closeable{
 	 * @return true if information has been sent, else false
 	 */
 	public void send( AbstractNetwrokEvent event) throws IOException{
-		if( isConnected){
-			output.reset();
-			output.writeObject( event);
-		}else{
-			throw new IOException( "No connection is avalibale");
-		}
+		write( event);
 	}
 	
 	/**
@@ -134,14 +242,78 @@ public class Connection implements Closeable{
 	 * @return true if information has been sent, else false
 	 */
 	public void send( UpdatePackage event) throws IOException{
+		write( event);
+	}
+	
+	/**
+	 * @return true if sendFrames() only queues the frames, so a slow client never blocks the writer
+	 */
+	public boolean writesWithoutBlocking(){
+		return false;
+	}
+	
+	/**
+	 * write frames encoded by an OutboundQueue with a single flush
+	 * @param frames - frames in the order they must arrive, see FrameEncoder
+	 * @throws IOException - if not connected or the frames could not be written
+	 */
+	void sendFrames( List< byte[]> frames) throws IOException{
+		writeLock.lock();
+		try{
+			if( !isConnected){
+				throw new IOException( "No connection is avalibale");
+			}
+			OutputStream out = protocol==Protocol.BINARY? frameOutput : rawOutput;
+			for( byte[] frame : frames){
+				out.write( frame);
+			}
+			out.flush();
+		}finally{
+			writeLock.unlock();
+		}
+	}
+	
+	private void write( AbstractEvent event) throws IOException{
+		//a lock instead of synchronized, so virtual threads blocked on a slow socket are not pinned
+		writeLock.lock();
+		try{
+			writeLocked( event);
+			flushLocked();
+		}finally{
+			writeLock.unlock();
+		}
+	}
+	
+	private void writeLocked( AbstractEvent event) throws IOException{
 		if( isConnected){
-			output.reset();
-			output.writeObject( event);
+			if( protocol==Protocol.BINARY){
+				byte[] frame = SharedFrame.isBroadcast( event)? SharedFrame.of( event).getBytes( codec) : null;
+				if( frame!=null){
+					frameOutput.write( frame);
+				}else{
+					byte[] payload = codec.encode( event);
+					frameOutput.writeInt( payload.length);
+					frameOutput.write( payload);
+				}
+			}else{
+				output.reset();
+				output.writeObject( event);
+			}
 		}else{
 			throw new IOException( "No connection is avalibale");
 		}
 	}
 	
+	private void flushLocked() throws IOException{
+		if( isConnected){
+			if( protocol==Protocol.BINARY){
+				frameOutput.flush();
+			}else{
+				output.flush();
+			}
+		}
+	}
+	
 	/**
 	 * Receive response from destination in form of an Object
 	 * @return a UpdatePackage if message is received, otherwise null
@@ -149,7 +321,17 @@ public class Connection implements Closeable{
 	public AbstractEvent recieve() throws IOException, ClassNotFoundException{
 		if( isConnected){
 			AbstractEvent event = null;
-			event = (AbstractEvent) input.readObject();
+			if( protocol==Protocol.BINARY){
+				int length = frameInput.readInt();
+				if( length<=0 || length>MAX_FRAME_SIZE){
+					throw new StreamCorruptedException( "Invalid frame length: " + length);
+				}
+				byte[] payload = new byte[ length];
+				frameInput.readFully( payload);
+				event = (AbstractEvent) codec.decode( payload);
+			}else{
+				event = (AbstractEvent) input.readObject();
+			}
 			if( event==null){
 				isConnected = false;
 			}
@@ -159,6 +341,28 @@ public class Connection implements Closeable{
 		}
 	}
 
+	/**
+	 * Receive response from destination, waiting no longer than timeout
+	 * @param timeout - milliseconds to wait for a message
+	 * @return a UpdatePackage if message is received, otherwise null
+	 * @throws SocketTimeoutException - if no message arrived in time, the connection cannot be used anymore
+	 */
+	public AbstractEvent recieve( int timeout) throws IOException, ClassNotFoundException{
+		if( !isConnected){
+			throw new IOException( "No connection is avalibale");
+		}
+		Socket current = socket;
+		int previous = current.getSoTimeout();
+		current.setSoTimeout( timeout);
+		try{
+			return recieve();
+		}finally{
+			if( !current.isClosed()){
+				current.setSoTimeout( previous);
+			}
+		}
+	}
+
 	@Override
 	public void close(){
 		disconnect();
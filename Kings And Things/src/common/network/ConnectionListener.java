@@ -0,0 +1,25 @@
+package common.network;
+
+import java.io.IOException;
+
+import common.event.AbstractEvent;
+
+/**
+ * receives messages of a connection without a thread blocked in Connection.recieve(),
+ * used by NioConnection, methods are called on the I/O thread of the connection
+ * and should therefore return quickly
+ */
+public interface ConnectionListener {
+
+	/**
+	 * called for every message in the order they were received
+	 * @param event - received message
+	 */
+	void messageReceived( AbstractEvent event);
+
+	/**
+	 * called once when the connection is closed by either end
+	 * @param cause - problem that closed the connection, null if closed by disconnect()
+	 */
+	void connectionClosed( IOException cause);
+}
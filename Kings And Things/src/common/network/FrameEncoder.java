@@ -0,0 +1,89 @@
+package common.network;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import common.event.AbstractEvent;
+import common.network.Connection.Protocol;
+
+/**
+ * encodes the messages of one OutboundQueue into the bytes its connection writes, on the
+ * thread posting them, so every message is encoded exactly once, as it was when posted,
+ * and writers never read game objects that room handlers keep changing afterwards.
+ * <p>
+ * 	- BINARY: length prefixed frames, a broadcast message is taken from its SharedFrame.
+ * 	  the dictionaries outlive a connection, a returning client keeps decoding with the
+ * 	  dictionaries it had, frames kept for it can be sent again as they are
+ * 	- SERIALIZED: every message starts with a reset of the object stream, so the frames
+ * 	  do not depend on each other and follow the stream header of any new connection
+ * <p>
+ * not thread safe, used by OutboundQueue.
+ */
+final class FrameEncoder {
+
+	private final Protocol protocol;
+	private final BinaryCodec codec;
+	private final ByteArrayOutputStream buffer;
+	private ObjectOutputStream output;
+	private boolean defined = false;
+
+	/**
+	 * @param protocol - protocol of the connection the frames are written to
+	 */
+	FrameEncoder( Protocol protocol){
+		this.protocol = protocol;
+		codec = protocol==Protocol.BINARY? new BinaryCodec() : null;
+		buffer = protocol==Protocol.BINARY? null : new ByteArrayOutputStream( 1024);
+	}
+
+	Protocol getProtocol(){
+		return protocol;
+	}
+
+	/**
+	 * @param event - message as posted by a game handler
+	 * @return bytes to be written to the connection, which must not be modified by the caller
+	 * @throws IOException - if event could not be encoded
+	 */
+	byte[] encode( AbstractEvent event) throws IOException{
+		defined = false;
+		if( protocol==Protocol.SERIALIZED){
+			if( output==null){
+				output = new ObjectOutputStream( buffer);
+				output.flush();
+				//every connection writes its own stream header
+				buffer.reset();
+			}
+			try{
+				output.reset();
+				output.writeObject( event);
+				output.flush();
+				return buffer.toByteArray();
+			}finally{
+				buffer.reset();
+			}
+		}
+		byte[] shared = SharedFrame.isBroadcast( event)? SharedFrame.of( event).getBytes( codec) : null;
+		if( shared!=null){
+			return shared;
+		}
+		byte[] payload = codec.encode( event);
+		defined = codec.hasDefined();
+		byte[] frame = new byte[ 4+payload.length];
+		frame[0] = (byte)(payload.length>>>24);
+		frame[1] = (byte)(payload.length>>>16);
+		frame[2] = (byte)(payload.length>>>8);
+		frame[3] = (byte)payload.length;
+		System.arraycopy( payload, 0, frame, 4, payload.length);
+		return frame;
+	}
+
+	/**
+	 * @return true if frames encoded after the last one may depend on it,
+	 * so it cannot be left out in favour of a newer one
+	 */
+	boolean hasDefined(){
+		return defined;
+	}
+}
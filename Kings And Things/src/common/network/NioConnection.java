@@ -0,0 +1,410 @@
+package common.network;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.StreamCorruptedException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import common.Logger;
+import common.event.AbstractEvent;
+import common.event.AbstractNetwrokEvent;
+import common.event.UpdatePackage;
+
+/**
+ * non blocking implementation of Connection driven by a NioTransport, always uses
+ * Protocol.BINARY. send() encodes the message and queues the frame, the I/O thread
+ * writes queued frames whenever the socket is ready, so a slow client never blocks
+ * the sender. received messages are either handed to a ConnectionListener on the
+ * I/O thread, or queued for recieve() if no listener was set.
+ */
+public class NioConnection extends Connection {
+
+	private static final Object CLOSED = new Object();
+
+	private final NioTransport transport;
+	private final ConcurrentLinkedQueue< ByteBuffer> outbound;
+	private final LinkedBlockingQueue< Object> inbound;
+	private final AtomicBoolean writeRequested;
+	private final ByteBuffer header;
+	private volatile SocketChannel channel;
+	private BinaryCodec codec;
+	private volatile NioTransport.IOThread thread;
+	private volatile SelectionKey key;
+	private ByteBuffer payload;
+	private volatile ConnectionListener listener;
+	private volatile boolean isConnected = false;
+
+	public NioConnection( NioTransport transport){
+		this.transport = transport;
+		outbound = new ConcurrentLinkedQueue< ByteBuffer>();
+		inbound = new LinkedBlockingQueue< Object>();
+		writeRequested = new AtomicBoolean();
+		header = ByteBuffer.allocate( 4);
+	}
+
+	@Override
+	public boolean isConnected(){
+		return isConnected;
+	}
+
+	@Override
+	public Protocol getProtocol(){
+		return isConnected? Protocol.BINARY : null;
+	}
+
+	@Override
+	public String toString(){
+		return channel==null? "NioConnection[unconnected]" : channel.socket().toString();
+	}
+
+	@Override
+	public boolean connectTo( String ip, int port) throws IOException{
+		if( ip==null || port<=0){
+			throw new IllegalArgumentException( "IP address cannot be null, port must be a positive none zero integer");
+		}
+		return connectTo( SocketChannel.open( new InetSocketAddress( ip, port)));
+	}
+
+	/**
+	 * @param socket - socket accepted from a ServerSocketChannel, or opened from a SocketChannel
+	 */
+	@Override
+	public boolean connectTo( Socket socket) throws IOException{
+		if( socket==null || socket.getChannel()==null){
+			throw new IllegalArgumentException( "Socket must be created by a SocketChannel");
+		}
+		return connectTo( socket.getChannel());
+	}
+
+	/**
+	 * agree on protocol while still blocking, then hand the channel over to the transport
+	 * @param channel - connected channel
+	 * @return true if connection is established
+	 * @throws IOException - if the other end does not support Protocol.BINARY
+	 */
+	public boolean connectTo( SocketChannel channel) throws IOException{
+		if( channel==null){
+			throw new IllegalArgumentException( "Channel cannot be null");
+		}
+		this.channel = channel;
+		try{
+			channel.configureBlocking( true);
+			Socket socket = channel.socket();
+			if( negotiateProtocol( Protocol.BINARY, socket.getInputStream(), socket.getOutputStream())!=Protocol.BINARY){
+				throw new IOException( "Other end does not support " + Protocol.BINARY + " protocol");
+			}
+			channel.configureBlocking( false);
+			channel.socket().setTcpNoDelay( true);
+			//a returning client keeps what it has received until the server starts over, see BinaryCodec.RESET
+			if( codec==null){
+				codec = new BinaryCodec();
+			}else{
+				codec.resetOutbound();
+			}
+			outbound.clear();
+			inbound.clear();
+			header.clear();
+			payload = null;
+			isConnected = true;
+			transport.register( this, channel);
+		}catch( IOException e){
+			disconnect();
+			throw e;
+		}
+		return isConnected;
+	}
+
+	/**
+	 * deliver received messages to listener instead of recieve(), messages already
+	 * queued for recieve() are delivered to the listener first
+	 * @param listener - receives messages on the I/O thread
+	 */
+	public void setListener( final ConnectionListener listener){
+		this.listener = listener;
+		if( thread!=null){
+			thread.execute( new Runnable(){
+				@Override
+				public void run() {
+					drainInbound( listener);
+				}
+			});
+		}
+	}
+
+	@Override
+	public void disconnect(){
+		closed( null);
+	}
+
+	@Override
+	public void send( AbstractNetwrokEvent event) throws IOException{
+		write( event);
+	}
+
+	@Override
+	public void send( UpdatePackage event) throws IOException{
+		write( event);
+	}
+
+	/**
+	 * @return number of frames waiting to be written to the socket
+	 */
+	public int getQueuedFrames(){
+		return outbound.size();
+	}
+
+	@Override
+	public boolean writesWithoutBlocking(){
+		return true;
+	}
+
+	/**
+	 * queue frames of an OutboundQueue and request a single write for all of them
+	 */
+	@Override
+	void sendFrames( List< byte[]> frames) throws IOException{
+		if( !isConnected){
+			throw new IOException( "No connection is avalibale");
+		}
+		synchronized( outbound){
+			for( byte[] frame : frames){
+				//own position and limit, the frame is kept by the queue and may be shared with other connections
+				outbound.add( ByteBuffer.wrap( frame).asReadOnlyBuffer());
+			}
+		}
+		requestWrite();
+	}
+
+	private void write( AbstractEvent event) throws IOException{
+		if( !isConnected){
+			throw new IOException( "No connection is avalibale");
+		}
+		//encoding and queuing must happen in the same order for the codec dictionaries
+		synchronized( outbound){
+			outbound.add( encode( event));
+		}
+		requestWrite();
+	}
+
+	private ByteBuffer encode( AbstractEvent event) throws IOException{
+		byte[] shared = SharedFrame.isBroadcast( event)? SharedFrame.of( event).getBytes( codec) : null;
+		if( shared!=null){
+			//own position and limit, the shared bytes are never written to
+			return ByteBuffer.wrap( shared).asReadOnlyBuffer();
+		}
+		byte[] bytes = codec.encode( event);
+		ByteBuffer frame = ByteBuffer.allocate( 4+bytes.length);
+		frame.putInt( bytes.length).put( bytes).flip();
+		return frame;
+	}
+
+	private void requestWrite(){
+		NioTransport.IOThread thread = this.thread;
+		if( thread!=null && writeRequested.compareAndSet( false, true)){
+			thread.execute( new Runnable(){
+				@Override
+				public void run() {
+					enableWrite();
+				}
+			});
+		}
+	}
+
+	@Override
+	public AbstractEvent recieve() throws IOException, ClassNotFoundException{
+		if( !isConnected && inbound.isEmpty()){
+			throw new IOException( "No connection is avalibale");
+		}
+		try {
+			Object event = inbound.take();
+			if( event==CLOSED){
+				inbound.add( CLOSED);
+				throw new EOFException( "Connection closed");
+			}
+			return (AbstractEvent)event;
+		} catch ( InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while receiving", e);
+		}
+	}
+
+	@Override
+	public AbstractEvent recieve( int timeout) throws IOException, ClassNotFoundException{
+		if( !isConnected && inbound.isEmpty()){
+			throw new IOException( "No connection is avalibale");
+		}
+		try {
+			Object event = inbound.poll( timeout, TimeUnit.MILLISECONDS);
+			if( event==null){
+				throw new SocketTimeoutException( "Nothing received within " + timeout + " ms");
+			}
+			if( event==CLOSED){
+				inbound.add( CLOSED);
+				throw new EOFException( "Connection closed");
+			}
+			return (AbstractEvent)event;
+		} catch ( InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while receiving", e);
+		}
+	}
+
+	/**
+	 * called on the I/O thread once the channel is registered
+	 */
+	void registered( NioTransport.IOThread thread, SelectionKey key){
+		this.thread = thread;
+		this.key = key;
+		if( !isConnected){
+			closed( null);
+			return;
+		}
+		if( writeRequested.get() || !outbound.isEmpty()){
+			writeRequested.set( true);
+			enableWrite();
+		}
+		ConnectionListener current = listener;
+		if( current!=null){
+			drainInbound( current);
+		}
+	}
+
+	void readReady() throws IOException{
+		SocketChannel channel = this.channel;
+		if( channel==null){
+			return;
+		}
+		while( true){
+			if( payload==null){
+				if( channel.read( header)<0){
+					throw new EOFException( "Connection closed by other end");
+				}
+				if( header.hasRemaining()){
+					return;
+				}
+				header.flip();
+				int length = header.getInt();
+				header.clear();
+				if( length<=0 || length>MAX_FRAME_SIZE){
+					throw new StreamCorruptedException( "Invalid frame length: " + length);
+				}
+				payload = ByteBuffer.allocate( length);
+			}
+			if( channel.read( payload)<0){
+				throw new EOFException( "Connection closed by other end");
+			}
+			if( payload.hasRemaining()){
+				return;
+			}
+			byte[] bytes = payload.array();
+			payload = null;
+			AbstractEvent event;
+			try {
+				event = (AbstractEvent)codec.decode( bytes);
+			} catch ( ClassNotFoundException e) {
+				throw new IOException( "Recieved Invalid Package", e);
+			}
+			deliver( event);
+		}
+	}
+
+	void writeReady() throws IOException{
+		SocketChannel channel = this.channel;
+		SelectionKey key = this.key;
+		if( channel==null || key==null){
+			return;
+		}
+		ByteBuffer frame;
+		while( (frame = outbound.peek())!=null){
+			channel.write( frame);
+			if( frame.hasRemaining()){
+				return;
+			}
+			outbound.poll();
+		}
+		writeRequested.set( false);
+		key.interestOps( SelectionKey.OP_READ);
+		//a frame may have been queued after the loop but before the flag was cleared
+		if( !outbound.isEmpty() && writeRequested.compareAndSet( false, true)){
+			enableWrite();
+		}
+	}
+
+	/**
+	 * close channel and notify listener, or wake recieve(), exactly once
+	 */
+	void closed( IOException cause){
+		ConnectionListener current;
+		synchronized( this){
+			if( channel==null){
+				isConnected = false;
+				return;
+			}
+			isConnected = false;
+			if( key!=null){
+				key.cancel();
+			}
+			try {
+				channel.close();
+			} catch ( IOException e) {
+				Logger.getStandardLogger().warn( e);
+			}
+			channel = null;
+			key = null;
+			thread = null;
+			current = listener;
+		}
+		outbound.clear();
+		writeRequested.set( false);
+		if( current!=null){
+			current.connectionClosed( cause);
+		}else{
+			inbound.add( CLOSED);
+		}
+	}
+
+	private void enableWrite(){
+		SelectionKey key = this.key;
+		if( key!=null && key.isValid()){
+			key.interestOps( SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+		}
+	}
+
+	private void deliver( AbstractEvent event){
+		ConnectionListener current = listener;
+		if( current==null){
+			inbound.add( event);
+			return;
+		}
+		try{
+			current.messageReceived( event);
+		}catch( RuntimeException e){
+			Logger.getErrorLogger().error( "Error - unable to handle " + event + ": ", e);
+		}
+	}
+
+	private void drainInbound( ConnectionListener listener){
+		Object event;
+		while( (event = inbound.poll())!=null){
+			if( event==CLOSED){
+				listener.connectionClosed( null);
+				return;
+			}
+			try{
+				listener.messageReceived( (AbstractEvent)event);
+			}catch( RuntimeException e){
+				Logger.getErrorLogger().error( "Error - unable to handle " + event + ": ", e);
+			}
+		}
+	}
+}
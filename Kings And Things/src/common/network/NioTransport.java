@@ -0,0 +1,156 @@
+package common.network;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.Logger;
+
+/**
+ * small fixed pool of I/O threads, each running one Selector, shared by any number
+ * of NioConnections. connections are spread over the threads round robin and all
+ * reads and writes of a connection happen on its thread, so the number of threads
+ * does not grow with the number of clients.
+ */
+public class NioTransport implements Closeable {
+
+	private final IOThread[] threads;
+	private final AtomicInteger next = new AtomicInteger();
+	private volatile boolean closed = false;
+
+	/**
+	 * create and start a transport
+	 * @param threadCount - number of I/O threads, must be positive
+	 * @throws IOException - if a selector could not be opened
+	 */
+	public NioTransport( int threadCount) throws IOException{
+		if( threadCount<=0){
+			throw new IllegalArgumentException( "Thread count must be a positive none zero integer");
+		}
+		threads = new IOThread[ threadCount];
+		for( int i=0; i<threadCount; i++){
+			threads[i] = new IOThread( "NIO " + i);
+		}
+		for( IOThread thread : threads){
+			thread.start();
+		}
+	}
+
+	/**
+	 * @return thread count suitable for this machine
+	 */
+	public static int defaultThreadCount(){
+		return Math.max( 1, Math.min( 4, Runtime.getRuntime().availableProcessors()));
+	}
+
+	public boolean isClosed(){
+		return closed;
+	}
+
+	/**
+	 * register a non blocking channel of the connection on one of the I/O threads
+	 */
+	void register( final NioConnection connection, final SocketChannel channel) throws IOException{
+		if( closed){
+			throw new IOException( "Transport is closed");
+		}
+		final IOThread thread = threads[ (next.getAndIncrement() & Integer.MAX_VALUE) % threads.length];
+		thread.execute( new Runnable(){
+			@Override
+			public void run() {
+				try {
+					SelectionKey key = channel.register( thread.selector, SelectionKey.OP_READ, connection);
+					connection.registered( thread, key);
+				} catch ( ClosedChannelException e) {
+					connection.closed( e);
+				}
+			}
+		});
+	}
+
+	@Override
+	public void close(){
+		closed = true;
+		for( IOThread thread : threads){
+			thread.selector.wakeup();
+		}
+	}
+
+	class IOThread extends Thread{
+
+		private final Selector selector;
+		private final ConcurrentLinkedQueue< Runnable> tasks;
+
+		private IOThread( String name) throws IOException{
+			super( name);
+			setDaemon( true);
+			selector = Selector.open();
+			tasks = new ConcurrentLinkedQueue< Runnable>();
+		}
+
+		/**
+		 * run task on this thread, directly if called from this thread
+		 */
+		void execute( Runnable task){
+			if( Thread.currentThread()==this){
+				task.run();
+			}else{
+				tasks.add( task);
+				selector.wakeup();
+			}
+		}
+
+		@Override
+		public void run(){
+			try{
+				while( !closed){
+					selector.select();
+					Runnable task;
+					while( (task = tasks.poll())!=null){
+						task.run();
+					}
+					Iterator< SelectionKey> it = selector.selectedKeys().iterator();
+					while( it.hasNext()){
+						SelectionKey key = it.next();
+						it.remove();
+						NioConnection connection = (NioConnection)key.attachment();
+						try{
+							if( key.isReadable()){
+								connection.readReady();
+							}
+							if( key.isValid() && key.isWritable()){
+								connection.writeReady();
+							}
+						}catch( CancelledKeyException e){
+							//connection was closed while handling it
+						}catch( IOException e){
+							connection.closed( e);
+						}catch( RuntimeException e){
+							Logger.getErrorLogger().error( "Error - closing " + connection + ": ", e);
+							connection.closed( null);
+						}
+					}
+				}
+			}catch( IOException e){
+				Logger.getErrorLogger().error( getName() + " stopped: ", e);
+			}finally{
+				for( SelectionKey key : new ArrayList< SelectionKey>( selector.keys())){
+					((NioConnection)key.attachment()).closed( null);
+				}
+				try {
+					selector.close();
+				} catch ( IOException e) {
+					Logger.getErrorLogger().warn( "Error - ", e);
+				}
+			}
+		}
+	}
+}
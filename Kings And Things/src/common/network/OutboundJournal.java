@@ -0,0 +1,77 @@
+package common.network;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * bounded ring buffer of the frames of the last messages sent to one client, numbered in the order
+ * they were written starting with 1. the client counts the messages it receives, so
+ * after a reconnect its count tells exactly which messages were lost with the old
+ * connection, and only those are sent again. not thread safe, used by OutboundQueue.
+ */
+final class OutboundJournal {
+
+	private final byte[][] frames;
+	private long sequence = 0;
+	private int size = 0;
+
+	/**
+	 * @param capacity - number of most recent messages kept
+	 */
+	OutboundJournal( int capacity){
+		if( capacity<=0){
+			throw new IllegalArgumentException( "Capacity must be a positive none zero integer");
+		}
+		frames = new byte[ capacity][];
+	}
+
+	/**
+	 * @param frame - frame written to the connection, becomes getSequence()
+	 */
+	void record( byte[] frame){
+		frames[ (int)(sequence % frames.length)] = frame;
+		sequence++;
+		size = Math.min( size+1, frames.length);
+	}
+
+	/**
+	 * @return number of the last message written
+	 */
+	long getSequence(){
+		return sequence;
+	}
+
+	/**
+	 * continue numbering after the last message received by the client, messages
+	 * after it are removed and returned so they can be sent and recorded again
+	 * @param acknowledged - number of messages the client has received
+	 * @return frames the client has missed, oldest first, or null if some of them
+	 * are no longer kept, in which case the journal is cleared
+	 */
+	List< byte[]> rewind( long acknowledged){
+		if( acknowledged<sequence-size || acknowledged>sequence){
+			sequence = Math.max( acknowledged, 0);
+			clear();
+			return null;
+		}
+		ArrayList< byte[]> missed = new ArrayList< byte[]>( (int)(sequence-acknowledged));
+		for( long number=acknowledged; number<sequence; number++){
+			int index = (int)(number % frames.length);
+			missed.add( frames[index]);
+			frames[index] = null;
+		}
+		size -= missed.size();
+		sequence = acknowledged;
+		return missed;
+	}
+
+	/**
+	 * forget every frame kept, numbering continues after getSequence()
+	 */
+	void clear(){
+		for( int i=0; i<frames.length; i++){
+			frames[i] = null;
+		}
+		size = 0;
+	}
+}
@@ -0,0 +1,369 @@
+package common.network;
+
+import java.io.IOException;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import common.Logger;
+import common.Threads;
+import common.event.AbstractNetwrokEvent;
+import common.network.Connection.Protocol;
+
+/**
+ * bounded queue of messages waiting to be sent on one connection, offer() never blocks.
+ * a connection that writes without blocking, see Connection.writesWithoutBlocking(), is
+ * drained by a small pool of writers shared by all queues, any other by a writer of its own.
+ * <p>
+ * 	- a message is encoded when it is queued, see FrameEncoder, so it is sent as it was posted
+ * 	- everything queued while a writer is busy is sent together with a single flush
+ * 	- a queued event is replaced by a newer event of the same class and coalescing key, the
+ * 	  newer one is sent at the end of the queue instead, see AbstractNetwrokEvent.getCoalescingKey(),
+ * 	  unless frames after the older one depend on it, see FrameEncoder.hasDefined()
+ * 	- if more than capacity messages are waiting the client is too slow to follow the game,
+ * 	  its connection is closed and the overflow is counted, so it can reconnect and resync
+ * 	- the frames of the last JOURNAL_CAPACITY messages written are kept in an OutboundJournal,
+ * 	  so a client returning on a new connection is sent only what it missed, see resume()
+ * 	- a message that cannot be encoded closes the connection, the client is sent
+ * 	  a snapshot of the game when it returns
+ */
+public class OutboundQueue {
+
+	public static final int DEFAULT_CAPACITY = 1024;
+	public static final int JOURNAL_CAPACITY = 512;
+	//seconds the writer of a blocking connection waits for more messages before its thread ends
+	private static final int WRITER_KEEP_ALIVE = 30;
+
+	private static final AtomicInteger QUEUES = new AtomicInteger();
+	private static final ExecutorService WRITERS = Executors.newFixedThreadPool( NioTransport.defaultThreadCount(), new ThreadFactory(){
+		private final AtomicInteger count = new AtomicInteger();
+		@Override
+		public Thread newThread( Runnable task) {
+			Thread thread = new Thread( task, "Outbound " + count.getAndIncrement());
+			thread.setDaemon( true);
+			return thread;
+		}
+	});
+
+	private final Object lock = new Object();
+	private final ArrayDeque< Frame> pending;
+	private final HashMap< Object, Frame> latest;
+	private final int capacity;
+	private final Runnable drainTask;
+	private final OutboundJournal journal;
+	private final ExecutorService writer;
+	private FrameEncoder encoder;
+	private Connection connection;
+	private boolean scheduled = false, sending = false, lost = false;
+	private int waiting = 0, peak = 0;
+	private long sent = 0, coalesced = 0, batches = 0, overflows = 0, dropped = 0, replayed = 0;
+
+	public OutboundQueue( Connection connection){
+		this( connection, DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * @param connection - connection to send messages on
+	 * @param capacity - maximum number of waiting messages before the connection is closed
+	 */
+	public OutboundQueue( Connection connection, int capacity){
+		if( capacity<=0){
+			throw new IllegalArgumentException( "Capacity must be a positive none zero integer");
+		}
+		this.connection = connection;
+		this.capacity = capacity;
+		encoder = new FrameEncoder( protocolOf( connection, Protocol.BINARY));
+		pending = new ArrayDeque< Frame>();
+		latest = new HashMap< Object, Frame>();
+		journal = new OutboundJournal( JOURNAL_CAPACITY);
+		final String name = "Outbound queue " + QUEUES.getAndIncrement();
+		//at most one thread, which ends when idle, virtual if enabled by "-virtual"
+		writer = new ThreadPoolExecutor( 0, 1, WRITER_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue< Runnable>(), new ThreadFactory(){
+			@Override
+			public Thread newThread( Runnable task) {
+				Thread thread = Threads.newThread( task, name);
+				thread.setDaemon( true);
+				return thread;
+			}
+		});
+		drainTask = new Runnable(){
+			@Override
+			public void run() {
+				drain();
+			}
+		};
+	}
+
+	/**
+	 * encode event and queue it to be sent, returns immediately
+	 * @param event - event to be sent
+	 */
+	public void offer( AbstractNetwrokEvent event){
+		Connection closing = null;
+		synchronized( lock){
+			Frame frame = null;
+			try {
+				frame = new Frame( encoder.encode( event), encoder.hasDefined());
+			} catch ( IOException | RuntimeException e) {
+				Logger.getErrorLogger().error( "Unable to encode " + event + ", closing connection: ", e);
+				closing = dropPending();
+			}
+			if( frame!=null){
+				Object key = event.getCoalescingKey();
+				if( key!=null){
+					Frame older = latest.put( new SimpleImmutableEntry< Class<?>, Object>( event.getClass(), key), frame);
+					if( older!=null && !older.defining){
+						//the newer frame is encoded after the frames queued since, so it must follow them
+						older.replaced = true;
+						waiting--;
+						coalesced++;
+					}
+				}
+				pending.add( frame);
+				waiting++;
+				peak = Math.max( peak, waiting);
+				if( waiting>capacity){
+					overflows++;
+					Logger.getErrorLogger().warn( "Outbound queue of " + connection + " exceeded " + capacity + " messages, closing connection, " + this);
+					closing = dropPending();
+				}else{
+					schedule();
+				}
+			}
+		}
+		if( closing!=null){
+			closing.disconnect();
+		}
+	}
+
+	/**
+	 * drop every waiting frame, the connection must be closed and the client
+	 * must be sent a snapshot of the game when it returns. called holding lock
+	 * @return connection to be closed
+	 */
+	private Connection dropPending(){
+		dropped += waiting;
+		pending.clear();
+		latest.clear();
+		waiting = 0;
+		lost = true;
+		return connection;
+	}
+
+	/**
+	 * start a writer unless one is already running. called holding lock
+	 */
+	private void schedule(){
+		if( !scheduled && waiting>0){
+			scheduled = true;
+			writerFor( connection).execute( drainTask);
+		}
+	}
+
+	private Executor writerFor( Connection connection){
+		return connection.writesWithoutBlocking()? WRITERS : writer;
+	}
+
+	private static Protocol protocolOf( Connection connection, Protocol unconnected){
+		Protocol protocol = connection.getProtocol();
+		return protocol==null? unconnected : protocol;
+	}
+
+	/**
+	 * replace the connection for a returning player, messages written to the old connection
+	 * but not received by the client are sent again, before any message still waiting.
+	 * otherwise every waiting message is dropped and the encoder starts over, since the
+	 * frames encoded for the old connection may depend on frames the client never received
+	 * @param connection - new connection
+	 * @param acknowledged - number of messages the client has received, negative if unknown
+	 * @return true if every missed message was sent again, false if some were no longer kept
+	 * and the client must be sent a snapshot of the game instead
+	 * @throws InterruptedException - if interrupted while a write to the old connection finishes
+	 */
+	public boolean resume( Connection connection, long acknowledged) throws InterruptedException{
+		synchronized( lock){
+			while( sending){
+				//a batch for the old connection must be recorded before rewinding
+				lock.wait();
+			}
+			this.connection = connection;
+			List< byte[]> missed = journal.rewind( acknowledged);
+			Protocol protocol = protocolOf( connection, encoder.getProtocol());
+			if( lost || missed==null || protocol!=encoder.getProtocol()){
+				//messages dropped on overflow were never written, so never recorded
+				dropPending();
+				lost = false;
+				journal.clear();
+				encoder = new FrameEncoder( protocol);
+				return false;
+			}
+			for( int i=missed.size()-1; i>=0; i--){
+				//sent exactly as before, never coalesced
+				pending.addFirst( new Frame( missed.get( i), true));
+			}
+			waiting += missed.size();
+			replayed += missed.size();
+			peak = Math.max( peak, waiting);
+			schedule();
+			return true;
+		}
+	}
+
+	private void drain(){
+		ArrayList< byte[]> batch;
+		Connection target;
+		synchronized( lock){
+			if( waiting==0){
+				scheduled = false;
+				return;
+			}
+			batch = new ArrayList< byte[]>( waiting);
+			for( Frame frame : pending){
+				if( !frame.replaced){
+					batch.add( frame.bytes);
+				}
+			}
+			pending.clear();
+			latest.clear();
+			waiting = 0;
+			target = connection;
+			sending = true;
+		}
+		try {
+			target.sendFrames( batch);
+		} catch ( IOException e) {
+			//part of the batch may have reached the client, its count tells which
+			Logger.getErrorLogger().warn( "Error - ", e);
+		}
+		synchronized( lock){
+			for( byte[] frame : batch){
+				journal.record( frame);
+			}
+			sending = false;
+			lock.notifyAll();
+			sent += batch.size();
+			batches++;
+			if( waiting==0){
+				scheduled = false;
+			}else{
+				//submitted again, so queues sharing the writers take turns
+				writerFor( connection).execute( drainTask);
+			}
+		}
+	}
+
+	/**
+	 * @return number of the last message written, see OutboundJournal
+	 */
+	public long getSequence(){
+		synchronized( lock){
+			return journal.getSequence();
+		}
+	}
+
+	/**
+	 * @return number of messages sent again to returning clients
+	 */
+	public long getReplayed(){
+		synchronized( lock){
+			return replayed;
+		}
+	}
+
+	/**
+	 * @return number of messages waiting to be sent
+	 */
+	public int getQueued(){
+		synchronized( lock){
+			return waiting;
+		}
+	}
+
+	/**
+	 * @return most messages that were waiting at once
+	 */
+	public int getPeak(){
+		synchronized( lock){
+			return peak;
+		}
+	}
+
+	public long getSent(){
+		synchronized( lock){
+			return sent;
+		}
+	}
+
+	/**
+	 * @return number of flushes used to send getSent() messages
+	 */
+	public long getBatches(){
+		synchronized( lock){
+			return batches;
+		}
+	}
+
+	/**
+	 * @return number of messages replaced by a newer one before being sent
+	 */
+	public long getCoalesced(){
+		synchronized( lock){
+			return coalesced;
+		}
+	}
+
+	/**
+	 * @return number of times the queue exceeded its capacity
+	 */
+	public long getOverflows(){
+		synchronized( lock){
+			return overflows;
+		}
+	}
+
+	/**
+	 * @return number of messages never sent, due to overflow, or to a snapshot sent instead
+	 */
+	public long getDropped(){
+		synchronized( lock){
+			return dropped;
+		}
+	}
+
+	@Override
+	public String toString(){
+		synchronized( lock){
+			return "queued: " + waiting + ", peak: " + peak + ", sent: " + sent + " in " + batches + " batches, coalesced: "
+					+ coalesced + ", overflows: " + overflows + ", dropped: " + dropped + ", replayed: " + replayed;
+		}
+	}
+
+	/**
+	 * encoded message waiting to be written
+	 */
+	private static final class Frame{
+
+		private final byte[] bytes;
+		private final boolean defining;
+		private boolean replaced = false;
+
+		/**
+		 * @param bytes - frame as written to the connection
+		 * @param defining - true if frames after it depend on it, so it is never replaced
+		 */
+		private Frame( byte[] bytes, boolean defining){
+			this.bytes = bytes;
+			this.defining = defining;
+		}
+	}
+}
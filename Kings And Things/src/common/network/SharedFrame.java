@@ -0,0 +1,79 @@
+package common.network;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.concurrent.ConcurrentMap;
+
+import com.google.common.collect.MapMaker;
+
+import common.Constants;
+import common.event.AbstractEvent;
+
+/**
+ * frame of a message sent to more than one player, encoded once by
+ * BinaryCodec.encodeShared() and written unchanged to every connection
+ * whose player passes isValidID(), instead of being encoded by each of them.
+ * a connection that has not yet sent a tile of the message encodes it with
+ * its own codec instead, this happens only early in a game.
+ * frames are kept only as long as their message is referenced.
+ */
+final class SharedFrame {
+
+	private static final ConcurrentMap< AbstractEvent, SharedFrame> FRAMES = new MapMaker().weakKeys().makeMap();
+
+	private final AbstractEvent event;
+	private final HashSet< Long> tiles;
+	private byte[] frame;
+
+	private SharedFrame( AbstractEvent event){
+		this.event = event;
+		tiles = new HashSet< Long>();
+	}
+
+	/**
+	 * @param event - message to be sent
+	 * @return true if message is addressed to more than one player
+	 */
+	static boolean isBroadcast( AbstractEvent event){
+		return Integer.bitCount( event.getID() & Constants.ALL_PLAYERS_ID)>1;
+	}
+
+	/**
+	 * @param event - broadcast message
+	 * @return the one frame shared by all connections sending this message
+	 */
+	static SharedFrame of( AbstractEvent event){
+		SharedFrame frame = FRAMES.get( event);
+		if( frame==null){
+			frame = new SharedFrame( event);
+			SharedFrame existing = FRAMES.putIfAbsent( event, frame);
+			if( existing!=null){
+				frame = existing;
+			}
+		}
+		return frame;
+	}
+
+	/**
+	 * encode the message on first use, every later call returns the same bytes,
+	 * which must not be modified by the caller
+	 * @param codec - codec of the connection the frame is written to
+	 * @return length prefix followed by the payload, or null if codec has not sent
+	 * every tile of the message yet and must encode the message itself
+	 * @throws IOException - if message could not be encoded
+	 */
+	synchronized byte[] getBytes( BinaryCodec codec) throws IOException{
+		if( frame==null){
+			tiles.clear();
+			byte[] payload = BinaryCodec.encodeShared( event, tiles);
+			byte[] bytes = new byte[ 4+payload.length];
+			bytes[0] = (byte)(payload.length>>>24);
+			bytes[1] = (byte)(payload.length>>>16);
+			bytes[2] = (byte)(payload.length>>>8);
+			bytes[3] = (byte)payload.length;
+			System.arraycopy( payload, 0, bytes, 4, payload.length);
+			frame = bytes;
+		}
+		return codec.hasSentTiles( tiles)? frame : null;
+	}
+}
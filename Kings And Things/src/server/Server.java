@@ -5,7 +5,10 @@ import javax.swing.UIManager;
 
 import org.apache.log4j.PropertyConfigurator;
 
+import common.Threads;
 import common.event.EventDispatch;
+import common.network.Connection;
+import common.network.Connection.Protocol;
 import server.gui.ServerGUI;
 import server.logic.ConnectionLobby;
 
@@ -34,6 +37,7 @@ public class Server {
 		boolean loadStateFile = false;
 		String stateFileName = null;
 		boolean generateAll = false;
+		boolean useNio = false;
 		
 		String serverGUITitle = "Kings And Things Server";
 		if( args!=null){
@@ -50,6 +54,12 @@ public class Server {
 				}if( args[i].equals("-lst")){
 					loadStateFile = true;
 					stateFileName = args[++i];
+				}if( args[i].equals("-virtual")){
+					Threads.setVirtual( true);
+				}if( args[i].equals("-nio")){
+					useNio = true;
+				}if( args[i].equals("-serialized")){
+					Connection.setPreferredProtocol( Protocol.SERIALIZED);
 				}
 				/*switch(args[i]){
 					case "-t":
@@ -86,7 +96,7 @@ public class Server {
 		}
 
 		try {
-			ConnectionLobby lobby = new ConnectionLobby(isDemoMode, loadStateFile, generateStateFile, stateFileName, generateAll);
+			ConnectionLobby lobby = new ConnectionLobby(isDemoMode, loadStateFile, generateStateFile, stateFileName, generateAll, useNio);
 			EventDispatch.registerOnInternalEvents(lobby);
 			new Thread( lobby, "GAME LOGIC").start();
 		} catch ( Exception e) {
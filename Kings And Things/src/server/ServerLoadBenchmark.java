@@ -0,0 +1,268 @@
+package server;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.ConnectException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+
+import server.logic.ConnectionLobby;
+
+import common.Constants;
+import common.Constants.UpdateInstruction;
+import common.Constants.UpdateKey;
+import common.Threads;
+import common.event.AbstractEvent;
+import common.event.UpdatePackage;
+import common.event.network.PlayerState;
+import common.event.network.PlayersList;
+import common.game.PlayerInfo;
+import common.network.Connection;
+import common.network.Connection.Protocol;
+
+/**
+ * measures how the server scales with the number of connected clients, without a GUI. a
+ * ConnectionLobby is started in this process and joined by a growing number of simulated
+ * clients, seated four to a room as real clients would be. at every step each client keeps
+ * sending a command and waiting for the room to answer it, and the threads, heap and command
+ * latency of the process are reported.
+ * <p>
+ * the command is the ready flag of the player, as sent by the lobby screen of a client: the
+ * room handles it on the thread serving the player and answers every player of the room with a
+ * PlayersList, the latency of a command is the time from sending it until the PlayersList
+ * showing it reaches its client. the clients are driven by a fixed number of driver threads, so
+ * any thread added as the clients grow belongs to the server.
+ * <p>
+ * usage: ServerLoadBenchmark [-clients n,n,...] [-commands n] [-drivers n] [-virtual] [-nio]
+ * [-serialized] [-log]
+ * <br>
+ * run it with and without -virtual to compare platform and virtual threads, on a JVM without
+ * virtual threads -virtual falls back to platform threads and the report says so.
+ */
+public class ServerLoadBenchmark {
+
+	//clients seated at every step unless -clients is given
+	private static final int[] DEFAULT_CLIENTS = { 4, 16, 64, 256};
+	//milliseconds a client waits for the answer to a command before the step fails
+	private static final int ANSWER_TIMEOUT = 10000;
+	//milliseconds the first client waits for the lobby to load the resources and listen
+	private static final int STARTUP_TIMEOUT = 60000;
+
+	private final int commandsPerClient;
+	private final ExecutorService drivers;
+	private final int numDrivers;
+	private final ArrayList< SimulatedClient> clients;
+
+	/**
+	 * @param commandsPerClient - commands sent by every client at every step
+	 * @param numDrivers - threads sending the commands of all clients
+	 */
+	private ServerLoadBenchmark( int commandsPerClient, int numDrivers){
+		this.commandsPerClient = commandsPerClient;
+		this.numDrivers = numDrivers;
+		drivers = Executors.newFixedThreadPool( numDrivers);
+		clients = new ArrayList< SimulatedClient>();
+	}
+
+	/**
+	 * connect new clients until numClients are seated
+	 */
+	private void seat( int numClients) throws IOException, ClassNotFoundException{
+		while( clients.size()<numClients){
+			clients.add( new SimulatedClient( "Load " + clients.size()));
+		}
+	}
+
+	/**
+	 * let every client send its commands, the clients are split evenly between the drivers
+	 * @return latency of every command in nanoseconds, sorted
+	 */
+	private long[] measure() throws Exception{
+		ArrayList< Future< long[]>> results = new ArrayList< Future< long[]>>();
+		for( int driver=0; driver<numDrivers; driver++){
+			final ArrayList< SimulatedClient> driven = new ArrayList< SimulatedClient>();
+			for( int i=driver; i<clients.size(); i+=numDrivers){
+				driven.add( clients.get( i));
+			}
+			results.add( drivers.submit( new Callable< long[]>(){
+				@Override
+				public long[] call() throws Exception {
+					long[] latencies = new long[ driven.size()*commandsPerClient];
+					int index = 0;
+					for( int command=0; command<commandsPerClient; command++){
+						for( SimulatedClient client : driven){
+							latencies[index++] = client.toggleReady();
+						}
+					}
+					return latencies;
+				}
+			}));
+		}
+		long[] latencies = new long[ clients.size()*commandsPerClient];
+		int index = 0;
+		for( Future< long[]> result : results){
+			long[] driven = result.get();
+			System.arraycopy( driven, 0, latencies, index, driven.length);
+			index += driven.length;
+		}
+		Arrays.sort( latencies);
+		return latencies;
+	}
+
+	private void close(){
+		for( SimulatedClient client : clients){
+			client.connection.disconnect();
+		}
+		drivers.shutdown();
+	}
+
+	private static double percentile( long[] sorted, double percentile){
+		if( sorted.length==0){
+			return 0;
+		}
+		int index = (int)Math.ceil( percentile/100.0*sorted.length)-1;
+		return sorted[ Math.max( 0, Math.min( sorted.length-1, index))]/1000000.0;
+	}
+
+	private static void sleep( long millis){
+		try{
+			Thread.sleep( millis);
+		}catch( InterruptedException e){
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static long usedHeap(){
+		Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory()-runtime.freeMemory();
+	}
+
+	/**
+	 * a client that only joins a room and switches its ready flag, reading every message of
+	 * its room on the thread of the driver using it
+	 */
+	private static final class SimulatedClient{
+
+		private final Connection connection;
+		private final PlayerInfo player;
+
+		private SimulatedClient( String name) throws IOException, ClassNotFoundException{
+			connection = new Connection();
+			long deadline = System.currentTimeMillis()+STARTUP_TIMEOUT;
+			while( true){
+				try{
+					if( !connection.connectTo( Constants.SERVER_IP, Constants.SERVER_PORT)){
+						throw new IOException( "Unable to connect " + name);
+					}
+					break;
+				}catch( ConnectException e){
+					//the lobby loads the resources before it listens
+					if( System.currentTimeMillis()>deadline){
+						throw e;
+					}
+					sleep( 100);
+				}
+			}
+			connection.send( new UpdatePackage( UpdateInstruction.State, UpdateKey.Player, new PlayerInfo( name, Constants.PUBLIC, false), name));
+			PlayerInfo seated = null;
+			while( seated==null){
+				AbstractEvent event = connection.recieve( ANSWER_TIMEOUT);
+				if( event instanceof PlayerState){
+					seated = ((PlayerState)event).getPlayer();
+				}
+			}
+			player = seated;
+		}
+
+		/**
+		 * @return nanoseconds from sending the new ready flag until the room answered it
+		 */
+		private long toggleReady() throws IOException, ClassNotFoundException{
+			player.setReady( !player.isReady());
+			long start = System.nanoTime();
+			connection.send( new UpdatePackage( UpdateInstruction.State, UpdateKey.Player, player, player.getName()));
+			while( true){
+				AbstractEvent event = connection.recieve( ANSWER_TIMEOUT);
+				if( event instanceof PlayersList){
+					for( PlayerInfo info : ((PlayersList)event).getPlayers()){
+						if( info.getID()==player.getID() && info.isReady()==player.isReady()){
+							return System.nanoTime()-start;
+						}
+					}
+				}
+			}
+		}
+	}
+
+	public static void main( String[] args) throws Exception{
+		int[] steps = DEFAULT_CLIENTS;
+		int commandsPerClient = 20;
+		int numDrivers = Runtime.getRuntime().availableProcessors();
+		boolean virtual = false;
+		boolean useNio = false;
+		boolean log = false;
+		for( int i=0; i<args.length; i++){
+			if( args[i].equals( "-clients")){
+				String[] counts = args[++i].split( ",");
+				steps = new int[ counts.length];
+				for( int step=0; step<counts.length; step++){
+					steps[step] = Integer.parseInt( counts[step].trim());
+				}
+			}else if( args[i].equals( "-commands")){
+				commandsPerClient = Integer.parseInt( args[++i]);
+			}else if( args[i].equals( "-drivers")){
+				numDrivers = Integer.parseInt( args[++i]);
+			}else if( args[i].equals( "-virtual")){
+				virtual = true;
+			}else if( args[i].equals( "-nio")){
+				useNio = true;
+			}else if( args[i].equals( "-serialized")){
+				Connection.setPreferredProtocol( Protocol.SERIALIZED);
+			}else if( args[i].equals( "-log")){
+				log = true;
+			}else{
+				throw new IllegalArgumentException( "Unknown argument " + args[i]);
+			}
+		}
+		if( log){
+			BasicConfigurator.configure();
+		}else{
+			//every join and ready flag is logged, the report sums them up instead
+			org.apache.log4j.Logger.getRootLogger().setLevel( Level.OFF);
+		}
+		boolean usingVirtual = Threads.setVirtual( virtual);
+		ConnectionLobby lobby = new ConnectionLobby( false, false, false, null, false, useNio);
+		Thread lobbyThread = new Thread( lobby, "GAME LOGIC");
+		lobbyThread.setDaemon( true);
+		lobbyThread.start();
+
+		ServerLoadBenchmark benchmark = new ServerLoadBenchmark( commandsPerClient, numDrivers);
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		System.out.println( String.format( Locale.ROOT, "%s transport, %s threads%s, %d drivers, %d commands per client",
+				useNio? "nio" : "blocking", usingVirtual? "virtual" : "platform",
+				virtual && !usingVirtual? " (virtual threads not supported by this JVM)" : "", numDrivers, commandsPerClient));
+		System.out.println( String.format( Locale.ROOT, "%8s %8s %8s %9s %9s %9s %9s %9s", "clients", "threads", "peak", "heap MB", "cmd/s", "p50 ms", "p99 ms", "max ms"));
+		for( int numClients : steps){
+			benchmark.seat( numClients);
+			threads.resetPeakThreadCount();
+			long start = System.nanoTime();
+			long[] latencies = benchmark.measure();
+			double seconds = (System.nanoTime()-start)/1e9;
+			System.out.println( String.format( Locale.ROOT, "%8d %8d %8d %9.1f %9.0f %9.2f %9.2f %9.2f", numClients, threads.getThreadCount(),
+					threads.getPeakThreadCount(), usedHeap()/(1024.0*1024.0), latencies.length/seconds, percentile( latencies, 50),
+					percentile( latencies, 99), percentile( latencies, 100)));
+		}
+		benchmark.close();
+		System.exit( 0);
+	}
+}
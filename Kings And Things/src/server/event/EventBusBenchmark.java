@@ -0,0 +1,352 @@
+package server.event;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Level;
+
+import server.event.internal.ApplyHitsCommand;
+import server.event.internal.ConstructBuildingCommand;
+import server.event.internal.EndPlayerTurnCommand;
+import server.event.internal.MoveThingsCommand;
+import server.event.internal.PlaceThingOnBoardCommand;
+import server.event.internal.RecruitThingsCommand;
+import server.event.internal.ResolveCombatCommand;
+import server.event.internal.RetreatCommand;
+import server.event.internal.RollDiceCommand;
+
+import com.google.common.eventbus.EventBus;
+import com.google.common.eventbus.Subscribe;
+
+import common.Constants;
+import common.Constants.Category;
+import common.Constants.RollReason;
+import common.event.PrecompiledEventBus;
+import common.game.ITileProperties;
+import common.game.Roll;
+import common.game.TileProperties;
+
+/**
+ * compares the cost of posting the commands clients send most, MoveThingsCommand and
+ * RollDiceCommand, on Guava's EventBus and on the PrecompiledEventBus used by EventDispatch.
+ * both buses get the same listeners: one that handles every command the way the command
+ * handlers of a game do, only counting them, and a number of idle listeners handling events
+ * that are never posted, as the other handlers and player connections of a room do.
+ * <p>
+ * every measurement is the best of several rounds after a warm up, on one thread and then on
+ * several threads posting at once. a post that does not reach its handler exactly once is
+ * reported as an error, so the comparison also checks that both buses deliver the same.
+ * <p>
+ * usage: EventBusBenchmark [-posts n] [-rounds n] [-threads n] [-listeners n]
+ */
+public final class EventBusBenchmark
+{
+	private static final int WARM_UP_ROUNDS = 5;
+
+	/**
+	 * the two buses behind one interface
+	 */
+	private interface Bus
+	{
+		void register(Object listener);
+		void post(Object event);
+	}
+
+	private static final class GuavaBus implements Bus
+	{
+		private final EventBus bus = new EventBus();
+
+		@Override
+		public void register(Object listener)
+		{
+			bus.register(listener);
+		}
+
+		@Override
+		public void post(Object event)
+		{
+			bus.post(event);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "Guava EventBus";
+		}
+	}
+
+	private static final class PrecompiledBus implements Bus
+	{
+		private final PrecompiledEventBus bus = new PrecompiledEventBus();
+
+		@Override
+		public void register(Object listener)
+		{
+			bus.register(listener);
+		}
+
+		@Override
+		public void post(Object event)
+		{
+			bus.post(event);
+		}
+
+		@Override
+		public String toString()
+		{
+			return "PrecompiledEventBus";
+		}
+	}
+
+	/**
+	 * handles the commands a game room handles, counting the ones it receives
+	 */
+	public static final class CommandListener
+	{
+		private final AtomicLong numHandled = new AtomicLong();
+
+		@Subscribe
+		public void moveThings(MoveThingsCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void rollDice(RollDiceCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void endPlayerTurn(EndPlayerTurnCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void placeThingOnBoard(PlaceThingOnBoardCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void recruitThings(RecruitThingsCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void constructBuilding(ConstructBuildingCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void resolveCombat(ResolveCombatCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void applyHits(ApplyHitsCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+
+		@Subscribe
+		public void retreat(RetreatCommand command)
+		{
+			numHandled.incrementAndGet();
+		}
+	}
+
+	/**
+	 * handles events that are never posted by the benchmark
+	 */
+	public static final class IdleListener
+	{
+		@Subscribe
+		public void gameStarted(GameStarted event)
+		{
+		}
+
+		@Subscribe
+		public void playerUpdated(PlayerUpdated event)
+		{
+		}
+
+		@Subscribe
+		public void diceRolled(DiceRolled event)
+		{
+		}
+	}
+
+	private final int numPosts;
+	private final int numRounds;
+	private final int numThreads;
+	private final int numIdleListeners;
+	private final ThreadMXBean threads;
+
+	EventBusBenchmark(int numPosts, int numRounds, int numThreads, int numIdleListeners)
+	{
+		if(numPosts <= 0 || numRounds <= 0 || numThreads <= 0 || numIdleListeners < 0)
+		{
+			throw new IllegalArgumentException("Number of posts, rounds and threads must be positive none zero integers");
+		}
+		this.numPosts = numPosts;
+		this.numRounds = numRounds;
+		this.numThreads = numThreads;
+		this.numIdleListeners = numIdleListeners;
+		threads = ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * measure posting events on bus, one thread and then numThreads at once
+	 * @param events - events posted in turn
+	 */
+	void measure(String traffic, Bus bus, List<?> events) throws Exception
+	{
+		CommandListener listener = new CommandListener();
+		bus.register(listener);
+		for(int i=0; i<numIdleListeners; i++)
+		{
+			bus.register(new IdleListener());
+		}
+		for(int i=0; i<WARM_UP_ROUNDS; i++)
+		{
+			post(bus, events);
+		}
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = -1;
+		for(int i=0; i<numRounds; i++)
+		{
+			long allocatedBefore = getAllocatedBytes();
+			long start = System.nanoTime();
+			post(bus, events);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			long allocatedAfter = getAllocatedBytes();
+			bytes = allocatedBefore < 0? -1 : (allocatedAfter - allocatedBefore) / numPosts;
+		}
+		double concurrentNanos = postConcurrently(bus, events);
+		long expected = (long) numPosts * (WARM_UP_ROUNDS + numRounds + numThreads * numRounds);
+		System.out.println(String.format(Locale.ROOT, "%-22s %-20s %10.1f %10d %14.1f%s", traffic, bus, (double) bestNanos / numPosts, bytes,
+				concurrentNanos, listener.numHandled.get() == expected? "" : "  error: " + listener.numHandled.get() + " of " + expected + " handled"));
+	}
+
+	private void post(Bus bus, List<?> events)
+	{
+		int numEvents = events.size();
+		for(int i=0; i<numPosts; i++)
+		{
+			bus.post(events.get(i % numEvents));
+		}
+	}
+
+	/**
+	 * @return nanoseconds per post of numThreads threads posting at once, best of numRounds
+	 */
+	private double postConcurrently(final Bus bus, final List<?> events) throws Exception
+	{
+		ExecutorService pool = Executors.newFixedThreadPool(numThreads);
+		try
+		{
+			long bestNanos = Long.MAX_VALUE;
+			for(int round=0; round<numRounds; round++)
+			{
+				ArrayList<Callable<Void>> tasks = new ArrayList<Callable<Void>>(numThreads);
+				for(int i=0; i<numThreads; i++)
+				{
+					tasks.add(new Callable<Void>()
+					{
+						@Override
+						public Void call()
+						{
+							post(bus, events);
+							return null;
+						}
+					});
+				}
+				long start = System.nanoTime();
+				for(Future<Void> done : pool.invokeAll(tasks))
+				{
+					done.get();
+				}
+				bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			}
+			return (double) bestNanos / ((long) numPosts * numThreads);
+		}
+		finally
+		{
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * @return bytes allocated by the calling thread so far, -1 if the JVM does not count them
+	 */
+	private long getAllocatedBytes()
+	{
+		if(threads instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int numPosts = 1000000;
+		int numRounds = 5;
+		int numThreads = Runtime.getRuntime().availableProcessors();
+		int numIdleListeners = 8;
+		for(int i=0; i<args.length; i++)
+		{
+			if(args[i].equals("-posts")){
+				numPosts = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-rounds")){
+				numRounds = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-threads")){
+				numThreads = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-listeners")){
+				numIdleListeners = Integer.parseInt(args[++i]);
+			}else{
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		//a handler failing would be logged on every post
+		org.apache.log4j.Logger.getRootLogger().setLevel(Level.OFF);
+		EventBusBenchmark benchmark = new EventBusBenchmark(numPosts, numRounds, numThreads, numIdleListeners);
+
+		ArrayList<ITileProperties> things = new ArrayList<ITileProperties>();
+		things.add(new TileProperties(Category.Creature));
+		things.add(new TileProperties(Category.Creature));
+		ArrayList<ITileProperties> hexes = new ArrayList<ITileProperties>();
+		hexes.add(new TileProperties(Category.Hex));
+		hexes.add(new TileProperties(Category.Hex));
+		List<MoveThingsCommand> moves = Collections.singletonList(new MoveThingsCommand(things, hexes));
+		List<RollDiceCommand> rolls = Collections.singletonList(new RollDiceCommand(new Roll(1, null, RollReason.ENTERTAINMENT, Constants.PLAYER_1_ID)));
+		ArrayList<Object> mixed = new ArrayList<Object>();
+		mixed.add(moves.get(0));
+		mixed.add(rolls.get(0));
+		mixed.add(new EndPlayerTurnCommand());
+
+		System.out.println(String.format(Locale.ROOT, "%d posts per round, best of %d rounds, %d idle listeners, %d threads posting at once",
+				numPosts, numRounds, numIdleListeners, numThreads));
+		System.out.println(String.format(Locale.ROOT, "%-22s %-20s %10s %10s %14s", "traffic", "bus", "ns/post", "bytes/post", "ns/post shared"));
+		benchmark.measure("MoveThingsCommand", new GuavaBus(), moves);
+		benchmark.measure("MoveThingsCommand", new PrecompiledBus(), moves);
+		benchmark.measure("RollDiceCommand", new GuavaBus(), rolls);
+		benchmark.measure("RollDiceCommand", new PrecompiledBus(), rolls);
+		benchmark.measure("move, roll, end turn", new GuavaBus(), mixed);
+		benchmark.measure("move, roll, end turn", new PrecompiledBus(), mixed);
+	}
+}
@@ -0,0 +1,34 @@
+package server.event;
+
+import common.event.AbstractInternalEvent;
+
+public class GameStateChanged extends AbstractInternalEvent{
+	
+	private final int targets;
+	private final boolean snapshot;
+
+	/**
+	 * @param targets - IDs of players to bring up to date, Constants.ALL_PLAYERS_ID for everyone
+	 */
+	public GameStateChanged( final int targets){
+		this( targets, false);
+	}
+
+	/**
+	 * @param targets - IDs of players to bring up to date, Constants.ALL_PLAYERS_ID for everyone
+	 * @param snapshot - true to send targets the full state, even if their last version is known
+	 */
+	public GameStateChanged( final int targets, boolean snapshot){
+		super();
+		this.targets = targets;
+		this.snapshot = snapshot;
+	}
+
+	public int getTargets(){
+		return targets;
+	}
+
+	public boolean isSnapshot(){
+		return snapshot;
+	}
+}
@@ -4,21 +4,15 @@ import static common.Constants.MAX_PLAYERS;
 import static common.Constants.SERVER_PORT;
 
 import java.io.IOException;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.net.SocketTimeoutException;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.nio.channels.ServerSocketChannel;
 
 import server.event.EndServer;
-import server.event.GameStarted;
-import server.event.PlayerUpdated;
-import server.event.internal.StartGameCommand;
-import server.event.internal.StartSetupPhaseCommand;
-import server.logic.game.CommandHandlerManager;
-import server.logic.game.GameState;
-import server.logic.game.StateGenerator;
-import server.logic.game.StateGenerator.GeneratorType;
 
 import com.google.common.eventbus.Subscribe;
 
@@ -26,31 +20,48 @@ import common.Constants;
 import common.Constants.Level;
 import common.Constants.UpdateKey;
 import common.Logger;
+import common.Threads;
 import common.event.ConsoleMessage;
-import common.event.EventDispatch;
 import common.event.UpdatePackage;
-import common.event.network.CommandRejected;
 import common.event.network.PlayerState;
-import common.event.network.PlayersList;
-import common.event.network.StartGame;
 import common.game.LoadResources;
-import common.game.Player;
 import common.game.PlayerInfo;
 import common.network.Connection;
+import common.network.NioConnection;
+import common.network.NioTransport;
 
+/**
+ * single listener for the whole server, accepts any number of connections
+ * and seats every player in a GameRoom, a new room is opened whenever
+ * no room is waiting for players. the first message of a client is read
+ * on a thread of its own, so a slow client never keeps others from connecting.
+ */
 public class ConnectionLobby implements Runnable {
 
-	private boolean close = false;
+	//milliseconds a new client has to agree on a protocol and identify itself
+	private static final int HANDSHAKE_TIMEOUT = Constants.SERVER_TIMEOUT*1000;
+
+	private volatile boolean close = false;
 	private ServerSocket serverSocket;
-	private final CommandHandlerManager game;
-	private final ArrayList< PlayerConnection> connectedPlayers;
+	private final ArrayList< GameRoom> rooms;
 	private final boolean demoMode;
 	private final boolean generateStateFile;
 	private final boolean loadStateFile;
 	private final String stateFileName;
 	private final boolean generateAll;
+	private final boolean useNio;
+	private NioTransport transport;
+	private int roomCount = 0;
 	
 	public ConnectionLobby( boolean isDemoMode, boolean loadStateFile, boolean generateStateFile, String stateFileName, boolean generateAll) throws IOException{
+		this( isDemoMode, loadStateFile, generateStateFile, stateFileName, generateAll, false);
+	}
+	
+	/**
+	 * @param useNio - if true, all players are served by a NioTransport with a few I/O threads,
+	 * 				otherwise every player gets its own thread blocked on its connection
+	 */
+	public ConnectionLobby( boolean isDemoMode, boolean loadStateFile, boolean generateStateFile, String stateFileName, boolean generateAll, boolean useNio) throws IOException{
 		if( isDemoMode){
 			Logger.getStandardLogger().info("Server started in demo mode.");
 			new ConsoleMessage( "Starting in demo mode.", Level.Notice, this).postInternalEvent();
@@ -60,8 +71,8 @@ public class ConnectionLobby implements Runnable {
 		this.generateStateFile = generateStateFile;
 		this.loadStateFile = loadStateFile;
 		this.stateFileName = stateFileName;
-		connectedPlayers = new ArrayList<PlayerConnection>();
-		game = new CommandHandlerManager();
+		this.useNio = useNio;
+		rooms = new ArrayList<GameRoom>();
 	}
 
 	@Override
@@ -70,7 +81,15 @@ public class ConnectionLobby implements Runnable {
 		new LoadResources( false).run();
 		new ConsoleMessage( "Loaded Resources", Level.Plain, this).postInternalEvent();
 		try {
-			serverSocket = new ServerSocket( SERVER_PORT);
+			if( useNio){
+				transport = new NioTransport( NioTransport.defaultThreadCount());
+				//sockets accepted from a channel can be handed over to the transport
+				serverSocket = ServerSocketChannel.open().socket();
+				serverSocket.bind( new InetSocketAddress( SERVER_PORT));
+				Logger.getStandardLogger().info("Using NIO transport");
+			}else{
+				serverSocket = new ServerSocket( SERVER_PORT);
+			}
             serverSocket.setSoTimeout( Constants.SERVER_TIMEOUT*1000);
 			Logger.getStandardLogger().info("Listening on port " + SERVER_PORT);
 			new ConsoleMessage( "Listening on port " + SERVER_PORT, Level.Notice, this).postInternalEvent();
@@ -79,65 +98,20 @@ public class ConnectionLobby implements Runnable {
 			new ConsoleMessage( "Failed to open port " + SERVER_PORT + ", Restart Server", Level.Error, this).postInternalEvent();
 			return;
 		}
-		game.initialize();
-		int count=0, playerID = Constants.PLAYER_START_ID;
-		boolean oldClient = false;
-		Socket socket = null;
-		Connection connection = null;
-		UpdatePackage playerState = null;
-		PlayerInfo info = null;
-		PlayerConnection pc = null;
-		Player player = null;
-		while( !close && count<MAX_PLAYERS){
+		while( !close){
             try {
-            	oldClient = false;
-            	connection = new Connection();
-            	socket = serverSocket.accept();
-            	if( connection.connectTo( socket)){
-            		playerState = (UpdatePackage)connection.recieve();
-            	}else{
-            		new ConsoleMessage( "Connection to: " + socket + " failed", Level.Warning,this).postInternalEvent();
-            		Logger.getStandardLogger().warn("Connection to: " + socket + " failed");
-            		connection.disconnect();
-            		socket.close();
-            		continue;
-            	}
-            	info = (PlayerInfo)playerState.getData( UpdateKey.Player);
-            	for( PlayerConnection playerConnection : connectedPlayers){
-            		if( playerConnection.equals( info)){
-            			oldClient = true;
-            			playerConnection.setConnection( connection);
-            			startTask( playerConnection, playerConnection.getName());
-            			new ConsoleMessage( "Restablished connection from " + connection + ", assigned to " + playerConnection.getPlayer(), Level.Notice, this).postInternalEvent();
-            			Logger.getStandardLogger().info("Restablished connection from " + connection + ", assigned to " + playerConnection.getPlayer());
-            			break;
+            	final Socket socket = serverSocket.accept();
+            	Threads.start( new Runnable(){
+            		@Override
+            		public void run(){
+            			handshake( socket);
             		}
-            	}
-            	if( !oldClient){
-            		info = new PlayerInfo( info, playerID);
-	            	player = new Player( new PlayerInfo( info, playerID));
-	            	pc = new PlayerConnection( player, connection);
-	            	EventDispatch.registerOnNetwrokEvents( pc);
-	            	startTask( pc, pc.getName());
-	            	//send PlayerInfo object to connected player
-	            	pc.sendNotificationToClient( new PlayerState( info, playerID));
-	            	connectedPlayers.add( pc);
-	            	count++;
-	            	playerID*=Constants.PLAYER_ID_MULTIPLIER;
-        			new ConsoleMessage( "Recieved connection from " + connection + ", assigned to " + pc.getPlayer(), Level.Notice, this).postInternalEvent();
-	            	Logger.getStandardLogger().info("Recieved connection from " + connection + ", assigned to " + pc.getPlayer());
-            	}
-    			new ConsoleMessage( "Player count is " + count + " out of " + MAX_PLAYERS + " players, need players: " + (MAX_PLAYERS-count), Level.Notice, this).postInternalEvent();
-            	Logger.getStandardLogger().info("Player count is " + count + " out of " + MAX_PLAYERS + " players, need players: " + (MAX_PLAYERS-count));
-            	playerUpdated( null);
+            	}, "Handshake " + socket);
             } catch( SocketTimeoutException ex){
                 //try again for incoming connections
             } catch ( IOException ex) {
     			new ConsoleMessage( "Problem with player connection", Level.Error, this).postInternalEvent();
             	Logger.getErrorLogger().error("Problem with player connection: ", ex);
-			} catch ( ClassNotFoundException ex) {
-    			new ConsoleMessage( "Recieved Invalid Package: " + ex.getMessage(), Level.Error, this).postInternalEvent();
-            	Logger.getErrorLogger().error("Recieved Invalid Package: ", ex);
 			}
         }
 		try {
@@ -146,82 +120,129 @@ public class ConnectionLobby implements Runnable {
 			new ConsoleMessage( "Problem closing player connections", Level.Error, this).postInternalEvent();
 			Logger.getErrorLogger().error("Problem closing player connections: ", e);
 		}
+		synchronized( this){
+			for( GameRoom existing : rooms){
+				existing.dispose();
+			}
+			rooms.clear();
+		}
+		if( transport!=null){
+			transport.close();
+		}
 	}
 	
-	private void startTask( Runnable task, String name){
-		new Thread( task, name).start();
+	/**
+	 * agree on a protocol with a newly accepted client and read its PlayerInfo, a client
+	 * that does not identify itself within HANDSHAKE_TIMEOUT is disconnected
+	 * @param socket - newly accepted socket
+	 */
+	private void handshake( Socket socket){
+		Connection connection = useNio? new NioConnection( transport) : new Connection();
+		try {
+			socket.setSoTimeout( HANDSHAKE_TIMEOUT);
+			if( !connection.connectTo( socket)){
+				new ConsoleMessage( "Connection to: " + socket + " failed", Level.Warning,this).postInternalEvent();
+				Logger.getStandardLogger().warn("Connection to: " + socket + " failed");
+				connection.disconnect();
+				socket.close();
+				return;
+			}
+			socket.setSoTimeout( 0);
+			UpdatePackage playerState = (UpdatePackage)connection.recieve( HANDSHAKE_TIMEOUT);
+			seat( connection, playerState);
+		} catch( SocketTimeoutException ex){
+			Logger.getStandardLogger().warn("Connection to: " + socket + " did not identify itself within " + HANDSHAKE_TIMEOUT + " ms");
+			connection.disconnect();
+		} catch ( IOException ex) {
+			new ConsoleMessage( "Problem with player connection", Level.Error, this).postInternalEvent();
+			Logger.getErrorLogger().error("Problem with player connection: ", ex);
+			connection.disconnect();
+		} catch ( ClassNotFoundException ex) {
+			new ConsoleMessage( "Recieved Invalid Package: " + ex.getMessage(), Level.Error, this).postInternalEvent();
+			Logger.getErrorLogger().error("Recieved Invalid Package: ", ex);
+			connection.disconnect();
+		}
 	}
 	
-	@Subscribe
-	public void playerUpdated( PlayerUpdated player){
-		boolean anyUnReady = false;
-		PlayersList connections = new PlayersList();
-		for( PlayerConnection pc : connectedPlayers){
-			anyUnReady = anyUnReady? true : !pc.isReadyToStart();
-			if( pc.isConnected()){
-				connections.addPlayer( pc.getPlayerInfo());
+	/**
+	 * seat a client that has identified itself, a returning player gets its old seat back,
+	 * anyone else is seated in an open room
+	 * @param connection - established connection to the client
+	 * @param playerState - first message of the client
+	 */
+	private synchronized void seat( Connection connection, UpdatePackage playerState){
+		if( close){
+			connection.disconnect();
+			return;
+		}
+		removeAbandonedRooms();
+		PlayerInfo info = (PlayerInfo)playerState.getData( UpdateKey.Player);
+		PlayerConnection pc = null;
+		GameRoom room = null;
+		for( GameRoom existing : rooms){
+			pc = existing.findReturningPlayer( info);
+			if( pc!=null){
+				room = existing;
+				Long acknowledged = (Long)playerState.getData( UpdateKey.Sequence);
+				boolean resumed = pc.setConnection( connection, acknowledged==null? -1 : acknowledged);
+				startTask( pc, connection, room + " " + pc.getName());
+				room.playerReturned( pc, resumed);
+				new ConsoleMessage( "Restablished connection from " + connection + ", assigned to " + pc.getPlayer() + " in " + room, Level.Notice, this).postInternalEvent();
+				Logger.getStandardLogger().info("Restablished connection from " + connection + ", assigned to " + pc.getPlayer() + " in " + room + (resumed? ", resumed at message " : ", snapshot after message ") + acknowledged);
+				break;
 			}
 		}
-		if( connections.getPlayers().length>0){
-			connections.postNetworkEvent( Constants.ALL_PLAYERS_ID);
+		if( pc==null){
+			room = getOpenRoom();
+			pc = room.addNewPlayer( info, connection);
+			startTask( pc, connection, room + " " + pc.getName());
+			//send PlayerInfo object to connected player
+			pc.sendNotificationToClient( new PlayerState( pc.getPlayerInfo(), pc.getPlayer().getID()));
+			new ConsoleMessage( "Recieved connection from " + connection + ", assigned to " + pc.getPlayer() + " in " + room, Level.Notice, this).postInternalEvent();
+			Logger.getStandardLogger().info("Recieved connection from " + connection + ", assigned to " + pc.getPlayer() + " in " + room);
 		}
+		int count = room.getPlayerCount();
+		new ConsoleMessage( room + " player count is " + count + " out of " + MAX_PLAYERS + " players, need players: " + (MAX_PLAYERS-count), Level.Notice, this).postInternalEvent();
+		Logger.getStandardLogger().info(room + " player count is " + count + " out of " + MAX_PLAYERS + " players, need players: " + (MAX_PLAYERS-count));
+		room.notifyPlayersList();
 	}
 	
-	@Subscribe
-	public void starGame( StartGameCommand command){
-		if( connectedPlayers.size() >= Constants.MIN_PLAYERS && connectedPlayers.size() <= Constants.MAX_PLAYERS){
-			HashSet< Player> set = new HashSet<Player>();
-			for( PlayerConnection pc : connectedPlayers){
-				set.add( pc.getPlayer());
-			}
-			new StartGame( set.size()).postNetworkEvent( Constants.ALL_PLAYERS_ID);
-			if(generateAll)
-			{
-				try
-				{
-					new StateGenerator("MinimalDemo", false, GeneratorType.MINIMAL_DEMO).getGeneratedState();
-					new StateGenerator("AverageDemo", false, GeneratorType.AVERAGE_DEMO).getGeneratedState();
-					GameState state = new StateGenerator("SuperiorDemo", false, GeneratorType.SUPERIOR_DEMO).getGeneratedState();
-					new StateGenerator("Construction", false, GeneratorType.CONSTRUCTION).getGeneratedState();
-					new StateGenerator("Exploration", false, GeneratorType.EXPLORATION).getGeneratedState();
-					new StateGenerator("Movement", false, GeneratorType.MOVEMENT).getGeneratedState();
-
-					new GameStarted(demoMode, state).postInternalEvent();
-					state.notifyClientsOfState();
-				}
-				catch (ClassNotFoundException e)
-				{
-					Logger.getErrorLogger().error("Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: ", e);
-					new CommandRejected(null, null, null, "Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: " + e,null).postNetworkEvent(Constants.ALL_PLAYERS_ID);
-				}
-				catch (IOException e)
-				{
-					Logger.getErrorLogger().error("Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: ", e);
-					new CommandRejected(null, null, null, "Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: " + e,null).postNetworkEvent(Constants.ALL_PLAYERS_ID);
-				}
-			}
-			else if(loadStateFile || generateStateFile)
-			{
-				try
-				{
-					GameState state = new StateGenerator(stateFileName, loadStateFile, GeneratorType.SUPERIOR_DEMO).getGeneratedState();
-					new GameStarted(demoMode, state).postInternalEvent();
-					state.notifyClientsOfState();
-				}
-				catch (ClassNotFoundException e)
-				{
-					Logger.getErrorLogger().error("Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: ", e);
-					new CommandRejected(null, null, null, "Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: " + e,null).postNetworkEvent(Constants.ALL_PLAYERS_ID);
-				}
-				catch (IOException e)
-				{
-					Logger.getErrorLogger().error("Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: ", e);
-					new CommandRejected(null, null, null, "Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: " + e,null).postNetworkEvent(Constants.ALL_PLAYERS_ID);
-				}
+	private void startTask( PlayerConnection task, Connection connection, String name){
+		if( connection instanceof NioConnection){
+			((NioConnection)connection).setListener( task);
+		}else{
+			Threads.start( task, name);
+		}
+	}
+	
+	/**
+	 * find a room that is still waiting for players, or open a new one
+	 */
+	private GameRoom getOpenRoom(){
+		for( GameRoom room : rooms){
+			if( room.isOpen()){
+				return room;
 			}
-			else
-			{
-				new StartSetupPhaseCommand( demoMode, set).postInternalEvent();
+		}
+		GameRoom room = new GameRoom( ++roomCount, demoMode, loadStateFile, generateStateFile, stateFileName, generateAll);
+		room.initialize();
+		rooms.add( room);
+		new ConsoleMessage( "Opened " + room + ", hosting " + rooms.size() + " rooms", Level.Notice, this).postInternalEvent();
+		Logger.getStandardLogger().info("Opened " + room + ", hosting " + rooms.size() + " rooms");
+		return room;
+	}
+	
+	/**
+	 * release rooms every player has left
+	 */
+	private void removeAbandonedRooms(){
+		Iterator<GameRoom> it = rooms.iterator();
+		while( it.hasNext()){
+			GameRoom room = it.next();
+			if( room.isAbandoned()){
+				room.dispose();
+				it.remove();
+				Logger.getStandardLogger().info("Closed " + room + ", hosting " + rooms.size() + " rooms");
 			}
 		}
 	}
@@ -0,0 +1,379 @@
+package server.logic;
+
+import static common.Constants.MAX_PLAYERS;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import server.event.GameStarted;
+import server.event.GameStateChanged;
+import server.event.PlayerUpdated;
+import server.event.internal.StartGameCommand;
+import server.event.internal.StartSetupPhaseCommand;
+import server.logic.game.CommandHandlerManager;
+import server.logic.game.GameState;
+import server.logic.game.StateGenerator;
+import server.logic.game.StateGenerator.GeneratorType;
+
+import com.google.common.eventbus.Subscribe;
+
+import common.Constants;
+import common.Logger;
+import common.Threads;
+import common.event.AbstractNetwrokEvent;
+import common.event.EventDispatch;
+import common.event.network.CommandRejected;
+import common.event.network.PlayersList;
+import common.event.network.StartGame;
+import common.game.Player;
+import common.game.PlayerInfo;
+import common.network.Connection;
+
+/**
+ * a single game table hosted by ConnectionLobby, each room owns its own event
+ * buses, command handlers and players, so any number of games can be played
+ * side by side in one server process. tile resources loaded by LoadResources
+ * are static and therefore shared by all rooms.
+ * commands of players served by NioConnection are handled on the room's own command thread,
+ * never on the I/O thread that read them.
+ */
+public class GameRoom {
+
+	//seconds the command thread of a room waits for more commands before it ends
+	private static final int COMMANDS_KEEP_ALIVE = 30;
+
+	private final int roomNumber;
+	private final EventDispatch dispatch;
+	private final ExecutorService commands;
+	private final CommandHandlerManager game;
+	private final ArrayList< PlayerConnection> connectedPlayers;
+	private final StateSync sync;
+	private final boolean demoMode;
+	private final boolean generateStateFile;
+	private final boolean loadStateFile;
+	private final String stateFileName;
+	private final boolean generateAll;
+	private volatile boolean started = false;
+	private volatile GameState state;
+
+	public GameRoom( int roomNumber, boolean isDemoMode, boolean loadStateFile, boolean generateStateFile, String stateFileName, boolean generateAll){
+		this.roomNumber = roomNumber;
+		this.generateAll = generateAll;
+		demoMode = isDemoMode;
+		this.generateStateFile = generateStateFile;
+		this.loadStateFile = loadStateFile;
+		this.stateFileName = stateFileName;
+		connectedPlayers = new ArrayList<PlayerConnection>();
+		dispatch = new EventDispatch();
+		//at most one thread, so commands of the room are handled in the order they arrived
+		commands = new ThreadPoolExecutor( 0, 1, COMMANDS_KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue< Runnable>(), new ThreadFactory(){
+			@Override
+			public Thread newThread( Runnable task) {
+				return Threads.newThread( task, GameRoom.this + " commands");
+			}
+		});
+		sync = new StateSync();
+		game = new CommandHandlerManager();
+	}
+
+	/**
+	 * register command handlers and this room on the room's own event buses,
+	 * must be called before any player is added
+	 */
+	public void initialize(){
+		game.initialize( dispatch);
+		dispatch.registerInternal( this);
+	}
+
+	/**
+	 * release command handlers of this room, call once the room is no longer in use
+	 */
+	public void dispose(){
+		commands.shutdown();
+		game.dispose();
+		dispatch.unregisterInternal( this);
+		synchronized( connectedPlayers){
+			for( PlayerConnection pc : connectedPlayers){
+				dispatch.unregisterNetwork( pc);
+			}
+		}
+	}
+
+	public int getRoomNumber(){
+		return roomNumber;
+	}
+
+	public EventDispatch getDispatch(){
+		return dispatch;
+	}
+
+	/**
+	 * @return true if the game has not started yet and there is a free seat
+	 */
+	public boolean isOpen(){
+		synchronized( connectedPlayers){
+			return !started && connectedPlayers.size()<MAX_PLAYERS;
+		}
+	}
+
+	/**
+	 * @return true if every player has left the room, before the game started the seats
+	 * of players that left are already free, so the room is abandoned once it is empty
+	 */
+	public boolean isAbandoned(){
+		synchronized( connectedPlayers){
+			if( !started){
+				return connectedPlayers.isEmpty();
+			}
+			for( PlayerConnection pc : connectedPlayers){
+				if( pc.isConnected()){
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	public int getPlayerCount(){
+		synchronized( connectedPlayers){
+			return connectedPlayers.size();
+		}
+	}
+
+	/**
+	 * find a disconnected player of this room matching the returning client
+	 * @param info - PlayerInfo sent by the client
+	 * @return matching PlayerConnection, or null if none matched
+	 */
+	public PlayerConnection findReturningPlayer( PlayerInfo info){
+		synchronized( connectedPlayers){
+			for( PlayerConnection playerConnection : connectedPlayers){
+				if( !playerConnection.isConnected() && playerConnection.equals( info)){
+					return playerConnection;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * bring a player that has just reconnected up to date, with a full snapshot
+	 * of the game if the messages it missed could not be sent again
+	 * @param pc - player whose connection was replaced
+	 * @param resumed - true if every missed message was sent again
+	 */
+	public void playerReturned( PlayerConnection pc, boolean resumed){
+		if( resumed){
+			return;
+		}
+		int ID = pc.getPlayer().getID();
+		sync.forget( ID);
+		if( state!=null){
+			new GameStateChanged( ID, true).postInternalEvent( dispatch);
+		}
+	}
+
+	/**
+	 * seat a new player in this room and register it on the room's network bus
+	 * @param info - PlayerInfo sent by the client
+	 * @param connection - established connection to the client
+	 * @return the new PlayerConnection, not yet started
+	 * @throws IllegalStateException if the room is not open
+	 */
+	public PlayerConnection addNewPlayer( PlayerInfo info, Connection connection){
+		synchronized( connectedPlayers){
+			if( !isOpen()){
+				throw new IllegalStateException( "Room " + roomNumber + " is not accepting players");
+			}
+			Player player = new Player( new PlayerInfo( info, getFreePlayerID()));
+			PlayerConnection pc = new PlayerConnection( player, connection, dispatch, commands);
+			dispatch.registerNetwork( pc);
+			connectedPlayers.add( pc);
+			return pc;
+		}
+	}
+
+	/**
+	 * @return lowest player ID not used by a seated player, seats freed before the game
+	 * started are given to new players
+	 */
+	private int getFreePlayerID(){
+		int ID = Constants.PLAYER_START_ID;
+		for( int seat=0; seat<MAX_PLAYERS; seat++, ID*=Constants.PLAYER_ID_MULTIPLIER){
+			boolean taken = false;
+			for( PlayerConnection pc : connectedPlayers){
+				if( pc.getPlayer().getID()==ID){
+					taken = true;
+					break;
+				}
+			}
+			if( !taken){
+				return ID;
+			}
+		}
+		throw new IllegalStateException( "Room " + roomNumber + " has no free seat");
+	}
+
+	/**
+	 * free the seat of a player that left before the game started, so the room can
+	 * be filled again, or closed by ConnectionLobby once everyone left
+	 */
+	private void releaseSeat( Player player){
+		PlayerConnection left = null;
+		synchronized( connectedPlayers){
+			if( started || player.isConnected()){
+				return;
+			}
+			for( PlayerConnection pc : connectedPlayers){
+				if( pc.getPlayer()==player){
+					left = pc;
+					break;
+				}
+			}
+			if( left==null){
+				return;
+			}
+			connectedPlayers.remove( left);
+		}
+		dispatch.unregisterNetwork( left);
+		Logger.getStandardLogger().info( player + " left " + this + " before the game started, seat is free");
+	}
+
+	/**
+	 * send updated list of players in this room to all of its clients
+	 */
+	public void notifyPlayersList(){
+		PlayersList connections = new PlayersList();
+		synchronized( connectedPlayers){
+			for( PlayerConnection pc : connectedPlayers){
+				if( pc.isConnected()){
+					connections.addPlayer( pc.getPlayerInfo());
+				}
+			}
+		}
+		if( connections.getPlayers().length>0){
+			connections.postNetworkEvent( dispatch, Constants.ALL_PLAYERS_ID);
+		}
+	}
+
+	@Subscribe
+	public void playerUpdated( PlayerUpdated player){
+		releaseSeat( player.getPlayer());
+		notifyPlayersList();
+	}
+
+	@Subscribe
+	public void gameStarted( GameStarted event){
+		state = event.getCurrentState();
+	}
+
+	/**
+	 * send every targeted client either a full snapshot or the changes since its last update,
+	 * a client that is not connected will get a full snapshot once it returns, as will every
+	 * targeted client if the event asks for a snapshot
+	 */
+	@Subscribe
+	public void syncState( GameStateChanged event){
+		GameState current = state;
+		if( current==null){
+			return;
+		}
+		ArrayList< PlayerConnection> players;
+		synchronized( connectedPlayers){
+			players = new ArrayList< PlayerConnection>( connectedPlayers);
+		}
+		for( PlayerConnection pc : players){
+			int ID = pc.getPlayer().getID();
+			if( (event.getTargets() & ID)==0){
+				continue;
+			}
+			if( !pc.isConnected()){
+				sync.forget( ID);
+				continue;
+			}
+			if( event.isSnapshot()){
+				sync.forget( ID);
+			}
+			AbstractNetwrokEvent update = sync.update( current, ID);
+			if( update!=null){
+				update.postNetworkEvent( dispatch, ID);
+			}
+		}
+	}
+
+	@Subscribe
+	public void starGame( StartGameCommand command){
+		HashSet< Player> set = new HashSet<Player>();
+		synchronized( connectedPlayers){
+			if( started || connectedPlayers.size() < Constants.MIN_PLAYERS || connectedPlayers.size() > Constants.MAX_PLAYERS){
+				return;
+			}
+			started = true;
+			for( PlayerConnection pc : connectedPlayers){
+				set.add( pc.getPlayer());
+			}
+		}
+		Logger.getStandardLogger().info( "Room " + roomNumber + " started with " + set.size() + " players");
+		new StartGame( set.size()).postNetworkEvent( dispatch, Constants.ALL_PLAYERS_ID);
+		if(generateAll)
+		{
+			try
+			{
+				new StateGenerator("MinimalDemo", false, GeneratorType.MINIMAL_DEMO).getGeneratedState();
+				new StateGenerator("AverageDemo", false, GeneratorType.AVERAGE_DEMO).getGeneratedState();
+				GameState state = new StateGenerator("SuperiorDemo", false, GeneratorType.SUPERIOR_DEMO).getGeneratedState();
+				new StateGenerator("Construction", false, GeneratorType.CONSTRUCTION).getGeneratedState();
+				new StateGenerator("Exploration", false, GeneratorType.EXPLORATION).getGeneratedState();
+				new StateGenerator("Movement", false, GeneratorType.MOVEMENT).getGeneratedState();
+
+				new GameStarted(demoMode, state).postInternalEvent(dispatch);
+				state.notifyClientsOfState();
+			}
+			catch (ClassNotFoundException e)
+			{
+				rejectStateFile( e);
+			}
+			catch (IOException e)
+			{
+				rejectStateFile( e);
+			}
+		}
+		else if(loadStateFile || generateStateFile)
+		{
+			try
+			{
+				GameState state = new StateGenerator(stateFileName, loadStateFile, GeneratorType.SUPERIOR_DEMO).getGeneratedState();
+				new GameStarted(demoMode, state).postInternalEvent(dispatch);
+				state.notifyClientsOfState();
+			}
+			catch (ClassNotFoundException e)
+			{
+				rejectStateFile( e);
+			}
+			catch (IOException e)
+			{
+				rejectStateFile( e);
+			}
+		}
+		else
+		{
+			new StartSetupPhaseCommand( demoMode, set).postInternalEvent( dispatch);
+		}
+	}
+
+	private void rejectStateFile( Exception e){
+		Logger.getErrorLogger().error("Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: ", e);
+		new CommandRejected(null, null, null, "Unable to " + (loadStateFile? "load" : "save") +" game state "+ (loadStateFile? "from" : "to") +" file: " + stateFileName + ", due to: " + e,null).postNetworkEvent(dispatch, Constants.ALL_PLAYERS_ID);
+	}
+
+	@Override
+	public String toString(){
+		return "Room " + roomNumber;
+	}
+}
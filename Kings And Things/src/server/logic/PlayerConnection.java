@@ -3,7 +3,10 @@ package server.logic;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.HashSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
 
+import server.event.GameStateChanged;
 import server.event.PlayerUpdated;
 import server.event.internal.ApplyHitsCommand;
 import server.event.internal.ApplyRandomEventsCommand;
@@ -35,23 +38,40 @@ import common.Constants.BuildableBuilding;
 import common.Constants.HexContentsTarget;
 import common.Logger;
 import common.network.Connection;
+import common.network.ConnectionListener;
+import common.network.NioConnection;
+import common.network.OutboundQueue;
 import common.Constants.UpdateKey;
 import common.game.Roll;
 import common.game.Player;
 import common.game.HexState;
 import common.game.PlayerInfo;
 import common.game.ITileProperties;
+import common.event.EventDispatch;
+import common.event.AbstractEvent;
 import common.event.UpdatePackage;
 import common.event.AbstractNetwrokEvent;
 
-public class PlayerConnection implements Runnable{
+public class PlayerConnection implements Runnable, ConnectionListener{
 	
 	private Player player;
 	private Connection connection;
+	private final OutboundQueue outbound;
+	private final EventDispatch dispatch;
+	private final Executor commands;
 	
-	public PlayerConnection( Player player, Connection connection){
+	/**
+	 * @param player - player represented by this connection
+	 * @param connection - established connection to the client
+	 * @param dispatch - event buses of the game room this player is seated in
+	 * @param commands - thread of the game room handling messages delivered by a NioConnection
+	 */
+	public PlayerConnection( Player player, Connection connection, EventDispatch dispatch, Executor commands){
 		this.player = player;
 		this.connection = connection;
+		this.dispatch = dispatch;
+		this.commands = commands;
+		outbound = new OutboundQueue( connection);
 		player.setConnected( true);
 	}
 	
@@ -67,10 +87,34 @@ public class PlayerConnection implements Runnable{
 		return player.getName();
 	}
 	
-	protected void setConnection( Connection connection){
+	/**
+	 * replace the connection of a returning player and send it what it missed
+	 * @param connection - new connection to the client
+	 * @param acknowledged - number of messages the client has received, negative if unknown
+	 * @return true if all missed messages were sent again, false if a snapshot is needed
+	 */
+	protected boolean setConnection( Connection connection, long acknowledged){
+		if( this.connection instanceof NioConnection){
+			//old connection must not report this player as lost once replaced
+			((NioConnection)this.connection).setListener( null);
+		}
 		this.connection.disconnect();
 		this.connection = connection;
+		boolean resumed = false;
+		try {
+			resumed = outbound.resume( connection, acknowledged);
+		} catch ( InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
 		player.setConnected( true);
+		return resumed;
+	}
+	
+	/**
+	 * @return queue of messages waiting to be sent to this player, holds backpressure statistics
+	 */
+	public OutboundQueue getOutbound(){
+		return outbound;
 	}
 	
 	@Override
@@ -107,120 +151,177 @@ public class PlayerConnection implements Runnable{
 		return false;
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public void run(){
-		final int ID = player.getID();
-		UpdatePackage event = null;
 		try {
-			while ((event = (UpdatePackage)connection.recieve())!=null){
-				Logger.getStandardLogger().info( "Received "+(player!=null?player.getID():"-1") + ": " + event);
-				switch( event.peekFirstInstruction()){
-					case Start:
-						new StartGameCommand().postInternalEvent( ID);
-						break;
-					case State: 
-						player.setIsPlaying( ((PlayerInfo)event.getData( UpdateKey.Player)).isReady());
-						new PlayerUpdated( player).postInternalEvent( ID);
-						break;
-					case HexOwnership: 
-						new GiveHexToPlayerCommand( ((HexState)event.getData( UpdateKey.HexState)).getHex()).postInternalEvent( ID);
-						break;
-					case NeedRoll: 
-						new RollDiceCommand( (Roll)event.getData( UpdateKey.Roll)).postInternalEvent( ID);
-						break;
-					case DoneRolling:
-						new DoneRollingCommand().postInternalEvent( ID);
-						break;
-					case Skip:
-						new EndPlayerTurnCommand().postInternalEvent( ID);
-						break;
-					case InitiateCombat:
-						new ResolveCombatCommand((ITileProperties) event.getData(UpdateKey.Hex)).postInternalEvent(ID);
-						break;
-					case TargetPlayer:
-						new TargetPlayerCommand((Integer) event.getData(UpdateKey.Player)).postInternalEvent(ID);
-						break;
-					case SeaHexChanged:
-						new ExchangeSeaHexCommand( (HexState) event.getData(UpdateKey.HexState)).postInternalEvent(ID);
-						break;
-					case ThingChanged:
-						new ExchangeThingsCommand((Collection<ITileProperties>) event.getData(UpdateKey.ThingArray)).postInternalEvent(ID);
-						break;
-					case ApplyHit:
-						new ApplyHitsCommand(1, (ITileProperties) event.getData(UpdateKey.ThingArray)).postInternalEvent(ID);
-						break;
-					case BribeCreature:
-						new BribeDefenderCommand(((ITileProperties[])event.getData(UpdateKey.ThingArray))[0]).postInternalEvent(ID);
-						break;
-					case Retreat:
-						new RetreatCommand((ITileProperties) event.getData(UpdateKey.Hex)).postInternalEvent(ID);
-						break;
-					case RemoveThingsFromHex:
-						HashSet<ITileProperties> thingsToRemove = new HashSet<ITileProperties>();
-						for(ITileProperties thing : (ITileProperties[]) event.getData(UpdateKey.ThingArray))
-						{
-							thingsToRemove.add(thing);
-						}
-						new RemoveThingsFromHexCommand((ITileProperties) event.getData(UpdateKey.Hex), thingsToRemove).postInternalEvent(ID);
-						break;
-					case MoveThings:
-						Collection<ITileProperties> hexes = (Collection<ITileProperties>) event.getData(UpdateKey.Hex);
-						Collection<ITileProperties> things = (Collection<ITileProperties>) event.getData(UpdateKey.ThingArray);
-						new MoveThingsCommand(things, hexes).postInternalEvent(ID);
-						break;
-					case ConstructBuilding:
-						BuildableBuilding toBuild = (BuildableBuilding) event.getData(UpdateKey.Tile);
-						ITileProperties hex = (ITileProperties) event.getData(UpdateKey.Hex);
-						new ConstructBuildingCommand(toBuild,hex).postInternalEvent(ID);
-						break;
-					case CallBluff:
-						ITileProperties thing = (ITileProperties) event.getData(UpdateKey.ThingArray);
-						new CallBluffCommand(thing).postInternalEvent(ID);
-						break;
-					case ViewContents:
-						new ViewHexContentsCommand((ITileProperties) event.getData(UpdateKey.Hex), (HexContentsTarget) event.getData(UpdateKey.Category)).postInternalEvent(ID);
-						break;
-					case PlaceBoard:
-						new PlaceThingOnBoardCommand((ITileProperties) event.getData(UpdateKey.Tile), (ITileProperties) event.getData(UpdateKey.Hex)).postInternalEvent(ID);
-						break;
-					case PlayTreasure:
-						new PlayTreasureCommand((ITileProperties)event.getData(UpdateKey.Tile)).postInternalEvent(ID);
-						break;
-					case GetHeroes:
-						new GetAvailableHeroesCommand().postInternalEvent(ID);
-						break;
-					case BribeHero:
-						ITileProperties target = (ITileProperties) event.getData(UpdateKey.Tile);
-						int goldAmount = (Integer) event.getData(UpdateKey.Gold);
-						new ModifyRollForSpecialCharacterCommand(goldAmount,target).postInternalEvent(ID);
-						break;
-					case ExchangeThings:
-						Collection<ITileProperties> thingsToExchange = (Collection<ITileProperties>) event.getData(UpdateKey.ThingArray);
-						new ExchangeThingsCommand(thingsToExchange).postInternalEvent(ID);
-						break;
-					case RecruitThings:
-						Collection<ITileProperties> thingsToTrade = (Collection<ITileProperties>) event.getData(UpdateKey.ThingArray);
-						int gold = (Integer) event.getData(UpdateKey.Gold);
-						new RecruitThingsCommand(gold,thingsToTrade).postInternalEvent(ID);
-						break;
-					case RandomEvent:
-						ITileProperties randomEvent = (ITileProperties) event.getData(UpdateKey.Tile);
-						new ApplyRandomEventsCommand(randomEvent, null).postInternalEvent(ID);
-						break;
-					default:
-						throw new IllegalStateException("Error - no support for: " + event.peekFirstInstruction());
-				}
+			AbstractEvent event = null;
+			while ((event = connection.recieve())!=null){
+				handle( event);
 			}
 		} catch ( ClassNotFoundException e) {
 				Logger.getStandardLogger().warn( e);
 		} catch ( IOException e) {
 			Logger.getStandardLogger().warn( e);
 		}
+		connectionLost();
+	}
+	
+	/**
+	 * called by NioConnection on its I/O thread, the message is handled on the room's
+	 * command thread, so handlers never hold up the other connections of the I/O thread
+	 */
+	@Override
+	public void messageReceived( final AbstractEvent received){
+		onCommandThread( new Runnable(){
+			@Override
+			public void run() {
+				try{
+					handle( received);
+				}catch( RuntimeException e){
+					Logger.getErrorLogger().error( "Error - unable to handle " + received + ": ", e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * post the command matching the first instruction of a message from the client
+	 * on the room's event buses, called by run() or on the room's command thread
+	 */
+	@SuppressWarnings("unchecked")
+	private void handle( AbstractEvent received){
+		final int ID = player.getID();
+		UpdatePackage event = (UpdatePackage)received;
+		Logger.getStandardLogger().info( "Received "+(player!=null?player.getID():"-1") + ": " + event);
+		switch( event.peekFirstInstruction()){
+			case Start:
+				new StartGameCommand().postInternalEvent( dispatch, ID);
+				break;
+			case State: 
+				player.setIsPlaying( ((PlayerInfo)event.getData( UpdateKey.Player)).isReady());
+				new PlayerUpdated( player).postInternalEvent( dispatch, ID);
+				break;
+			case HexOwnership: 
+				new GiveHexToPlayerCommand( ((HexState)event.getData( UpdateKey.HexState)).getHex()).postInternalEvent( dispatch, ID);
+				break;
+			case NeedRoll: 
+				new RollDiceCommand( (Roll)event.getData( UpdateKey.Roll)).postInternalEvent( dispatch, ID);
+				break;
+			case DoneRolling:
+				new DoneRollingCommand().postInternalEvent( dispatch, ID);
+				break;
+			case NeedState:
+				//client missed a state update, its deltas no longer apply
+				new GameStateChanged( ID, true).postInternalEvent( dispatch);
+				break;
+			case Skip:
+				new EndPlayerTurnCommand().postInternalEvent( dispatch, ID);
+				break;
+			case InitiateCombat:
+				new ResolveCombatCommand((ITileProperties) event.getData(UpdateKey.Hex)).postInternalEvent(dispatch, ID);
+				break;
+			case TargetPlayer:
+				new TargetPlayerCommand((Integer) event.getData(UpdateKey.Player)).postInternalEvent(dispatch, ID);
+				break;
+			case SeaHexChanged:
+				new ExchangeSeaHexCommand( (HexState) event.getData(UpdateKey.HexState)).postInternalEvent(dispatch, ID);
+				break;
+			case ThingChanged:
+				new ExchangeThingsCommand((Collection<ITileProperties>) event.getData(UpdateKey.ThingArray)).postInternalEvent(dispatch, ID);
+				break;
+			case ApplyHit:
+				new ApplyHitsCommand(1, (ITileProperties) event.getData(UpdateKey.ThingArray)).postInternalEvent(dispatch, ID);
+				break;
+			case BribeCreature:
+				new BribeDefenderCommand(((ITileProperties[])event.getData(UpdateKey.ThingArray))[0]).postInternalEvent(dispatch, ID);
+				break;
+			case Retreat:
+				new RetreatCommand((ITileProperties) event.getData(UpdateKey.Hex)).postInternalEvent(dispatch, ID);
+				break;
+			case RemoveThingsFromHex:
+				HashSet<ITileProperties> thingsToRemove = new HashSet<ITileProperties>();
+				for(ITileProperties thing : (ITileProperties[]) event.getData(UpdateKey.ThingArray))
+				{
+					thingsToRemove.add(thing);
+				}
+				new RemoveThingsFromHexCommand((ITileProperties) event.getData(UpdateKey.Hex), thingsToRemove).postInternalEvent(dispatch, ID);
+				break;
+			case MoveThings:
+				Collection<ITileProperties> hexes = (Collection<ITileProperties>) event.getData(UpdateKey.Hex);
+				Collection<ITileProperties> things = (Collection<ITileProperties>) event.getData(UpdateKey.ThingArray);
+				new MoveThingsCommand(things, hexes).postInternalEvent(dispatch, ID);
+				break;
+			case ConstructBuilding:
+				BuildableBuilding toBuild = (BuildableBuilding) event.getData(UpdateKey.Tile);
+				ITileProperties hex = (ITileProperties) event.getData(UpdateKey.Hex);
+				new ConstructBuildingCommand(toBuild,hex).postInternalEvent(dispatch, ID);
+				break;
+			case CallBluff:
+				ITileProperties thing = (ITileProperties) event.getData(UpdateKey.ThingArray);
+				new CallBluffCommand(thing).postInternalEvent(dispatch, ID);
+				break;
+			case ViewContents:
+				new ViewHexContentsCommand((ITileProperties) event.getData(UpdateKey.Hex), (HexContentsTarget) event.getData(UpdateKey.Category)).postInternalEvent(dispatch, ID);
+				break;
+			case PlaceBoard:
+				new PlaceThingOnBoardCommand((ITileProperties) event.getData(UpdateKey.Tile), (ITileProperties) event.getData(UpdateKey.Hex)).postInternalEvent(dispatch, ID);
+				break;
+			case PlayTreasure:
+				new PlayTreasureCommand((ITileProperties)event.getData(UpdateKey.Tile)).postInternalEvent(dispatch, ID);
+				break;
+			case GetHeroes:
+				new GetAvailableHeroesCommand().postInternalEvent(dispatch, ID);
+				break;
+			case BribeHero:
+				ITileProperties target = (ITileProperties) event.getData(UpdateKey.Tile);
+				int goldAmount = (Integer) event.getData(UpdateKey.Gold);
+				new ModifyRollForSpecialCharacterCommand(goldAmount,target).postInternalEvent(dispatch, ID);
+				break;
+			case ExchangeThings:
+				Collection<ITileProperties> thingsToExchange = (Collection<ITileProperties>) event.getData(UpdateKey.ThingArray);
+				new ExchangeThingsCommand(thingsToExchange).postInternalEvent(dispatch, ID);
+				break;
+			case RecruitThings:
+				Collection<ITileProperties> thingsToTrade = (Collection<ITileProperties>) event.getData(UpdateKey.ThingArray);
+				int gold = (Integer) event.getData(UpdateKey.Gold);
+				new RecruitThingsCommand(gold,thingsToTrade).postInternalEvent(dispatch, ID);
+				break;
+			case RandomEvent:
+				ITileProperties randomEvent = (ITileProperties) event.getData(UpdateKey.Tile);
+				new ApplyRandomEventsCommand(randomEvent, null).postInternalEvent(dispatch, ID);
+				break;
+			default:
+				throw new IllegalStateException("Error - no support for: " + event.peekFirstInstruction());
+		}
+	}
+	
+	@Override
+	public void connectionClosed( IOException cause){
+		if( cause!=null){
+			Logger.getStandardLogger().warn( cause);
+		}
+		//after the messages received before the close
+		onCommandThread( new Runnable(){
+			@Override
+			public void run() {
+				connectionLost();
+			}
+		});
+	}
+	
+	private void onCommandThread( Runnable task){
+		try{
+			commands.execute( task);
+		}catch( RejectedExecutionException e){
+			Logger.getStandardLogger().warn( player + " sent a message after its room was closed");
+		}
+	}
+	
+	private void connectionLost(){
 		player.setIsPlaying(false);
 		player.setConnected( false);
-		new PlayerUpdated( player).postInternalEvent( ID);
-		Logger.getStandardLogger().warn( player + " lost connection");
+		new PlayerUpdated( player).postInternalEvent( dispatch, player.getID());
+		Logger.getStandardLogger().warn( player + " lost connection, outbound " + outbound);
 	}
 	
 	@Subscribe
@@ -228,11 +329,8 @@ public class PlayerConnection implements Runnable{
 		if( !event.isValidID( player.getPlayerInfo())){
 			return;
 		}
-		try {
-			connection.send( event);
-		} catch ( IOException e) {
-			Logger.getErrorLogger().warn( "Error - ", e);
-		}
+		//sent by a writer of the queue, so a slow client never blocks the game
+		outbound.offer( event);
 		Logger.getStandardLogger().info( "Sent" + (player!=null?player.getID():"-1") + ": " + event);
 	}
 
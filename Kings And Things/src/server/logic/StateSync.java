@@ -0,0 +1,220 @@
+package server.logic;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map.Entry;
+
+import server.logic.game.GameState;
+
+import common.Constants.CombatPhase;
+import common.Constants.RegularPhase;
+import common.Constants.SetupPhase;
+import common.event.AbstractNetwrokEvent;
+import common.event.network.GameStateDelta;
+import common.event.network.GameStateProgress;
+import common.game.HexState;
+import common.game.ITileProperties;
+import common.game.Player;
+import common.game.PlayerInfo;
+
+/**
+ * remembers for every client of a game room the version of the state it was sent last,
+ * and brings it up to date with only the hexes, players, rack, special characters and
+ * phases changed since.
+ * a client without a known version, because it just joined or reconnected, receives a
+ * full GameStateProgress instead. messages of a connection arrive in order, so a version
+ * sent on the current connection is considered acknowledged, forget() must be called
+ * whenever the connection of a client is replaced or lost. a delta carries copies of the
+ * hexes, players, rack and special characters, taken when it is built, never the live
+ * game objects.
+ */
+class StateSync {
+
+	private final HashMap< Integer, View> views;
+	private long version = 0;
+
+	StateSync(){
+		views = new HashMap< Integer, View>();
+	}
+
+	/**
+	 * next update of the client will be a full snapshot
+	 * @param ID - player whose connection changed
+	 */
+	synchronized void forget( final int ID){
+		views.remove( ID);
+	}
+
+	/**
+	 * compare state with the version last sent to player and describe the difference
+	 * @param state - current state of the game
+	 * @param ID - receiving player
+	 * @return GameStateProgress for a player without known version, GameStateDelta otherwise,
+	 * or null if nothing changed
+	 */
+	synchronized AbstractNetwrokEvent update( GameState state, final int ID){
+		View current = new View( state, ID);
+		View sent = views.put( ID, current);
+		if( sent==null){
+			GameStateProgress progress = state.createProgress( ID);
+			progress.setVersion( current.version);
+			return progress;
+		}
+		GameStateDelta delta = new GameStateDelta( sent.version, current.version);
+		boolean phaseChanged = sent.setup!=current.setup || sent.regular!=current.regular || sent.combat!=current.combat;
+		delta.setPhases( current.setup, current.regular, current.combat, phaseChanged);
+		delta.setFlipped( current.flipped && !sent.flipped);
+		ArrayList< HexState> hexes = new ArrayList< HexState>();
+		for( int i=0; i<current.hexes.length; i++){
+			if( i>=sent.hexes.length || !current.hexes[i].equals( sent.hexes[i])){
+				hexes.add( current.hexes[i].hex.clone());
+			}
+		}
+		if( !hexes.isEmpty()){
+			delta.setHexes( hexes.toArray( new HexState[ hexes.size()]));
+		}
+		if( !current.players.equals( sent.players)){
+			PlayerInfo[] players = state.getPlayerInfoArray();
+			for( int i=0; i<players.length; i++){
+				players[i] = players[i].clone();
+			}
+			delta.setPlayers( players);
+		}
+		if( !same( current.rack, sent.rack)){
+			ITileProperties[] rack = new ITileProperties[ current.rack.size()];
+			int index = 0;
+			for( ITileProperties thing : current.rack.keySet()){
+				rack[index++] = thing.clone();
+			}
+			delta.setRack( rack);
+		}
+		if( !same( current.special, sent.special)){
+			ITileProperties[] special = new ITileProperties[ current.special.size()];
+			int index = 0;
+			for( ITileProperties hero : current.special.keySet()){
+				special[index++] = hero.clone();
+			}
+			delta.setSpecial( special);
+		}
+		if( delta.isEmpty()){
+			//client already has this state, keep its version
+			views.put( ID, sent);
+			return null;
+		}
+		return delta;
+	}
+
+	/**
+	 * things in a hex or on a rack compared by identity, with their changeable values
+	 */
+	private static IdentityHashMap< ITileProperties, Long> things( Collection<ITileProperties> tiles){
+		IdentityHashMap< ITileProperties, Long> things = new IdentityHashMap< ITileProperties, Long>( tiles.size());
+		for( ITileProperties tile : tiles){
+			things.put( tile, values( tile));
+		}
+		return things;
+	}
+
+	/**
+	 * IdentityHashMap.equals() compares values by reference, boxed values must be compared by equals()
+	 */
+	private static boolean same( IdentityHashMap< ITileProperties, Long> things, IdentityHashMap< ITileProperties, Long> other){
+		if( things.size()!=other.size()){
+			return false;
+		}
+		for( Entry< ITileProperties, Long> thing : things.entrySet()){
+			if( !thing.getValue().equals( other.get( thing.getKey()))){
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static long values( ITileProperties tile){
+		return ((long)tile.getValue()<<32) | ((tile.getMoveSpeed() & 0x7FFFFFFFL)<<1) | (tile.isFaceUp()? 1 : 0);
+	}
+
+	/**
+	 * what one client was sent, copied from the live state since it keeps changing
+	 */
+	private final class View{
+
+		private final long version;
+		private final SetupPhase setup;
+		private final RegularPhase regular;
+		private final CombatPhase combat;
+		private final boolean flipped;
+		private final HexView[] hexes;
+		private final HashMap< Integer, ArrayList< Object>> players;
+		private final IdentityHashMap< ITileProperties, Long> rack;
+		private final IdentityHashMap< ITileProperties, Long> special;
+
+		private View( GameState state, final int ID){
+			version = ++StateSync.this.version;
+			setup = state.getCurrentSetupPhase();
+			regular = state.getCurrentRegularPhase();
+			combat = state.getCurrentCombatPhase();
+			flipped = state.isBoardFlipped();
+			HexState[] board = new HexState[ state.getBoard().getBoardSize()];
+			state.getBoard().fillArray( board);
+			hexes = new HexView[ board.length];
+			for( int i=0; i<board.length; i++){
+				hexes[i] = new HexView( board[i]);
+			}
+			players = new HashMap< Integer, ArrayList< Object>>();
+			IdentityHashMap< ITileProperties, Long> tray = null;
+			for( Player player : state.getPlayers()){
+				PlayerInfo info = player.getPlayerInfo();
+				ArrayList< Object> values = new ArrayList< Object>( 6);
+				values.add( info.getGold());
+				values.add( info.getCradsOnRack());
+				values.add( info.isReady());
+				values.add( info.isConnected());
+				values.add( info.isActive());
+				values.add( info.hasStartPoint()? info.getStart() : null);
+				players.put( player.getID(), values);
+				if( player.getID()==ID){
+					tray = things( player.getTrayThings());
+				}
+			}
+			rack = tray!=null? tray : new IdentityHashMap< ITileProperties, Long>();
+			special = things( state.getBankHeroes().getAvailableHeroes());
+		}
+	}
+
+	private static final class HexView{
+
+		private final HexState hex;
+		private final ITileProperties tile;
+		private final boolean faceUp;
+		private final ITileProperties marker;
+		private final boolean inBattle;
+		private final IdentityHashMap< ITileProperties, Long> things;
+
+		private HexView( HexState hex){
+			this.hex = hex;
+			tile = hex.getHex();
+			faceUp = tile!=null && tile.isFaceUp();
+			marker = hex.getMarker();
+			inBattle = hex.isInBattle();
+			things = things( hex.getThingsInHex());
+		}
+
+		@Override
+		public boolean equals( Object other){
+			if( !(other instanceof HexView)){
+				return false;
+			}
+			HexView view = (HexView)other;
+			return hex==view.hex && tile==view.tile && faceUp==view.faceUp && marker==view.marker
+					&& inBattle==view.inBattle && same( things, view.things);
+		}
+
+		@Override
+		public int hashCode(){
+			return System.identityHashCode( hex);
+		}
+	}
+}
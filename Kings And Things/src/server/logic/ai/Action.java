@@ -1,18 +1,35 @@
 package server.logic.ai;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import common.event.AbstractInternalEvent;
 
-public class Action
+/**
+ * a command a player may send, actions are ordered by when they were made, which is the order
+ * they were listed in for their position, so a search drawing from a seeded generator goes
+ * through the children of a position in the same order every time it is run
+ */
+public class Action implements Comparable<Action>
 {
+	private static final AtomicLong counter = new AtomicLong();
+
 	private final AbstractInternalEvent command;
+	private final long sequence;
 	
 	public Action(AbstractInternalEvent command)
 	{
 		this.command = command;
+		sequence = counter.getAndIncrement();
 	}
 	
 	public AbstractInternalEvent getCommand()
 	{
 		return command;
 	}
+
+	@Override
+	public int compareTo(Action other)
+	{
+		return Long.compare(sequence, other.sequence);
+	}
 }
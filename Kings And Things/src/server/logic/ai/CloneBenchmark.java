@@ -0,0 +1,283 @@
+package server.logic.ai;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+
+import org.apache.log4j.Level;
+
+import server.logic.exceptions.NoMoreTilesException;
+import server.logic.game.GameState;
+import server.logic.game.StateGenerator;
+import server.logic.game.StateGenerator.GeneratorType;
+
+import common.Constants;
+import common.Constants.CombatPhase;
+import common.Constants.RegularPhase;
+import common.Constants.SetupPhase;
+import common.game.HexState;
+import common.game.ITileProperties;
+import common.game.LoadResources;
+import common.game.Player;
+import common.game.PlayerInfo;
+
+/**
+ * measures the cost of GameState.clone(), which the search pays at least once per playout,
+ * and of each of its parts, against the size of the board: 19 hexes for two or three players
+ * and 37 hexes for four, every hex holding a few creatures drawn from the cup, and the
+ * superior demo position the search is usually measured on.
+ * <p>
+ * every measurement is the best of several rounds after a warm up, with the bytes the
+ * calling thread allocated per clone when the JVM counts them. the heap a copy of the state
+ * keeps is measured by holding a number of copies across garbage collections, it is what
+ * sharing tile definitions between copies of a tile saves, see TileDefinition.
+ * <p>
+ * usage: CloneBenchmark [-clones n] [-rounds n] [-things n] [-copies n]
+ */
+public final class CloneBenchmark
+{
+	private static final int WARM_UP_ROUNDS = 5;
+
+	private final int numClones;
+	private final int numRounds;
+	private final int numCopies;
+	private final ThreadMXBean threads;
+
+	CloneBenchmark(int numClones, int numRounds, int numCopies)
+	{
+		if(numClones <= 0 || numRounds <= 0 || numCopies <= 0)
+		{
+			throw new IllegalArgumentException("Number of clones, rounds and copies must be positive none zero integers");
+		}
+		this.numClones = numClones;
+		this.numRounds = numRounds;
+		this.numCopies = numCopies;
+		threads = ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * @return state of a game of numPlayers after setup, with thingsPerHex creatures in every hex
+	 */
+	static GameState createState(int numPlayers, int thingsPerHex) throws NoMoreTilesException
+	{
+		LinkedHashSet<Player> players = new LinkedHashSet<Player>();
+		ArrayList<Integer> playerOrder = new ArrayList<Integer>();
+		int ID = Constants.PLAYER_1_ID;
+		for(int i=0; i<numPlayers; i++)
+		{
+			players.add(new Player(new PlayerInfo("Player " + (i + 1), ID, true)));
+			playerOrder.add(ID);
+			ID *= Constants.PLAYER_ID_MULTIPLIER;
+		}
+		GameState state = new GameState(false, players, playerOrder, SetupPhase.SETUP_FINISHED, RegularPhase.RECRUITING_CHARACTERS,
+				Constants.PLAYER_1_ID, Constants.PLAYER_1_ID, CombatPhase.NO_COMBAT, 0, null);
+		for(HexState hex : state.getBoard().getHexesAsList())
+		{
+			int placed = 0;
+			while(placed < thingsPerHex)
+			{
+				ITileProperties thing = state.getCup().drawTile();
+				if(thing.isCreature())
+				{
+					hex.addThingToHex(thing);
+					placed++;
+				}
+			}
+		}
+		return state;
+	}
+
+	/**
+	 * clone state and each of its parts, and print the cost of every one
+	 */
+	void measure(String name, final GameState state)
+	{
+		System.out.println(String.format(Locale.ROOT, "%s, %d hexes", name, state.getBoard().getHexesAsList().size()));
+		measure("GameState", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				state.clone();
+			}
+		});
+		measure("board", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				state.getBoard().clone();
+			}
+		});
+		measure("cup", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				state.getCup().clone();
+			}
+		});
+		measure("bank", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				state.getBank().clone();
+			}
+		});
+		measure("board generator", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				state.getBoardGenerator().clone();
+			}
+		});
+		measure("bank heroes", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				state.getBankHeroes().clone();
+			}
+		});
+		measure("players", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				for(Player p : state.getPlayers())
+				{
+					p.clone();
+				}
+			}
+		});
+		final ITileProperties hex = state.getBoard().getHexesAsList().get(0).getHex();
+		measure("hex tile", new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				hex.clone();
+			}
+		});
+		measureRetained(state);
+	}
+
+	/**
+	 * print the heap kept by one copy of state, as long as the copy is referenced
+	 */
+	private void measureRetained(GameState state)
+	{
+		GameState[] copies = new GameState[numCopies];
+		long before = getUsedHeap();
+		for(int i=0; i<numCopies; i++)
+		{
+			copies[i] = state.clone();
+		}
+		long after = getUsedHeap();
+		System.out.println(String.format(Locale.ROOT, "  %-16s %10d bytes kept per copy, %d tiles", "retained",
+				(after - before) / copies.length, countTiles(copies[0])));
+	}
+
+	/**
+	 * @return hexes and things on the board, in trays and in hands
+	 */
+	private static int countTiles(GameState state)
+	{
+		int tiles = 0;
+		for(HexState hex : state.getBoard().getHexesAsList())
+		{
+			tiles += 1 + hex.getThingsInHex().size();
+		}
+		for(Player p : state.getPlayers())
+		{
+			tiles += p.getTrayThings().size() + p.getCardsInHand().size();
+		}
+		return tiles;
+	}
+
+	/**
+	 * @return bytes in use on the heap once garbage has been collected, as far as the JVM allows
+	 */
+	private static long getUsedHeap()
+	{
+		Runtime runtime = Runtime.getRuntime();
+		for(int i=0; i<4; i++)
+		{
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	private void measure(String part, Runnable clone)
+	{
+		for(int i=0; i<WARM_UP_ROUNDS; i++)
+		{
+			repeat(clone);
+		}
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = -1;
+		for(int i=0; i<numRounds; i++)
+		{
+			long allocatedBefore = getAllocatedBytes();
+			long start = System.nanoTime();
+			repeat(clone);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			long allocatedAfter = getAllocatedBytes();
+			bytes = allocatedBefore < 0? -1 : (allocatedAfter - allocatedBefore) / numClones;
+		}
+		System.out.println(String.format(Locale.ROOT, "  %-16s %10.2f us %10d bytes", part, bestNanos / 1000.0 / numClones, bytes));
+	}
+
+	private void repeat(Runnable clone)
+	{
+		for(int i=0; i<numClones; i++)
+		{
+			clone.run();
+		}
+	}
+
+	/**
+	 * @return bytes allocated by the calling thread so far, -1 if the JVM does not count them
+	 */
+	private long getAllocatedBytes()
+	{
+		if(threads instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int numClones = 20000;
+		int numRounds = 5;
+		int thingsPerHex = 3;
+		int numCopies = 500;
+		for(int i=0; i<args.length; i++)
+		{
+			if(args[i].equals("-clones")){
+				numClones = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-rounds")){
+				numRounds = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-things")){
+				thingsPerHex = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-copies")){
+				numCopies = Integer.parseInt(args[++i]);
+			}else{
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		org.apache.log4j.Logger.getRootLogger().setLevel(Level.OFF);
+		new LoadResources(false).run();
+		CloneBenchmark benchmark = new CloneBenchmark(numClones, numRounds, numCopies);
+		System.out.println(String.format(Locale.ROOT, "%d clones per round, best of %d rounds, %d creatures per hex", numClones, numRounds, thingsPerHex));
+		benchmark.measure("2 players", createState(2, thingsPerHex));
+		benchmark.measure("4 players", createState(4, thingsPerHex));
+		benchmark.measure("superior demo", new StateGenerator("SuperiorDemo", true, GeneratorType.SUPERIOR_DEMO).getGeneratedState());
+	}
+}
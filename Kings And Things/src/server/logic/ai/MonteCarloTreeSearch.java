@@ -1,103 +1,734 @@
 package server.logic.ai;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Random;
+import java.util.Set;
 import java.util.Map.Entry;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
+import server.logic.ai.SearchResult.MoveStatistics;
 import server.logic.game.GameState;
+import common.Constants;
+import common.event.EventDispatch;
 import common.game.Player;
 
 public class MonteCarloTreeSearch extends Thread
 {
-	private Node root;
-	private volatile Node latestPosition;
+	/**
+	 * how the search is shared between threads
+	 */
+	public enum Parallelism
+	{
+		/** every thread searches a tree of its own, their playouts are summed when choosing a move */
+		ROOT,
+		/** all threads search one tree, using virtual losses to spread over different nodes */
+		TREE
+	}
+
+	/** how many moves after the searched position a position is looked for to reuse its subtree */
+	private static final int MAX_REUSE_DEPTH = 4;
+	/** how many searched positions are compared at most when looking for one to reuse */
+	private static final int MAX_REUSE_CANDIDATES = 4096;
+	/** how many random actions are played at most in one playout */
+	private static final int MAX_PLAYOUT_LENGTH = 200;
+	/** result of a playout stopped by the end of the search */
+	private static final int ABANDONED = 0;
+	/** memory taken by the transposition tables of a search unless told otherwise */
+	public static final long DEFAULT_TRANSPOSITION_TABLE_BYTES = 16L * 1024 * 1024;
+
+	private volatile Node[] roots;
+	private final TranspositionTable[] tables;
 	private final boolean isDemoMode;
-	private final HashSet<Node> seen;
-	
+	private final int numThreads;
+	private final Parallelism parallelism;
+
+	/**
+	 * search a single tree with one thread per available processor
+	 */
 	public MonteCarloTreeSearch(boolean demoMode, GameState game)
 	{
-		root = new Node(game,null);
-		latestPosition = root;
+		this(demoMode, game, Runtime.getRuntime().availableProcessors(), Parallelism.TREE);
+	}
+
+	/**
+	 * @param numThreads - number of threads searching, including this one
+	 * @param parallelism - how the search is shared when numThreads is more than one
+	 */
+	public MonteCarloTreeSearch(boolean demoMode, GameState game, int numThreads, Parallelism parallelism)
+	{
+		this(demoMode, game, numThreads, parallelism, DEFAULT_TRANSPOSITION_TABLE_BYTES);
+	}
+
+	/**
+	 * @param numThreads - number of threads searching, including this one
+	 * @param parallelism - how the search is shared when numThreads is more than one
+	 * @param transpositionTableBytes - memory the transposition tables may take, split between
+	 * the trees of root parallelism, the nodes found through the tables are not counted
+	 */
+	public MonteCarloTreeSearch(boolean demoMode, GameState game, int numThreads, Parallelism parallelism, long transpositionTableBytes)
+	{
+		if(numThreads<=0)
+		{
+			throw new IllegalArgumentException("Number of threads must be a positive none zero integer");
+		}
+		if(transpositionTableBytes<0)
+		{
+			throw new IllegalArgumentException("Memory of the transposition tables must not be negative");
+		}
 		isDemoMode = demoMode;
-		seen = new HashSet<Node>();
-		seen.add(root);
+		this.numThreads = numThreads;
+		this.parallelism = parallelism;
+		tables = new TranspositionTable[parallelism == Parallelism.ROOT? numThreads : 1];
+		for(int i=0; i<tables.length; i++)
+		{
+			tables[i] = new TranspositionTable(transpositionTableBytes / tables.length);
+		}
+		roots = createRoots(game);
 	}
-	
+
+	/**
+	 * search the current position until interrupted
+	 */
 	@Override
 	public void run()
 	{
-		while(!Thread.currentThread().isInterrupted())
+		searchWithin(new Budget(false, 0, Long.MAX_VALUE));
+	}
+
+	/**
+	 * search from state until time runs out, the calling thread takes part in the search
+	 * @param time - how long to search, a playout still running at the end is abandoned
+	 * @param unit - unit of time
+	 * @return best action and statistics of the search
+	 */
+	public synchronized SearchResult search(GameState state, long time, TimeUnit unit)
+	{
+		roots = findRoots(null, state);
+		return searchWithin(new Budget(true, System.nanoTime() + unit.toNanos(time), Long.MAX_VALUE));
+	}
+
+	/**
+	 * search from state until maxPlayouts playouts are finished, the calling thread takes part in the search
+	 * @param maxPlayouts - number of playouts started by all threads together
+	 * @return best action and statistics of the search
+	 */
+	public synchronized SearchResult search(GameState state, long maxPlayouts)
+	{
+		roots = findRoots(null, state);
+		return searchWithin(new Budget(false, 0, maxPlayouts));
+	}
+
+	private SearchResult searchWithin(final Budget budget)
+	{
+		long start = System.nanoTime();
+		long numPlayoutsBefore = getNumPlayouts();
+		Thread[] helpers = new Thread[numThreads-1];
+		for(int i=0; i<helpers.length; i++)
 		{
-			Node nextNode = latestPosition;
-			while(nextNode.getState().getWinningPlayer() == null)
+			final int tree = i+1;
+			//helpers draw from generators seeded by the calling thread, so a seeded search varies only with the scheduling of its threads
+			final long seed = Constants.getRandom().nextLong();
+			helpers[i] = new Thread(getName() + "-" + tree)
 			{
-				if(nextNode.getChildren().size() == 0)
+				@Override
+				public void run()
 				{
-					expandNode(nextNode);
-					if(nextNode.getChildren().size() == 0)
-					{
-						break;
-					}
+					Constants.bindRandomToCurrentThread(new Random(seed));
+					search(tree, budget);
+				}
+			};
+			helpers[i].setDaemon(true);
+			helpers[i].start();
+		}
+		search(0, budget);
+		boolean interrupted = Thread.interrupted();
+		if(interrupted)
+		{
+			//only the deadline or an interrupt abandons playouts, the helpers find the deadline themselves
+			budget.stop();
+		}
+		for(Thread helper : helpers)
+		{
+			while(helper.isAlive())
+			{
+				try
+				{
+					//playouts started within a count budget are finished and recorded
+					helper.join();
 				}
-				ArrayList<Node> childrenToChooseFrom = new ArrayList<Node>();
-				double highestUCTValue = Double.MIN_VALUE;
-				for(Entry<Action,Node> child : nextNode.getChildren().entrySet())
+				catch(InterruptedException e)
 				{
-					double myUCTValue = child.getValue().calculateUpperConfidenceBound(child.getKey().getCommand().getID());
-					if(myUCTValue == highestUCTValue)
-					{
-						childrenToChooseFrom.add(child.getValue());
-					}
-					else if(myUCTValue > highestUCTValue)
-					{
-						childrenToChooseFrom = new ArrayList<Node>();
-						childrenToChooseFrom.add(child.getValue());
-						highestUCTValue = myUCTValue;
-					}
+					interrupted = true;
+					budget.stop();
 				}
-				int nextChildIndex = ThreadLocalRandom.current().nextInt(childrenToChooseFrom.size());
-				nextNode = childrenToChooseFrom.get(nextChildIndex);
 			}
-			
-			Player winningPlayer = nextNode.getState().getWinningPlayer();
-			nextNode.recordWinFor(winningPlayer==null? -1 : winningPlayer.getID());
 		}
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+		return createResult(getNumPlayouts() - numPlayoutsBefore, System.nanoTime() - start);
 	}
-	
-	public void updateCurrentGameState(GameState currentState)
+
+	private void search(int thread, Budget budget)
 	{
-		latestPosition = new Node(currentState,null);
+		//commands applied by the search must not reach any game room
+		Simulator simulator = new Simulator(isDemoMode);
+		EventDispatch previous = simulator.bind();
+		try
+		{
+			while(budget.startPlayout())
+			{
+				Node[] trees = roots;
+				playout(trees[thread % trees.length], tables[thread % tables.length], budget, simulator);
+			}
+		}
+		finally
+		{
+			EventDispatch.bindToCurrentThread(previous);
+		}
 	}
-	
+
+	/**
+	 * one iteration of the search, select a node by UCT down the tree, expand it by one
+	 * untried action, play randomly from there to the end of the game and record the result
+	 * on every node on the way back to the root. selection stops at a position already on
+	 * the path, which transpositions can lead back to. a new position is played out before
+	 * other threads can see it and rolled back to become the child, so it is copied only once
+	 */
+	private void playout(Node root, TranspositionTable table, Budget budget, Simulator simulator)
+	{
+		boolean useVirtualLoss = parallelism == Parallelism.TREE && numThreads > 1;
+		ArrayList<Node> path = new ArrayList<Node>();
+		path.add(root);
+		try
+		{
+			Node nextNode = root;
+			boolean isRepeated = false;
+			while(!isRepeated && nextNode.isFullyExpanded() && nextNode.getChildren().size() > 0 && nextNode.getState().getWinningPlayer() == null)
+			{
+				nextNode = select(nextNode);
+				isRepeated = path.contains(nextNode);
+				visit(nextNode, path, useVirtualLoss && !isRepeated);
+			}
+			Expansion expansion = null;
+			if(!isRepeated && nextNode.getState().getWinningPlayer() == null)
+			{
+				expansion = expand(nextNode, simulator, budget);
+			}
+			int winner;
+			if(expansion != null)
+			{
+				winner = simulate(expansion.state, simulator, budget);
+				visit(addChild(nextNode, expansion, table), path, useVirtualLoss);
+			}
+			else
+			{
+				//the positions of nodes are read by other threads
+				winner = simulate(nextNode.getState().clone(), simulator, budget);
+			}
+			if(winner != ABANDONED)
+			{
+				for(Node n : path)
+				{
+					n.recordWinFor(winner);
+				}
+			}
+		}
+		finally
+		{
+			if(useVirtualLoss)
+			{
+				for(Node n : path.subList(1, path.size()))
+				{
+					n.removeVirtualLoss();
+				}
+			}
+		}
+	}
+
+	/**
+	 * add n to the nodes of a playout, a node repeated on the path is not added again
+	 */
+	private static void visit(Node n, ArrayList<Node> path, boolean addVirtualLoss)
+	{
+		if(!path.contains(n))
+		{
+			path.add(n);
+			if(addVirtualLoss)
+			{
+				n.addVirtualLoss();
+			}
+		}
+	}
+
+	private Node select(Node n)
+	{
+		ArrayList<Node> childrenToChooseFrom = new ArrayList<Node>();
+		double highestUCTValue = Double.NEGATIVE_INFINITY;
+		long numVisits = n.getNumVisits();
+		for(Entry<Action,Node> child : n.getChildren().entrySet())
+		{
+			double myUCTValue = child.getValue().calculateUpperConfidenceBound(child.getKey().getCommand().getID(), numVisits);
+			if(myUCTValue == highestUCTValue)
+			{
+				childrenToChooseFrom.add(child.getValue());
+			}
+			else if(myUCTValue > highestUCTValue)
+			{
+				childrenToChooseFrom = new ArrayList<Node>();
+				childrenToChooseFrom.add(child.getValue());
+				highestUCTValue = myUCTValue;
+			}
+		}
+		return childrenToChooseFrom.get(Constants.getRandom().nextInt(childrenToChooseFrom.size()));
+	}
+
+	/**
+	 * apply the next untried action of n that is valid to a copy of the position of n,
+	 * a rejected action leaves the copy as it was, so it is used for the next action
+	 * @return the action and its outcome, or null if every action of n was tried
+	 */
+	private Expansion expand(Node n, Simulator simulator, Budget budget)
+	{
+		GameState nextState = null;
+		for(Action a = n.takeUntriedAction(); a != null && !budget.isExhausted(); a = n.takeUntriedAction())
+		{
+			if(nextState == null)
+			{
+				nextState = n.getState().clone();
+			}
+			if(simulator.apply(a, nextState))
+			{
+				return new Expansion(a, nextState);
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * add the outcome of expansion as a child of n, the child is the node of its position
+	 * in table if the position was reached by another order of moves
+	 * @return the child
+	 */
+	private static Node addChild(Node n, Expansion expansion, TranspositionTable table)
+	{
+		Node child = new Node(expansion.state);
+		Node transposition = table.putIfAbsent(child);
+		if(transposition != null)
+		{
+			child = transposition;
+		}
+		n.addChild(expansion.action, child);
+		return child;
+	}
+
+	/**
+	 * play random actions on state until a player wins, or MAX_PLAYOUT_LENGTH actions
+	 * were played, in which case the player with the highest income is the winner, income
+	 * grows with hexes, forts and special income counters, the way towards a citadel.
+	 * the actions are undone when done, leaving state as it was
+	 * @return ID of the winning player, -1 if there is none, or ABANDONED if the budget ran out
+	 */
+	private int simulate(GameState state, Simulator simulator, Budget budget)
+	{
+		int mark = simulator.mark();
+		try
+		{
+			for(int i=0; i<MAX_PLAYOUT_LENGTH; i++)
+			{
+				Player winningPlayer = state.getWinningPlayer();
+				if(winningPlayer != null)
+				{
+					return winningPlayer.getID();
+				}
+				if(budget.isExhausted())
+				{
+					return ABANDONED;
+				}
+				if(!simulator.applyRandomAction(state))
+				{
+					break;
+				}
+			}
+			return getIncomeLeader(state);
+		}
+		finally
+		{
+			simulator.undo(mark);
+		}
+	}
+
+	/**
+	 * @return ID of the player with the highest income, or -1 if several players share it
+	 */
+	static int getIncomeLeader(GameState state)
+	{
+		int leader = -1;
+		int highestIncome = -1;
+		for(Player p : state.getPlayers())
+		{
+			int income = p.getIncome();
+			if(income > highestIncome)
+			{
+				leader = p.getID();
+				highestIncome = income;
+			}
+			else if(income == highestIncome)
+			{
+				leader = -1;
+			}
+		}
+		return leader;
+	}
+
+	/**
+	 * continue searching from currentState, keeping the statistics of a searched position equal to it,
+	 * waits for a running search to finish
+	 */
+	public synchronized void updateCurrentGameState(GameState currentState)
+	{
+		roots = findRoots(null, currentState);
+	}
+
+	/**
+	 * continue searching from currentState, reached by playing an action of the current position,
+	 * the subtree of that action is kept if the outcome of the action equals currentState
+	 * waits for a running search to finish
+	 * @param played - action returned by this search
+	 */
+	public synchronized void updateCurrentGameState(Action played, GameState currentState)
+	{
+		roots = findRoots(played, currentState);
+	}
+
+	/**
+	 * @return number of playouts finished from the current position by all threads
+	 */
+	public long getNumPlayouts()
+	{
+		long numPlayouts = 0;
+		for(Node tree : roots)
+		{
+			numPlayouts += tree.getNumPlayouts();
+		}
+		return numPlayouts;
+	}
+
 	public Action getBestMoveForPlayer(int playerNumber)
 	{
-		long highestNumPlayouts = Long.MIN_VALUE;
-		ArrayList<Action> possibleMoves = new ArrayList<Action>();
-		for(Entry<Action,Node> child : latestPosition.getChildren().entrySet())
+		Action best = createResult(getNumPlayouts(), 0).getBestAction();
+		if(best == null)
+		{
+			throw new IllegalStateException("There are no possible moves from the current position");
+		}
+		return best;
+	}
+
+	/**
+	 * statistics of the current position, playouts of the same move are summed across trees
+	 */
+	private SearchResult createResult(long numPlayouts, long elapsedNanos)
+	{
+		LinkedHashMap<Action,long[]> statsPerMove = new LinkedHashMap<Action,long[]>();
+		for(Node tree : roots)
+		{
+			for(Entry<Action,Node> child : tree.getChildren().entrySet())
+			{
+				long[] stats = statsPerMove.get(child.getKey());
+				if(stats == null)
+				{
+					stats = new long[2];
+					statsPerMove.put(child.getKey(), stats);
+				}
+				stats[0] += child.getValue().getNumPlayouts();
+				stats[1] += child.getValue().getNumWinsFor(child.getKey().getCommand().getID());
+			}
+		}
+		ArrayList<MoveStatistics> moves = new ArrayList<MoveStatistics>(statsPerMove.size());
+		for(Entry<Action,long[]> move : statsPerMove.entrySet())
+		{
+			moves.add(new MoveStatistics(move.getKey(), move.getValue()[0], move.getValue()[1]));
+		}
+		Collections.sort(moves, new Comparator<MoveStatistics>()
+		{
+			@Override
+			public int compare(MoveStatistics m1, MoveStatistics m2)
+			{
+				return Long.compare(m2.getNumPlayouts(), m1.getNumPlayouts());
+			}
+		});
+		int numMostPlayed = 0;
+		while(numMostPlayed < moves.size() && moves.get(numMostPlayed).getNumPlayouts() == moves.get(0).getNumPlayouts())
+		{
+			numMostPlayed++;
+		}
+		Action best = numMostPlayed==0? null : moves.get(Constants.getRandom().nextInt(numMostPlayed)).getAction();
+		return new SearchResult(best, numPlayouts, elapsedNanos, moves);
+	}
+
+	/**
+	 * reuse the searched subtrees of state, each tree is reused on its own
+	 */
+	private Node[] findRoots(Action played, GameState state)
+	{
+		Node[] trees = roots;
+		Node[] newRoots = new Node[trees.length];
+		for(int i=0; i<trees.length; i++)
+		{
+			newRoots[i] = findPosition(trees[i], tables[i % tables.length], played, state);
+			if(newRoots[i] == null)
+			{
+				newRoots[i] = new Node(state);
+			}
+		}
+		shareFirstLevel(newRoots);
+		fillTables(newRoots);
+		return newRoots;
+	}
+
+	/**
+	 * look for state in the subtree of the action played first, then in the transposition
+	 * table, then breadth first through the positions searched from root, as the table may
+	 * have replaced the position
+	 * @return node with the same position as state, or null if none was searched
+	 */
+	private Node findPosition(Node root, TranspositionTable table, Action played, GameState state)
+	{
+		if(played != null)
+		{
+			Node child = root.getChildren().get(played);
+			if(child != null && Positions.areSame(child.getState(), state))
+			{
+				return child;
+			}
+		}
+		Node transposition = table.get(Positions.hash(state), state);
+		if(transposition != null)
+		{
+			return transposition;
+		}
+		int numCandidates = 0;
+		ArrayList<Node> positions = new ArrayList<Node>();
+		positions.add(root);
+		for(int depth=0; depth<=MAX_REUSE_DEPTH && !positions.isEmpty(); depth++)
+		{
+			ArrayList<Node> nextPositions = new ArrayList<Node>();
+			for(Node n : positions)
+			{
+				if(Positions.areSame(n.getState(), state))
+				{
+					return n;
+				}
+				if(++numCandidates >= MAX_REUSE_CANDIDATES)
+				{
+					return null;
+				}
+				nextPositions.addAll(n.getChildren().values());
+			}
+			positions = nextPositions;
+		}
+		return null;
+	}
+
+	/**
+	 * one root per tree, with root parallelism the trees share their first level
+	 * of actions so that playouts of the same move can be summed across trees
+	 */
+	private Node[] createRoots(GameState state)
+	{
+		Node[] trees = new Node[parallelism == Parallelism.ROOT? numThreads : 1];
+		for(int i=0; i<trees.length; i++)
+		{
+			trees[i] = new Node(state);
+		}
+		shareFirstLevel(trees);
+		fillTables(trees);
+		return trees;
+	}
+
+	/**
+	 * empty the transposition tables and add the positions reachable from the new roots,
+	 * so positions no longer searched are not kept by the tables
+	 */
+	private void fillTables(Node[] trees)
+	{
+		for(int i=0; i<tables.length; i++)
 		{
-			long myNumPlayouts = child.getValue().getNumPlayouts();
-			if(myNumPlayouts == highestNumPlayouts)
+			TranspositionTable table = tables[i];
+			table.clear();
+			Set<Node> added = Collections.newSetFromMap(new IdentityHashMap<Node,Boolean>());
+			ArrayDeque<Node> positions = new ArrayDeque<Node>();
+			for(int tree=i; tree<trees.length; tree+=tables.length)
 			{
-				possibleMoves.add(child.getKey());
+				positions.add(trees[tree]);
 			}
-			else if(myNumPlayouts > highestNumPlayouts)
+			while(!positions.isEmpty())
 			{
-				possibleMoves = new ArrayList<Action>();
-				possibleMoves.add(child.getKey());
-				highestNumPlayouts = myNumPlayouts;
+				Node n = positions.poll();
+				if(added.add(n))
+				{
+					table.putIfAbsent(n);
+					positions.addAll(n.getChildren().values());
+				}
 			}
 		}
-		
-		return possibleMoves.get(ThreadLocalRandom.current().nextInt(possibleMoves.size()));
 	}
-	
-	private void expandNode(Node n)
+
+	/**
+	 * give all trees the actions of the most searched tree, children of the other trees
+	 * are kept under the action leading to the same position. a new child is given a copy
+	 * of the position, so no two trees share the state of a node
+	 */
+	private void shareFirstLevel(Node[] trees)
 	{
-		for(Entry<Action,GameState> e : PossibleMoveGenerator.getAllPossibleActionsFromState(isDemoMode, n.getState()).entrySet())
+		if(trees.length == 1)
+		{
+			return;
+		}
+		Node mostSearched = null;
+		for(Node tree : trees)
+		{
+			if(tree.getChildren().size() > 0 && (mostSearched == null || tree.getNumPlayouts() > mostSearched.getNumPlayouts()))
+			{
+				mostSearched = tree;
+			}
+		}
+		if(mostSearched == null)
+		{
+			expandFirstLevel(trees);
+			return;
+		}
+		for(Node tree : trees)
+		{
+			if(tree == mostSearched)
+			{
+				continue;
+			}
+			ArrayList<Node> searched = new ArrayList<Node>(tree.getChildren().values());
+			HashMap<Action,Node> children = new HashMap<Action,Node>();
+			for(Entry<Action,Node> move : mostSearched.getChildren().entrySet())
+			{
+				GameState position = move.getValue().getState();
+				Node child = null;
+				for(int i=0; i<searched.size() && child == null; i++)
+				{
+					if(Positions.areSame(searched.get(i).getState(), position))
+					{
+						child = searched.remove(i);
+					}
+				}
+				children.put(move.getKey(), child != null? child : new Node(position.clone()));
+			}
+			tree.setChildren(children);
+		}
+	}
+
+	/**
+	 * give trees that have not been searched yet every valid action of their position, each
+	 * action is applied once as it is listed, and every tree but the first is given a copy
+	 */
+	private void expandFirstLevel(Node[] trees)
+	{
+		ArrayList<HashMap<Action,Node>> children = new ArrayList<HashMap<Action,Node>>(trees.length);
+		for(int i=0; i<trees.length; i++)
+		{
+			children.add(new HashMap<Action,Node>());
+		}
+		GameState position = trees[0].getState();
+		Simulator simulator = new Simulator(isDemoMode);
+		EventDispatch previous = simulator.bind();
+		try
+		{
+			Iterator<Action> it = PossibleMoveGenerator.getPossibleActions(position);
+			while(it.hasNext())
+			{
+				Action a = it.next();
+				GameState nextState = position.clone();
+				if(simulator.apply(a, nextState))
+				{
+					children.get(0).put(a, new Node(nextState));
+					for(int i=1; i<trees.length; i++)
+					{
+						children.get(i).put(a, new Node(nextState.clone()));
+					}
+				}
+			}
+		}
+		finally
+		{
+			EventDispatch.bindToCurrentThread(previous);
+		}
+		for(int i=0; i<trees.length; i++)
+		{
+			trees[i].setChildren(children.get(i));
+		}
+	}
+
+	/**
+	 * outcome of an action not tried before, not yet a child of the position it was tried in
+	 */
+	private static final class Expansion
+	{
+		private final Action action;
+		private final GameState state;
+
+		private Expansion(Action action, GameState state)
+		{
+			this.action = action;
+			this.state = state;
+		}
+	}
+
+	/**
+	 * when the threads of one search have to stop, shared by all of them. a playout is only
+	 * abandoned once the deadline is reached or the search is interrupted, running out of
+	 * playouts to start lets the playouts already started finish
+	 */
+	private static final class Budget
+	{
+		private final boolean hasDeadline;
+		private final long deadline;
+		private final AtomicLong playoutsLeft;
+		private volatile boolean stopped;
+
+		private Budget(boolean hasDeadline, long deadline, long maxPlayouts)
+		{
+			this.hasDeadline = hasDeadline;
+			this.deadline = deadline;
+			playoutsLeft = new AtomicLong(maxPlayouts);
+		}
+
+		/**
+		 * @return true if a new playout may be started, it is then counted against the budget
+		 */
+		private boolean startPlayout()
+		{
+			return !isExhausted() && playoutsLeft.getAndDecrement() > 0;
+		}
+
+		/**
+		 * @return true if a playout must be abandoned
+		 */
+		private boolean isExhausted()
+		{
+			return stopped || Thread.currentThread().isInterrupted() || (hasDeadline && System.nanoTime() - deadline >= 0);
+		}
+
+		/**
+		 * abandon the playouts of every thread, the calling thread was interrupted
+		 */
+		private void stop()
 		{
-			Node child = new Node(e.getValue(),n);
-			n.addChild(e.getKey(), child);
+			stopped = true;
 		}
 	}
 }
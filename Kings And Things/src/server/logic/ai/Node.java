@@ -1,76 +1,170 @@
 package server.logic.ai;
 
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
-import common.game.Player;
+import com.google.common.collect.Lists;
+
+import common.Constants;
 
 import server.logic.game.GameState;
 
+/**
+ * statistics of one position in the search tree, safe to be updated by several
+ * search threads at once. children are added one at a time, in random order of
+ * the actions possible in the position, until every action was tried, and are kept
+ * in the order their actions were listed in, whatever order they were added in. a position
+ * reached by different orders of moves is one node with several parents, so results
+ * are recorded on the nodes a playout went through rather than up a single parent
+ */
 public class Node
 {
-	private long numPlayouts;
-	private final HashMap<Integer,Long> numWinsPerPlayer;
+	private final AtomicLong numPlayouts;
+	private final AtomicInteger numVirtualLosses;
+	private final AtomicLongArray numWinsPerSeat;
 	private final GameState state;
-	private final Node parent;
-	private final HashMap<Action,Node> children;
-	
+	private final long hash;
+	private final ConcurrentSkipListMap<Action,Node> children;
+	private List<Action> untriedActions;
+	private volatile boolean isFullyExpanded;
+
 	private static final double C = Math.sqrt(2);
-	
-	public Node(GameState state, Node parent)
+
+	public Node(GameState state)
 	{
 		this.state = state;
-		this.parent = parent;
-		numWinsPerPlayer = new HashMap<Integer,Long>();
-		children = new HashMap<Action,Node>();
-		for(Player p : state.getPlayers())
-		{
-			numWinsPerPlayer.put(p.getID(), 0L);
-		}
+		hash = Positions.hash(state);
+		numPlayouts = new AtomicLong();
+		numVirtualLosses = new AtomicInteger();
+		numWinsPerSeat = new AtomicLongArray(Constants.MAX_PLAYERS);
+		children = new ConcurrentSkipListMap<Action,Node>();
 	}
-	
+
 	public GameState getState()
 	{
 		return state;
 	}
-	
+
+	/**
+	 * @return Zobrist hash of the position of this node
+	 */
+	public long getHash()
+	{
+		return hash;
+	}
+
 	public long getNumPlayouts()
 	{
-		return numPlayouts;
+		return numPlayouts.get();
 	}
-	
+
+	/**
+	 * @return playouts finished through this node plus the ones still in progress
+	 */
+	public long getNumVisits()
+	{
+		return numPlayouts.get() + numVirtualLosses.get();
+	}
+
 	public long getNumWinsFor(int playerNumber)
 	{
-		return numWinsPerPlayer.get(playerNumber);
+		int seat = Constants.getPlayerSeat(playerNumber);
+		return seat == -1? 0 : numWinsPerSeat.get(seat);
 	}
-	
+
+	/**
+	 * record the result of a playout through this node
+	 * @param playerNumber - ID of the winner, or -1 if there is none
+	 */
 	public void recordWinFor(int playerNumber)
 	{
-		numPlayouts++;
-		if(numWinsPerPlayer.containsKey(playerNumber))
+		numPlayouts.incrementAndGet();
+		int seat = Constants.getPlayerSeat(playerNumber);
+		if(seat != -1)
 		{
-			long oldWinCount = numWinsPerPlayer.get(playerNumber);
-			numWinsPerPlayer.put(playerNumber, oldWinCount++);
-		}
-		if(parent!=null)
-		{
-			parent.recordWinFor(playerNumber);
+			numWinsPerSeat.incrementAndGet(seat);
 		}
 	}
-	
+
+	/**
+	 * count a playout in progress through this node as lost, so other threads
+	 * searching the same tree prefer different nodes until its result is known
+	 */
+	public void addVirtualLoss()
+	{
+		numVirtualLosses.incrementAndGet();
+	}
+
+	public void removeVirtualLoss()
+	{
+		numVirtualLosses.decrementAndGet();
+	}
+
+	/**
+	 * @param children - all children of this node, replaces previous children, no further actions are tried
+	 */
+	public synchronized void setChildren(Map<Action,Node> children)
+	{
+		this.children.clear();
+		this.children.putAll(children);
+		untriedActions = Collections.emptyList();
+		isFullyExpanded = true;
+	}
+
 	public void addChild(Action a, Node c)
 	{
 		children.put(a, c);
 	}
-	
+
 	public Map<Action,Node> getChildren()
 	{
 		return Collections.unmodifiableMap(children);
 	}
-	
-	public double calculateUpperConfidenceBound(int playerToMove)
+
+	/**
+	 * take a random valid action not tried from this position yet, candidate actions
+	 * are listed on the first call and checked by the validators one at a time
+	 * @return action to try, or null if every action was tried
+	 */
+	public synchronized Action takeUntriedAction()
+	{
+		if(untriedActions == null)
+		{
+			untriedActions = Lists.newArrayList(PossibleMoveGenerator.getCandidateActions(state));
+			Collections.shuffle(untriedActions, Constants.getRandom());
+		}
+		while(!untriedActions.isEmpty())
+		{
+			Action a = untriedActions.remove(untriedActions.size()-1);
+			if(PossibleMoveGenerator.isValid(a, state))
+			{
+				return a;
+			}
+		}
+		isFullyExpanded = true;
+		return null;
+	}
+
+	/**
+	 * @return true if every action possible from this position was tried
+	 */
+	public boolean isFullyExpanded()
+	{
+		return isFullyExpanded;
+	}
+
+	/**
+	 * @param numParentVisits - visits of the node this one is chosen from, with transpositions
+	 * it can be fewer than the visits of this node
+	 */
+	public double calculateUpperConfidenceBound(int playerToMove, long numParentVisits)
 	{
-		return numPlayouts==0? Double.MAX_VALUE : (numWinsPerPlayer.get(playerToMove)/numPlayouts) + (C * Math.sqrt( Math.log(parent.getNumPlayouts()) / numPlayouts));
+		long numVisits = getNumVisits();
+		return numVisits==0? Double.MAX_VALUE : ((double) getNumWinsFor(playerToMove) / numVisits) + (C * Math.sqrt( Math.log(Math.max(numParentVisits, 1)) / numVisits));
 	}
 }
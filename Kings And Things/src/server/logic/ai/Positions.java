@@ -0,0 +1,202 @@
+package server.logic.ai;
+
+import java.awt.Point;
+import java.util.Collection;
+import java.util.List;
+
+import server.logic.game.GameState;
+import common.game.HexState;
+import common.game.ITileProperties;
+import common.game.Player;
+import common.game.Roll;
+import common.game.Zobrist;
+
+/**
+ * compares positions of the game, used to find a searched state that equals the state
+ * of the game after moves were played. dice and draws from the cup make the outcome of
+ * a move random, so everything they can change is compared. a missed match only costs
+ * the reuse of a subtree, while a wrong match would search moves of another position.
+ * tiles are equal by id, so their value, move speed and face are compared as well.
+ * positions are hashed with Zobrist keys, tiles on the board, of players and left to draw
+ * are hashed as they move by the classes holding them, the rest is hashed on request
+ */
+final class Positions
+{
+	private Positions()
+	{
+	}
+
+	/**
+	 * @return true if both states have the same phase, players, board and pending rolls
+	 */
+	static boolean areSame(GameState state, GameState other)
+	{
+		if(state == other)
+		{
+			return true;
+		}
+		if(state.getCurrentSetupPhase() != other.getCurrentSetupPhase() || state.getCurrentRegularPhase() != other.getCurrentRegularPhase()
+				|| state.getCurrentCombatPhase() != other.getCurrentCombatPhase() || state.getDefendingPlayerNumber() != other.getDefendingPlayerNumber()
+				|| state.hasRecordedRollForSpecialCharacter() != other.hasRecordedRollForSpecialCharacter())
+		{
+			return false;
+		}
+		if(!equal(state.getCombatLocation(), other.getCombatLocation()) || !state.getPlayerOrder().equals(other.getPlayerOrder())
+				|| state.getPlayers().size() != other.getPlayers().size() || state.getActiveTurnPlayerNumber() != other.getActiveTurnPlayerNumber())
+		{
+			return false;
+		}
+		for(Player p : state.getPlayers())
+		{
+			Player o = findPlayer(other, p.getID());
+			if(o == null || p.getPlayerInfo().isActive() != o.getPlayerInfo().isActive() || p.getGold() != o.getGold() || state.getHitsOnPlayer(p.getID()) != other.getHitsOnPlayer(p.getID())
+					|| !areSameTiles(p.getTrayThings(), o.getTrayThings()) || !areSameTiles(p.getCardsInHand(), o.getCardsInHand())
+					|| !areSameTiles(p.getOwnedHexes(), o.getOwnedHexes()) || !areSameTiles(p.getOwnedThingsOnBoard(), o.getOwnedThingsOnBoard()))
+			{
+				return false;
+			}
+		}
+		return areSameRolls(state.getRecordedRolls(), other.getRecordedRolls()) && areSameBoards(state.getBoard().getHexesAsList(), other.getBoard().getHexesAsList());
+	}
+
+	/**
+	 * hash of everything areSame compares, and of the tiles left to draw, so same positions
+	 * have the same hash as long as no tile was drawn differently
+	 * @return Zobrist hash of state
+	 */
+	static long hash(GameState state)
+	{
+		long hash = state.getCup().getZobristHash() ^ state.getBank().getZobristHash() ^ state.getBankHeroes().getZobristHash();
+		for(HexState h : state.getBoard().getHexesAsList())
+		{
+			hash ^= h.getZobristHash();
+		}
+		for(Player p : state.getPlayers())
+		{
+			int ID = p.getID();
+			hash ^= Zobrist.key(Zobrist.PLAYER, p.getZobristHash(), p.getPlayerInfo().isActive()? ID : ~ID);
+			hash ^= Zobrist.key(Zobrist.GOLD, p.getGold(), ID) ^ Zobrist.key(Zobrist.HITS, state.getHitsOnPlayer(ID), ID);
+		}
+		List<Integer> playerOrder = state.getPlayerOrder();
+		for(int i=0; i<playerOrder.size(); i++)
+		{
+			hash ^= Zobrist.key(Zobrist.ORDER, playerOrder.get(i), i);
+		}
+		List<Roll> rolls = state.getRecordedRolls();
+		for(int i=0; i<rolls.size(); i++)
+		{
+			Roll r = rolls.get(i);
+			long roll = Zobrist.key(Zobrist.ROLL, r.getRollReason().ordinal(), r.getRollingPlayerID()) ^ Zobrist.key(Zobrist.ROLL, r.getBaseRolls().hashCode(), -1);
+			if(r.getRollTarget() != null)
+			{
+				roll ^= Zobrist.key(Zobrist.ROLL, r.getRollTarget(), -2);
+			}
+			hash ^= Zobrist.key(Zobrist.ROLL, roll, i);
+		}
+		Point combatLocation = state.getCombatLocation();
+		hash ^= Zobrist.key(Zobrist.PHASE, ordinal(state.getCurrentSetupPhase()), 0) ^ Zobrist.key(Zobrist.PHASE, ordinal(state.getCurrentRegularPhase()), 1)
+				^ Zobrist.key(Zobrist.PHASE, ordinal(state.getCurrentCombatPhase()), 2) ^ Zobrist.key(Zobrist.PHASE, state.getActiveTurnPlayerNumber(), 3)
+				^ Zobrist.key(Zobrist.PHASE, state.getDefendingPlayerNumber(), 4) ^ Zobrist.key(Zobrist.PHASE, state.hasRecordedRollForSpecialCharacter()? 1 : 0, 5);
+		if(combatLocation != null)
+		{
+			hash ^= Zobrist.key(Zobrist.PHASE, ((long) combatLocation.x << 32) | (combatLocation.y & 0xffffffffL), 6);
+		}
+		return hash;
+	}
+
+	private static boolean areSameRolls(List<Roll> rolls, List<Roll> other)
+	{
+		if(rolls.size() != other.size())
+		{
+			return false;
+		}
+		for(int i=0; i<rolls.size(); i++)
+		{
+			Roll r = rolls.get(i);
+			Roll o = other.get(i);
+			if(r.getRollReason() != o.getRollReason() || r.getRollingPlayerID() != o.getRollingPlayerID()
+					|| !isSameTile(r.getRollTarget(), o.getRollTarget()) || !r.getBaseRolls().equals(o.getBaseRolls()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean areSameBoards(List<HexState> hexes, List<HexState> other)
+	{
+		if(hexes.size() != other.size())
+		{
+			return false;
+		}
+		for(int i=0; i<hexes.size(); i++)
+		{
+			HexState h = hexes.get(i);
+			HexState o = other.get(i);
+			if(!isSameTile(h.getHex(), o.getHex()) || !isSameTile(h.getMarker(), o.getMarker()) || !areSameTiles(h.getThingsInHex(), o.getThingsInHex()))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean areSameTiles(Collection<ITileProperties> tiles, Collection<ITileProperties> other)
+	{
+		if(!tiles.equals(other))
+		{
+			return false;
+		}
+		for(ITileProperties t : tiles)
+		{
+			ITileProperties match = null;
+			for(ITileProperties o : other)
+			{
+				if(t.equals(o))
+				{
+					match = o;
+					break;
+				}
+			}
+			if(!isSameTile(t, match))
+			{
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isSameTile(ITileProperties tile, ITileProperties other)
+	{
+		if(tile == null || other == null)
+		{
+			return tile == other;
+		}
+		return tile.equals(other) && tile.getValue() == other.getValue() && tile.getMoveSpeed() == other.getMoveSpeed() && tile.isFaceUp() == other.isFaceUp();
+	}
+
+	/**
+	 * players are hashed by their changing contents, so they are looked up by ID instead
+	 */
+	private static Player findPlayer(GameState state, int ID)
+	{
+		for(Player p : state.getPlayers())
+		{
+			if(p.getID() == ID)
+			{
+				return p;
+			}
+		}
+		return null;
+	}
+
+	private static int ordinal(Enum<?> e)
+	{
+		return e == null? -1 : e.ordinal();
+	}
+
+	private static boolean equal(Object o1, Object o2)
+	{
+		return o1 == null? o2 == null : o1.equals(o2);
+	}
+}
@@ -1,15 +1,18 @@
 package server.logic.ai;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Set;
 
-import server.event.GameStarted;
 import server.event.internal.ApplyHitsCommand;
 import server.event.internal.ConstructBuildingCommand;
 import server.event.internal.DiscardThingsCommand;
+import server.event.internal.DoneRollingCommand;
 import server.event.internal.EndPlayerTurnCommand;
 import server.event.internal.ExchangeSeaHexCommand;
 import server.event.internal.ExchangeThingsCommand;
@@ -24,13 +27,25 @@ import server.event.internal.RetreatCommand;
 import server.event.internal.RollDiceCommand;
 import server.event.internal.TargetPlayerCommand;
 import server.logic.game.GameState;
-import server.logic.game.handlers.CombatCommandHandler;
-import server.logic.game.handlers.ConstructBuildingCommandHandler;
-import server.logic.game.handlers.MovementCommandHandler;
-import server.logic.game.handlers.RecruitSpecialCharacterCommandHandler;
-import server.logic.game.handlers.RecruitingThingsCommandHandler;
-import server.logic.game.handlers.SetupPhaseCommandHandler;
+import server.logic.game.validators.CombatPhaseValidator;
+import server.logic.game.validators.CommandValidator;
+import server.logic.game.validators.ConstructBuildingCommandValidator;
+import server.logic.game.validators.MovementValidator;
+import server.logic.game.validators.RecruitSpecialCharacterValidator;
+import server.logic.game.validators.RecruitingThingsPhaseValidator;
+import server.logic.game.validators.SetupPhaseValidator;
+
+import com.google.common.base.Function;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
+import com.google.common.collect.FluentIterable;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Sets;
+
 import common.Constants;
+import common.event.AbstractInternalEvent;
+import common.event.EventDispatch;
 import common.Constants.BuildableBuilding;
 import common.Constants.CombatPhase;
 import common.Constants.RegularPhase;
@@ -43,10 +58,104 @@ import common.game.Roll;
 
 public abstract class PossibleMoveGenerator
 {
+	/**
+	 * apply every possible action to a copy of state, only invalid actions are skipped without
+	 * copying state, prefer getPossibleActions when not every successor is needed
+	 * @return every valid action with the state it leads to
+	 */
 	public static HashMap<Action,GameState> getAllPossibleActionsFromState(boolean isDemoMode, GameState state)
 	{
 		HashMap<Action,GameState> possibleMoves = new HashMap<Action,GameState>();
-		
+		Simulator simulator = new Simulator(isDemoMode);
+		EventDispatch previous = simulator.bind();
+		try
+		{
+			Iterator<Action> it = getPossibleActions(state);
+			while(it.hasNext())
+			{
+				Action a = it.next();
+				GameState clonedState = state.clone();
+				if(simulator.apply(a, clonedState))
+				{
+					possibleMoves.put(a, clonedState);
+				}
+			}
+		}
+		finally
+		{
+			EventDispatch.bindToCurrentThread(previous);
+		}
+		return possibleMoves;
+	}
+
+	/**
+	 * valid actions of state, each action is listed and checked by the validators of the game when
+	 * iterated to, state is neither changed nor copied and must not change while iterating
+	 */
+	public static Iterator<Action> getPossibleActions(final GameState state)
+	{
+		return Iterators.filter(getCandidateActions(state).iterator(), new Predicate<Action>()
+		{
+			@Override
+			public boolean apply(Action a)
+			{
+				return isValid(a, state);
+			}
+		});
+	}
+
+	/**
+	 * actions that may be possible in state, without checking them, the many combinations of things,
+	 * hexes and gold are only listed when iterated to, state must not change while iterating
+	 */
+	static Iterable<Action> getCandidateActions(GameState state)
+	{
+		ArrayList<Action> actions = new ArrayList<Action>();
+		ArrayList<CandidatesOfKind> groups = new ArrayList<CandidatesOfKind>();
+		listCandidates(state, actions, groups);
+		ArrayList<Iterable<Action>> candidates = new ArrayList<Iterable<Action>>(groups.size() + 1);
+		candidates.add(actions);
+		for(CandidatesOfKind group : groups)
+		{
+			candidates.add(Iterables.concat(group.getParts()));
+		}
+		return Iterables.concat(candidates);
+	}
+
+	/**
+	 * the candidate actions of state by the kind of their command, so that a random action can be
+	 * drawn one kind and one part at a time, a part is only listed when iterated to
+	 */
+	static List<CandidatesOfKind> getCandidateGroups(GameState state)
+	{
+		ArrayList<Action> actions = new ArrayList<Action>();
+		ArrayList<CandidatesOfKind> groups = new ArrayList<CandidatesOfKind>();
+		listCandidates(state, actions, groups);
+		LinkedHashMap<Class<?>,List<Action>> actionsByKind = new LinkedHashMap<Class<?>,List<Action>>();
+		for(Action a : actions)
+		{
+			List<Action> ofKind = actionsByKind.get(a.getCommand().getClass());
+			if(ofKind == null)
+			{
+				ofKind = new ArrayList<Action>();
+				actionsByKind.put(a.getCommand().getClass(), ofKind);
+			}
+			ofKind.add(a);
+		}
+		ArrayList<CandidatesOfKind> kinds = new ArrayList<CandidatesOfKind>(actionsByKind.size() + groups.size());
+		for(List<Action> ofKind : actionsByKind.values())
+		{
+			kinds.add(new CandidatesOfKind(Collections.<Iterable<Action>>singletonList(ofKind)));
+		}
+		kinds.addAll(groups);
+		return kinds;
+	}
+
+	/**
+	 * add the few actions of state to actions, and the kinds with many actions to groups, listed in parts
+	 */
+	private static void listCandidates(GameState state, List<Action> actions, List<CandidatesOfKind> groups)
+	{
 		if(state.getCombatHex() != null)
 		{
 			for(Player p : state.getPlayersStillFightingInCombatHex())
@@ -57,22 +166,10 @@ public abstract class PossibleMoveGenerator
 				{
 					for(ITileProperties tp : state.getCombatHex().getFightingThingsInHex())
 					{
-						if(p.ownsThingOnBoard(tp))
+						//the defender of an explored hex takes the hits of the creatures found in it
+						if(p.ownsThingOnBoard(tp) || (p.getID() == state.getDefendingPlayerNumber() && !state.isOwnedByPlayer(tp)))
 						{
-							try
-							{
-								GameState clonedState = state.clone();
-								ApplyHitsCommand command = new ApplyHitsCommand(1, tp);
-								command.setID(p.getID());
-								CombatCommandHandler handler = new CombatCommandHandler();
-								handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-								handler.receiveApplyHitsCommand(command);
-								possibleMoves.put(new Action(command), clonedState);
-							}
-							catch(Throwable t)
-							{
-								//invalid move
-							}
+							add(actions, new ApplyHitsCommand(1, tp), p);
 						}
 					}
 				}
@@ -81,20 +178,7 @@ public abstract class PossibleMoveGenerator
 				{
 					for(HexState adjacentHex : state.getBoard().getAdjacentHexesTo(state.getCombatHex().getHex()))
 					{
-						try
-						{
-							GameState clonedState = state.clone();
-							RetreatCommand command = new RetreatCommand(adjacentHex.getHex());
-							command.setID(p.getID());
-							CombatCommandHandler handler = new CombatCommandHandler();
-							handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-							handler.receiveRetreatCommand(command);
-							possibleMoves.put(new Action(command), clonedState);
-						}
-						catch(Throwable t)
-						{
-							//invalid move
-						}
+						add(actions, new RetreatCommand(adjacentHex.getHex()), p);
 					}
 				}
 				else if(state.getCurrentCombatPhase() == CombatPhase.SELECT_TARGET_PLAYER)
@@ -103,431 +187,557 @@ public abstract class PossibleMoveGenerator
 					{
 						if(!p.equals(otherPlayer))
 						{
-							try
-							{
-								GameState clonedState = state.clone();
-								TargetPlayerCommand command = new TargetPlayerCommand(otherPlayer.getID());
-								command.setID(p.getID());
-								CombatCommandHandler handler = new CombatCommandHandler();
-								handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-								handler.receiveTargetPlayerCommand(command);
-								possibleMoves.put(new Action(command), clonedState);
-							}
-							catch(Throwable t)
-							{
-								//invalid move
-							}
+							add(actions, new TargetPlayerCommand(otherPlayer.getID()), p);
 						}
 					}
 				}
-				else if(state.getCurrentCombatPhase() == CombatPhase.MAGIC_ATTACK || state.getCurrentCombatPhase() == CombatPhase.RANGED_ATTACK || state.getCurrentCombatPhase() == CombatPhase.MELEE_ATTACK)
+			}
+			if(state.getCurrentCombatPhase() == CombatPhase.MAGIC_ATTACK || state.getCurrentCombatPhase() == CombatPhase.RANGED_ATTACK || state.getCurrentCombatPhase() == CombatPhase.MELEE_ATTACK
+					|| state.getCurrentCombatPhase() == CombatPhase.DETERMINE_DAMAGE || state.getCurrentCombatPhase() == CombatPhase.DETERMINE_DEFENDERS)
+			{
+				//one die of each roll the handlers wait for, the defender rolls for the creatures defending an explored hex
+				for(Roll r : state.getRecordedRolls())
 				{
-					for(ITileProperties tp : state.getCombatHex().getThingsInHexOwnedByPlayer(p))
+					if(r.needsRoll())
 					{
-						try
-						{
-							GameState clonedState = state.clone();
-							RollDiceCommand command = new RollDiceCommand(new Roll(1, tp, RollReason.ATTACK_WITH_CREATURE, p.getID()));
-							command.setID(p.getID());
-							CombatCommandHandler handler = new CombatCommandHandler();
-							handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-							handler.receiveRollDiceCommand(command);
-							possibleMoves.put(new Action(command), clonedState);
-						}
-						catch(Throwable t)
-						{
-							//invalid move
-						}
+						add(actions, new RollDiceCommand(new Roll(1, r.getRollTarget(), r.getRollReason(), r.getRollingPlayerID())), state.getPlayerByPlayerNumber(r.getRollingPlayerID()));
 					}
 				}
-				else if(state.getCurrentCombatPhase() == CombatPhase.DETERMINE_DAMAGE)
+			}
+		}
+		if(state.getCurrentSetupPhase() == SetupPhase.DETERMINE_PLAYER_ORDER)
+		{
+			//every player rolls for the order of play at once, no player is active until it is known
+			for(Player p : state.getPlayers())
+			{
+				if(hasRollsLeft(state, p.getID()))
 				{
-					for(ITileProperties tp : state.getCombatHex().getThingsInHexOwnedByPlayer(p))
-					{
-						try
-						{
-							GameState clonedState = state.clone();
-							RollDiceCommand command = new RollDiceCommand(new Roll(1,tp,RollReason.CALCULATE_DAMAGE_TO_TILE,p.getID()));
-							command.setID(p.getID());
-							CombatCommandHandler handler = new CombatCommandHandler();
-							handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-							handler.receiveRollDiceCommand(command);
-							possibleMoves.put(new Action(command), clonedState);
-						}
-						catch(Throwable t)
-						{
-							//invalid move
-						}
-					}
+					add(actions, new RollDiceCommand(new Roll(1,null,RollReason.DETERMINE_PLAYER_ORDER,p.getID())), p);
 				}
-				else if(state.getCurrentCombatPhase() == CombatPhase.DETERMINE_DEFENDERS)
+				else
 				{
-					try
-					{
-						GameState clonedState = state.clone();
-						RollDiceCommand command = new RollDiceCommand(new Roll(1,state.getCombatHex().getHex(),RollReason.EXPLORE_HEX,p.getID()));
-						command.setID(p.getID());
-						CombatCommandHandler handler = new CombatCommandHandler();
-						handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-						handler.receiveRollDiceCommand(command);
-						possibleMoves.put(new Action(command), clonedState);
-					}
-					catch(Throwable t)
-					{
-						//invalid move
-					}
+					add(actions, new DoneRollingCommand(), p);
 				}
 			}
+			return;
 		}
-		Player p = state.getActivePhasePlayer();
+		Player p = getActingPlayer(state);
 		if(state.getCurrentSetupPhase() == SetupPhase.PLACE_FREE_TOWER || (state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.CONSTRUCTION))
 		{
 			for(ITileProperties tp : p.getOwnedHexes())
 			{
 				for(BuildableBuilding b : BuildableBuilding.values())
 				{
-					try
-					{
-						ConstructBuildingCommand command = new ConstructBuildingCommand(b, tp);
-						command.setID(p.getID());
-						GameState clonedState = state.clone();
-						ConstructBuildingCommandHandler handler = new ConstructBuildingCommandHandler();
-						handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-						handler.recieveConstructBuildingCommand(command);
-						possibleMoves.put(new Action(command), clonedState);
-					}
-					catch(Throwable t)
-					{
-						//invalid move
-					}
+					add(actions, new ConstructBuildingCommand(b, tp), p);
 				}
 			}
 		}
-		else if(state.getCurrentSetupPhase() == SetupPhase.DETERMINE_PLAYER_ORDER)
+		if(p.hasCardsInHand())
 		{
-			try
+			//cards that can not be placed must be returned to the cup before the turn can end
+			HashSet<ITileProperties> discardableThings = new HashSet<ITileProperties>(p.getCardsInHand());
+			if(p.getTrayThings().size() == Constants.MAX_RACK_SIZE)
 			{
-				GameState clonedState = state.clone();
-				RollDiceCommand command = new RollDiceCommand(new Roll(1,null,RollReason.DETERMINE_PLAYER_ORDER,p.getID()));
-				command.setID(p.getID());
-				CombatCommandHandler handler = new CombatCommandHandler();
-				handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-				handler.receiveRollDiceCommand(command);
-				possibleMoves.put(new Action(command), clonedState);
+				discardableThings.addAll(p.getTrayThings());
 			}
-			catch(Throwable t)
+			for(ITileProperties tp : discardableThings)
 			{
-				//invalid move
+				ArrayList<ITileProperties> list = new ArrayList<ITileProperties>();
+				list.add(tp);
+				add(actions, new DiscardThingsCommand(list), p);
 			}
 		}
-		if(p.hasCardsInHand() && p.getTrayThings().size() == Constants.MAX_RACK_SIZE)
+		add(actions, new EndPlayerTurnCommand(), p);
+		if(state.getCurrentSetupPhase() == SetupPhase.EXCHANGE_SEA_HEXES)
 		{
-			HashSet<ITileProperties> discardableThings = new HashSet<ITileProperties>(p.getCardsInHand());
-			discardableThings.addAll(p.getTrayThings());
-			for(ITileProperties tp : discardableThings)
+			for(ITileProperties startingHex : p.getOwnedHexes())
 			{
-				try
+				for(HexState tp : state.getBoard().getAdjacentHexesTo(startingHex))
 				{
-					ArrayList<ITileProperties> list = new ArrayList<ITileProperties>();
-					list.add(tp);
-					DiscardThingsCommand command = new DiscardThingsCommand(list);
-					command.setID(p.getID());
-					GameState clonedState = state.clone();
-					RecruitingThingsCommandHandler handler = new RecruitingThingsCommandHandler();
-					handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-					handler.receiveDiscardThingsCommand(command);
-					possibleMoves.put(new Action(command), clonedState);
-				}
-				catch(Throwable t)
-				{
-					//invalid move
+					add(actions, new ExchangeSeaHexCommand(tp), p);
 				}
 			}
 		}
-		try
+		else if(state.getCurrentSetupPhase() == SetupPhase.EXCHANGE_THINGS)
 		{
-			EndPlayerTurnCommand command = new EndPlayerTurnCommand();
-			command.setID(p.getID());
-			GameState clonedState = state.clone();
-			RecruitingThingsCommandHandler handler = new RecruitingThingsCommandHandler();
-			handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-			handler.recieveEndPlayerTurnCommand(command);
-			possibleMoves.put(new Action(command), clonedState);
+			groups.add(getExchanges(p));
 		}
-		catch(Throwable t)
+		else if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.RECRUITING_THINGS && !state.hasRecruitedOnce())
 		{
-			//invalid move
+			groups.add(getRecruits(p));
 		}
-		if(state.getCurrentSetupPhase() == SetupPhase.EXCHANGE_SEA_HEXES)
+		else if(state.getCurrentSetupPhase() == SetupPhase.PICK_FIRST_HEX || state.getCurrentSetupPhase() == SetupPhase.PICK_SECOND_HEX || state.getCurrentSetupPhase() == SetupPhase.PICK_THIRD_HEX)
 		{
-			ITileProperties startingHex = p.getOwnedHexes().iterator().next();
-			for(HexState tp : state.getBoard().getAdjacentHexesTo(startingHex))
+			for(HexState hs : state.getBoard().getHexesAsList())
 			{
-				try
-				{
-					ExchangeSeaHexCommand command = new ExchangeSeaHexCommand(tp.getHex());
-					command.setID(p.getID());
-					GameState clonedState = state.clone();
-					SetupPhaseCommandHandler handler = new SetupPhaseCommandHandler();
-					handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-					handler.recieveExchangeSeaHexCommand(command);
-					possibleMoves.put(new Action(command), clonedState);
-				}
-				catch(Throwable t)
-				{
-					//invalid move
-				}
+				add(actions, new GiveHexToPlayerCommand(hs.getHex()), p);
 			}
 		}
-		else if(state.getCurrentSetupPhase() == SetupPhase.EXCHANGE_THINGS)
+		else if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.RECRUITING_CHARACTERS)
 		{
-			for(Set<ITileProperties> s : getAllCombinations(p.getTrayThings()))
+			if(!state.hasRecordedRollForSpecialCharacter())
 			{
-				if(!s.isEmpty())
-				{
-					try
-					{
-						ExchangeThingsCommand command = new ExchangeThingsCommand(s);
-						command.setID(p.getID());
-						GameState clonedState = state.clone();
-						RecruitingThingsCommandHandler handler = new RecruitingThingsCommandHandler();
-						handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-						handler.recieveExchangeThingsCommand(command);
-						possibleMoves.put(new Action(command), clonedState);
-					}
-					catch(Throwable t)
-					{
-						//invalid move
-					}
-				}
+				addSpecialCharacterRecruits(actions, state, p);
 			}
 		}
-		else if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.RECRUITING_THINGS)
+		else if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.MOVEMENT)
+		{
+			groups.add(getMovements(state, p));
+		}
+		HashSet<ITileProperties> thingsToPlace = new HashSet<ITileProperties>();
+		if(state.getCurrentSetupPhase() == SetupPhase.PLACE_FREE_THINGS || state.getCurrentSetupPhase() == SetupPhase.PLACE_EXCHANGED_THINGS || state.getCurrentCombatPhase() == CombatPhase.PLACE_THINGS
+				|| (state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && (state.getCurrentRegularPhase() == RegularPhase.RECRUITING_THINGS || state.getCurrentRegularPhase() == RegularPhase.RECRUITING_CHARACTERS)))
+		{
+			thingsToPlace.addAll(p.getTrayThings());
+			thingsToPlace.addAll(p.getCardsInHand());
+		}
+		if(!thingsToPlace.isEmpty())
 		{
-			HashSet<Set<ITileProperties>> possibleExchanges = new HashSet<Set<ITileProperties>>();
-			for(Set<ITileProperties> s : getAllCombinations(p.getTrayThings()))
+			groups.add(getPlacements(p, thingsToPlace));
+		}
+		groups.add(getRemovals(state, p));
+		if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.COMBAT && state.getCurrentCombatPhase() == CombatPhase.NO_COMBAT)
+		{
+			for(HexState contestedHex : state.getBoard().getContestedHexes(state.getPlayers()))
 			{
-				if(s.size() % 2 == 0)
+				add(actions, new ResolveCombatCommand(contestedHex.getHex()), p);
+			}
+		}
+	}
+
+	/**
+	 * @return the player whose moves are listed outside of combat, the active player, the attacker
+	 * or defender deciding whether to retreat, or the owner of the combat hex once the combat in
+	 * it is over, whoever's turn it is
+	 */
+	private static Player getActingPlayer(GameState state)
+	{
+		switch(state.getCurrentCombatPhase())
+		{
+			case ATTACKER_ONE_RETREAT:
+				return Objects.firstNonNull(state.getAttackerByIndex(1), state.getActivePhasePlayer());
+			case ATTACKER_TWO_RETREAT:
+				return Objects.firstNonNull(state.getAttackerByIndex(2), state.getActivePhasePlayer());
+			case ATTACKER_THREE_RETREAT:
+				return Objects.firstNonNull(state.getAttackerByIndex(3), state.getActivePhasePlayer());
+			case DEFENDER_RETREAT:
+				return state.getDefendingPlayer();
+			default:
+				break;
+		}
+		if(state.getCurrentCombatPhase() == CombatPhase.PLACE_THINGS)
+		{
+			for(Player p : state.getPlayers())
+			{
+				if(p.ownsHex(state.getCombatHex().getHex()))
 				{
-					possibleExchanges.add(s);
+					return p;
 				}
 			}
-			HashSet<Integer> possiblePaymentValues = new HashSet<Integer>();
-			for(int i=0; i<=p.getGold() && i<=25; i+=5)
+		}
+		return state.getActivePhasePlayer();
+	}
+
+	/**
+	 * check action with the validators the command handlers use, state is not changed
+	 * @return true if the validators accept action in state
+	 */
+	static boolean isValid(Action action, GameState state)
+	{
+		AbstractInternalEvent command = action.getCommand();
+		int ID = command.getID();
+		try
+		{
+			if(command instanceof EndPlayerTurnCommand)
+			{
+				CommandValidator.validateCanEndPlayerTurn(ID, state);
+			}
+			else if(command instanceof RollDiceCommand)
 			{
-				possiblePaymentValues.add(i);
+				CommandValidator.validateCanRollDice(((RollDiceCommand)command).getRoll(), state);
 			}
-			for(Set<ITileProperties> exchanges : possibleExchanges)
+			else if(command instanceof DoneRollingCommand)
 			{
-				for(Integer goldAmount : possiblePaymentValues)
+				//game rooms take it at any time, clients send it once the player rolled every die
+				if(state.isDoneRolling(ID) || hasRollsLeft(state, ID))
 				{
-					try
-					{
-						RecruitThingsCommand command = new RecruitThingsCommand(goldAmount, exchanges);
-						command.setID(p.getID());
-						GameState clonedState = state.clone();
-						RecruitingThingsCommandHandler handler = new RecruitingThingsCommandHandler();
-						handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-						handler.receiveRecruitThingsCommand(command);
-						possibleMoves.put(new Action(command), clonedState);
-					}
-					catch(Throwable t)
-					{
-						//invalid move
-					}
+					return false;
 				}
 			}
+			else if(command instanceof PlaceThingOnBoardCommand)
+			{
+				PlaceThingOnBoardCommand place = (PlaceThingOnBoardCommand)command;
+				RecruitingThingsPhaseValidator.validateCanPlaceThingOnBoard(place.getThing(), ID, place.getHex(), state);
+			}
+			else if(command instanceof RemoveThingsFromHexCommand)
+			{
+				RemoveThingsFromHexCommand remove = (RemoveThingsFromHexCommand)command;
+				CommandValidator.validateCanRemoveThingsFromHex(ID, remove.getHexToRemoveSomethingFrom(), remove.getThingsToRemove(), state);
+			}
+			else if(command instanceof MoveThingsCommand)
+			{
+				MoveThingsCommand move = (MoveThingsCommand)command;
+				MovementValidator.validateCanMove(ID, state, move.getHexes(), move.getThings());
+			}
+			else if(command instanceof RecruitThingsCommand)
+			{
+				RecruitThingsCommand recruit = (RecruitThingsCommand)command;
+				RecruitingThingsPhaseValidator.validateCanPurchaseRecruits(recruit.getGold(), ID, state);
+				RecruitingThingsPhaseValidator.validateCanExchangeThings(recruit.getThingsToExchange(), ID, state);
+			}
+			else if(command instanceof ExchangeThingsCommand)
+			{
+				RecruitingThingsPhaseValidator.validateCanExchangeThings(((ExchangeThingsCommand)command).getThings(), ID, state);
+			}
+			else if(command instanceof DiscardThingsCommand)
+			{
+				RecruitingThingsPhaseValidator.validateCanDiscardThings(((DiscardThingsCommand)command).getThingToDiscard(), ID, state);
+			}
+			else if(command instanceof ConstructBuildingCommand)
+			{
+				ConstructBuildingCommand build = (ConstructBuildingCommand)command;
+				ConstructBuildingCommandValidator.validateCanBuildBuilding(build.getBuilding(), ID, build.getHex(), state);
+			}
+			else if(command instanceof GiveHexToPlayerCommand)
+			{
+				SetupPhaseValidator.validateCanGiveHexToPlayer(((GiveHexToPlayerCommand)command).getHex(), ID, state);
+			}
+			else if(command instanceof ExchangeSeaHexCommand)
+			{
+				SetupPhaseValidator.validateCanExchangeSeaHex(((ExchangeSeaHexCommand)command).getHex(), ID, state);
+			}
+			else if(command instanceof ModifyRollForSpecialCharacterCommand)
+			{
+				ModifyRollForSpecialCharacterCommand modify = (ModifyRollForSpecialCharacterCommand)command;
+				RecruitSpecialCharacterValidator.validateCanModifySpecialCharacterRoll(modify.getTarget(), ID, modify.retrieveGoldAmount(), state);
+			}
+			else if(command instanceof ResolveCombatCommand)
+			{
+				CombatPhaseValidator.validateCanResolveCombat(((ResolveCombatCommand)command).getCombatHex(), ID, state);
+			}
+			else if(command instanceof ApplyHitsCommand)
+			{
+				ApplyHitsCommand hits = (ApplyHitsCommand)command;
+				CombatPhaseValidator.validateCanApplyHits(hits.getTarget(), ID, hits.getNumHits(), state);
+			}
+			else if(command instanceof TargetPlayerCommand)
+			{
+				CombatPhaseValidator.validateCanTargetPlayer(ID, ((TargetPlayerCommand)command).getTargetID(), state);
+			}
+			else if(command instanceof RetreatCommand)
+			{
+				CombatPhaseValidator.validateCanRetreatFromCombat(ID, ((RetreatCommand)command).getDestinationHex(), state);
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unable to validate " + command.getClass().getSimpleName());
+			}
+			return true;
 		}
-		else if(state.getCurrentSetupPhase() == SetupPhase.PICK_FIRST_HEX || state.getCurrentSetupPhase() == SetupPhase.PICK_SECOND_HEX || state.getCurrentSetupPhase() == SetupPhase.PICK_THIRD_HEX)
+		catch(IllegalArgumentException | IllegalStateException e)
 		{
-			for(HexState hs : state.getBoard().getHexesAsList())
+			return false;
+		}
+	}
+
+	/**
+	 * @return true if a roll of the player with ID playerNumber is waiting for dice
+	 */
+	private static boolean hasRollsLeft(GameState state, int playerNumber)
+	{
+		for(Roll r : state.getRecordedRolls())
+		{
+			if(r.getRollingPlayerID() == playerNumber && r.needsRoll())
 			{
-				try
-				{
-					GiveHexToPlayerCommand command = new GiveHexToPlayerCommand(hs.getHex());
-					command.setID(p.getID());
-					GameState clonedState = state.clone();
-					SetupPhaseCommandHandler handler = new SetupPhaseCommandHandler();
-					handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-					handler.recieveGiveHexToPlayerCommand(command);
-					possibleMoves.put(new Action(command), clonedState);
-				}
-				catch(Throwable t)
-				{
-					//invalid move
-				}
+				return true;
 			}
 		}
-		else if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.RECRUITING_CHARACTERS)
+		return false;
+	}
+
+	/**
+	 * every non empty set of things in the tray of p, for the exchange during setup
+	 */
+	private static CandidatesOfKind getExchanges(final Player p)
+	{
+		return new CandidatesOfKind(Collections.<Iterable<Action>>singletonList(FluentIterable.from(Sets.powerSet(new HashSet<ITileProperties>(p.getTrayThings()))).filter(new Predicate<Set<ITileProperties>>()
 		{
-			if(state.hasRecordedRollForSpecialCharacter())
+			@Override
+			public boolean apply(Set<ITileProperties> things)
 			{
-				
+				return !things.isEmpty();
 			}
-			else
+		}).transform(new Function<Set<ITileProperties>,Action>()
+		{
+			@Override
+			public Action apply(Set<ITileProperties> things)
 			{
-				ArrayList<Integer> possibleGoldModifications = new ArrayList<Integer>();
-				for(int i=0; i<p.getGold(); i+=5)
-				{
-					possibleGoldModifications.add(i);
-				}
-				for(ITileProperties hero : state.getBankHeroes().getAvailableHeroes())
-				{
-					for(Integer goldAmount : possibleGoldModifications)
-					{
-						try
-						{
-							ModifyRollForSpecialCharacterCommand command = new ModifyRollForSpecialCharacterCommand(goldAmount, hero);
-							command.setID(p.getID());
-							GameState clonedState = state.clone();
-							RecruitSpecialCharacterCommandHandler handler = new RecruitSpecialCharacterCommandHandler();
-							handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-							handler.receiveModifyRollForSpecialCharacterCommand(command);
-							possibleMoves.put(new Action(command), clonedState);
-						}
-						catch(Throwable t)
-						{
-							//invalid move
-						}
-					}
-					try
-					{
-						RollDiceCommand command = new RollDiceCommand(new Roll(2,hero,RollReason.RECRUIT_SPECIAL_CHARACTER, p.getID()));
-						command.setID(p.getID());
-						GameState clonedState = state.clone();
-						SetupPhaseCommandHandler handler = new SetupPhaseCommandHandler();
-						handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-						handler.receiveRollDiceCommand(command);
-						possibleMoves.put(new Action(command), clonedState);
-					}
-					catch(Throwable t)
-					{
-						//invalid move
-					}
-				}
+				return createAction(new ExchangeThingsCommand(things), p);
 			}
+		})));
+	}
+
+	/**
+	 * every even set of things in the tray of p, with each payment for recruits
+	 */
+	private static CandidatesOfKind getRecruits(final Player p)
+	{
+		final ArrayList<Integer> possiblePaymentValues = new ArrayList<Integer>();
+		for(int i=0; i<=p.getGold() && i<=25; i+=5)
+		{
+			possiblePaymentValues.add(i);
 		}
-		else if(state.getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED && state.getCurrentRegularPhase() == RegularPhase.MOVEMENT)
+		return new CandidatesOfKind(Collections.<Iterable<Action>>singletonList(FluentIterable.from(Sets.powerSet(new HashSet<ITileProperties>(p.getTrayThings()))).filter(new Predicate<Set<ITileProperties>>()
 		{
-			for(HexState hs : state.getBoard().getHexesAsList())
+			@Override
+			public boolean apply(Set<ITileProperties> things)
 			{
-				Set<ITileProperties> playerThingsInHex = hs.getThingsInHexOwnedByPlayer(p);
-				if(!playerThingsInHex.isEmpty())
+				return things.size() % 2 == 0;
+			}
+		}).transformAndConcat(new Function<Set<ITileProperties>,Iterable<Action>>()
+		{
+			@Override
+			public Iterable<Action> apply(Set<ITileProperties> exchanges)
+			{
+				ArrayList<Action> recruits = new ArrayList<Action>(possiblePaymentValues.size());
+				for(Integer goldAmount : possiblePaymentValues)
 				{
-					ArrayList<ArrayList<ITileProperties>> possibleMoveHexes = new ArrayList<ArrayList<ITileProperties>>();
-					ArrayList<ITileProperties> startingPoint = new ArrayList<ITileProperties>();
-					startingPoint.add(hs.getHex());
-					possibleMoveHexes.add(startingPoint);
-					for(int i=0; i<Constants.MAX_MOVE_SPEED; i++)
-					{
-						ArrayList<ArrayList<ITileProperties>> movesToAdd = new ArrayList<ArrayList<ITileProperties>>();
-						for(ArrayList<ITileProperties> moveChain : possibleMoveHexes)
-						{
-							if(moveChain.size() == i+1)
-							{
-								for(HexState adjacentHex : state.getBoard().getAdjacentHexesTo(moveChain.get(moveChain.size() - 1)))
-								{
-									ArrayList<ITileProperties> hexesToMoveThrough = new ArrayList<ITileProperties>(moveChain);
-									hexesToMoveThrough.add(adjacentHex.getHex());
-									movesToAdd.add(hexesToMoveThrough);
-								}
-							}
-						}
-						possibleMoveHexes.addAll(movesToAdd);
-					}
-					
-					for(Set<ITileProperties> possibleThingsToMove : getAllCombinations(playerThingsInHex))
-					{
-						if(!possibleThingsToMove.isEmpty())
-						{
-							for(ArrayList<ITileProperties> moveHexes : possibleMoveHexes)
-							{
-								if(moveHexes.size()>1)
-								{
-									try
-									{
-										MoveThingsCommand command = new MoveThingsCommand(possibleThingsToMove, moveHexes);
-										command.setID(p.getID());
-										GameState clonedState = state.clone();
-										MovementCommandHandler handler = new MovementCommandHandler();
-										handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-										handler.recieveMoveThingsCommand(command);
-										possibleMoves.put(new Action(command), clonedState);
-									}
-									catch(Throwable t)
-									{
-										//invalid move
-									}
-								}
-							}
-						}
-					}
+					add(recruits, new RecruitThingsCommand(goldAmount, exchanges), p);
 				}
+				return recruits;
+			}
+		})));
+	}
+
+	/**
+	 * for each available hero, a roll to recruit it and every bribe p can pay towards it, the two
+	 * kinds of commands are few enough to be listed at once
+	 */
+	private static void addSpecialCharacterRecruits(List<Action> actions, GameState state, Player p)
+	{
+		for(ITileProperties hero : state.getBankHeroes().getAvailableHeroes())
+		{
+			for(int goldAmount=5; goldAmount<=p.getGold(); goldAmount+=5)
+			{
+				add(actions, new ModifyRollForSpecialCharacterCommand(goldAmount, hero), p);
+			}
+			add(actions, new RollDiceCommand(new Roll(2,hero,RollReason.RECRUIT_SPECIAL_CHARACTER, p.getID())), p);
+		}
+	}
+
+	/**
+	 * movements of the creatures of p, in a part for each starting hex
+	 */
+	private static CandidatesOfKind getMovements(final GameState state, final Player p)
+	{
+		return inParts(state.getBoard().getHexesAsList(), new Function<HexState,Iterable<Action>>()
+		{
+			@Override
+			public Iterable<Action> apply(HexState hs)
+			{
+				return getMovementsFrom(state, hs, p);
+			}
+		});
+	}
+
+	private static List<Action> getMovementsFrom(GameState state, HexState hs, Player p)
+	{
+		ArrayList<Action> movements = new ArrayList<Action>();
+		HashSet<ITileProperties> creaturesInHex = new HashSet<ITileProperties>();
+		for(ITileProperties thing : hs.getThingsInHexOwnedByPlayer(p))
+		{
+			if(thing.isCreature() && thing.getMoveSpeed() > 0)
+			{
+				creaturesInHex.add(thing);
+			}
+		}
+		if(creaturesInHex.isEmpty())
+		{
+			return movements;
+		}
+		//all creatures of the hex or one of them, every subset along every path is far too many to list
+		ArrayList<Set<ITileProperties>> possibleThingsToMove = new ArrayList<Set<ITileProperties>>();
+		possibleThingsToMove.add(creaturesInHex);
+		if(creaturesInHex.size() > 1)
+		{
+			for(ITileProperties thing : creaturesInHex)
+			{
+				possibleThingsToMove.add(Collections.singleton(thing));
 			}
 		}
-		HashSet<ITileProperties> thingsToPlace = new HashSet<ITileProperties>(p.getTrayThings());
-		thingsToPlace.addAll(p.getCardsInHand());
-		for(ITileProperties hex : p.getOwnedHexes())
+		for(List<ITileProperties> moveHexes : getShortestPaths(state, hs.getHex(), p))
 		{
-			for(ITileProperties thing : thingsToPlace)
+			int moveCost = 0;
+			for(int i=1; i<moveHexes.size(); i++)
+			{
+				moveCost += moveHexes.get(i).getMoveSpeed();
+			}
+			for(Set<ITileProperties> things : possibleThingsToMove)
 			{
-				try
+				if(moveCost <= getMoveSpeed(things))
 				{
-					PlaceThingOnBoardCommand command = new PlaceThingOnBoardCommand(thing, hex);
-					command.setID(p.getID());
-					GameState clonedState = state.clone();
-					RecruitingThingsCommandHandler handler = new RecruitingThingsCommandHandler();
-					handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-					handler.recievePlaceThingOnBoardCommand(command);
-					possibleMoves.put(new Action(command), clonedState);
+					add(movements, new MoveThingsCommand(things, moveHexes), p);
 				}
-				catch(Throwable t)
+			}
+		}
+		return movements;
+	}
+
+	/**
+	 * placing thingsToPlace on the hexes of p, in a part for each hex
+	 */
+	private static CandidatesOfKind getPlacements(final Player p, final Set<ITileProperties> thingsToPlace)
+	{
+		return inParts(p.getOwnedHexes(), new Function<ITileProperties,Iterable<Action>>()
+		{
+			@Override
+			public Iterable<Action> apply(ITileProperties hex)
+			{
+				ArrayList<Action> actions = new ArrayList<Action>(thingsToPlace.size());
+				for(ITileProperties thing : thingsToPlace)
 				{
-					//invalid move
+					add(actions, new PlaceThingOnBoardCommand(thing, hex), p);
 				}
+				return actions;
 			}
-			for(ITileProperties thing : state.getBoard().getHexStateForHex(hex).getThingsInHexOwnedByPlayer(p))
+		});
+	}
+
+	/**
+	 * removing things of p from the hexes of p, in a part for each hex, other things than special
+	 * income counters and characters are only removed from a hex with too many of them
+	 */
+	private static CandidatesOfKind getRemovals(final GameState state, final Player p)
+	{
+		return inParts(p.getOwnedHexes(), new Function<ITileProperties,Iterable<Action>>()
+		{
+			@Override
+			public Iterable<Action> apply(ITileProperties hex)
 			{
-				try
+				ArrayList<Action> actions = new ArrayList<Action>();
+				HexState hs = state.getBoard().getHexStateForHex(hex);
+				boolean needsThingsRemoved = state.getThingsToRemoveFromHex(hs) > 0;
+				for(ITileProperties thing : hs.getThingsInHexOwnedByPlayer(p))
 				{
+					if(!needsThingsRemoved && !thing.isSpecialIncomeCounter() && !thing.isSpecialCharacter())
+					{
+						continue;
+					}
 					HashSet<ITileProperties> thingsToRemove = new HashSet<ITileProperties>();
 					thingsToRemove.add(thing);
-					RemoveThingsFromHexCommand command = new RemoveThingsFromHexCommand(hex, thingsToRemove);
-					command.setID(p.getID());
-					GameState clonedState = state.clone();
-					RecruitingThingsCommandHandler handler = new RecruitingThingsCommandHandler();
-					handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-					handler.receiveRemoveThingFromBoardCommand(command);
-					possibleMoves.put(new Action(command), clonedState);
-				}
-				catch(Throwable t)
-				{
-					//invalid move
+					add(actions, new RemoveThingsFromHexCommand(hex, thingsToRemove), p);
 				}
+				return actions;
 			}
+		});
+	}
+
+	/**
+	 * a part for each of sources, the actions of which lister only lists when the part is iterated to
+	 */
+	private static <T> CandidatesOfKind inParts(Iterable<T> sources, Function<? super T,? extends Iterable<Action>> lister)
+	{
+		ArrayList<Iterable<Action>> parts = new ArrayList<Iterable<Action>>();
+		for(T source : sources)
+		{
+			parts.add(FluentIterable.from(Collections.singleton(source)).transformAndConcat(lister));
 		}
-		for(HexState contestedHex : state.getBoard().getContestedHexes(state.getPlayers()))
+		return new CandidatesOfKind(parts);
+	}
+	
+	/**
+	 * @return one shortest path from start to each hex within Constants.MAX_MOVE_SPEED moves, start included,
+	 * paths do not continue through hexes which end the movement of p
+	 */
+	private static List<List<ITileProperties>> getShortestPaths(GameState state, ITileProperties start, Player p)
+	{
+		ArrayList<List<ITileProperties>> paths = new ArrayList<List<ITileProperties>>();
+		HashSet<ITileProperties> reached = new HashSet<ITileProperties>();
+		reached.add(start);
+		ArrayList<List<ITileProperties>> pathsToExtend = new ArrayList<List<ITileProperties>>();
+		pathsToExtend.add(Collections.singletonList(start));
+		for(int i=0; i<Constants.MAX_MOVE_SPEED && !pathsToExtend.isEmpty(); i++)
 		{
-			try
+			ArrayList<List<ITileProperties>> extendedPaths = new ArrayList<List<ITileProperties>>();
+			for(List<ITileProperties> path : pathsToExtend)
 			{
-				ResolveCombatCommand command = new ResolveCombatCommand(contestedHex.getHex());
-				command.setID(p.getID());
-				GameState clonedState = state.clone();
-				CombatCommandHandler handler = new CombatCommandHandler();
-				handler.receiveGameStartedEvent(new GameStarted(isDemoMode,clonedState));
-				handler.receiveResolveCombatCommand(command);
-				possibleMoves.put(new Action(command), clonedState);
+				for(HexState adjacentHex : state.getBoard().getAdjacentHexesTo(path.get(path.size() - 1)))
+				{
+					if(reached.add(adjacentHex.getHex()))
+					{
+						ArrayList<ITileProperties> extendedPath = new ArrayList<ITileProperties>(path);
+						extendedPath.add(adjacentHex.getHex());
+						paths.add(extendedPath);
+						if(canMoveThrough(state, adjacentHex, p))
+						{
+							extendedPaths.add(extendedPath);
+						}
+					}
+				}
 			}
-			catch(Throwable t)
+			pathsToExtend = extendedPaths;
+		}
+		return paths;
+	}
+
+	/**
+	 * @return true if p owns hs and no other player has things able to fight in it
+	 */
+	private static boolean canMoveThrough(GameState state, HexState hs, Player p)
+	{
+		if(!p.ownsHex(hs.getHex()))
+		{
+			return false;
+		}
+		for(Player other : state.getPlayers())
+		{
+			if(other.getID() != p.getID() && !hs.getFightingThingsInHexOwnedByPlayer(other).isEmpty())
 			{
-				//invalid move
+				return false;
 			}
 		}
-		return possibleMoves;
+		return true;
 	}
-	
-	private static <T> Set<Set<T>> getAllCombinations(Collection<T> list)
+
+	/**
+	 * @return move speed left to the slowest of things
+	 */
+	private static int getMoveSpeed(Set<ITileProperties> things)
 	{
-		return com.google.common.collect.Sets.powerSet(new HashSet<T>(list));
+		int moveSpeed = Integer.MAX_VALUE;
+		for(ITileProperties thing : things)
+		{
+			moveSpeed = Math.min(moveSpeed, thing.getMoveSpeed());
+		}
+		return moveSpeed;
+	}
+
+	private static void add(List<Action> actions, AbstractInternalEvent command, Player p)
+	{
+		actions.add(createAction(command, p));
+	}
+
+	private static Action createAction(AbstractInternalEvent command, Player p)
+	{
+		command.setID(p.getID());
+		return new Action(command);
+	}
+
+	/**
+	 * the candidate actions of one kind of command, in parts that are only listed when iterated to
+	 */
+	static final class CandidatesOfKind
+	{
+		private final List<Iterable<Action>> parts;
+
+		CandidatesOfKind(List<Iterable<Action>> parts)
+		{
+			this.parts = parts;
+		}
+
+		List<Iterable<Action>> getParts()
+		{
+			return parts;
+		}
 	}
 }
@@ -0,0 +1,98 @@
+package server.logic.ai;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * outcome of a budgeted search, the chosen action and the statistics it was chosen from
+ */
+public class SearchResult
+{
+	private final Action bestAction;
+	private final long numPlayouts;
+	private final long elapsedNanos;
+	private final List<MoveStatistics> moves;
+
+	public SearchResult(Action bestAction, long numPlayouts, long elapsedNanos, List<MoveStatistics> moves)
+	{
+		this.bestAction = bestAction;
+		this.numPlayouts = numPlayouts;
+		this.elapsedNanos = elapsedNanos;
+		this.moves = Collections.unmodifiableList(moves);
+	}
+
+	/**
+	 * @return the most played action, or null if there is no possible action
+	 */
+	public Action getBestAction()
+	{
+		return bestAction;
+	}
+
+	/**
+	 * @return playouts finished from the searched position by all threads
+	 */
+	public long getNumPlayouts()
+	{
+		return numPlayouts;
+	}
+
+	public long getElapsedNanos()
+	{
+		return elapsedNanos;
+	}
+
+	/**
+	 * @return statistics of every possible action, most played first
+	 */
+	public List<MoveStatistics> getMoves()
+	{
+		return moves;
+	}
+
+	@Override
+	public String toString()
+	{
+		return "SearchResult: " + numPlayouts + " playouts in " + elapsedNanos/1000000 + "ms, " + moves.size() + " moves";
+	}
+
+	public static class MoveStatistics
+	{
+		private final Action action;
+		private final long numPlayouts;
+		private final long numWins;
+
+		public MoveStatistics(Action action, long numPlayouts, long numWins)
+		{
+			this.action = action;
+			this.numPlayouts = numPlayouts;
+			this.numWins = numWins;
+		}
+
+		public Action getAction()
+		{
+			return action;
+		}
+
+		public long getNumPlayouts()
+		{
+			return numPlayouts;
+		}
+
+		/**
+		 * @return playouts won by the player taking the action
+		 */
+		public long getNumWins()
+		{
+			return numWins;
+		}
+
+		/**
+		 * @return share of playouts won by the player taking the action, 0 if never played
+		 */
+		public double getWinRate()
+		{
+			return numPlayouts==0? 0 : (double)numWins/numPlayouts;
+		}
+	}
+}
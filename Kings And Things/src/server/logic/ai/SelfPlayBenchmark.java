@@ -0,0 +1,780 @@
+package server.logic.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.BasicConfigurator;
+import org.apache.log4j.Level;
+
+import server.event.GameStarted;
+import server.event.internal.ApplyHitsCommand;
+import server.event.internal.ConstructBuildingCommand;
+import server.event.internal.DiscardThingsCommand;
+import server.event.internal.DoneRollingCommand;
+import server.event.internal.EndPlayerTurnCommand;
+import server.event.internal.ExchangeSeaHexCommand;
+import server.event.internal.ExchangeThingsCommand;
+import server.event.internal.GiveHexToPlayerCommand;
+import server.event.internal.ModifyRollForSpecialCharacterCommand;
+import server.event.internal.MoveThingsCommand;
+import server.event.internal.PlaceThingOnBoardCommand;
+import server.event.internal.RecruitThingsCommand;
+import server.event.internal.RemoveThingsFromHexCommand;
+import server.event.internal.ResolveCombatCommand;
+import server.event.internal.RetreatCommand;
+import server.event.internal.RollDiceCommand;
+import server.event.internal.StartSetupPhaseCommand;
+import server.event.internal.TargetPlayerCommand;
+import server.logic.ai.MonteCarloTreeSearch.Parallelism;
+import server.logic.ai.SearchResult.MoveStatistics;
+import server.logic.game.CommandHandlerManager;
+import server.logic.game.GameState;
+
+import com.google.common.eventbus.Subscribe;
+
+import common.Constants;
+import common.Constants.UpdateInstruction;
+import common.event.AbstractInternalEvent;
+import common.event.EventDispatch;
+import common.event.network.CommandRejected;
+import common.game.ITileProperties;
+import common.game.LoadResources;
+import common.game.Player;
+import common.game.PlayerInfo;
+import common.game.Roll;
+import common.game.TileProperties;
+
+/**
+ * plays whole games between MonteCarloTreeSearch agents, without sockets or a GUI, to measure
+ * how fast and how strong the AI is. every game has command handlers and event buses of its own,
+ * the way a game room does, and the move chosen by the agent of the player to act is posted to
+ * them as a command a client would send. games are played side by side, one per worker thread.
+ * <p>
+ * a game draws its random numbers, dice and searches alike, from a generator seeded by the seed
+ * of the run and the number of the game, and the tiles it makes get ids of its own, so with a
+ * budget of playouts and one search thread per agent every game is played the same whichever
+ * worker plays it. the fingerprint of a run covers the outcome of every game, a change to the
+ * engine or the AI that changes how games are played changes the fingerprint.
+ * <p>
+ * usage: SelfPlayBenchmark [-games n] [-players 2-4] [-seed n] [-workers n] [-moves n]
+ * [-threads n] [-demo] [-log] -agent name:playouts[ms] -agent ...
+ * <br>
+ * an agent searches a number of playouts per move, or for a number of milliseconds per move
+ * when the budget ends with ms, which is not reproducible. seats are dealt to agents in turn,
+ * shifted by one every game, so every agent plays from every seat. a game is stopped when no
+ * player can act or the handlers keep rejecting commands, and counted as stuck, stuck games
+ * are left out of the seats, wins and ratings of the agents. a game stopped after the most
+ * moves without a winner is scored the way the search scores a playout, by the highest income
+ */
+public final class SelfPlayBenchmark
+{
+	/** games are stopped after this many moves, a game stopped without a winner goes to the player with the highest income */
+	private static final int DEFAULT_MAX_MOVES = 2000;
+	/** commands in a row the handlers may reject before a game is given up as stuck */
+	private static final int MAX_REJECTED_IN_A_ROW = 10;
+	/** tiles made during a game are given ids from here, far above the ids of the loaded tiles */
+	private static final long FIRST_GAME_TILE_ID = 1L << 40;
+	private static final long TRANSPOSITION_TABLE_BYTES = 4L * 1024 * 1024;
+	private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+	/**
+	 * how an agent searches
+	 */
+	static final class Agent
+	{
+		private final String name;
+		private final long budget;
+		private final boolean isTimed;
+
+		Agent(String name, long budget, boolean isTimed)
+		{
+			if(budget <= 0)
+			{
+				throw new IllegalArgumentException("Budget of agent " + name + " must be a positive none zero integer");
+			}
+			this.name = name;
+			this.budget = budget;
+			this.isTimed = isTimed;
+		}
+
+		/**
+		 * @param spec - name:playouts, or name:milliseconds followed by ms
+		 */
+		static Agent parse(String spec)
+		{
+			int colon = spec.lastIndexOf(':');
+			if(colon <= 0 || colon == spec.length()-1)
+			{
+				throw new IllegalArgumentException("Agent must be given as name:playouts or name:millisecondsms, not " + spec);
+			}
+			String budget = spec.substring(colon+1);
+			boolean isTimed = budget.endsWith("ms");
+			return new Agent(spec.substring(0, colon), Long.parseLong(isTimed? budget.substring(0, budget.length()-2) : budget), isTimed);
+		}
+
+		SearchResult search(MonteCarloTreeSearch search, GameState state)
+		{
+			return isTimed? search.search(state, budget, TimeUnit.MILLISECONDS) : search.search(state, budget);
+		}
+
+		@Override
+		public String toString()
+		{
+			return name + " (" + budget + (isTimed? "ms" : " playouts") + " per move)";
+		}
+	}
+
+	/**
+	 * outcome of one game
+	 */
+	static final class GameRecord
+	{
+		private final int[] agentOfSeat;
+		private int winningSeat = -1;
+		private boolean isAdjudicated;
+		private boolean isStuck;
+		private int numMoves;
+		private int numRejected;
+		private long fingerprint;
+		private final long[] numPlayouts;
+		private final long[] searchNanos;
+		private final List<List<Long>> latencies;
+
+		GameRecord(int[] agentOfSeat, int numAgents)
+		{
+			this.agentOfSeat = agentOfSeat;
+			numPlayouts = new long[numAgents];
+			searchNanos = new long[numAgents];
+			latencies = new ArrayList<List<Long>>(numAgents);
+			for(int i=0; i<numAgents; i++)
+			{
+				latencies.add(new ArrayList<Long>());
+			}
+		}
+
+		private void recordSearch(int agent, SearchResult result)
+		{
+			numPlayouts[agent] += result.getNumPlayouts();
+			searchNanos[agent] += result.getElapsedNanos();
+			latencies.get(agent).add(result.getElapsedNanos());
+		}
+	}
+
+	/**
+	 * keeps the state of the game when it starts, and counts the commands the handlers reject
+	 */
+	private static final class GameListener
+	{
+		private GameState state;
+		private int numRejected;
+
+		@Subscribe
+		public void gameStarted(GameStarted event)
+		{
+			state = event.getCurrentState();
+		}
+
+		@Subscribe
+		public void commandRejected(CommandRejected event)
+		{
+			//ties for the order of play are sent as rejections, they are rolled again
+			if(event.getInstruction() != UpdateInstruction.TieRoll)
+			{
+				numRejected++;
+			}
+		}
+	}
+
+	private final List<Agent> agents;
+	private final int numGames;
+	private final int numPlayers;
+	private final long seed;
+	private final int numWorkers;
+	private final int maxMoves;
+	private final int numSearchThreads;
+	private final boolean isDemoMode;
+
+	SelfPlayBenchmark(List<Agent> agents, int numGames, int numPlayers, long seed, int numWorkers, int maxMoves, int numSearchThreads, boolean isDemoMode)
+	{
+		if(agents.isEmpty())
+		{
+			throw new IllegalArgumentException("At least one agent is needed");
+		}
+		if(numPlayers < Constants.MIN_PLAYERS || numPlayers > Constants.MAX_PLAYERS)
+		{
+			throw new IllegalArgumentException("Number of players must be between " + Constants.MIN_PLAYERS + " and " + Constants.MAX_PLAYERS);
+		}
+		if(numGames <= 0 || numWorkers <= 0 || maxMoves <= 0 || numSearchThreads <= 0)
+		{
+			throw new IllegalArgumentException("Number of games, workers, moves and search threads must be positive none zero integers");
+		}
+		this.agents = agents;
+		this.numGames = numGames;
+		this.numPlayers = numPlayers;
+		this.seed = seed;
+		this.numWorkers = numWorkers;
+		this.maxMoves = maxMoves;
+		this.numSearchThreads = numSearchThreads;
+		this.isDemoMode = isDemoMode;
+	}
+
+	/**
+	 * play every game, numWorkers at a time
+	 * @return the records of the games, in the order they were numbered
+	 */
+	List<GameRecord> run() throws InterruptedException, ExecutionException
+	{
+		ExecutorService workers = Executors.newFixedThreadPool(numWorkers);
+		try
+		{
+			ArrayList<Future<GameRecord>> games = new ArrayList<Future<GameRecord>>(numGames);
+			for(int i=0; i<numGames; i++)
+			{
+				final int index = i;
+				games.add(workers.submit(new Callable<GameRecord>()
+				{
+					@Override
+					public GameRecord call()
+					{
+						return play(index);
+					}
+				}));
+			}
+			ArrayList<GameRecord> records = new ArrayList<GameRecord>(numGames);
+			for(Future<GameRecord> game : games)
+			{
+				records.add(game.get());
+			}
+			return records;
+		}
+		finally
+		{
+			workers.shutdownNow();
+		}
+	}
+
+	/**
+	 * play game number index on the calling thread, with random numbers and tile ids of its own
+	 */
+	GameRecord play(int index)
+	{
+		int[] agentOfSeat = new int[numPlayers];
+		for(int seat=0; seat<numPlayers; seat++)
+		{
+			agentOfSeat[seat] = (index + seat) % agents.size();
+		}
+		GameRecord record = new GameRecord(agentOfSeat, agents.size());
+		Random previousRandom = Constants.bindRandomToCurrentThread(new Random(seed + index * GOLDEN_GAMMA));
+		AtomicLong previousIDs = TileProperties.bindIDsToCurrentThread(new AtomicLong(FIRST_GAME_TILE_ID));
+		EventDispatch dispatch = new EventDispatch();
+		EventDispatch previousDispatch = EventDispatch.bindToCurrentThread(dispatch);
+		CommandHandlerManager game = new CommandHandlerManager();
+		GameListener listener = new GameListener();
+		try
+		{
+			game.initialize(dispatch);
+			dispatch.registerInternal(listener);
+			dispatch.registerNetwork(listener);
+			LinkedHashSet<Player> players = new LinkedHashSet<Player>();
+			for(int seat=0; seat<numPlayers; seat++)
+			{
+				players.add(new Player(new PlayerInfo(agents.get(agentOfSeat[seat]).name + "-" + seat, idOfSeat(seat), true)));
+			}
+			new StartSetupPhaseCommand(isDemoMode, players).postInternalEvent(dispatch);
+			GameState state = listener.state;
+			if(state == null)
+			{
+				throw new IllegalStateException("Game " + index + " did not start");
+			}
+			MonteCarloTreeSearch[] searches = new MonteCarloTreeSearch[numPlayers];
+			for(int seat=0; seat<numPlayers; seat++)
+			{
+				searches[seat] = new MonteCarloTreeSearch(isDemoMode, state.clone(), numSearchThreads, Parallelism.TREE, TRANSPOSITION_TABLE_BYTES);
+			}
+			int numRejectedInARow = 0;
+			while(state.getWinningPlayer() == null && record.numMoves < maxMoves && !record.isStuck)
+			{
+				List<Action> possible = new ArrayList<Action>();
+				for(Iterator<Action> it = PossibleMoveGenerator.getPossibleActions(state); it.hasNext();)
+				{
+					possible.add(it.next());
+				}
+				int seat = seatToAct(state, possible);
+				if(seat == -1)
+				{
+					record.isStuck = true;
+					break;
+				}
+				Action chosen = null;
+				if(numRejectedInARow == 0)
+				{
+					//the state of the game changes under the search, the search is given a copy
+					SearchResult result = agents.get(agentOfSeat[seat]).search(searches[seat], state.clone());
+					record.recordSearch(agentOfSeat[seat], result);
+					chosen = bestMoveOf(idOfSeat(seat), result);
+				}
+				if(chosen == null)
+				{
+					chosen = randomMoveOf(idOfSeat(seat), possible);
+				}
+				int numRejectedBefore = listener.numRejected;
+				createCommand(chosen).postInternalEvent(dispatch);
+				if(listener.numRejected == numRejectedBefore)
+				{
+					numRejectedInARow = 0;
+					record.numMoves++;
+				}
+				else
+				{
+					record.isStuck = ++numRejectedInARow >= MAX_REJECTED_IN_A_ROW;
+				}
+			}
+			Player winner = state.getWinningPlayer();
+			if(winner != null)
+			{
+				record.winningSeat = Constants.getPlayerSeat(winner.getID());
+			}
+			else
+			{
+				//scored the way the search scores a playout that reached its end
+				int leader = MonteCarloTreeSearch.getIncomeLeader(state);
+				record.isAdjudicated = leader != -1;
+				record.winningSeat = leader == -1? -1 : Constants.getPlayerSeat(leader);
+			}
+			record.numRejected = listener.numRejected;
+			record.fingerprint = Positions.hash(state) ^ (record.numMoves * GOLDEN_GAMMA);
+			System.out.println("game " + index + ": " + (record.winningSeat == -1? "drawn" : state.getPlayerByPlayerNumber(idOfSeat(record.winningSeat)).getName()
+					+ (record.isAdjudicated? " leads" : " won")) + " after " + record.numMoves + " moves, in " + state.getCurrentSetupPhase() + "/"
+					+ state.getCurrentRegularPhase() + "/" + state.getCurrentCombatPhase() + (record.isStuck? ", stuck" : ""));
+			return record;
+		}
+		finally
+		{
+			game.dispose();
+			EventDispatch.bindToCurrentThread(previousDispatch);
+			TileProperties.bindIDsToCurrentThread(previousIDs);
+			Constants.bindRandomToCurrentThread(previousRandom);
+		}
+	}
+
+	private static int idOfSeat(int seat)
+	{
+		return Constants.PLAYER_START_ID << seat;
+	}
+
+	/**
+	 * the active player acts when it has something to do, otherwise the first player in
+	 * the order of play that has, as all players act at once in some phases
+	 * @return seat of the player to act, or -1 if no player can do anything
+	 */
+	private int seatToAct(GameState state, List<Action> possible)
+	{
+		HashSet<Integer> actors = new HashSet<Integer>();
+		for(Action a : possible)
+		{
+			actors.add(a.getCommand().getID());
+		}
+		for(Player p : state.getPlayers())
+		{
+			//no player is active while the order of play is rolled for
+			if(p.getPlayerInfo().isActive() && actors.contains(p.getID()))
+			{
+				return Constants.getPlayerSeat(p.getID());
+			}
+		}
+		for(int ID : state.getPlayerOrder())
+		{
+			if(actors.contains(ID))
+			{
+				return Constants.getPlayerSeat(ID);
+			}
+		}
+		for(int seat=0; seat<numPlayers; seat++)
+		{
+			if(actors.contains(idOfSeat(seat)))
+			{
+				return seat;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the most played move of player ID, or null if the search played none of its moves
+	 */
+	private static Action bestMoveOf(int ID, SearchResult result)
+	{
+		for(MoveStatistics move : result.getMoves())
+		{
+			if(move.getNumPlayouts() > 0 && move.getAction().getCommand().getID() == ID)
+			{
+				return move.getAction();
+			}
+		}
+		return null;
+	}
+
+	private static Action randomMoveOf(int ID, List<Action> possible)
+	{
+		ArrayList<Action> moves = new ArrayList<Action>();
+		for(Action a : possible)
+		{
+			if(a.getCommand().getID() == ID)
+			{
+				moves.add(a);
+			}
+		}
+		return moves.get(Constants.getRandom().nextInt(moves.size()));
+	}
+
+	/**
+	 * a new command of action, with copies of its tiles, the way a client sends it,
+	 * as handlers change and keep the tiles they are given and handle a command once
+	 */
+	private static AbstractInternalEvent createCommand(Action action)
+	{
+		AbstractInternalEvent command = action.getCommand();
+		AbstractInternalEvent copy;
+		if(command instanceof EndPlayerTurnCommand)
+		{
+			copy = new EndPlayerTurnCommand();
+		}
+		else if(command instanceof RollDiceCommand)
+		{
+			Roll roll = ((RollDiceCommand)command).getRoll();
+			int targetValue = roll.getTargetValue();
+			if(targetValue < roll.getDiceCount())
+			{
+				//moves listed do not choose what the dice show, demo mode rolls the value of the roll
+				targetValue = Constants.random(roll.getDiceCount(), roll.getDiceCount()*Constants.MAX_DICE_FACE);
+			}
+			copy = new RollDiceCommand(new Roll(roll.getDiceCount(), copy(roll.getRollTarget()), roll.getRollReason(), roll.getRollingPlayerID(), targetValue));
+		}
+		else if(command instanceof DoneRollingCommand)
+		{
+			copy = new DoneRollingCommand();
+		}
+		else if(command instanceof PlaceThingOnBoardCommand)
+		{
+			PlaceThingOnBoardCommand place = (PlaceThingOnBoardCommand)command;
+			copy = new PlaceThingOnBoardCommand(copy(place.getThing()), copy(place.getHex()));
+		}
+		else if(command instanceof RemoveThingsFromHexCommand)
+		{
+			RemoveThingsFromHexCommand remove = (RemoveThingsFromHexCommand)command;
+			copy = new RemoveThingsFromHexCommand(copy(remove.getHexToRemoveSomethingFrom()), Constants.deepCloneCollection(remove.getThingsToRemove(), new HashSet<ITileProperties>()));
+		}
+		else if(command instanceof MoveThingsCommand)
+		{
+			MoveThingsCommand move = (MoveThingsCommand)command;
+			copy = new MoveThingsCommand(Constants.deepCloneCollection(move.getThings(), new HashSet<ITileProperties>()), Constants.deepCloneCollection(move.getHexes(), new ArrayList<ITileProperties>()));
+		}
+		else if(command instanceof RecruitThingsCommand)
+		{
+			RecruitThingsCommand recruit = (RecruitThingsCommand)command;
+			copy = new RecruitThingsCommand(recruit.getGold(), Constants.deepCloneCollection(recruit.getThingsToExchange(), new HashSet<ITileProperties>()));
+		}
+		else if(command instanceof ExchangeThingsCommand)
+		{
+			copy = new ExchangeThingsCommand(Constants.deepCloneCollection(((ExchangeThingsCommand)command).getThings(), new HashSet<ITileProperties>()));
+		}
+		else if(command instanceof DiscardThingsCommand)
+		{
+			copy = new DiscardThingsCommand(Constants.deepCloneCollection(((DiscardThingsCommand)command).getThingToDiscard(), new HashSet<ITileProperties>()));
+		}
+		else if(command instanceof ConstructBuildingCommand)
+		{
+			ConstructBuildingCommand build = (ConstructBuildingCommand)command;
+			copy = new ConstructBuildingCommand(build.getBuilding(), copy(build.getHex()));
+		}
+		else if(command instanceof GiveHexToPlayerCommand)
+		{
+			copy = new GiveHexToPlayerCommand(copy(((GiveHexToPlayerCommand)command).getHex()));
+		}
+		else if(command instanceof ExchangeSeaHexCommand)
+		{
+			//the moves listed are made from the tile, which leaves the hex not owned
+			copy = new ExchangeSeaHexCommand(copy(((ExchangeSeaHexCommand)command).getHex()));
+		}
+		else if(command instanceof ModifyRollForSpecialCharacterCommand)
+		{
+			ModifyRollForSpecialCharacterCommand modify = (ModifyRollForSpecialCharacterCommand)command;
+			copy = new ModifyRollForSpecialCharacterCommand(modify.retrieveGoldAmount(), copy(modify.getTarget()));
+		}
+		else if(command instanceof ResolveCombatCommand)
+		{
+			copy = new ResolveCombatCommand(copy(((ResolveCombatCommand)command).getCombatHex()));
+		}
+		else if(command instanceof ApplyHitsCommand)
+		{
+			ApplyHitsCommand hits = (ApplyHitsCommand)command;
+			copy = new ApplyHitsCommand(hits.getNumHits(), copy(hits.getTarget()));
+		}
+		else if(command instanceof TargetPlayerCommand)
+		{
+			copy = new TargetPlayerCommand(((TargetPlayerCommand)command).getTargetID());
+		}
+		else if(command instanceof RetreatCommand)
+		{
+			copy = new RetreatCommand(copy(((RetreatCommand)command).getDestinationHex()));
+		}
+		else
+		{
+			throw new IllegalArgumentException("Unable to send " + command.getClass().getSimpleName());
+		}
+		copy.setID(command.getID());
+		return copy;
+	}
+
+	private static ITileProperties copy(ITileProperties tile)
+	{
+		return tile == null? null : tile.clone();
+	}
+
+	/**
+	 * print speed, length of the games, and results of every agent, with the ratings fitted
+	 * to the results of every pair of agents that met
+	 */
+	void report(List<GameRecord> records, long wallNanos)
+	{
+		int numAgents = agents.size();
+		long[] numPlayouts = new long[numAgents];
+		long[] searchNanos = new long[numAgents];
+		int[] numSeats = new int[numAgents];
+		int[] numWins = new int[numAgents];
+		ArrayList<List<Long>> latencies = new ArrayList<List<Long>>();
+		for(int i=0; i<numAgents; i++)
+		{
+			latencies.add(new ArrayList<Long>());
+		}
+		//pairwise[i][j] is the score of agent i against agent j, games[i][j] the number of times they met
+		double[][] pairwise = new double[numAgents][numAgents];
+		int[][] games = new int[numAgents][numAgents];
+		ArrayList<Long> lengths = new ArrayList<Long>();
+		int numDraws = 0;
+		int numAdjudicated = 0;
+		int numStuck = 0;
+		long numRejected = 0;
+		long fingerprint = seed;
+		for(GameRecord r : records)
+		{
+			for(int i=0; i<numAgents; i++)
+			{
+				numPlayouts[i] += r.numPlayouts[i];
+				searchNanos[i] += r.searchNanos[i];
+				latencies.get(i).addAll(r.latencies.get(i));
+			}
+			lengths.add((long) r.numMoves);
+			numRejected += r.numRejected;
+			fingerprint = fingerprint * 31 + r.fingerprint;
+			//the engine, not the agents, ended a stuck game, it counts for neither side
+			if(r.isStuck)
+			{
+				numStuck++;
+				continue;
+			}
+			for(int seat=0; seat<numPlayers; seat++)
+			{
+				numSeats[r.agentOfSeat[seat]]++;
+			}
+			if(r.winningSeat == -1)
+			{
+				numDraws++;
+			}
+			else
+			{
+				numWins[r.agentOfSeat[r.winningSeat]]++;
+				numAdjudicated += r.isAdjudicated? 1 : 0;
+			}
+			for(int seat=0; seat<numPlayers; seat++)
+			{
+				for(int other=0; other<numPlayers; other++)
+				{
+					int a = r.agentOfSeat[seat];
+					int b = r.agentOfSeat[other];
+					if(seat == other || a == b)
+					{
+						continue;
+					}
+					//a player beats every other player when it wins, two players that both lose are even
+					games[a][b]++;
+					if(r.winningSeat == seat)
+					{
+						pairwise[a][b] += 1;
+					}
+					else if(r.winningSeat != other)
+					{
+						pairwise[a][b] += 0.5;
+					}
+				}
+			}
+		}
+		double[] elo = fitElo(pairwise, games);
+		long totalPlayouts = 0;
+		long totalSearchNanos = 0;
+		for(int i=0; i<numAgents; i++)
+		{
+			totalPlayouts += numPlayouts[i];
+			totalSearchNanos += searchNanos[i];
+		}
+		System.out.println(String.format(Locale.ROOT, "%d games of %d players, seed %d, %d workers, %d search threads per agent, %.1fs",
+				records.size(), numPlayers, seed, numWorkers, numSearchThreads, wallNanos/1e9));
+		System.out.println(String.format(Locale.ROOT, "playouts: %d in %.1fs of search, %.0f/s per search, %.0f/s in all",
+				totalPlayouts, totalSearchNanos/1e9, perSecond(totalPlayouts, totalSearchNanos), perSecond(totalPlayouts, wallNanos)));
+		Collections.sort(lengths);
+		System.out.println(String.format(Locale.ROOT, "moves per game: mean %.1f, median %d, p90 %d, max %d",
+				mean(lengths), percentile(lengths, 50), percentile(lengths, 90), percentile(lengths, 100)));
+		System.out.println(String.format(Locale.ROOT, "games: %d won, %d led on income when stopped, %d drawn, %d stuck, %d commands rejected",
+				records.size() - numStuck - numDraws - numAdjudicated, numAdjudicated, numDraws, numStuck, numRejected));
+		System.out.println(String.format(Locale.ROOT, "%-24s %6s %6s %8s %7s %10s %9s %9s %9s %9s", "agent", "seats", "wins", "win rate", "elo", "playouts/s", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+		for(int i=0; i<numAgents; i++)
+		{
+			List<Long> latency = latencies.get(i);
+			Collections.sort(latency);
+			System.out.println(String.format(Locale.ROOT, "%-24s %6d %6d %7.1f%% %7.0f %10.0f %9.2f %9.2f %9.2f %9.2f", agents.get(i).name, numSeats[i], numWins[i],
+					numSeats[i]==0? 0 : 100.0*numWins[i]/numSeats[i], elo[i], perSecond(numPlayouts[i], searchNanos[i]),
+					percentile(latency, 50)/1e6, percentile(latency, 90)/1e6, percentile(latency, 99)/1e6, percentile(latency, 100)/1e6));
+		}
+		System.out.println(String.format("fingerprint: %016x", fingerprint));
+	}
+
+	/**
+	 * ratings of the Bradley-Terry model that best fits the scores, found by the minorization
+	 * maximization iteration, every pair that met is given one more drawn game so that an agent
+	 * that won or lost every game still gets a finite rating
+	 * @return Elo ratings, the first agent rated 0
+	 */
+	static double[] fitElo(double[][] pairwise, int[][] games)
+	{
+		int n = pairwise.length;
+		double[] strength = new double[n];
+		Arrays.fill(strength, 1);
+		for(int iteration=0; iteration<1000; iteration++)
+		{
+			double[] next = new double[n];
+			for(int i=0; i<n; i++)
+			{
+				double score = 0;
+				double sum = 0;
+				for(int j=0; j<n; j++)
+				{
+					if(i != j && games[i][j] > 0)
+					{
+						score += pairwise[i][j] + 0.5;
+						sum += (games[i][j] + 1) / (strength[i] + strength[j]);
+					}
+				}
+				next[i] = sum == 0? strength[i] : score / sum;
+			}
+			strength = next;
+		}
+		double[] elo = new double[n];
+		for(int i=0; i<n; i++)
+		{
+			elo[i] = 400 * Math.log10(strength[i] / strength[0]);
+		}
+		return elo;
+	}
+
+	private static double perSecond(long count, long nanos)
+	{
+		return nanos == 0? 0 : count * 1e9 / nanos;
+	}
+
+	private static double mean(List<Long> values)
+	{
+		double sum = 0;
+		for(long v : values)
+		{
+			sum += v;
+		}
+		return values.isEmpty()? 0 : sum / values.size();
+	}
+
+	/**
+	 * @param sorted - values in ascending order
+	 * @return nearest rank percentile of sorted, 0 if it is empty
+	 */
+	private static long percentile(List<Long> sorted, int percent)
+	{
+		if(sorted.isEmpty())
+		{
+			return 0;
+		}
+		int rank = (int) Math.ceil(percent / 100.0 * sorted.size());
+		return sorted.get(Math.max(rank, 1) - 1);
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		ArrayList<Agent> agents = new ArrayList<Agent>();
+		int numGames = 20;
+		int numPlayers = 2;
+		long seed = 1;
+		int numWorkers = Runtime.getRuntime().availableProcessors();
+		int maxMoves = DEFAULT_MAX_MOVES;
+		int numSearchThreads = 1;
+		boolean isDemoMode = false;
+		boolean log = false;
+		for(int i=0; i<args.length; i++)
+		{
+			if(args[i].equals("-agent")){
+				agents.add(Agent.parse(args[++i]));
+			}else if(args[i].equals("-games")){
+				numGames = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-players")){
+				numPlayers = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-seed")){
+				seed = Long.parseLong(args[++i]);
+			}else if(args[i].equals("-workers")){
+				numWorkers = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-moves")){
+				maxMoves = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-threads")){
+				numSearchThreads = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-demo")){
+				isDemoMode = true;
+			}else if(args[i].equals("-log")){
+				log = true;
+			}else{
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		if(agents.isEmpty())
+		{
+			agents.add(Agent.parse("mcts:200"));
+		}
+		if(log)
+		{
+			BasicConfigurator.configure();
+		}
+		else
+		{
+			//handlers log every command they reject, the report counts them instead
+			org.apache.log4j.Logger.getRootLogger().setLevel(Level.OFF);
+		}
+		new LoadResources(false).run();
+		SelfPlayBenchmark benchmark = new SelfPlayBenchmark(agents, numGames, numPlayers, seed, numWorkers, maxMoves, numSearchThreads, isDemoMode);
+		for(Agent a : agents)
+		{
+			System.out.println("agent " + a);
+		}
+		long start = System.nanoTime();
+		List<GameRecord> records = benchmark.run();
+		benchmark.report(records, System.nanoTime() - start);
+	}
+}
@@ -0,0 +1,312 @@
+package server.logic.ai;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+
+import server.event.GameStarted;
+import server.event.internal.ApplyHitsCommand;
+import server.event.internal.ConstructBuildingCommand;
+import server.event.internal.DiscardThingsCommand;
+import server.event.internal.DoneRollingCommand;
+import server.event.internal.EndPlayerTurnCommand;
+import server.event.internal.ExchangeSeaHexCommand;
+import server.event.internal.ExchangeThingsCommand;
+import server.event.internal.GiveHexToPlayerCommand;
+import server.event.internal.ModifyRollForSpecialCharacterCommand;
+import server.event.internal.MoveThingsCommand;
+import server.event.internal.PlaceThingOnBoardCommand;
+import server.event.internal.RecruitThingsCommand;
+import server.event.internal.RemoveThingsFromHexCommand;
+import server.event.internal.ResolveCombatCommand;
+import server.event.internal.RetreatCommand;
+import server.event.internal.RollDiceCommand;
+import server.event.internal.TargetPlayerCommand;
+import server.logic.exceptions.NoMoreTilesException;
+import server.logic.game.GameState;
+import server.logic.game.handlers.ApplyMagicEventsCommandHandler;
+import server.logic.game.handlers.ApplyRandomEventsCommandHandler;
+import server.logic.game.handlers.CombatCommandHandler;
+import server.logic.game.handlers.ConstructBuildingCommandHandler;
+import server.logic.game.handlers.MovementCommandHandler;
+import server.logic.game.handlers.RecruitSpecialCharacterCommandHandler;
+import server.logic.game.handlers.RecruitingThingsCommandHandler;
+import server.logic.game.handlers.SetupPhaseCommandHandler;
+import server.logic.ai.PossibleMoveGenerator.CandidatesOfKind;
+
+import com.google.common.collect.Iterables;
+
+import common.Constants;
+import common.event.AbstractInternalEvent;
+import common.event.EventDispatch;
+import common.game.ITileProperties;
+import common.game.Roll;
+import common.game.UndoLog;
+
+/**
+ * applies actions to states the way a game room does, with a full set of command handlers
+ * registered on an event dispatch of its own, so the events handlers send each other, such
+ * as dice results, are processed while nothing reaches a real game. actions are applied by
+ * calling the handlers directly, an action can therefore be applied to any number of states.
+ * changes made by the handlers are recorded in an undo log, so rejected actions leave no trace
+ * and actions applied since a mark can be undone, to play on from a state without copying it.
+ * one instance per thread, its dispatch is bound to the thread using it
+ */
+final class Simulator
+{
+	private final boolean isDemoMode;
+	private final EventDispatch dispatch;
+	private final CombatCommandHandler combat;
+	private final ConstructBuildingCommandHandler construction;
+	private final MovementCommandHandler movement;
+	private final RecruitingThingsCommandHandler recruiting;
+	private final SetupPhaseCommandHandler setup;
+	private final RecruitSpecialCharacterCommandHandler specialCharacters;
+	private final ApplyRandomEventsCommandHandler randomEvents;
+	private final ApplyMagicEventsCommandHandler magicEvents;
+	private final UndoLog undoLog;
+	//the actions of the part being drawn from by applyRandomAction
+	private final ArrayList<Action> candidates;
+	private int numMarks;
+	private GameState currentState;
+
+	Simulator(boolean isDemoMode)
+	{
+		this.isDemoMode = isDemoMode;
+		dispatch = new EventDispatch();
+		combat = new CombatCommandHandler();
+		construction = new ConstructBuildingCommandHandler();
+		movement = new MovementCommandHandler();
+		recruiting = new RecruitingThingsCommandHandler();
+		setup = new SetupPhaseCommandHandler();
+		specialCharacters = new RecruitSpecialCharacterCommandHandler();
+		randomEvents = new ApplyRandomEventsCommandHandler();
+		magicEvents = new ApplyMagicEventsCommandHandler();
+		undoLog = new UndoLog();
+		candidates = new ArrayList<Action>();
+		combat.initialize(dispatch);
+		construction.initialize(dispatch);
+		movement.initialize(dispatch);
+		recruiting.initialize(dispatch);
+		setup.initialize(dispatch);
+		specialCharacters.initialize(dispatch);
+		randomEvents.initialize(dispatch);
+		magicEvents.initialize(dispatch);
+	}
+
+	/**
+	 * bind the dispatch of this simulator to the calling thread
+	 * @return previously bound dispatch, to be restored when done
+	 */
+	EventDispatch bind()
+	{
+		return EventDispatch.bindToCurrentThread(dispatch);
+	}
+
+	/**
+	 * start recording the actions applied, until undone or kept
+	 * @return mark to pass to undo or keep
+	 */
+	int mark()
+	{
+		numMarks++;
+		return undoLog.size();
+	}
+
+	/**
+	 * revert the actions applied since mark was taken, newest first
+	 */
+	void undo(int mark)
+	{
+		undoLog.undoTo(mark);
+		numMarks--;
+	}
+
+	/**
+	 * keep the actions applied since mark was taken, they can still be undone
+	 * by undoing to a mark taken earlier that is still open
+	 */
+	void keep(int mark)
+	{
+		numMarks--;
+		if(numMarks == 0)
+		{
+			undoLog.keepTo(mark);
+		}
+	}
+
+	/**
+	 * apply action to state, state is changed in place, an action rejected by a handler
+	 * is undone, so state is left as it was
+	 * @return true if the action was valid, false if it was rejected
+	 */
+	boolean apply(Action action, GameState state)
+	{
+		if(currentState != state)
+		{
+			new GameStarted(isDemoMode, state).postInternalEvent(dispatch);
+			currentState = state;
+		}
+		AbstractInternalEvent command = action.getCommand();
+		int ID = command.getID();
+		int start = undoLog.size();
+		UndoLog previousLog = UndoLog.bindToCurrentThread(undoLog);
+		try
+		{
+			if(command instanceof EndPlayerTurnCommand)
+			{
+				recruiting.endPlayerTurn(ID);
+			}
+			else if(command instanceof RollDiceCommand)
+			{
+				Roll roll = ((RollDiceCommand)command).getRoll();
+				int targetValue = roll.getTargetValue();
+				if(targetValue < roll.getDiceCount())
+				{
+					//searched actions do not choose what the dice show, demo mode rolls the value of the roll
+					targetValue = Constants.random(roll.getDiceCount(), roll.getDiceCount()*Constants.MAX_DICE_FACE);
+				}
+				combat.rollDice(new Roll(roll.getDiceCount(), copy(roll.getRollTarget()), roll.getRollReason(), ID, targetValue));
+			}
+			else if(command instanceof DoneRollingCommand)
+			{
+				setup.doneRolling(ID);
+			}
+			else if(command instanceof PlaceThingOnBoardCommand)
+			{
+				PlaceThingOnBoardCommand place = (PlaceThingOnBoardCommand)command;
+				recruiting.placeThingOnBoard(copy(place.getThing()), ID, copy(place.getHex()));
+			}
+			else if(command instanceof RemoveThingsFromHexCommand)
+			{
+				RemoveThingsFromHexCommand remove = (RemoveThingsFromHexCommand)command;
+				recruiting.removeThingsFromBoard(ID, copy(remove.getHexToRemoveSomethingFrom()), Constants.deepCloneCollection(remove.getThingsToRemove(), new HashSet<ITileProperties>()));
+			}
+			else if(command instanceof MoveThingsCommand)
+			{
+				MoveThingsCommand move = (MoveThingsCommand)command;
+				movement.moveThings(Constants.deepCloneCollection(move.getThings(), new HashSet<ITileProperties>()), ID, Constants.deepCloneCollection(move.getHexes(), new ArrayList<ITileProperties>()));
+			}
+			else if(command instanceof RecruitThingsCommand)
+			{
+				RecruitThingsCommand recruit = (RecruitThingsCommand)command;
+				recruiting.recruitThings(recruit.getGold(), Constants.deepCloneCollection(recruit.getThingsToExchange(), new HashSet<ITileProperties>()), ID);
+			}
+			else if(command instanceof ExchangeThingsCommand)
+			{
+				recruiting.exchangeThings(Constants.deepCloneCollection(((ExchangeThingsCommand)command).getThings(), new HashSet<ITileProperties>()), ID);
+			}
+			else if(command instanceof DiscardThingsCommand)
+			{
+				recruiting.discardThings(Constants.deepCloneCollection(((DiscardThingsCommand)command).getThingToDiscard(), new HashSet<ITileProperties>()), ID);
+			}
+			else if(command instanceof ConstructBuildingCommand)
+			{
+				ConstructBuildingCommand build = (ConstructBuildingCommand)command;
+				construction.constructBuilding(build.getBuilding(), ID, copy(build.getHex()));
+			}
+			else if(command instanceof GiveHexToPlayerCommand)
+			{
+				setup.giveHexToPlayer(copy(((GiveHexToPlayerCommand)command).getHex()), ID);
+			}
+			else if(command instanceof ExchangeSeaHexCommand)
+			{
+				ExchangeSeaHexCommand exchange = (ExchangeSeaHexCommand)command;
+				setup.exchangeSeaHex(copy(exchange.getHex()), ID, exchange.isOwned());
+			}
+			else if(command instanceof ModifyRollForSpecialCharacterCommand)
+			{
+				ModifyRollForSpecialCharacterCommand modify = (ModifyRollForSpecialCharacterCommand)command;
+				specialCharacters.handleSpecialCharacterRollModification(copy(modify.getTarget()), ID, modify.retrieveGoldAmount());
+			}
+			else if(command instanceof ResolveCombatCommand)
+			{
+				combat.resolveCombat(copy(((ResolveCombatCommand)command).getCombatHex()), ID);
+			}
+			else if(command instanceof ApplyHitsCommand)
+			{
+				ApplyHitsCommand hits = (ApplyHitsCommand)command;
+				combat.applyHits(copy(hits.getTarget()), ID, hits.getNumHits());
+			}
+			else if(command instanceof TargetPlayerCommand)
+			{
+				combat.setPlayersTarget(ID, ((TargetPlayerCommand)command).getTargetID());
+			}
+			else if(command instanceof RetreatCommand)
+			{
+				combat.retreatFromCombat(ID, copy(((RetreatCommand)command).getDestinationHex()));
+			}
+			else
+			{
+				throw new IllegalArgumentException("Unable to simulate " + command.getClass().getSimpleName());
+			}
+			if(numMarks == 0)
+			{
+				undoLog.keepTo(start);
+			}
+			return true;
+		}
+		catch(IllegalArgumentException | IllegalStateException e)
+		{
+			//rejected by the validators of the handler
+			undoLog.undoTo(start);
+			return false;
+		}
+		catch(NoMoreTilesException e)
+		{
+			undoLog.undoTo(start);
+			return false;
+		}
+		finally
+		{
+			UndoLog.bindToCurrentThread(previousLog);
+		}
+	}
+
+	/**
+	 * tiles of an action are those of the state it was listed in, while handlers change and keep
+	 * the tiles they are given, so they are given copies, as they would be over the network
+	 */
+	private static ITileProperties copy(ITileProperties tile)
+	{
+		return tile == null? null : tile.clone();
+	}
+
+	/**
+	 * apply a random valid action to state in place, a kind of action is picked first so that
+	 * kinds with few actions, such as ending the turn, are not drowned by the many ways to move,
+	 * then a part of the kind, such as the moves from one hex, the next kind or part is only picked
+	 * once no action of the one picked is valid. only the parts picked are listed, into a list kept
+	 * between calls. actions are checked by the validators before being applied, which is cheaper
+	 * than undoing them
+	 * @return false if no action is valid in state
+	 */
+	boolean applyRandomAction(GameState state)
+	{
+		List<CandidatesOfKind> kinds = PossibleMoveGenerator.getCandidateGroups(state);
+		Random random = Constants.getRandom();
+		while(!kinds.isEmpty())
+		{
+			ArrayList<Iterable<Action>> parts = new ArrayList<Iterable<Action>>(kinds.remove(random.nextInt(kinds.size())).getParts());
+			while(!parts.isEmpty())
+			{
+				candidates.clear();
+				Iterables.addAll(candidates, parts.remove(random.nextInt(parts.size())));
+				while(!candidates.isEmpty())
+				{
+					int index = random.nextInt(candidates.size());
+					Action a = candidates.get(index);
+					candidates.set(index, candidates.get(candidates.size()-1));
+					candidates.remove(candidates.size()-1);
+					if(PossibleMoveGenerator.isValid(a, state) && apply(a, state))
+					{
+						candidates.clear();
+						return true;
+					}
+				}
+			}
+		}
+		return false;
+	}
+}
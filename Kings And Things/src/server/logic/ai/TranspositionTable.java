@@ -0,0 +1,118 @@
+package server.logic.ai;
+
+import java.util.Arrays;
+
+import server.logic.game.GameState;
+
+/**
+ * searched positions by their Zobrist hash, so a position reached by different orders
+ * of moves is one node of the search, holding the playouts of all of them. the table
+ * has as many slots as fit in the memory it is given, two per bucket, a new position
+ * takes a free slot of its bucket, or replaces the less played of the two. replaced
+ * positions stay in the tree, they are only no longer found from other orders of moves
+ */
+final class TranspositionTable
+{
+	/** memory taken by one slot, a hash and a reference to a node */
+	static final int BYTES_PER_SLOT = 16;
+	private static final int SLOTS_PER_BUCKET = 2;
+	private static final int MAX_BUCKETS = 1 << 28;
+
+	private final long[] hashes;
+	private final Node[] nodes;
+	private final int bucketMask;
+	private int size;
+
+	/**
+	 * @param maxBytes - memory the slots of the table may take at most, at least one bucket is made
+	 */
+	TranspositionTable(long maxBytes)
+	{
+		if(maxBytes < 0)
+		{
+			throw new IllegalArgumentException("The memory of a transposition table must not be negative");
+		}
+		long numBuckets = Math.max(1, Math.min(MAX_BUCKETS, maxBytes / (BYTES_PER_SLOT * SLOTS_PER_BUCKET)));
+		int buckets = Integer.highestOneBit((int) numBuckets);
+		bucketMask = buckets - 1;
+		hashes = new long[buckets * SLOTS_PER_BUCKET];
+		nodes = new Node[buckets * SLOTS_PER_BUCKET];
+	}
+
+	/**
+	 * @return node of the same position as state, or null if there is none
+	 */
+	synchronized Node get(long hash, GameState state)
+	{
+		int bucket = indexOf(hash);
+		for(int i=bucket; i<bucket+SLOTS_PER_BUCKET; i++)
+		{
+			if(nodes[i] != null && hashes[i] == hash && Positions.areSame(nodes[i].getState(), state))
+			{
+				return nodes[i];
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * add n, unless a node of the same position is in the table already
+	 * @return node of the same position as n that is in the table, or null if n was added
+	 */
+	synchronized Node putIfAbsent(Node n)
+	{
+		long hash = n.getHash();
+		int bucket = indexOf(hash);
+		int replaced = bucket;
+		for(int i=bucket; i<bucket+SLOTS_PER_BUCKET; i++)
+		{
+			if(nodes[i] == null)
+			{
+				replaced = i;
+				size++;
+				break;
+			}
+			if(hashes[i] == hash && Positions.areSame(nodes[i].getState(), n.getState()))
+			{
+				return nodes[i];
+			}
+			if(nodes[i].getNumPlayouts() < nodes[replaced].getNumPlayouts())
+			{
+				replaced = i;
+			}
+		}
+		hashes[replaced] = hash;
+		nodes[replaced] = n;
+		return null;
+	}
+
+	/**
+	 * remove every position, so nodes no longer searched can be collected
+	 */
+	synchronized void clear()
+	{
+		Arrays.fill(nodes, null);
+		size = 0;
+	}
+
+	/**
+	 * @return number of positions in the table
+	 */
+	synchronized int size()
+	{
+		return size;
+	}
+
+	/**
+	 * @return number of positions the table can hold
+	 */
+	int capacity()
+	{
+		return nodes.length;
+	}
+
+	private int indexOf(long hash)
+	{
+		return ((int) (hash ^ (hash >>> 32)) & bucketMask) * SLOTS_PER_BUCKET;
+	}
+}
@@ -1,11 +1,16 @@
 package server.logic.game;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.Collection;
 
 import server.logic.exceptions.NoMoreTilesException;
+import common.Constants;
 import common.game.ITileProperties;
+import common.game.UndoLog;
+import common.game.Zobrist;
 
 
 /**
@@ -18,6 +23,9 @@ public abstract class AbstractTileManager implements Serializable
 	
 	protected final ArrayList<ITileProperties> tiles;
 	private final String tileType;
+	private transient long zobristHash;
+	//true once tiles are shared with a copy of this manager, tiles drawn from then on are copies
+	private transient volatile boolean tilesShared;
 
 	/**
 	 * Create new AbstractTileManager.
@@ -28,6 +36,30 @@ public abstract class AbstractTileManager implements Serializable
 	{
 		this.tiles = new ArrayList<ITileProperties>(tiles);
 		this.tileType = tileType;
+		zobristHash = calculateZobristHash();
+	}
+
+	/**
+	 * Create a copy of other, sharing its tiles, a tile drawn from either of
+	 * them is copied first, so that drawing it from one does not change the other.
+	 * @param other The manager to copy
+	 */
+	protected AbstractTileManager(AbstractTileManager other)
+	{
+		synchronized(other.tiles)
+		{
+			tiles = new ArrayList<ITileProperties>(other.tiles);
+			other.tilesShared = true;
+		}
+		tileType = other.tileType;
+		zobristHash = other.zobristHash;
+		tilesShared = true;
+	}
+
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+	{
+		input.defaultReadObject();
+		zobristHash = calculateZobristHash();
 	}
 
 	/**
@@ -44,8 +76,8 @@ public abstract class AbstractTileManager implements Serializable
 				throw new NoMoreTilesException("Unable to draw "+ tileType +" tile because there are no more tiles.");
 			}
 			//draw a random tile
-			int index = (int) Math.round(Math.random() * (tiles.size() - 1));
-			return tiles.remove(index);
+			int index = Constants.getRandom().nextInt(tiles.size());
+			return drawTileAt(index);
 		}
 	}
 
@@ -63,6 +95,66 @@ public abstract class AbstractTileManager implements Serializable
 		synchronized(tiles)
 		{
 			tiles.add(tile);
+			toggleZobristKey(tile);
+			if(UndoLog.isRecording())
+			{
+				UndoLog.record(new UndoLog.Change()
+				{
+					@Override
+					public void undo()
+					{
+						drawTileAt(tiles.size()-1);
+					}
+				});
+			}
 		}
 	}
+
+	/**
+	 * Zobrist hash of the tiles left to draw, kept up to date as they are drawn and put back
+	 * @return Exclusive or of the Zobrist keys of the tiles left to draw
+	 */
+	public long getZobristHash()
+	{
+		return zobristHash;
+	}
+
+	/**
+	 * Subclasses drawing a particular tile must draw it with this method.
+	 * @param index The index of the tile in tiles
+	 * @return The tile drawn, a copy of it if tiles are shared with a copy of this manager
+	 */
+	protected ITileProperties drawTileAt(final int index)
+	{
+		final ITileProperties tile = tiles.remove(index);
+		toggleZobristKey(tile);
+		if(UndoLog.isRecording())
+		{
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					tiles.add(index, tile);
+					toggleZobristKey(tile);
+				}
+			});
+		}
+		return tilesShared? tile.clone() : tile;
+	}
+
+	private long calculateZobristHash()
+	{
+		long hash = 0;
+		for(ITileProperties tile : tiles)
+		{
+			hash ^= Zobrist.key(Zobrist.UNDRAWN, tile, tileType.hashCode());
+		}
+		return hash;
+	}
+
+	private void toggleZobristKey(ITileProperties tile)
+	{
+		zobristHash ^= Zobrist.key(Zobrist.UNDRAWN, tile, tileType.hashCode());
+	}
 }
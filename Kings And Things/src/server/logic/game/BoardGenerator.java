@@ -8,6 +8,7 @@ import server.logic.exceptions.NoMoreTilesException;
 import common.Constants;
 import common.Constants.Biome;
 import common.game.ITileProperties;
+import common.game.UndoLog;
 
 /**
  * This class creates a playing board according to the rules for removing
@@ -47,12 +48,29 @@ public class BoardGenerator implements Serializable
 	}
 	
 	public BoardGenerator(BoardGenerator other)
+	{
+		this(other, other.hexManager.clone());
+	}
+	
+	/**
+	 * Copy other, drawing hexes from hexManager instead, for copies of
+	 * a game, whose bank is copied separately.
+	 */
+	BoardGenerator(BoardGenerator other, HexTileManager hexManager)
 	{
 		numPlayers = other.numPlayers;
-		hexManager = other.hexManager.clone();
+		this.hexManager = hexManager;
 		temporarilyRemovedHexes = Constants.deepCloneCollection(other.temporarilyRemovedHexes,new HashSet<ITileProperties>());
 	}
 	
+	/**
+	 * @return true if this generator draws hexes from hexManager
+	 */
+	boolean drawsFrom(HexTileManager hexManager)
+	{
+		return this.hexManager == hexManager;
+	}
+	
 	@Override
 	public BoardGenerator clone()
 	{
@@ -123,6 +141,7 @@ public class BoardGenerator implements Serializable
 			putHexBack(tp);
 		}
 		
+		UndoLog.recordAll(temporarilyRemovedHexes);
 		temporarilyRemovedHexes.clear();
 	}
 	
@@ -143,14 +162,21 @@ public class BoardGenerator implements Serializable
 		{
 			throw new IllegalArgumentException("The entered tile must be a hex tile.");
 		}
-		temporarilyRemovedHexes.add(hex);
+		if(temporarilyRemovedHexes.add(hex))
+		{
+			UndoLog.recordAdd(temporarilyRemovedHexes, hex);
+		}
 	}
 	
 	private void tempRemoveHexesOfType(Biome type, int num) throws NoMoreTilesException
 	{
 		for(int i=0; i<num; i++)
 		{
-			temporarilyRemovedHexes.add(hexManager.drawHexTileByType(type));
+			ITileProperties hex = hexManager.drawHexTileByType(type);
+			if(temporarilyRemovedHexes.add(hex))
+			{
+				UndoLog.recordAdd(temporarilyRemovedHexes, hex);
+			}
 		}
 	}
 }
@@ -14,6 +14,8 @@ import server.logic.game.handlers.RecruitSpecialCharacterCommandHandler;
 import server.logic.game.handlers.RecruitingThingsCommandHandler;
 import server.logic.game.handlers.SetupPhaseCommandHandler;
 
+import common.event.EventDispatch;
+
 /**
  * This class is used to create handlers for commands that change the state of a game
  */
@@ -33,12 +35,21 @@ public class CommandHandlerManager{
 	}
 	
 	/**
-	 * call this method to initialize this class before sending any commands
+	 * call this method to initialize this class before sending any commands,
+	 * handlers are registered on the event dispatch bound to the calling thread
 	 */
 	public void initialize(){
+		initialize(EventDispatch.getCurrent());
+	}
+	
+	/**
+	 * call this method to initialize this class before sending any commands
+	 * @param dispatch The event buses of the game these handlers belong to
+	 */
+	public void initialize(EventDispatch dispatch){
 		for(CommandHandler ch : commandHandlers)
 		{
-			ch.initialize();
+			ch.initialize(dispatch);
 		}
 	}
 	
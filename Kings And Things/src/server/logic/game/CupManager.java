@@ -39,7 +39,7 @@ public class CupManager extends AbstractTileManager
 	
 	public CupManager(CupManager other)
 	{
-		super(Constants.deepCloneCollection(other.tiles,new ArrayList<ITileProperties>()),"cup");
+		super(other);
 		isDemoMode = other.isDemoMode;
 		numDraws = other.numDraws;
 	}
@@ -183,6 +183,7 @@ public class CupManager extends AbstractTileManager
 				newDeckOrder.add(tp);
 			}
 			
+			//the same tiles in another order, so the hash of the cup is unchanged
 			tiles.clear();
 			tiles.addAll(newDeckOrder);
 		}
@@ -1,5 +1,7 @@
 package server.logic.game;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 
 import java.awt.Point;
@@ -13,21 +15,24 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 
+import common.Constants;
 import common.Logger;
 import common.game.Roll;
 import common.game.Player;
 import common.game.HexState;
 import common.game.PlayerInfo;
 import common.game.ITileProperties;
-import common.Constants.Building;
+import common.game.UndoLog;
 import common.Constants.SetupPhase;
 import common.Constants.CombatPhase;
 import common.Constants.RegularPhase;
 import common.event.network.GameStateProgress;
 
+import server.event.GameStateChanged;
 import server.logic.exceptions.NoMoreTilesException;
 
 import static common.Constants.ALL_PLAYERS_ID;
+import static common.Constants.MAX_PLAYERS;
 
 /**
  * GameState can be described by the board and player info
@@ -42,6 +47,8 @@ public class GameState implements Serializable
 	private SpecialCharacterManager bankHeroes;
 	private HexBoard board;
 	private final HashSet<Player> players;
+	//players by seat, for the victory check to find the owner of citadels without a search
+	private transient Player[] playersBySeat;
 	private final ArrayList<Integer> playerOrder;
 	private SetupPhase currentSetupPhase;
 	private RegularPhase currentRegularPhase;
@@ -50,10 +57,12 @@ public class GameState implements Serializable
 	private int defenderPlayerNumber;
 	private Point combatLocation;
 	private final ArrayList<Roll> rolls;
-	private final transient HashSet<Integer> confirmedRolls;
+	private transient HashSet<Integer> confirmedRolls;
 	private final ArrayList<RollModification> rollModifications;
 	private final HashMap<Integer,Integer> hitsToApply;
 	private final HashSet<HexState> hexesContainingBuiltObjects;
+	//bits of hexesContainingBuiltObjects in the bitboards of the board, so the victory check needs no lookup
+	private transient long builtObjectHexBits;
 	private Roll recordedRollForSpecialCharacter;
 	private final HashMap<HexState,Integer> hexesThatNeedThingsRemoved;
 	private final HashMap<Integer,Integer> playerTargets;
@@ -76,6 +85,7 @@ public class GameState implements Serializable
 			int activeTurnPlayerNumber, int activePhasePlayerNumber, CombatPhase currentCombatPhase, int defenderPlayerNumber, Point combatLocation)
 	{
 		this.players = new HashSet<Player>(players);
+		indexPlayersBySeat();
 		this.playerOrder = new ArrayList<Integer>(playerOrder);
 		this.currentSetupPhase = currentSetupPhase;
 		this.currentRegularPhase = currentRegularPhase;
@@ -113,6 +123,10 @@ public class GameState implements Serializable
 		{
 			Logger.getErrorLogger().error("Unable to start game due to: ", e);
 		}
+		if(board != null)
+		{
+			board.updateBitboards(this.players);
+		}
 	}
 	
 	/**
@@ -123,7 +137,7 @@ public class GameState implements Serializable
 	{
 		cup = other.cup.clone();
 		bank = other.bank.clone();
-		boardGenerator = other.boardGenerator.clone();
+		boardGenerator = other.boardGenerator.drawsFrom(other.bank)? new BoardGenerator(other.boardGenerator, bank) : other.boardGenerator.clone();
 		bankHeroes = other.bankHeroes.clone();
 		board = other.board.clone();
 		players = new HashSet<Player>(other.players.size());
@@ -132,13 +146,14 @@ public class GameState implements Serializable
 		{
 			players.add(p.clone());
 		}
+		indexPlayersBySeat();
 		playerOrder = new ArrayList<Integer>(other.playerOrder);
 		currentSetupPhase = other.currentSetupPhase;
 		currentRegularPhase = other.currentRegularPhase;
 		activeTurnPlayerNumber = other.activeTurnPlayerNumber;
 		currentCombatPhase = other.currentCombatPhase;
 		defenderPlayerNumber = other.defenderPlayerNumber;
-		combatLocation = new Point(other.combatLocation.x,other.combatLocation.y);
+		combatLocation = other.combatLocation==null? null : new Point(other.combatLocation.x,other.combatLocation.y);
 		rolls = new ArrayList<Roll>(other.rolls.size());
 		for(Roll r : other.rolls)
 		{
@@ -158,17 +173,41 @@ public class GameState implements Serializable
 		hexesContainingBuiltObjects = new HashSet<HexState>(other.hexesContainingBuiltObjects.size());
 		for(HexState hs : other.hexesContainingBuiltObjects)
 		{
-			hexesContainingBuiltObjects.add(hs.clone());
+			hexesContainingBuiltObjects.add(other.copyOf(hs, board));
 		}
-		recordedRollForSpecialCharacter = other.recordedRollForSpecialCharacter.clone();
+		builtObjectHexBits = other.builtObjectHexBits;
+		recordedRollForSpecialCharacter = other.recordedRollForSpecialCharacter==null? null : other.recordedRollForSpecialCharacter.clone();
 		hexesThatNeedThingsRemoved = new HashMap<HexState, Integer>(other.hexesThatNeedThingsRemoved.size());
 		for(Entry<HexState,Integer> e : other.hexesThatNeedThingsRemoved.entrySet())
 		{
-			hexesThatNeedThingsRemoved.put(e.getKey().clone(), e.getValue());
+			hexesThatNeedThingsRemoved.put(other.copyOf(e.getKey(), board), e.getValue());
 		}
 		playerTargets = new HashMap<Integer,Integer>(other.playerTargets);
 	}
 	
+	/**
+	 * @return hex of the copy of the board that stands for hs, if hs is a hex of the
+	 * board of this state, so the copy keeps referring to its board, or a copy of hs
+	 */
+	private HexState copyOf(HexState hs, HexBoard copyOfBoard)
+	{
+		Point location = hs.getLocation();
+		if(board.hexExistsAtXY(location.x, location.y) && board.getHexByXY(location.x, location.y) == hs)
+		{
+			return copyOfBoard.getHexByXY(location.x, location.y);
+		}
+		return hs.clone();
+	}
+	
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+	{
+		input.defaultReadObject();
+		confirmedRolls = new HashSet<Integer>();
+		indexPlayersBySeat();
+		board.updateBitboards(players);
+		updateBuiltObjectHexBits();
+	}
+	
 	@Override
 	public GameState clone()
 	{
@@ -231,6 +270,7 @@ public class GameState implements Serializable
 	
 	public void setRecruitedOnce(boolean newVal)
 	{
+		recordFields();
 		recruitedOnce = newVal;
 	}
 	
@@ -241,6 +281,7 @@ public class GameState implements Serializable
 	
 	public void setWillingWorkersPlayed(boolean newVal) 
 	{
+		recordFields();
 		willingWorkersPlayed = newVal;
 	}
 	
@@ -299,6 +340,7 @@ public class GameState implements Serializable
 	
 	public void recordRollForSpecialCharacter(Roll r)
 	{
+		recordFields();
 		recordedRollForSpecialCharacter = r;
 	}
 	
@@ -340,22 +382,49 @@ public class GameState implements Serializable
 	public HashSet<Player> getPlayersStillFightingInCombatHex()
 	{
 		HashSet<Player> fightingPlayers = new HashSet<Player>();
-		for(ITileProperties thing : getCombatHex().getFightingThingsInHex())
+		long combatHexBit = board.getHexBit(getCombatHex());
+		for(Player p : players)
 		{
-			for(Player p : players)
+			if((board.getFightingHexBits(p) & combatHexBit) != 0)
 			{
-				if(p.ownsThingOnBoard(thing))
-				{
-					fightingPlayers.add(p);
-				}
+				fightingPlayers.add(p);
 			}
 		}
-		if(getCombatHex().getFightingThingsInHexNotOwnedByPlayers(players).size()>0)
+		if((board.getUnownedFightingHexBits() & combatHexBit) != 0)
 		{
 			fightingPlayers.add(getDefendingPlayer());
 		}
 		return fightingPlayers;
 	}
+	
+	/**
+	 * Count the players with things that can fight in a hex, from the bitboards
+	 * the handlers keep up to date
+	 * @param hs The hex to look in
+	 * @return The number of players owning things that can fight in hs
+	 */
+	public int getNumPlayersFightingInHex(HexState hs)
+	{
+		long hexBit = board.getHexBit(hs);
+		int numPlayers = 0;
+		for(Player p : players)
+		{
+			if((board.getFightingHexBits(p) & hexBit) != 0)
+			{
+				numPlayers++;
+			}
+		}
+		return numPlayers;
+	}
+	
+	/**
+	 * @param hs The hex to look in
+	 * @return True if hs has things that can fight and that none of the players own, false otherwise
+	 */
+	public boolean hasUnownedFightingThingsInHex(HexState hs)
+	{
+		return (board.getUnownedFightingHexBits() & board.getHexBit(hs)) != 0;
+	}
 
 	/**
 	 * Get the player who's turn it is
@@ -366,6 +435,15 @@ public class GameState implements Serializable
 		return getPlayerByPlayerNumber(activeTurnPlayerNumber);
 	}
 	
+	/**
+	 * The ID of the player who's turn it is
+	 * @return Active turn player id, 0 until the order of play is determined
+	 */
+	public int getActiveTurnPlayerNumber()
+	{
+		return activeTurnPlayerNumber;
+	}
+	
 	/**
 	 * Given a player id, find the player with that id
 	 * @param playerNumber The player id to find
@@ -397,11 +475,11 @@ public class GameState implements Serializable
 	
 	/**
 	 * The hex where combat is taking place
-	 * @return The combat hex
+	 * @return The combat hex, or null if there is no combat
 	 */
 	public HexState getCombatHex()
 	{
-		return board.getHexByXY(combatLocation.x, combatLocation.y);
+		return combatLocation==null? null : board.getHexByXY(combatLocation.x, combatLocation.y);
 	}
 
 	/**
@@ -569,6 +647,7 @@ public class GameState implements Serializable
 	 */
 	public void addNeededRoll(Roll roll)
 	{
+		UndoLog.recordAll(rolls);
 		rolls.add(roll);
 	}
 	
@@ -579,6 +658,7 @@ public class GameState implements Serializable
 	 */
 	public void removeRoll(Roll roll)
 	{
+		UndoLog.recordAll(rolls);
 		rolls.remove(roll);
 	}
 
@@ -590,6 +670,7 @@ public class GameState implements Serializable
 	 */
 	public boolean addRollModification(RollModification modification)
 	{
+		UndoLog.recordAll(rollModifications);
 		return rollModifications.add(modification);
 	}
 	
@@ -619,6 +700,7 @@ public class GameState implements Serializable
 	 */
 	public boolean removeRollModification(RollModification modification)
 	{
+		UndoLog.recordAll(rollModifications);
 		return rollModifications.remove(modification);
 	}
 	
@@ -631,6 +713,7 @@ public class GameState implements Serializable
 	public void addHitsToPlayer(int playerNumber, int hitCount)
 	{
 		int totalHits = hitsToApply.get(playerNumber) + hitCount;
+		UndoLog.recordPut(hitsToApply, playerNumber);
 		hitsToApply.put(playerNumber, totalHits);
 	}
 	
@@ -643,6 +726,7 @@ public class GameState implements Serializable
 	public void removeHitsFromPlayer(int playerNumber, int hitCount)
 	{
 		int totalHits = hitsToApply.get(playerNumber) - hitCount;
+		UndoLog.recordPut(hitsToApply, playerNumber);
 		hitsToApply.put(playerNumber, totalHits);
 	}
 
@@ -653,11 +737,13 @@ public class GameState implements Serializable
 	{
 		for(Player p : players)
 		{
+			UndoLog.recordPut(hitsToApply, p.getID());
 			hitsToApply.put(p.getID(), 0);
 		}
 	}
 	public void setPlayersTarget(int id, int targetId)
 	{
+		UndoLog.recordPut(playerTargets, id);
 		playerTargets.put(id, targetId);
 	}
 	
@@ -665,6 +751,7 @@ public class GameState implements Serializable
 	{
 		for(Player p : players)
 		{
+			UndoLog.recordPut(playerTargets, p.getID());
 			playerTargets.put(p.getID(),null);
 		}
 	}
@@ -675,11 +762,13 @@ public class GameState implements Serializable
 	 */
 	public void removeAllRecordedRolls()
 	{
+		UndoLog.recordAll(rolls);
 		rolls.clear();
 	}
 	
 	public void removeAllRecordedRollModifications()
 	{
+		UndoLog.recordAll(rollModifications);
 		rollModifications.clear();
 	}
 	
@@ -693,6 +782,7 @@ public class GameState implements Serializable
 	 */
 	public void addHexThatNeedsThingsRemoved(HexState hex, int numberOfCreaturesToRemove) 
 	{
+		UndoLog.recordPut(hexesThatNeedThingsRemoved, hex);
 		if(numberOfCreaturesToRemove <= 0)
 		{
 			hexesThatNeedThingsRemoved.remove(hex);
@@ -740,7 +830,10 @@ public class GameState implements Serializable
 	 */
 	public void setBoard(HexBoard board)
 	{
+		recordFields();
 		this.board = board;
+		board.updateBitboards(players);
+		updateBuiltObjectHexBits();
 	}
 	
 	/**
@@ -758,6 +851,7 @@ public class GameState implements Serializable
 	 */
 	public void setPlayerOrder(List<Integer> playerOrder)
 	{
+		UndoLog.recordAll(this.playerOrder);
 		this.playerOrder.addAll(playerOrder);
 	}
 	
@@ -767,6 +861,7 @@ public class GameState implements Serializable
 	 */
 	public void setCurrentSetupPhase(SetupPhase phase)
 	{
+		recordFields();
 		currentSetupPhase = phase;
 	}
 	
@@ -776,6 +871,7 @@ public class GameState implements Serializable
 	 */
 	public void setCurrentRegularPhase(RegularPhase phase)
 	{
+		recordFields();
 		currentRegularPhase = phase;
 	}
 	
@@ -794,6 +890,11 @@ public class GameState implements Serializable
 	
 	public Player getAttackerByIndex(int index)
 	{
+		//with fewer players the index would wrap around to the defender
+		if(index >= playerOrder.size())
+		{
+			return null;
+		}
 		int defenderIndex = playerOrder.indexOf(defenderPlayerNumber);
 		Player nextPlayer = getPlayerByPlayerNumber(playerOrder.get((defenderIndex + index)%playerOrder.size()));
 		return getPlayersStillFightingInCombatHex().contains(nextPlayer)? nextPlayer : null;
@@ -805,6 +906,7 @@ public class GameState implements Serializable
 	 */
 	public void setActiveTurnPlayer(int id)
 	{
+		recordFields();
 		activeTurnPlayerNumber = id;
 	}
 	
@@ -814,6 +916,7 @@ public class GameState implements Serializable
 	 */
 	public void setCurrentCombatPhase(CombatPhase combatPhase)
 	{
+		recordFields();
 		currentCombatPhase = combatPhase;
 	}
 
@@ -825,6 +928,7 @@ public class GameState implements Serializable
 	 */
 	public void setCombatLocation(Point location)
 	{
+		recordFields();
 		combatLocation = location;
 	}
 	
@@ -833,6 +937,7 @@ public class GameState implements Serializable
 	 */
 	public void setDefendingPlayerNumber(int id)
 	{
+		recordFields();
 		defenderPlayerNumber = id;
 	}
 	
@@ -841,7 +946,12 @@ public class GameState implements Serializable
 	 */
 	public void addHexToListOfConstructedHexes(HexState newHex) 
 	{
-		hexesContainingBuiltObjects.add(newHex);
+		if(hexesContainingBuiltObjects.add(newHex))
+		{
+			UndoLog.recordAdd(hexesContainingBuiltObjects, newHex);
+		}
+		recordFields();
+		builtObjectHexBits |= board.getHexBit(newHex);
 	}
 	
 	/**
@@ -849,51 +959,85 @@ public class GameState implements Serializable
 	 */
 	public void removeAllHexesWithBuiltInObjects() 
 	{
+		UndoLog.recordAll(hexesContainingBuiltObjects);
 		hexesContainingBuiltObjects.clear();
+		recordFields();
+		builtObjectHexBits = 0;
+	}
+	
+	private void indexPlayersBySeat()
+	{
+		playersBySeat = new Player[MAX_PLAYERS];
+		for(Player p : players)
+		{
+			int seat = Constants.getPlayerSeat(p.getID());
+			if(seat != -1)
+			{
+				playersBySeat[seat] = p;
+			}
+		}
+	}
+	
+	private void updateBuiltObjectHexBits()
+	{
+		builtObjectHexBits = 0;
+		for(HexState hs : hexesContainingBuiltObjects)
+		{
+			builtObjectHexBits |= board.getHexBit(hs);
+		}
+	}
+	
+	/**
+	 * Bring the bitboards of a hex of the board up to date, to be called by handlers
+	 * once they are done changing what is in the hex or who owns it or its things
+	 * @param hs The hex that changed
+	 */
+	public void updateBitboards(HexState hs)
+	{
+		board.updateBitboards(hs.getHex(), players);
+	}
+	
+	/**
+	 * Bring the bitboards of every hex of the board up to date, for changes
+	 * made without knowing which hex they were in
+	 */
+	public void updateBitboards()
+	{
+		board.updateBitboards(players);
 	}
 	
 	/**
 	 * Checks victory conditions to see if someone has won the game yet,
+	 * from the citadel bitboards the handlers keep up to date, so nothing
+	 * is searched or allocated unless there is a winner to look up.
 	 * @return The player who won the game, or null if there is still no winner.
 	 */
 	public Player getWinningPlayer()
 	{
-		HashSet<HexState> hexesWithCitadels = new HashSet<HexState>();
+		long hexesWithCitadels = board.getCitadelHexBits();
 		
-		for(HexState hs : board.getHexesAsList())
+		if(Long.bitCount(hexesWithCitadels)==1)
 		{
-			ITileProperties building = hs.getBuilding();
-			if(building!=null && building.getName().equals(Building.Citadel.name()))
+			if((builtObjectHexBits & hexesWithCitadels) != 0)
 			{
-				hexesWithCitadels.add(hs);
+				return null;
 			}
-		}
-		if(hexesWithCitadels.size()==1 && !hexesContainingBuiltObjects.contains(hexesWithCitadels.iterator().next()))
-		{
-			for(Player p : players)
+			for(int seat=0; seat<MAX_PLAYERS; seat++)
 			{
-				if(p.ownsThingOnBoard(hexesWithCitadels.iterator().next().getBuilding()))
+				if((board.getCitadelHexBitsOfSeat(seat) & hexesWithCitadels) != 0)
 				{
-					return currentRegularPhase == RegularPhase.SPECIAL_POWERS? p : null;
+					return currentRegularPhase == RegularPhase.SPECIAL_POWERS? playersBySeat[seat] : null;
 				}
 			}
-			throw new IllegalStateException("Hex has building with no owner: " + hexesWithCitadels.iterator().next());
+			throw new IllegalStateException("Hex has building with no owner: " + board.getHexesAsList().get(Long.numberOfTrailingZeros(hexesWithCitadels)));
 		}
-		else if(hexesWithCitadels.size()>1)
+		else if(hexesWithCitadels != 0)
 		{
-			for(Player p : players)
+			for(int seat=0; seat<MAX_PLAYERS; seat++)
 			{
-				int numCitadels = 0;
-				for(ITileProperties tp : p.getOwnedThingsOnBoard())
-				{
-					if(tp.getName().equals(Building.Citadel.name()))
-					{
-						numCitadels++;
-					}
-				}
-				if(numCitadels >= 2)
+				if(Long.bitCount(board.getCitadelHexBitsOfSeat(seat)) >= 2)
 				{
-					return p;
+					return playersBySeat[seat];
 				}
 			}
 		}
@@ -901,12 +1045,59 @@ public class GameState implements Serializable
 		return null;
 	}
 
+	/**
+	 * record the phases, turn, combat and flags of this game before one of them changes
+	 */
+	private void recordFields()
+	{
+		if(UndoLog.isRecording())
+		{
+			final HexBoard previousBoard = board;
+			final SetupPhase previousSetupPhase = currentSetupPhase;
+			final RegularPhase previousRegularPhase = currentRegularPhase;
+			final int previousActiveTurnPlayerNumber = activeTurnPlayerNumber;
+			final CombatPhase previousCombatPhase = currentCombatPhase;
+			final int previousDefenderPlayerNumber = defenderPlayerNumber;
+			final Point previousCombatLocation = combatLocation;
+			final Roll previousRecordedRoll = recordedRollForSpecialCharacter;
+			final boolean previousRecruitedOnce = recruitedOnce;
+			final boolean previousWillingWorkersPlayed = willingWorkersPlayed;
+			final long previousBuiltObjectHexBits = builtObjectHexBits;
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					board = previousBoard;
+					currentSetupPhase = previousSetupPhase;
+					currentRegularPhase = previousRegularPhase;
+					activeTurnPlayerNumber = previousActiveTurnPlayerNumber;
+					currentCombatPhase = previousCombatPhase;
+					defenderPlayerNumber = previousDefenderPlayerNumber;
+					combatLocation = previousCombatLocation;
+					recordedRollForSpecialCharacter = previousRecordedRoll;
+					recruitedOnce = previousRecruitedOnce;
+					willingWorkersPlayed = previousWillingWorkersPlayed;
+					builtObjectHexBits = previousBuiltObjectHexBits;
+				}
+			});
+		}
+	}
+
 	public void addDoneRolling( int id) {
-		confirmedRolls.add( id);
+		if(confirmedRolls.add( id)){
+			UndoLog.recordAdd(confirmedRolls, id);
+		}
 	}
 
 	public void removeDoneRollTie( int id) {
-		confirmedRolls.remove( id);
+		if(confirmedRolls.remove( id)){
+			UndoLog.recordRemove(confirmedRolls, id);
+		}
+	}
+	
+	public boolean isDoneRolling( int id){
+		return confirmedRolls.contains( id);
 	}
 	
 	public boolean allRolled(){
@@ -928,13 +1119,33 @@ public class GameState implements Serializable
 		return mask;
 	}
 
-	public void notifyClientsOfState(){
+	/**
+	 * @return true once the setup has passed picking of the first hex and all hexes are face up
+	 */
+	public boolean isBoardFlipped(){
+		return currentSetupPhase.ordinal() > SetupPhase.PICK_FIRST_HEX.ordinal();
+	}
+
+	/**
+	 * create full snapshot of the state for one client, racks of other players are left out
+	 * @param ID - receiving player
+	 * @return new snapshot, not yet posted
+	 */
+	public GameStateProgress createProgress( final int ID){
 		GameStateProgress state = new GameStateProgress();
 		state.setPhases( currentSetupPhase, currentRegularPhase, currentCombatPhase);
-		state.setFlipped( currentSetupPhase.ordinal() > SetupPhase.PICK_FIRST_HEX.ordinal());
+		state.setFlipped( isBoardFlipped());
 		bankHeroes.getAvailableHeroes().toArray( state.getSpecial(bankHeroes.getAvailableHeroes().size()));
 		board.fillArray( state.getHexes( board.getBoardSize()));
-		state.setPlayersAndRacks( players);
-		state.postNetworkEvent( ALL_PLAYERS_ID);
+		state.setPlayersAndRack( players, ID);
+		return state;
+	}
+
+	/**
+	 * ask the game room to bring every client up to date, a client without a known
+	 * state receives a full GameStateProgress, every other client a GameStateDelta
+	 */
+	public void notifyClientsOfState(){
+		new GameStateChanged( ALL_PLAYERS_ID).postInternalEvent();
 	}
 }
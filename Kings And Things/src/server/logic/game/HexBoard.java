@@ -1,37 +1,71 @@
 package server.logic.game;
 
 import java.awt.Point;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.AbstractList;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
-import java.util.Map.Entry;
+import java.util.RandomAccess;
 import java.util.Set;
 
-import com.google.common.collect.ImmutableBiMap;
+import com.google.common.collect.ImmutableMap;
 
+import common.Constants;
+import common.Constants.Building;
 import common.game.HexState;
 import common.game.ITileProperties;
 import common.game.Player;
+import common.game.UndoLog;
 
 /**
  * This class provides a convenient mechanism for representing the hex board inside out code.
+ * Besides the hexes, a board keeps bitboards of them, one bit per hex in the order of getHexesAsList,
+ * of the hexes each player owns, has things in, has a building in, has a citadel in and has things
+ * that can fight in. Handlers bring the bitboards of a hex up to date through GameState.updateBitboards
+ * after changing it, or the value of one of its things.
  */
 public class HexBoard implements Serializable
 {
 	private static final long serialVersionUID = 7884592388959316453L;
 	
-	private final ImmutableBiMap<Point,HexState> board;
+	//x,y offsets of the six hexes around a hex, in the order of HexState.getAdjacentLocations
+	private static final int[][] ADJACENT_OFFSETS = {{0,-2},{0,2},{-1,-1},{-1,1},{1,-1},{1,1}};
+	
+	//kinds of bitboards, each kind has one bitboard per seat
+	private static final int OWNED_HEXES = 0;
+	private static final int OCCUPIED_HEXES = Constants.MAX_PLAYERS;
+	private static final int BUILDING_HEXES = 2*Constants.MAX_PLAYERS;
+	private static final int CITADEL_HEXES = 3*Constants.MAX_PLAYERS;
+	private static final int FIGHTING_HEXES = 4*Constants.MAX_PLAYERS;
+	//bitboard of the hexes with a citadel of any player
+	private static final int ALL_CITADEL_HEXES = 5*Constants.MAX_PLAYERS;
+	//bitboard of the hexes with things that can fight and that none of the players own
+	private static final int UNOWNED_FIGHTING_HEXES = ALL_CITADEL_HEXES+1;
+	private static final int NUM_BITBOARDS = UNOWNED_FIGHTING_HEXES+1;
+	
 	private final List<HexState> boardList;
+	//hexes never move, so copies of a board share where each x,y location is in boardList, -1 if it is not on the board
+	private transient int[][] indexOfLocation;
+	//indexes in boardList of the hexes adjacent to each hex, shared the same way
+	private transient int[][] adjacentIndexes;
+	//where each hex tile is in boardList, shared until a hex is exchanged
+	private transient ImmutableMap<ITileProperties,Integer> indexOfHex;
+	//lists of the hexes adjacent to each hex, made the first time they are asked for
+	private transient List<HexState>[] adjacentHexes;
+	//bitboards of this board, up to date once GameState.updateBitboards is called
+	private transient long[] bitboards;
 	
 	/**
 	 * Create new HexBoard, the entered list is assumed to be ordered according to the spiral layout pattern
 	 * @param tiles The list of tiles to make a board out of, this must be ordered according to the spiral
 	 * layout pattern and can contain any number of rings, but must not contain an incomplete ring.
-	 * @throws IllegalArgumentException if tiles is null, empty, or contains non-hex tiles
+	 * @throws IllegalArgumentException if tiles is null, empty, has more than 64 tiles, or contains non-hex tiles
 	 */
 	public HexBoard(List<? extends ITileProperties> tiles)
 	{
@@ -39,7 +73,10 @@ public class HexBoard implements Serializable
 		{
 			throw new IllegalArgumentException("Can not create a board with no tiles");
 		}
-		HashMap<Point,HexState> tempBoard = new HashMap<Point,HexState>();
+		if(tiles.size() > Long.SIZE)
+		{
+			throw new IllegalArgumentException("Can not create a board with more than " + Long.SIZE + " tiles");
+		}
 		ArrayList<HexState> tempBoardList = new ArrayList<HexState>();
 		
 		int numRings = 0;
@@ -62,7 +99,7 @@ public class HexBoard implements Serializable
 		
 		//place middle hex first
 		HexState nextHex = new HexState(tiles.remove(0));
-		tempBoard.put(new Point(numRings-1,2*(numRings-1)), nextHex.setLocation( numRings-1,2*(numRings-1)));
+		nextHex.setLocation( numRings-1,2*(numRings-1));
 		tempBoardList.add(nextHex);
 		
 		//every other hex is placed relative to the last placed hex
@@ -76,7 +113,7 @@ public class HexBoard implements Serializable
 			}
 			//start by placing one piece above the last placed piece of the last ring
 			nextHex = new HexState(tiles.remove(0));
-			tempBoard.put(new Point(lastRingPiece.x,lastRingPiece.y-2), nextHex.setLocation( lastRingPiece.x,lastRingPiece.y-2));
+			nextHex.setLocation( lastRingPiece.x,lastRingPiece.y-2);
 			tempBoardList.add(nextHex);
 			lastRingPiece.y-=2;
 			
@@ -85,7 +122,7 @@ public class HexBoard implements Serializable
 			for(int j=0; j<numAwayFromTop; j++)
 			{
 				nextHex = new HexState(tiles.remove(0));
-				tempBoard.put(new Point(lastRingPiece.x+1,lastRingPiece.y-1), nextHex.setLocation( lastRingPiece.x+1,lastRingPiece.y-1));
+				nextHex.setLocation( lastRingPiece.x+1,lastRingPiece.y-1);
 				tempBoardList.add(nextHex);
 				lastRingPiece.x++;
 				lastRingPiece.y--;
@@ -98,7 +135,7 @@ public class HexBoard implements Serializable
 			for(int j=0; j<rowLength; j++)
 			{
 				nextHex = new HexState(tiles.remove(0));
-				tempBoard.put(new Point(lastRingPiece.x+1,lastRingPiece.y+1), nextHex.setLocation( lastRingPiece.x+1,lastRingPiece.y+1));
+				nextHex.setLocation( lastRingPiece.x+1,lastRingPiece.y+1);
 				tempBoardList.add(nextHex);
 				lastRingPiece.x++;
 				lastRingPiece.y++;
@@ -108,7 +145,7 @@ public class HexBoard implements Serializable
 			for(int j=0; j<rowLength; j++)
 			{
 				nextHex = new HexState(tiles.remove(0));
-				tempBoard.put(new Point(lastRingPiece.x,lastRingPiece.y+2), nextHex.setLocation( lastRingPiece.x,lastRingPiece.y+2));
+				nextHex.setLocation( lastRingPiece.x,lastRingPiece.y+2);
 				tempBoardList.add(nextHex);
 				lastRingPiece.y+=2;
 			}
@@ -117,7 +154,7 @@ public class HexBoard implements Serializable
 			for(int j=0; j<rowLength; j++)
 			{
 				nextHex = new HexState(tiles.remove(0));
-				tempBoard.put(new Point(lastRingPiece.x-1,lastRingPiece.y+1), nextHex.setLocation( lastRingPiece.x-1,lastRingPiece.y+1));
+				nextHex.setLocation( lastRingPiece.x-1,lastRingPiece.y+1);
 				tempBoardList.add(nextHex);
 				lastRingPiece.x--;
 				lastRingPiece.y++;
@@ -127,7 +164,7 @@ public class HexBoard implements Serializable
 			for(int j=0; j<rowLength; j++)
 			{
 				nextHex = new HexState(tiles.remove(0));
-				tempBoard.put(new Point(lastRingPiece.x-1,lastRingPiece.y-1), nextHex.setLocation( lastRingPiece.x-1,lastRingPiece.y-1));
+				nextHex.setLocation( lastRingPiece.x-1,lastRingPiece.y-1);
 				tempBoardList.add(nextHex);
 				lastRingPiece.x--;
 				lastRingPiece.y--;
@@ -137,7 +174,7 @@ public class HexBoard implements Serializable
 			for(int j=0; j<rowLength; j++)
 			{
 				nextHex = new HexState(tiles.remove(0));
-				tempBoard.put(new Point(lastRingPiece.x,lastRingPiece.y-2), nextHex.setLocation( lastRingPiece.x,lastRingPiece.y-2));
+				nextHex.setLocation( lastRingPiece.x,lastRingPiece.y-2);
 				tempBoardList.add(nextHex);
 				lastRingPiece.y-=2;
 			}
@@ -145,19 +182,106 @@ public class HexBoard implements Serializable
 			nextRingNumber++;
 		}
 		
-		board = new ImmutableBiMap.Builder<Point, HexState>().putAll(tempBoard).build();
 		boardList = Collections.unmodifiableList(tempBoardList);
+		indexOfLocation = indexLocations(boardList);
+		adjacentIndexes = indexAdjacentHexes(boardList, indexOfLocation);
+		indexOfHex = indexHexes(boardList);
+		adjacentHexes = newAdjacentHexes(boardList.size());
+		bitboards = new long[NUM_BITBOARDS];
 	}
 	
 	public HexBoard(HexBoard other)
 	{
-		ImmutableBiMap.Builder<Point,HexState> builder = new ImmutableBiMap.Builder<Point, HexState>();
-		for(Entry<Point,HexState> e : other.board.entrySet())
+		ArrayList<HexState> tempBoardList = new ArrayList<HexState>(other.boardList.size());
+		for(HexState hs : other.boardList)
+		{
+			tempBoardList.add(hs.clone());
+		}
+		boardList = Collections.unmodifiableList(tempBoardList);
+		indexOfLocation = other.indexOfLocation;
+		adjacentIndexes = other.adjacentIndexes;
+		indexOfHex = other.indexOfHex;
+		adjacentHexes = newAdjacentHexes(boardList.size());
+		bitboards = other.bitboards.clone();
+	}
+	
+	private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException
+	{
+		input.defaultReadObject();
+		indexOfLocation = indexLocations(boardList);
+		adjacentIndexes = indexAdjacentHexes(boardList, indexOfLocation);
+		indexOfHex = indexHexes(boardList);
+		adjacentHexes = newAdjacentHexes(boardList.size());
+		bitboards = new long[NUM_BITBOARDS];
+	}
+	
+	private static int[][] indexLocations(List<HexState> hexes)
+	{
+		int width = 0;
+		int height = 0;
+		for(HexState hs : hexes)
+		{
+			Point p = hs.getLocation();
+			width = Math.max(width, p.x+1);
+			height = Math.max(height, p.y+1);
+		}
+		int[][] indexOfLocation = new int[width][height];
+		for(int[] column : indexOfLocation)
+		{
+			Arrays.fill(column, -1);
+		}
+		for(int i=0; i<hexes.size(); i++)
+		{
+			Point p = hexes.get(i).getLocation();
+			indexOfLocation[p.x][p.y] = i;
+		}
+		return indexOfLocation;
+	}
+	
+	private static int indexOfLocation(int[][] indexOfLocation, int x, int y)
+	{
+		if(x<0 || x>=indexOfLocation.length || y<0 || y>=indexOfLocation[x].length)
+		{
+			return -1;
+		}
+		return indexOfLocation[x][y];
+	}
+	
+	private static int[][] indexAdjacentHexes(List<HexState> hexes, int[][] indexOfLocation)
+	{
+		int[][] adjacentIndexes = new int[hexes.size()][];
+		int[] adjacent = new int[ADJACENT_OFFSETS.length];
+		for(int i=0; i<hexes.size(); i++)
 		{
-			builder.put(new Point(e.getKey().x,e.getKey().y), e.getValue().clone().setLocation( e.getKey().x,e.getKey().y));
+			Point p = hexes.get(i).getLocation();
+			int numAdjacent = 0;
+			for(int[] offset : ADJACENT_OFFSETS)
+			{
+				int index = indexOfLocation(indexOfLocation, p.x+offset[0], p.y+offset[1]);
+				if(index != -1)
+				{
+					adjacent[numAdjacent++] = index;
+				}
+			}
+			adjacentIndexes[i] = Arrays.copyOf(adjacent, numAdjacent);
 		}
-		board = builder.build();
-		boardList = Collections.unmodifiableList(other.boardList);
+		return adjacentIndexes;
+	}
+	
+	@SuppressWarnings({"unchecked","rawtypes"})
+	private static List<HexState>[] newAdjacentHexes(int size)
+	{
+		return new List[size];
+	}
+	
+	private static ImmutableMap<ITileProperties,Integer> indexHexes(List<HexState> hexes)
+	{
+		ImmutableMap.Builder<ITileProperties,Integer> builder = new ImmutableMap.Builder<ITileProperties,Integer>();
+		for(int i=0; i<hexes.size(); i++)
+		{
+			builder.put(hexes.get(i).getHex(), i);
+		}
+		return builder.build();
 	}
 	
 	@Override
@@ -187,7 +311,7 @@ public class HexBoard implements Serializable
 	 */
 	public boolean hexExistsAtXY(int x, int y)
 	{
-		return board.containsKey(new Point(x,y));
+		return indexOfLocation(indexOfLocation, x, y) != -1;
 	}
 	
 	/**
@@ -213,11 +337,12 @@ public class HexBoard implements Serializable
 	 */
 	public HexState getHexByXY(int x, int y)
 	{
-		if(!hexExistsAtXY(x,y))
+		int index = indexOfLocation(indexOfLocation, x, y);
+		if(index == -1)
 		{
 			throw new IllegalArgumentException("No hex exists at position (" + x + "," + y + ")");
 		}
-		return board.get(new Point(x,y));
+		return boardList.get(index);
 	}
 
 	/**
@@ -243,6 +368,16 @@ public class HexBoard implements Serializable
 	 * not a hex, or doesn't exist in this board
 	 */
 	public Point getXYCoordinatesOfHex(ITileProperties hex)
+	{
+		return boardList.get(indexOf(hex)).getLocation();
+	}
+	
+	/**
+	 * @return position of hex in the list returned by getHexesAsList
+	 * @throws IllegalArgumentException if the entered tile is null, is
+	 * not a hex, or doesn't exist in this board
+	 */
+	private int indexOf(ITileProperties hex)
 	{
 		if(hex==null)
 		{
@@ -252,17 +387,54 @@ public class HexBoard implements Serializable
 		{
 			throw new IllegalArgumentException("The entered tile must be a hex tile.");
 		}
-		for(Entry<Point,HexState> entry : board.entrySet())
+		Integer index = indexOfHex.get(hex);
+		if(index != null && boardList.get(index).getHex().equals(hex))
 		{
-			if(entry.getValue().getHex().equals(hex))
+			return index;
+		}
+		//a hex tile changed without going through exchangeHex is still found, the slow way
+		for(int i=0; i<boardList.size(); i++)
+		{
+			if(boardList.get(i).getHex().equals(hex))
 			{
-				return new Point(entry.getKey().x, entry.getKey().y);
+				return i;
 			}
 		}
 		
 		throw new IllegalArgumentException("The entered hex could not be found");
 	}
 	
+	/**
+	 * Replace a hex tile of this board with another one, at the same position
+	 * @param hex The hex to replace
+	 * @param replacement The hex to put in its place
+	 * @return The HexState the hex was replaced in
+	 * @throws IllegalArgumentException if either tile is null or is not
+	 * a hex, or if hex doesn't exist in this board
+	 */
+	public HexState exchangeHex(ITileProperties hex, ITileProperties replacement)
+	{
+		int index = indexOf(hex);
+		HexState hs = boardList.get(index);
+		hs.setHex(replacement);
+		
+		//copies of this board keep the index they share, this board gets a new one
+		final ImmutableMap<ITileProperties,Integer> previousIndexOfHex = indexOfHex;
+		indexOfHex = indexHexes(boardList);
+		if(UndoLog.isRecording())
+		{
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					indexOfHex = previousIndexOfHex;
+				}
+			});
+		}
+		return hs;
+	}
+	
 	/**
 	 * Given a hex, find the corresponding HexState on this board
 	 * @param hex The hex to find
@@ -272,14 +444,14 @@ public class HexBoard implements Serializable
 	 */
 	public HexState getHexStateForHex(ITileProperties hex)
 	{
-		Point coords = getXYCoordinatesOfHex(hex);
-		return getHexByXY(coords.x,coords.y);
+		return boardList.get(indexOf(hex));
 	}
 	
 	/**
 	 * Given a hex from this board, find a list of all adjacent hexes.
 	 * The list may be empty but is guaranteed not to be null. The given
-	 * hex is not returned inside the generated list.
+	 * hex is not returned inside the generated list. The list is non-modifiable
+	 * and the same one is returned every time for the same hex.
 	 * @param hex The hex to find adjacent hexes for
 	 * @return A list of all hexes that are adjacent to the entered hex
 	 * @throws IllegalArgumentException if the entered tile is null, is
@@ -287,25 +459,26 @@ public class HexBoard implements Serializable
 	 */
 	public List<HexState> getAdjacentHexesTo(ITileProperties hex)
 	{
-		ArrayList<Point> coordsToTest = getHexStateForHex(hex).getAdjacentLocations();
-		
-		Iterator<Point> it = coordsToTest.iterator();
-		while(it.hasNext())
+		int index = indexOf(hex);
+		List<HexState> adjacent = adjacentHexes[index];
+		if(adjacent == null)
 		{
-			Point nextPoint = it.next();
-			if(!hexExistsAtXY(nextPoint.x, nextPoint.y))
-			{
-				it.remove();
-			}
+			//hex states of a board are never replaced, so the list never changes
+			adjacent = new AdjacentHexes(boardList, adjacentIndexes[index]);
+			adjacentHexes[index] = adjacent;
 		}
-		
-		ArrayList<HexState> adjacentHexes = new ArrayList<HexState>();
-		for(Point p : coordsToTest)
-		{
-			adjacentHexes.add(getHexByXY(p.x, p.y));
-		}
-		
-		return Collections.unmodifiableList(adjacentHexes);
+		return adjacent;
+	}
+	
+	/**
+	 * Checks whether or not two hexes of this board are next to each other
+	 * @return true if hex and otherHex are adjacent
+	 * @throws IllegalArgumentException if either tile is null, is
+	 * not a hex, or doesn't exist in this board
+	 */
+	public boolean areHexesAdjacent(ITileProperties hex, ITileProperties otherHex)
+	{
+		return isAdjacent(indexOf(hex), indexOf(otherHex));
 	}
 	
 	/**
@@ -318,19 +491,36 @@ public class HexBoard implements Serializable
 	 */
 	public boolean areHexesConnected(List<ITileProperties> hexes)
 	{
-		for(int i=0; i<hexes.size()-1; i++)
+		if(hexes.isEmpty())
 		{
-			List<HexState> adjacentHexes = getAdjacentHexesTo(hexes.get(i));
-			HexState hs = getHexStateForHex(hexes.get(i+1));
-			if(!adjacentHexes.contains(hs))
+			return true;
+		}
+		int index = indexOf(hexes.get(0));
+		for(int i=1; i<hexes.size(); i++)
+		{
+			int nextIndex = indexOf(hexes.get(i));
+			if(!isAdjacent(index, nextIndex))
 			{
 				return false;
 			}
+			index = nextIndex;
 		}
 		
 		return true;
 	}
 	
+	private boolean isAdjacent(int index, int otherIndex)
+	{
+		for(int adjacent : adjacentIndexes[index])
+		{
+			if(adjacent == otherIndex)
+			{
+				return true;
+			}
+		}
+		return false;
+	}
+	
 	/**
 	 * Given the list of players currently using this board,
 	 * this method will check for any hexes that are 'contested'
@@ -342,28 +532,193 @@ public class HexBoard implements Serializable
 	public Set<HexState> getContestedHexes(Set<Player> players)
 	{
 		Set<HexState> contestedHexes = new HashSet<HexState>();
-		for(HexState hs : getHexesAsList())
+		for(long bits = getContestedHexBits(players); bits != 0; bits &= bits-1)
 		{
-			Set<Player> playersInHex = new HashSet<Player>();
+			contestedHexes.add(boardList.get(Long.numberOfTrailingZeros(bits)));
+		}
+		
+		return Collections.unmodifiableSet(contestedHexes);
+	}
+	
+	/**
+	 * Bitboard of the contested hexes, hexes where one of the players has things without
+	 * owning the hex, or that more than one of the players own
+	 * @param players The players using the board
+	 * @return One bit per contested hex, in the order of getHexesAsList
+	 */
+	public long getContestedHexBits(Collection<Player> players)
+	{
+		long contestedHexes = 0;
+		long ownedHexes = 0;
+		for(Player p : players)
+		{
+			int seat = Constants.getPlayerSeat(p.getID());
+			long ownedByPlayer = bitboards[OWNED_HEXES+seat];
+			contestedHexes |= (bitboards[OCCUPIED_HEXES+seat] & ~ownedByPlayer) | (ownedHexes & ownedByPlayer);
+			ownedHexes |= ownedByPlayer;
+		}
+		return contestedHexes;
+	}
+	
+	/**
+	 * @return Bitboard of the hexes owned by p
+	 */
+	public long getOwnedHexBits(Player p)
+	{
+		return bitboards[OWNED_HEXES+Constants.getPlayerSeat(p.getID())];
+	}
+	
+	/**
+	 * @return Bitboard of the hexes with things owned by p
+	 */
+	public long getOccupiedHexBits(Player p)
+	{
+		return bitboards[OCCUPIED_HEXES+Constants.getPlayerSeat(p.getID())];
+	}
+	
+	/**
+	 * @return Bitboard of the hexes with a building owned by p
+	 */
+	public long getBuildingHexBits(Player p)
+	{
+		return bitboards[BUILDING_HEXES+Constants.getPlayerSeat(p.getID())];
+	}
+	
+	/**
+	 * @return Bitboard of the hexes with a citadel owned by p
+	 */
+	public long getCitadelHexBits(Player p)
+	{
+		return getCitadelHexBitsOfSeat(Constants.getPlayerSeat(p.getID()));
+	}
+	
+	/**
+	 * @param seat The seat of the player, as given by Constants.getPlayerSeat
+	 * @return Bitboard of the hexes with a citadel owned by the player in seat
+	 */
+	public long getCitadelHexBitsOfSeat(int seat)
+	{
+		return bitboards[CITADEL_HEXES+seat];
+	}
+	
+	/**
+	 * @return Bitboard of the hexes with things owned by p that can fight
+	 */
+	public long getFightingHexBits(Player p)
+	{
+		return bitboards[FIGHTING_HEXES+Constants.getPlayerSeat(p.getID())];
+	}
+	
+	/**
+	 * @return Bitboard of the hexes with things that can fight and that none of the players own,
+	 * the defenders of hexes being explored
+	 */
+	public long getUnownedFightingHexBits()
+	{
+		return bitboards[UNOWNED_FIGHTING_HEXES];
+	}
+	
+	/**
+	 * @return Bitboard of the hexes with a citadel, whoever owns it
+	 */
+	public long getCitadelHexBits()
+	{
+		return bitboards[ALL_CITADEL_HEXES];
+	}
+	
+	/**
+	 * @param hs The hex to find
+	 * @return The bit of hs in the bitboards of this board, or 0 if hs is not one of its hexes
+	 */
+	long getHexBit(HexState hs)
+	{
+		Point location = hs.getLocation();
+		int index = indexOfLocation(indexOfLocation, location.x, location.y);
+		return index != -1 && boardList.get(index) == hs? 1L<<index : 0;
+	}
+	
+	/**
+	 * Bring the bitboards of every hex up to date
+	 * @param players The players using the board
+	 */
+	void updateBitboards(Collection<Player> players)
+	{
+		for(int i=0; i<boardList.size(); i++)
+		{
+			updateBitboards(i, players);
+		}
+	}
+	
+	/**
+	 * Bring the bitboards of a hex up to date, after what is in it or who owns it changed
+	 * @param hex The hex tile of the hex that changed
+	 * @param players The players using the board
+	 * @throws IllegalArgumentException if the entered tile is null, is
+	 * not a hex, or doesn't exist in this board
+	 */
+	void updateBitboards(ITileProperties hex, Collection<Player> players)
+	{
+		updateBitboards(indexOf(hex), players);
+	}
+	
+	private void updateBitboards(int index, Collection<Player> players)
+	{
+		HexState hs = boardList.get(index);
+		ITileProperties building = hs.getBuilding();
+		boolean isCitadel = building!=null && building.getName().equals(Building.Citadel.name());
+		setBit(ALL_CITADEL_HEXES, index, isCitadel);
+		//one bit per seat with things in the hex, and with things that can fight in it
+		int occupiedSeats = 0;
+		int fightingSeats = 0;
+		boolean hasUnownedFightingThings = false;
+		for(ITileProperties thing : hs.getThingsInHex())
+		{
+			boolean canFight = HexState.canFight(thing);
+			boolean owned = false;
 			for(Player p : players)
 			{
-				boolean playerHasThingsInHex = hs.getThingsInHexOwnedByPlayer(p).size() > 0;
-				if(!p.ownsHex(hs.getHex()) && playerHasThingsInHex)
-				{
-					contestedHexes.add(hs);
-				}
-				else if(p.ownsHex(hs.getHex()))
+				if(p.ownsThingOnBoard(thing))
 				{
-					playersInHex.add(p);
+					int seatBit = 1<<Constants.getPlayerSeat(p.getID());
+					occupiedSeats |= seatBit;
+					fightingSeats |= canFight? seatBit : 0;
+					owned = true;
 				}
 			}
-			if(playersInHex.size() > 1)
+			hasUnownedFightingThings |= canFight && !owned;
+		}
+		setBit(UNOWNED_FIGHTING_HEXES, index, hasUnownedFightingThings);
+		for(Player p : players)
+		{
+			int seat = Constants.getPlayerSeat(p.getID());
+			boolean ownsBuilding = building!=null && p.ownsThingOnBoard(building);
+			setBit(OWNED_HEXES+seat, index, p.ownsHex(hs.getHex()));
+			setBit(OCCUPIED_HEXES+seat, index, (occupiedSeats & (1<<seat)) != 0);
+			setBit(FIGHTING_HEXES+seat, index, (fightingSeats & (1<<seat)) != 0);
+			setBit(BUILDING_HEXES+seat, index, ownsBuilding);
+			setBit(CITADEL_HEXES+seat, index, ownsBuilding && isCitadel);
+		}
+	}
+	
+	private void setBit(final int bitboard, int index, boolean isSet)
+	{
+		final long previousBits = bitboards[bitboard];
+		long bits = isSet? previousBits | (1L<<index) : previousBits & ~(1L<<index);
+		if(bits != previousBits)
+		{
+			if(UndoLog.isRecording())
 			{
-				contestedHexes.add(hs);
+				UndoLog.record(new UndoLog.Change()
+				{
+					@Override
+					public void undo()
+					{
+						bitboards[bitboard] = previousBits;
+					}
+				});
 			}
+			bitboards[bitboard] = bits;
 		}
-		
-		return Collections.unmodifiableSet(contestedHexes);
 	}
 	
 	/**
@@ -389,4 +744,31 @@ public class HexBoard implements Serializable
 			i++;
 		}
 	}
+
+	/**
+	 * non-modifiable view of the hexes at some indexes of a board
+	 */
+	private static final class AdjacentHexes extends AbstractList<HexState> implements RandomAccess
+	{
+		private final List<HexState> boardList;
+		private final int[] indexes;
+		
+		private AdjacentHexes(List<HexState> boardList, int[] indexes)
+		{
+			this.boardList = boardList;
+			this.indexes = indexes;
+		}
+		
+		@Override
+		public HexState get(int index)
+		{
+			return boardList.get(indexes[index]);
+		}
+		
+		@Override
+		public int size()
+		{
+			return indexes.length;
+		}
+	}
 }
@@ -0,0 +1,214 @@
+package server.logic.game;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import org.apache.log4j.Level;
+
+import server.logic.game.StateGenerator.GeneratorType;
+
+import common.game.HexState;
+import common.game.ITileProperties;
+import common.game.LoadResources;
+
+/**
+ * measures the lookups the movement validators make on a HexBoard, on the board of the
+ * superior demo position: areHexesConnected() on long paths, one connected and one broken
+ * by its last hex so that every step is checked, and getHexStateForHex() and
+ * getAdjacentHexesTo() on every hex of the board.
+ * <p>
+ * paths are random walks over adjacent hexes, drawn from a fixed seed. every measurement is
+ * the best of several rounds after a warm up, with the bytes the calling thread allocated
+ * per call when the JVM counts them. a wrong answer of areHexesConnected() is reported.
+ * <p>
+ * usage: HexBoardBenchmark [-calls n] [-rounds n] [-length n] [-seed n]
+ */
+public final class HexBoardBenchmark
+{
+	private static final int WARM_UP_ROUNDS = 5;
+
+	private final int numCalls;
+	private final int numRounds;
+	private final ThreadMXBean threads;
+	//keeps results alive, so the lookups are not optimized away
+	private long sink;
+
+	HexBoardBenchmark(int numCalls, int numRounds)
+	{
+		if(numCalls <= 0 || numRounds <= 0)
+		{
+			throw new IllegalArgumentException("Number of calls and rounds must be positive none zero integers");
+		}
+		this.numCalls = numCalls;
+		this.numRounds = numRounds;
+		threads = ManagementFactory.getThreadMXBean();
+	}
+
+	/**
+	 * @return path of length hexes, each adjacent to the one before it
+	 */
+	static List<ITileProperties> createPath(HexBoard board, int length, Random random)
+	{
+		List<HexState> hexes = board.getHexesAsList();
+		ArrayList<ITileProperties> path = new ArrayList<ITileProperties>(length);
+		ITileProperties hex = hexes.get(random.nextInt(hexes.size())).getHex();
+		path.add(hex);
+		while(path.size() < length)
+		{
+			List<HexState> adjacent = board.getAdjacentHexesTo(hex);
+			hex = adjacent.get(random.nextInt(adjacent.size())).getHex();
+			path.add(hex);
+		}
+		return path;
+	}
+
+	/**
+	 * @return copy of path whose last hex is not adjacent to the one before it
+	 */
+	static List<ITileProperties> breakPath(HexBoard board, List<ITileProperties> path)
+	{
+		ArrayList<ITileProperties> broken = new ArrayList<ITileProperties>(path);
+		ITileProperties beforeLast = path.get(path.size() - 2);
+		List<HexState> adjacent = board.getAdjacentHexesTo(beforeLast);
+		for(HexState hex : board.getHexesAsList())
+		{
+			if(hex.getHex() != beforeLast && !adjacent.contains(hex))
+			{
+				broken.set(broken.size() - 1, hex.getHex());
+				return broken;
+			}
+		}
+		throw new IllegalStateException("Every hex is adjacent to " + beforeLast);
+	}
+
+	void measureConnected(String name, final HexBoard board, final List<ITileProperties> path, final boolean expected)
+	{
+		final int[] wrong = new int[1];
+		measure(name, new Runnable()
+		{
+			@Override
+			public void run()
+			{
+				if(board.areHexesConnected(path) != expected)
+				{
+					wrong[0]++;
+				}
+			}
+		});
+		if(wrong[0] > 0)
+		{
+			System.out.println("  error: " + wrong[0] + " wrong answers, expected " + expected);
+		}
+	}
+
+	void measureLookups(final HexBoard board)
+	{
+		final List<HexState> hexes = board.getHexesAsList();
+		measure("getHexStateForHex", new Runnable()
+		{
+			private int next;
+
+			@Override
+			public void run()
+			{
+				sink += board.getHexStateForHex(hexes.get(next).getHex()).hashCode();
+				next = (next + 1) % hexes.size();
+			}
+		});
+		measure("getAdjacentHexesTo", new Runnable()
+		{
+			private int next;
+
+			@Override
+			public void run()
+			{
+				sink += board.getAdjacentHexesTo(hexes.get(next).getHex()).size();
+				next = (next + 1) % hexes.size();
+			}
+		});
+	}
+
+	private void measure(String name, Runnable call)
+	{
+		for(int i=0; i<WARM_UP_ROUNDS; i++)
+		{
+			repeat(call);
+		}
+		long bestNanos = Long.MAX_VALUE;
+		long bytes = -1;
+		for(int i=0; i<numRounds; i++)
+		{
+			long allocatedBefore = getAllocatedBytes();
+			long start = System.nanoTime();
+			repeat(call);
+			bestNanos = Math.min(bestNanos, System.nanoTime() - start);
+			long allocatedAfter = getAllocatedBytes();
+			bytes = allocatedBefore < 0? -1 : (allocatedAfter - allocatedBefore) / numCalls;
+		}
+		System.out.println(String.format(Locale.ROOT, "%-32s %10.1f ns %10d bytes", name, (double) bestNanos / numCalls, bytes));
+	}
+
+	private void repeat(Runnable call)
+	{
+		for(int i=0; i<numCalls; i++)
+		{
+			call.run();
+		}
+	}
+
+	/**
+	 * @return bytes allocated by the calling thread so far, -1 if the JVM does not count them
+	 */
+	private long getAllocatedBytes()
+	{
+		if(threads instanceof com.sun.management.ThreadMXBean)
+		{
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		}
+		return -1;
+	}
+
+	public static void main(String[] args) throws Exception
+	{
+		int numCalls = 200000;
+		int numRounds = 5;
+		int length = 64;
+		long seed = 1;
+		for(int i=0; i<args.length; i++)
+		{
+			if(args[i].equals("-calls")){
+				numCalls = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-rounds")){
+				numRounds = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-length")){
+				length = Integer.parseInt(args[++i]);
+			}else if(args[i].equals("-seed")){
+				seed = Long.parseLong(args[++i]);
+			}else{
+				throw new IllegalArgumentException("Unknown argument " + args[i]);
+			}
+		}
+		if(length < 2)
+		{
+			throw new IllegalArgumentException("A path must have at least two hexes");
+		}
+		org.apache.log4j.Logger.getRootLogger().setLevel(Level.OFF);
+		new LoadResources(false).run();
+		HexBoard board = new StateGenerator("SuperiorDemo", true, GeneratorType.SUPERIOR_DEMO).getGeneratedState().getBoard();
+		List<ITileProperties> path = createPath(board, length, new Random(seed));
+		HexBoardBenchmark benchmark = new HexBoardBenchmark(numCalls, numRounds);
+		System.out.println(String.format(Locale.ROOT, "%d calls per round, best of %d rounds, %d hexes, paths of %d hexes",
+				numCalls, numRounds, board.getHexesAsList().size(), length));
+		benchmark.measureConnected("areHexesConnected, connected", board, path, true);
+		benchmark.measureConnected("areHexesConnected, broken", board, breakPath(board, path), false);
+		benchmark.measureLookups(board);
+		if(benchmark.sink == 0)
+		{
+			System.out.println();
+		}
+	}
+}
@@ -1,14 +1,12 @@
 package server.logic.game;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-
 import server.logic.exceptions.NoMoreTilesException;
 
 import common.Constants;
 import common.Constants.Biome;
 import common.game.ITileProperties;
 import common.game.TileProperties;
+import common.game.UndoLog;
 
 /**
  * this class encapsulates the logic of drawing hex tiles from the bank, and placing
@@ -35,7 +33,7 @@ public class HexTileManager extends AbstractTileManager
 	
 	public HexTileManager(HexTileManager other)
 	{
-		super(Constants.deepCloneCollection(other.tiles,new ArrayList<ITileProperties>()),"hex");
+		super(other);
 		isDemoMode = other.isDemoMode;
 		numDraws = other.numDraws;
 	}
@@ -70,31 +68,31 @@ public class HexTileManager extends AbstractTileManager
 					case 23:
 					case 25:
 					case 29:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Frozen_Waste);
 					case 5:
 					case 10:
 					case 12:
 					case 31:
 					case 35:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Forest);
 					case 13:
 					case 22:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Jungle);
 					case 2:
 					case 15:
 					case 20:
 					case 24:
 					case 36:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Plains);
 					case 1:
 					case 16:
 					case 21:
 					case 33:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Sea);
 					case 0:
 					case 8:
@@ -102,21 +100,21 @@ public class HexTileManager extends AbstractTileManager
 					case 26:
 					case 32:
 					case 34:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Swamp);
 					case 6:
 					case 9:
 					case 14:
 					case 17:
 					case 30:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Mountain);
 					case 4:
 					case 7:
 					case 11:
 					case 27:
 					case 28:
-						numDraws++;
+						countDraw();
 						return drawHexTileByType(Biome.Desert);
 					default:
 						return super.drawTile();
@@ -125,6 +123,23 @@ public class HexTileManager extends AbstractTileManager
 		}
 	}
 	
+	private void countDraw()
+	{
+		if(UndoLog.isRecording())
+		{
+			final int previousNumDraws = numDraws;
+			UndoLog.record(new UndoLog.Change()
+			{
+				@Override
+				public void undo()
+				{
+					numDraws = previousNumDraws;
+				}
+			});
+		}
+		numDraws++;
+	}
+	
 	/**
 	 * Call this method to draw a particular type of hex tile from the bank
 	 * @param hexType The type of hex to draw
@@ -135,10 +150,9 @@ public class HexTileManager extends AbstractTileManager
 	{
 		synchronized(tiles)
 		{
-			Iterator<ITileProperties> it = tiles.iterator();
-			while(it.hasNext())
+			for(int i=0; i<tiles.size(); i++)
 			{
-				ITileProperties hex = it.next();
+				ITileProperties hex = tiles.get(i);
 				if(hex.getName().equals(hexType.name()))
 				{
 					if(isDemoMode)
@@ -147,7 +161,7 @@ public class HexTileManager extends AbstractTileManager
 					}
 					else
 					{
-						it.remove();
+						hex = drawTileAt(i);
 					}
 					return hex;
 				}
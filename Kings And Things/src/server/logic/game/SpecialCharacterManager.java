@@ -1,6 +1,5 @@
 package server.logic.game;
 
-import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.LinkedHashSet;
@@ -24,7 +23,7 @@ public class SpecialCharacterManager extends AbstractTileManager
 	
 	public SpecialCharacterManager(SpecialCharacterManager other)
 	{
-		super(Constants.deepCloneCollection(other.tiles,new ArrayList<ITileProperties>()),"special character");
+		super(other);
 	}
 	
 	@Override
@@ -43,12 +42,11 @@ public class SpecialCharacterManager extends AbstractTileManager
 				tileToDraw = tp;
 			}
 		}
-		if(tileToDraw==null || !tiles.remove(tileToDraw))
+		if(tileToDraw==null || !tiles.contains(tileToDraw))
 		{
 			throw new NoMoreTilesException("Unable to draw special character named: " + heroName + ", because there are no more tiles with that name.");
 		}
-		
-		return (TwoSidedTileProperties) tileToDraw;
+		return (TwoSidedTileProperties) drawTileAt(tiles.indexOf(tileToDraw));
 	}
 	
 	public boolean heroIsAvailable(String heroName)
@@ -92,7 +90,7 @@ public class SpecialCharacterManager extends AbstractTileManager
 		{
 			for(TwoSidedTileProperties tp : heroes)
 			{
-				if(Math.random()<0.5d)
+				if(Constants.getRandom().nextBoolean())
 				{
 					tp.flip();
 				}
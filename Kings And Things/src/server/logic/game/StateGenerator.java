@@ -98,6 +98,7 @@ public class StateGenerator
 	}
 	
 	private GameState toFile( GameState state){
+		state.updateBitboards();
 		/*try(FileOutputStream fs = new FileOutputStream(fileName);ObjectOutputStream os = new ObjectOutputStream(fs))
 		{
 			os.writeObject(state);
@@ -252,6 +252,7 @@ public class ApplyRandomEventsCommandHandler extends CommandHandler {
 				if (getCurrentState().isOwnedByPlayer(defectionUser.getRollTarget())) {
 					// Removes special character from defending player
 					getCurrentState().getPlayerByPlayerNumber(defectionDefender.getRollingPlayerID()).removeOwnedThingOnBoard(defectionDefender.getRollTarget());
+					getCurrentState().updateBitboards();
 				} else {
 					// Removes special character from bank
 					getCurrentState().getBankHeroes().drawTileByName(defectionUser.getRollTarget().getName());
@@ -1,7 +1,6 @@
 package server.logic.game.handlers;
 
 import java.util.ArrayList;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Set;
@@ -111,10 +110,7 @@ public class CombatCommandHandler extends CommandHandler
 		msg.postNetworkEvent(Constants.ALL_PLAYERS_ID);
 		if(isExploration)
 		{
-			List<Integer> playerOrder = getCurrentState().getPlayerOrder();
-			int attackerIndex = playerOrder.indexOf(playerNumber);
-			int defenderIndex = attackerIndex>0? attackerIndex-1 : playerOrder.size()-1;
-			getCurrentState().setDefendingPlayerNumber(playerOrder.get(defenderIndex));
+			getCurrentState().setDefendingPlayerNumber(getExplorationDefender(playerNumber));
 			
 			if(getCurrentState().getCombatHex().getFightingThingsInHexNotOwnedByPlayers(getCurrentState().getPlayers()).size()>0)
 			{
@@ -127,6 +123,7 @@ public class CombatCommandHandler extends CommandHandler
 						tp.flip();
 					}
 				}
+				getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 				new InitiateCombat(getCurrentState().getCombatHex(), getCurrentState().getPlayersStillFightingInCombatHex(), getCurrentState().getDefendingPlayerNumber(), getCurrentState().getPlayerOrder(), getCurrentState().getCurrentCombatPhase()).postNetworkEvent(getCurrentState().getPlayersInCombatIDMask());
 			}
 			else
@@ -146,6 +143,8 @@ public class CombatCommandHandler extends CommandHandler
 					tp.flip();
 				}
 			}
+			//buildings have another value on their other side
+			getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 			getCurrentState().setDefendingPlayerNumber(defender.getID());
 			getCurrentState().setCurrentCombatPhase(CombatPhase.SELECT_TARGET_PLAYER);
 			
@@ -164,6 +163,8 @@ public class CombatCommandHandler extends CommandHandler
 								{
 									getCurrentState().getCombatHex().getBuilding().flip();
 								}
+								//a building with no value left can no longer fight
+								getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 								break;
 							}
 						}
@@ -171,7 +172,12 @@ public class CombatCommandHandler extends CommandHandler
 				}
 			}
 			
-			if(!needToChooseTargets(hex))
+			if(getCurrentState().getPlayersStillFightingInCombatHex().size() < 2)
+			{
+				//the building was all that defended the hex
+				advanceOrEnd();
+			}
+			else if(!needToChooseTargets(hex))
 			{
 				autoDetermineTargets();
 				advanceToNextCombatPhase();
@@ -200,6 +206,7 @@ public class CombatCommandHandler extends CommandHandler
 				removePlayerThingFromBoard(playerNumber, getCurrentState().getCombatHex().getHex(), thing);
 			}
 		}
+		getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 		HexStatesChanged notification = new HexStatesChanged(1);
 		notification.getArray()[0] = getCurrentState().getCombatHex();
 		notification.postNetworkEvent(Constants.ALL_PLAYERS_ID);
@@ -256,6 +263,7 @@ public class CombatCommandHandler extends CommandHandler
 			defender.flip();
 			//neutralized
 		}
+		getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 		if(getCurrentState().getPlayersStillFightingInCombatHex().size() == 1)
 		{
 			givePlayerExplorationHex(playerNumber);
@@ -344,6 +352,7 @@ public class CombatCommandHandler extends CommandHandler
 				{
 					givePlayerExplorationHex(newOwner.getID());
 				}
+				getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 				getCurrentState().getCombatHex().setMarker(Constants.getPlayerMarker(newOwner.getID()));
 				HexStatesChanged msg = new HexStatesChanged(1);
 				msg.getArray()[0] = getCurrentState().getCombatHex();
@@ -376,7 +385,8 @@ public class CombatCommandHandler extends CommandHandler
 				if(getCurrentState().getCombatHex().hasBuilding())
 				{
 					ITileProperties building = getCurrentState().getCombatHex().getBuilding();
-					if(!building.getName().equals(Building.Citadel.name()))
+					//cities and villages are special income counters too, and are only rolled for once
+					if(!building.getName().equals(Building.Citadel.name()) && !building.isSpecialIncomeCounter())
 					{
 						getCurrentState().addNeededRoll(new Roll(1,building,RollReason.CALCULATE_DAMAGE_TO_TILE,newOwner==null? oldOwner.getID() : newOwner.getID()));
 					}
@@ -431,6 +441,7 @@ public class CombatCommandHandler extends CommandHandler
 				tp.flip();
 			}
 		}
+		getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 		new InitiateCombat(getCurrentState().getCombatHex(), getCurrentState().getPlayersStillFightingInCombatHex(), getCurrentState().getDefendingPlayerNumber(), getCurrentState().getPlayerOrder(), getCurrentState().getCurrentCombatPhase()).postNetworkEvent(getCurrentState().getPlayersInCombatIDMask());
 	}
 
@@ -446,6 +457,8 @@ public class CombatCommandHandler extends CommandHandler
 				getCurrentState().getBoard().getHexStateForHex(destinationHex).addThingToHex(thing);
 			}
 		}
+		getCurrentState().updateBitboards(getCurrentState().getCombatHex());
+		getCurrentState().updateBitboards(getCurrentState().getBoard().getHexStateForHex(destinationHex));
 		
 		int creatureCount = 0;
 		for(ITileProperties thing : getCurrentState().getBoard().getHexStateForHex(destinationHex).getThingsInHexOwnedByPlayer(coward))
@@ -595,18 +608,9 @@ public class CombatCommandHandler extends CommandHandler
 	
 	private boolean needToChooseTargets(ITileProperties combatHex)
 	{
-		HashSet<Integer> playersStillFighting = new HashSet<Integer>();
-		for(ITileProperties thing : getCurrentState().getBoard().getHexStateForHex(combatHex).getFightingThingsInHex())
-		{
-			for(Player p : getCurrentState().getPlayers())
-			{
-				if(p.ownsThingOnBoard(thing))
-				{
-					playersStillFighting.add(p.getID());
-				}
-			}
-		}
-		return playersStillFighting.size() >= 3;
+		HexState hs = getCurrentState().getBoard().getHexStateForHex(combatHex);
+		//the defender of an explored hex fights for the creatures found in it
+		return getCurrentState().getNumPlayersFightingInHex(hs) + (getCurrentState().hasUnownedFightingThingsInHex(hs)? 1 : 0) >= 3;
 	}
 	
 	private CombatPhase getCombatPhaseByOrdinal(int ordinal)
@@ -622,6 +626,28 @@ public class CombatCommandHandler extends CommandHandler
 		throw new IllegalArgumentException("Recieved invalid combat phase ordinal: " + ordinal);
 	}
 	
+	/**
+	 * The defenders of an explored hex are played by the person that moves before the explorer,
+	 * skipping players who have things in the hex themselves, as they can not fight both sides
+	 * @param explorerNumber The player exploring the combat hex
+	 * @return The player to roll for the defenders
+	 */
+	private int getExplorationDefender(int explorerNumber)
+	{
+		List<Integer> playerOrder = getCurrentState().getPlayerOrder();
+		int explorerIndex = playerOrder.indexOf(explorerNumber);
+		for(int i=1; i<playerOrder.size(); i++)
+		{
+			int defender = playerOrder.get((explorerIndex - i + playerOrder.size()) % playerOrder.size());
+			if(getCurrentState().getCombatHex().getThingsInHexOwnedByPlayer(getCurrentState().getPlayerByPlayerNumber(defender)).isEmpty())
+			{
+				return defender;
+			}
+		}
+		//everyone is in the hex
+		return playerOrder.get(explorerIndex>0? explorerIndex-1 : playerOrder.size()-1);
+	}
+	
 	private void autoDetermineTargets()
 	{
 		Player p1 = null;
@@ -662,9 +688,11 @@ public class CombatCommandHandler extends CommandHandler
 							hitCount++;
 						}
 					}
-					if(hitCount > 0)
+					//a target wiped out earlier in this round has nothing left to take the hits
+					Player target = getCurrentState().getPlayersTarget(rollingPlayerID);
+					if(hitCount > 0 && getCurrentState().getPlayersStillFightingInCombatHex().contains(target))
 					{
-						getCurrentState().addHitsToPlayer(getCurrentState().getPlayersTarget(rollingPlayerID).getID(), hitCount);
+						getCurrentState().addHitsToPlayer(target.getID(), hitCount);
 					}
 					break;
 				}
@@ -676,7 +704,8 @@ public class CombatCommandHandler extends CommandHandler
 					if(roll == 1 || roll == 6)
 					{
 						ITileProperties rollTarget = r.getRollTarget();
-						Player owningPlayer = null;
+						//the roll is made by the player holding the hex, a tile found in it may not have been handed to them
+						Player owningPlayer = getCurrentState().getPlayerByPlayerNumber(r.getRollingPlayerID());
 						for(Player p : getCurrentState().getPlayers())
 						{
 							if(p.ownsThingOnBoard(rollTarget))
@@ -711,6 +740,7 @@ public class CombatCommandHandler extends CommandHandler
 						getCurrentState().getCombatHex().getBuilding().flip();
 						getCurrentState().getCombatHex().getBuilding().resetValue();
 					}
+					getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 					HexStatesChanged msg = new HexStatesChanged(1);
 					msg.getArray()[0] = getCurrentState().getCombatHex();
 					msg.postNetworkEvent(Constants.ALL_PLAYERS_ID);
@@ -768,7 +798,12 @@ public class CombatCommandHandler extends CommandHandler
 							getCurrentState().getCup().reInsertTile(thing);
 						}
 						
-						if(highestValueCounter!=null)
+						//a hex explored before may still hold the counter found then
+						if(highestValueCounter!=null && (getCurrentState().getCombatHex().hasSpecialIncomeCounter() || (highestValueCounter.isBuilding() && getCurrentState().getCombatHex().hasBuilding())))
+						{
+							getCurrentState().getCup().reInsertTile(highestValueCounter);
+						}
+						else if(highestValueCounter!=null)
 						{
 							getCurrentState().getCombatHex().addThingToHexForExploration(highestValueCounter);
 						}
@@ -785,24 +820,13 @@ public class CombatCommandHandler extends CommandHandler
 						{
 							new ExplorationResults(getCurrentState().getCombatHex(), getCurrentState().getPlayerByPlayerNumber(r.getRollingPlayerID())).postNetworkEvent(r.getRollingPlayerID());
 						}
+						getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 						HexStatesChanged msg = new HexStatesChanged(1);
 						msg.getArray()[0] = getCurrentState().getCombatHex();
 						msg.postNetworkEvent(Constants.ALL_PLAYERS_ID);
 						
 						if (defendingCreaturesExist) {
-							int rollingPlayerIndex = -1;
-							for (int i = 0; i < getCurrentState().getPlayers().size(); i++) {
-								if (getCurrentState().getPlayerOrder().get(i) == r.getRollingPlayerID()) {
-									rollingPlayerIndex = i;
-									break;
-								}
-							}
-							//sets defending player to the person that moves before the explorer
-							if (rollingPlayerIndex == 0) {
-								getCurrentState().setDefendingPlayerNumber(getCurrentState().getPlayerOrder().get(getCurrentState().getPlayerOrder().size()-1));
-							} else {
-								getCurrentState().setDefendingPlayerNumber(getCurrentState().getPlayerOrder().get(rollingPlayerIndex-1));
-							}
+							getCurrentState().setDefendingPlayerNumber(getExplorationDefender(r.getRollingPlayerID()));
 							
 							getCurrentState().setCurrentCombatPhase(CombatPhase.BRIBE_CREATURES);
 							new CurrentPhase<CombatPhase>(getCurrentState().getPlayerInfoArray(), getCurrentState().getCurrentCombatPhase()).postNetworkEvent(r.getRollingPlayerID());
@@ -849,6 +873,7 @@ public class CombatCommandHandler extends CommandHandler
 					tp.flip();
 				}
 			}
+			getCurrentState().updateBitboards(getCurrentState().getCombatHex());
 			getCurrentState().setCurrentCombatPhase(getCombatPhaseByOrdinal(getCurrentState().getCurrentCombatPhase().ordinal() + 1));
 			new CurrentPhase<CombatPhase>(getCurrentState().getPlayerInfoArray(), getCurrentState().getCurrentCombatPhase()).postNetworkEvent(Constants.ALL_PLAYERS_ID);
 		}
@@ -61,14 +61,26 @@ public abstract class CommandHandler
 	//sub classes can not and should not change these fields,
 	//they are to be set only after handling a start game command
 	private GameState currentState;
+	private EventDispatch dispatch;
 	private boolean isDemoMode;
 	
 	/**
-	 * call this method to initialize this class before sending it commands
+	 * call this method to initialize this class before sending it commands,
+	 * the handler is registered on the event dispatch bound to the calling thread
 	 */
 	public void initialize()
 	{
-		EventDispatch.registerOnInternalEvents(this);
+		initialize(EventDispatch.getCurrent());
+	}
+	
+	/**
+	 * call this method to initialize this class before sending it commands
+	 * @param dispatch The event buses of the game this handler belongs to
+	 */
+	public void initialize(EventDispatch dispatch)
+	{
+		this.dispatch = dispatch;
+		dispatch.registerInternal(this);
 	}
 	
 	/**
@@ -76,7 +88,11 @@ public abstract class CommandHandler
 	 */
 	public void dispose()
 	{
-		EventDispatch.unregisterFromInternalEvents(this);
+		if(dispatch != null)
+		{
+			dispatch.unregisterInternal(this);
+			dispatch = null;
+		}
 	}
 
 	/**
@@ -118,6 +134,28 @@ public abstract class CommandHandler
 		makeDiceRoll(roll);
 	}
 	
+	/**
+	 * Call this when a player has seen the result of its rolls, the effects of the
+	 * rolls are applied once every player is done and no more rolls are needed
+	 * @param playerNumber The player who is done rolling
+	 */
+	public void doneRolling(int playerNumber)
+	{
+		currentState.addDoneRolling( playerNumber);
+		if( currentState.allRolled() && !currentState.isWaitingForRolls()){
+
+			new DiceRolled().postInternalEvent();
+			if( currentState.getCurrentSetupPhase()!=SetupPhase.SETUP_FINISHED){
+			}else{
+				if( currentState.getCurrentRegularPhase()==RegularPhase.COMBAT){
+					new CurrentPhase<CombatPhase>( currentState.getPlayerInfoArray(), currentState.getCurrentCombatPhase()).postNetworkEvent( ALL_PLAYERS_ID);
+				}else{
+					new CurrentPhase<RegularPhase>( currentState.getPlayerInfoArray(), currentState.getCurrentRegularPhase()).postNetworkEvent( ALL_PLAYERS_ID);
+				}
+			}
+		}
+	}
+	
 	public void viewHexContents(int playerNumber, ITileProperties hex, HexContentsTarget target)
 	{
 		new ViewHexContentsResponse(prepareHexForViewingByPlayer(hex,playerNumber).getThingsInHex(),target).postNetworkEvent(playerNumber);
@@ -251,6 +289,7 @@ public abstract class CommandHandler
 		currentState.getPlayerByPlayerNumber(playerNumber).addOwnedHex(hex);
 
 		HexState hs = getCurrentState().getBoard().getHexStateForHex(hex);
+		currentState.updateBitboards(hs);
 		hs.setMarker( Constants.getPlayerMarker( playerNumber));
 		new HexOwnershipChanged(hs).postNetworkEvent( ALL_PLAYERS_ID);
 	}
@@ -258,8 +297,10 @@ public abstract class CommandHandler
 	protected void removePlayerThingFromBoard(int playerNumber, ITileProperties hex, ITileProperties thing)
 	{
 		thing.resetValue();
-		currentState.getBoard().getHexStateForHex(hex).removeThingFromHex(thing);
+		HexState hs = currentState.getBoard().getHexStateForHex(hex);
+		hs.removeThingFromHex(thing);
 		currentState.getPlayerByPlayerNumber(playerNumber).removeOwnedThingOnBoard(thing);
+		currentState.updateBitboards(hs);
 		if(thing.isCreature() || thing.isSpecialIncomeCounter())
 		{
 			currentState.getCup().reInsertTile(thing);
@@ -370,7 +411,7 @@ public abstract class CommandHandler
 			int activePhasePlayerOrderIndex = currentState.getPlayerOrder().indexOf(activePhasePlayerNumber);
 			currentState.setActivePhasePlayer(currentState.getPlayerOrder().get(++activePhasePlayerOrderIndex % currentState.getPlayers().size()));
 			
-			if(currentState.getBoard().getContestedHexes(currentState.getPlayers()).size() > 0)
+			if(currentState.getBoard().getContestedHexBits(currentState.getPlayers()) != 0)
 			{
 				return RegularPhase.COMBAT;
 			}
@@ -509,6 +550,7 @@ public abstract class CommandHandler
 						{
 							p.removeOwnedThingOnBoard(creature);
 							hs.removeThingFromHex(creature);
+							getCurrentState().updateBitboards(hs);
 							HexStatesChanged msg = new HexStatesChanged(1);
 							msg.getArray()[0] = hs;
 							msg.postNetworkEvent(Constants.ALL_PLAYERS_ID);
@@ -649,19 +691,7 @@ public abstract class CommandHandler
 		{
 			try
 			{
-				currentState.addDoneRolling( command.getID());
-				if( currentState.allRolled() && !currentState.isWaitingForRolls()){
-
-					new DiceRolled().postInternalEvent();
-					if( currentState.getCurrentSetupPhase()!=SetupPhase.SETUP_FINISHED){
-					}else{
-						if( currentState.getCurrentRegularPhase()==RegularPhase.COMBAT){
-							new CurrentPhase<CombatPhase>( currentState.getPlayerInfoArray(), currentState.getCurrentCombatPhase()).postNetworkEvent( ALL_PLAYERS_ID);
-						}else{
-							new CurrentPhase<RegularPhase>( currentState.getPlayerInfoArray(), currentState.getCurrentRegularPhase()).postNetworkEvent( ALL_PLAYERS_ID);
-						}
-					}
-				}
+				doneRolling( command.getID());
 			}
 			catch(Throwable t)
 			{
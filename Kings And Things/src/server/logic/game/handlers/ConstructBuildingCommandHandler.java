@@ -43,6 +43,7 @@ public class ConstructBuildingCommandHandler extends CommandHandler
 		hs.removeBuildingFromHex();
 		hs.addThingToHex(buildingTile);
 		getCurrentState().getPlayerByPlayerNumber(playerNumber).addOwnedThingOnBoard(buildingTile);
+		getCurrentState().updateBitboards(hs);
 		if (getCurrentState().getCurrentSetupPhase() == SetupPhase.SETUP_FINISHED) {
 			if (!getCurrentState().hasWillingWorkersPlayed() || building == BuildableBuilding.Citadel) {
 				getCurrentState().getPlayerByPlayerNumber(playerNumber).removeGold(5);
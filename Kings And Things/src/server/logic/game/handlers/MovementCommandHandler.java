@@ -46,6 +46,8 @@ public class MovementCommandHandler extends CommandHandler
 			firstHex.removeThingFromHex(thing);
 			lastHex.addThingToHex(thing);
 		}
+		getCurrentState().updateBitboards(firstHex);
+		getCurrentState().updateBitboards(lastHex);
 		
 		HexStatesChanged notification = new HexStatesChanged(2);
 		notification.getArray()[0] = firstHex;
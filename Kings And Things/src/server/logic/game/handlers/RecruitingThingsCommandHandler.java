@@ -136,6 +136,8 @@ public class RecruitingThingsCommandHandler extends CommandHandler
 		}
 		for(ITileProperties oldThing : things)
 		{
+			//an exchanged thing leaves the tray, or it would be both in the cup and in the tray
+			player.removeThingFromTray(oldThing);
 			getCurrentState().getCup().reInsertTile(oldThing);
 		}
 		for(ITileProperties newThing : newThings)
@@ -203,6 +205,7 @@ public class RecruitingThingsCommandHandler extends CommandHandler
 		{
 			p.placeThingFromHandOnBoard(thing);
 		}
+		getCurrentState().updateBitboards(hs);
 		moveThingsFromHandToTray(p);
 		
 		HexStatesChanged msg = new HexStatesChanged(1);
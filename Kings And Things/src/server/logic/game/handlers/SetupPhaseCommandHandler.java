@@ -4,6 +4,7 @@ import java.util.Set;
 import java.awt.Point;
 import java.util.HashSet;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 
 import server.event.DiceRolled;
 import server.event.GameStarted;
@@ -90,6 +91,8 @@ public class SetupPhaseCommandHandler extends CommandHandler{
 		if(getCurrentState().getCurrentSetupPhase() == SetupPhase.PICK_FIRST_HEX && getCurrentState().getPlayers().size() == 2)
 		{
 			pickSecondPlayersHex();
+			//the second player does not get to pick
+			advanceActivePhasePlayer();
 		}
 		else if(getCurrentState().getCurrentSetupPhase() == SetupPhase.PICK_FIRST_HEX && getCurrentState().getPlayers().size() == 4 && getCurrentState().getActivePhasePlayer().getID() == getCurrentState().getPlayerOrder().get(2))
 		{
@@ -152,7 +155,8 @@ public class SetupPhaseCommandHandler extends CommandHandler{
 			}
 		}
 		
-		ArrayList<Roll> tiedRolls = new ArrayList<Roll>();
+		//a roll tied with several others is rolled again once
+		LinkedHashSet<Roll> tiedRolls = new LinkedHashSet<Roll>();
 		for(int i=0; i<handledRolls.size(); i++)
 		{
 			Roll nextRoll = handledRolls.get(i);
@@ -165,13 +169,14 @@ public class SetupPhaseCommandHandler extends CommandHandler{
 				{
 					tiedRolls.add(nextRoll);
 					tiedRolls.add(compareRoll);
-					getCurrentState().removeDoneRollTie( nextRoll.getRollingPlayerID());
-					getCurrentState().removeDoneRollTie( compareRoll.getRollingPlayerID());
-					new CommandRejected( getCurrentState().getCurrentRegularPhase(),getCurrentState().getCurrentSetupPhase(), getCurrentState().getPlayerByPlayerNumber( nextRoll.getRollingPlayerID()).getPlayerInfo(), "Tie", UpdateInstruction.TieRoll).postNetworkEvent( nextRoll.getRollingPlayerID());
-					new CommandRejected( getCurrentState().getCurrentRegularPhase(),getCurrentState().getCurrentSetupPhase(), getCurrentState().getPlayerByPlayerNumber( compareRoll.getRollingPlayerID()).getPlayerInfo(), "Tie", UpdateInstruction.TieRoll).postNetworkEvent( compareRoll.getRollingPlayerID());
 				}
 			}
 		}
+		for(Roll tie : tiedRolls)
+		{
+			getCurrentState().removeDoneRollTie( tie.getRollingPlayerID());
+			new CommandRejected( getCurrentState().getCurrentRegularPhase(),getCurrentState().getCurrentSetupPhase(), getCurrentState().getPlayerByPlayerNumber( tie.getRollingPlayerID()).getPlayerInfo(), "Tie", UpdateInstruction.TieRoll).postNetworkEvent( tie.getRollingPlayerID());
+		}
 		
 		if(handledRolls.size()>0)
 		{
@@ -258,19 +263,13 @@ public class SetupPhaseCommandHandler extends CommandHandler{
 		getCurrentState().getBoardGenerator().placeHexAside(hex);
 		ITileProperties replacement = getCurrentState().getBank().drawTile();
 		
-		for(HexState hs : getCurrentState().getBoard().getHexesAsList())
-		{
-			if(hs.getHex().equals(hex))
-			{
-				hs.setHex(replacement);
-				if( isOwned){
-					hs.setMarker( Constants.getPlayerMarker( playerNumber));
-				}
-				ExchangedSeaHex msg = new ExchangedSeaHex(hs);
-				msg.postNetworkEvent(ALL_PLAYERS_ID);
-				break;
-			}
+		HexState hs = getCurrentState().getBoard().exchangeHex(hex, replacement);
+		getCurrentState().updateBitboards(hs);
+		if( isOwned){
+			hs.setMarker( Constants.getPlayerMarker( playerNumber));
 		}
+		ExchangedSeaHex msg = new ExchangedSeaHex(hs);
+		msg.postNetworkEvent(ALL_PLAYERS_ID);
 	}
 
 	@Subscribe
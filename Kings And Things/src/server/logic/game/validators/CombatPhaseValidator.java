@@ -42,13 +42,17 @@ public abstract class CombatPhaseValidator
 			throw new IllegalArgumentException("Can only resolve combat in a hex that involves the player");
 		}
 		boolean otherPlayersOwnThingsInHex = false;
+		boolean isExploration = true;
 		
 		for(Player p : currentState.getPlayers())
 		{
 			if(!p.equals(player) && combatHex.getThingsInHexOwnedByPlayer(p).size()!=0)
 			{
 				otherPlayersOwnThingsInHex = true;
-				break;
+			}
+			if(p.ownsHex(hex))
+			{
+				isExploration = false;
 			}
 		}
 		
@@ -56,6 +60,12 @@ public abstract class CombatPhaseValidator
 		{
 			throw new IllegalArgumentException("The entered hex is not a combat hex");
 		}
+		//exploration defenders fight for another player, the defenders of an unexplored hex are drawn once combat begins
+		int sides = currentState.getNumPlayersFightingInHex(combatHex) + (currentState.hasUnownedFightingThingsInHex(combatHex)? 1 : 0);
+		if(!isExploration && sides < 2)
+		{
+			throw new IllegalArgumentException("There is no one to fight in the entered hex");
+		}
 	}
 	
 	public static void validateCanBribeDefender(ITileProperties defender, int playerNumber, GameState currentState)
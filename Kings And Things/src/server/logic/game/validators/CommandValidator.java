@@ -81,6 +81,29 @@ public abstract class CommandValidator
 		}
 	}
 
+	/**
+	 * The combat phase only ends once every combat is resolved, so a player
+	 * may not pass over a combat they can resolve
+	 * @param playerNumber The player who wants to end their turn
+	 * @param currentState The current state of the game
+	 * @throws IllegalStateException If the player can resolve a combat
+	 */
+	private static void validateNoCombatToResolve(int playerNumber, GameState currentState)
+	{
+		for(HexState hs : currentState.getBoard().getContestedHexes(currentState.getPlayers()))
+		{
+			try
+			{
+				CombatPhaseValidator.validateCanResolveCombat(hs.getHex(), playerNumber, currentState);
+			}
+			catch(IllegalArgumentException | IllegalStateException e)
+			{
+				continue;
+			}
+			throw new IllegalStateException("You must resolve the combat in " + hs.getHex().getName() + " first.");
+		}
+	}
+	
 	/**
 	 * Call this to validate the end the current players turn command
 	 * @param playerNumber The player who sent the command
@@ -102,6 +125,10 @@ public abstract class CommandValidator
 		if(currentState.getCurrentCombatPhase() == CombatPhase.NO_COMBAT)
 		{
 			CommandValidator.validateIsPlayerActive(playerNumber, currentState);
+			if(currentState.getCurrentRegularPhase() == RegularPhase.COMBAT)
+			{
+				validateNoCombatToResolve(playerNumber, currentState);
+			}
 		}
 		else
 		{
@@ -110,29 +137,37 @@ public abstract class CommandValidator
 			{
 				throw new IllegalStateException("It is not " + currentState.getPlayerByPlayerNumber(playerNumber) + " turn to move.");
 			}
+			//a retreat that overfills a hex waits for the things to be removed
+			if(currentState.hasHexesThatNeedThingsRemoved())
+			{
+				throw new IllegalStateException("Some players must remove things from their hexes first.");
+			}
 			switch(currentState.getCurrentCombatPhase())
 			{
 				case ATTACKER_ONE_RETREAT:
 				{
-					if(currentState.getAttackerByIndex(1).getID() != playerNumber)
+					Player attacker = currentState.getAttackerByIndex(1);
+					if(attacker == null || attacker.getID() != playerNumber)
 					{
-						throw new IllegalStateException("Player " + currentState.getAttackerByIndex(1) + " must choose to retreat first.");
+						throw new IllegalStateException("Player " + attacker + " must choose to retreat first.");
 					}
 					break;
 				}
 				case ATTACKER_TWO_RETREAT:
 				{
-					if(currentState.getAttackerByIndex(2).getID() != playerNumber)
+					Player attacker = currentState.getAttackerByIndex(2);
+					if(attacker == null || attacker.getID() != playerNumber)
 					{
-						throw new IllegalStateException("Player " + currentState.getAttackerByIndex(2) + " must choose to retreat first.");
+						throw new IllegalStateException("Player " + attacker + " must choose to retreat first.");
 					}
 					break;
 				}
 				case ATTACKER_THREE_RETREAT:
 				{
-					if(currentState.getAttackerByIndex(3).getID() != playerNumber)
+					Player attacker = currentState.getAttackerByIndex(3);
+					if(attacker == null || attacker.getID() != playerNumber)
 					{
-						throw new IllegalStateException("Player " + currentState.getAttackerByIndex(3) + " must choose to retreat first.");
+						throw new IllegalStateException("Player " + attacker + " must choose to retreat first.");
 					}
 					break;
 				}
@@ -152,6 +187,16 @@ public abstract class CommandValidator
 					}
 					break;
 				}
+				case SELECT_TARGET_PLAYER:
+				{
+					throw new IllegalStateException("Every player must select a target to attack first.");
+				}
+				case APPLY_MAGIC_HITS:
+				case APPLY_RANGED_HITS:
+				case APPLY_MELEE_HITS:
+				{
+					throw new IllegalStateException("Every hit must be applied first.");
+				}
 				default:
 					break;
 			}
@@ -248,6 +293,10 @@ public abstract class CommandValidator
 		else if(thingsToRemove.size()==1 && thingsToRemove.iterator().next().isSpecialCharacter() && currentState.getThingsToRemoveFromHex(hex)==0)
 		{
 			validateIsPlayerActive(playerNumber,currentState);
+			if(currentState.getCurrentCombatPhase() != CombatPhase.NO_COMBAT && currentState.getCurrentCombatPhase() != CombatPhase.PLACE_THINGS && currentState.getCombatHex() == hex)
+			{
+				throw new IllegalStateException("You can not send away special characters fighting in the combat hex.");
+			}
 		}
 		else
 		{
@@ -57,9 +57,17 @@ public abstract class RecruitingThingsPhaseValidator
 
 	public static void validateCanDiscardThings(Collection<ITileProperties> things, int playerNumber, GameState currentState)
 	{
-		CommandValidator.validateIsPlayerActive(playerNumber,currentState);
-		CommandValidator.validateNoPendingRolls(currentState);
 		Player p = currentState.getPlayerByPlayerNumber(playerNumber);
+		if(currentState.getCurrentCombatPhase() != CombatPhase.PLACE_THINGS)
+		{
+			CommandValidator.validateIsPlayerActive(playerNumber,currentState);
+		}
+		else if(!p.ownsHex(currentState.getCombatHex().getHex()))
+		{
+			//the new owner of the combat hex returns the cards it can not place
+			throw new IllegalArgumentException("Only the owner of the newly acquired hex can discard things now");
+		}
+		CommandValidator.validateNoPendingRolls(currentState);
 		for(ITileProperties thing : things)
 		{
 			if(!p.ownsThingInHand(thing) && !p.ownsThingInTray(thing))
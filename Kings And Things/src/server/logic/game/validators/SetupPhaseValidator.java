@@ -153,27 +153,71 @@ public abstract class SetupPhaseValidator
 
 	private static void validateCanPickSetupPhaseHex(ITileProperties hex, int playerNumber, GameState currentState)
 	{
+		for(Player p : currentState.getPlayers())
+		{
+			if(p.ownsHex(hex))
+			{
+				throw new IllegalArgumentException("The chosen hex is already taken by player: " + p);
+			}
+		}
+		Player adjacentPlayer = getOtherPlayerAdjacentTo(hex, playerNumber, currentState);
+		//a player hemmed in by the others may take a hex next to theirs
+		if(adjacentPlayer != null && canPickHexAwayFromOtherPlayers(playerNumber, currentState))
+		{
+			throw new IllegalArgumentException("The chosen hex is adjacent to one of player: " + adjacentPlayer + "'s hexes");
+		}
 		boolean playerHasOneAdjacentHex = false;
+		for(HexState hs : currentState.getBoard().getAdjacentHexesTo(hex))
+		{
+			if(currentState.getPlayerByPlayerNumber(playerNumber).ownsHex(hs.getHex()))
+			{
+				playerHasOneAdjacentHex = true;
+			}
+		}
+		if(!playerHasOneAdjacentHex)
+		{
+			throw new IllegalArgumentException("The chosen hex must be adjacent to a currently owned hex.");
+		}
+	}
+
+	/**
+	 * @return A player other than playerNumber owning a hex adjacent to hex, or null if there is none
+	 */
+	private static Player getOtherPlayerAdjacentTo(ITileProperties hex, int playerNumber, GameState currentState)
+	{
 		for(HexState hs : currentState.getBoard().getAdjacentHexesTo(hex))
 		{
 			for(Player p : currentState.getPlayers())
 			{
-				if(p.ownsHex(hs.getHex()))
+				if(p.getID() != playerNumber && p.ownsHex(hs.getHex()))
 				{
-					if(p.getID() == playerNumber)
-					{
-						playerHasOneAdjacentHex = true;
-					}
-					else
-					{
-						throw new IllegalArgumentException("The chosen hex is adjacent to one of player: " + p + "'s hexes");
-					}
+					return p;
 				}
 			}
 		}
-		if(!playerHasOneAdjacentHex)
+		return null;
+	}
+
+	/**
+	 * @return True if a hex no one owns, adjacent to a hex of playerNumber and to no hex of the other players, is left
+	 */
+	private static boolean canPickHexAwayFromOtherPlayers(int playerNumber, GameState currentState)
+	{
+		for(ITileProperties ownedHex : currentState.getPlayerByPlayerNumber(playerNumber).getOwnedHexes())
 		{
-			throw new IllegalArgumentException("The chosen hex must be adjacent to a currently owned hex.");
+			for(HexState hs : currentState.getBoard().getAdjacentHexesTo(ownedHex))
+			{
+				boolean taken = false;
+				for(Player p : currentState.getPlayers())
+				{
+					taken |= p.ownsHex(hs.getHex());
+				}
+				if(!taken && getOtherPlayerAdjacentTo(hs.getHex(), playerNumber, currentState) == null)
+				{
+					return true;
+				}
+			}
 		}
+		return false;
 	}
 }